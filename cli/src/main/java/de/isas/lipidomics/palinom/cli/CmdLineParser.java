@@ -15,6 +15,8 @@
  */
 package de.isas.lipidomics.palinom.cli;
 
+import de.isas.lipidomics.concurrent.OrderedParallelExecutor;
+import de.isas.lipidomics.concurrent.OrderedParallelExecutor.ResultConsumer;
 import de.isas.lipidomics.domain.FattyAcid;
 import de.isas.lipidomics.domain.LipidAdduct;
 import de.isas.lipidomics.domain.LipidClass;
@@ -22,6 +24,9 @@ import de.isas.lipidomics.domain.LipidLevel;
 import de.isas.lipidomics.domain.LipidSpeciesInfo;
 import de.isas.lipidomics.palinom.SyntaxErrorListener;
 import de.isas.lipidomics.palinom.VisitorParser;
+import de.isas.lipidomics.palinom.cache.CachingVisitorParser;
+import de.isas.lipidomics.palinom.cache.ParseCache;
+import de.isas.lipidomics.palinom.codec.LipidAdductCodec;
 import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
 import de.isas.lipidomics.palinom.exceptions.ParsingException;
 import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
@@ -32,12 +37,16 @@ import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -45,8 +54,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -70,10 +81,72 @@ public class CmdLineParser {
 
     public static final String LIPIDMAPS_CLASS_REGEXP = ".+\\[([A-Z0-9]+)\\]";
 
-    private static String getAppInfo() throws IOException {
+    private static final List<String> FA_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "SN Position", "#C", "#OH", "#DB", "Bond Type", "DB Positions"
+    ));
+
+    private static final List<String> STREAMING_FA_NAMES = createStreamingFaNames();
+
+    private static final int STREAMING_COLUMN_COUNT = getStreamingColumns().size();
+
+    /**
+     * The number of pending results per parser thread that are buffered to
+     * restore the input order.
+     */
+    public static final int REORDER_BUFFER_SIZE_PER_THREAD = 256;
+
+    private static final Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> PARSERS = createParsers(null);
+
+    /**
+     * Creates the parsers for all grammars. The parsers create a new lexer and
+     * parse tree for each name and keep no other state, so one instance per
+     * grammar is shared by all threads. With a cache, each parser is wrapped
+     * in a {@link CachingVisitorParser} that stores parsed lipids and failures
+     * under the name of its grammar, so that the cached records are
+     * independent of the output format.
+     *
+     * @param cache the parse cache, may be null.
+     * @return the parsers by grammar.
+     */
+    protected static Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> createParsers(ParseCache cache) {
+        Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers = new EnumMap<>(ValidationResult.Grammar.class);
+        parsers.put(ValidationResult.Grammar.GOSLIN, new GoslinVisitorParser());
+        parsers.put(ValidationResult.Grammar.GOSLIN_FRAGMENTS, new GoslinFragmentsVisitorParser());
+        parsers.put(ValidationResult.Grammar.LIPIDMAPS, new LipidMapsVisitorParser());
+        parsers.put(ValidationResult.Grammar.SWISSLIPIDS, new SwissLipidsVisitorParser());
+        parsers.put(ValidationResult.Grammar.HMDB, new HmdbVisitorParser());
+        if (cache != null) {
+            parsers.replaceAll((grammar, parser) -> {
+                return new CachingVisitorParser<>(parser, grammar.name(), cache, LipidAdductCodec.RESULT_CODEC);
+            });
+        }
+        return Collections.unmodifiableMap(parsers);
+    }
+
+    private static List<String> createStreamingFaNames() {
+        int maxNumFa = Arrays.stream(LipidClass.values()).
+                map(LipidClass::getMaxNumFa).
+                filter(Objects::nonNull).
+                mapToInt(Integer::intValue).
+                max().
+                orElse(0);
+        List<String> faNames = new ArrayList<>();
+        faNames.add("LCB");
+        for (int i = 1; i <= maxNumFa; i++) {
+            faNames.add("FA" + i);
+        }
+        return Collections.unmodifiableList(faNames);
+    }
+
+    private static Properties getAppProperties() throws IOException {
         Properties p = new Properties();
         p.load(CmdLineParser.class.getResourceAsStream(
                 "/application.properties"));
+        return p;
+    }
+
+    private static String getAppInfo() throws IOException {
+        Properties p = getAppProperties();
         StringBuilder sb = new StringBuilder();
         String buildDate = p.getProperty("app.build.date", "no build date");
         if (!"no build date".equals(buildDate)) {
@@ -126,6 +199,9 @@ public class CmdLineParser {
         String lipidFileOpt = addLipidFileInputOption(options);
         String outputToFileOpt = addOutputToFileOption(options);
         String grammarOpt = addGrammarOption(options);
+        String streamingOpt = addStreamingOption(options);
+        String threadsOpt = addThreadsOption(options);
+        String cacheOpt = addCacheOption(options);
 
         CommandLine line = parser.parse(options, args);
         if (line.getOptions().length == 0 || line.hasOption(helpOpt)) {
@@ -146,32 +222,73 @@ public class CmdLineParser {
                     return !t.isEmpty();
                 });
             }
-            List<Pair<String, List<ValidationResult>>> results = Collections.emptyList();
-            if (line.hasOption(grammarOpt)) {
-                results = parseNamesWith(lipidNames, ValidationResult.Grammar.valueOf(line.getOptionValue(grammarOpt)));
-            } else {
-                results = parseNames(lipidNames);
-            }
-            if (results.isEmpty()) {
-                log.info("No results generated. Please check input file or lipid names passed on the cli!");
-                System.exit(1);
-            }
-            if (toFile) {
-                log.info("Saving output to 'goslin-out.tsv'.");
-                boolean successful = writeToFile(new File("goslin-out.tsv"), results);
-                if (!successful) {
+            int threads = 1;
+            if (line.hasOption(threadsOpt)) {
+                try {
+                    threads = Integer.parseInt(line.getOptionValue(threadsOpt));
+                } catch (NumberFormatException ex) {
+                    log.error("Number of threads must be an integer! Was: {}", line.getOptionValue(threadsOpt));
                     System.exit(1);
                 }
-            } else {
-                log.info("Echoing output to stdout.");
-                boolean successful = writeToStdOut(results);
-                if (!successful) {
+                if (threads < 1) {
+                    log.error("Number of threads must be at least 1! Was: {}", threads);
                     System.exit(1);
                 }
             }
+            ValidationResult.Grammar grammar = line.hasOption(grammarOpt) ? ValidationResult.Grammar.valueOf(line.getOptionValue(grammarOpt)) : null;
+            boolean successful;
+            try (Stream<String> names = lipidNames;
+                    ParseCache cache = line.hasOption(cacheOpt) ? ParseCache.open(new File(line.getOptionValue(cacheOpt)).toPath(), ParseCache.getLibraryVersion()) : null) {
+                Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers = cache == null ? PARSERS : createParsers(cache);
+                if (line.hasOption(streamingOpt)) {
+                    successful = stream(names, grammar, threads, parsers, toFile);
+                } else {
+                    successful = parseAndWrite(names, grammar, threads, parsers, toFile);
+                }
+                if (cache != null && cache.isWritable() && cache.getStaleRecordCount() > cache.size()) {
+                    cache.compact();
+                }
+            } catch (IOException ex) {
+                log.error("Caught exception while trying to use parse cache " + line.getOptionValue(cacheOpt) + "!", ex);
+                successful = false;
+            }
+            if (!successful) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static boolean stream(Stream<String> lipidNames, ValidationResult.Grammar grammar, int threads, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers, boolean toFile) {
+        if (toFile) {
+            log.info("Streaming output to 'goslin-out.tsv'.");
+        }
+        try (BufferedWriter bw = toFile ? Files.newBufferedWriter(new File("goslin-out.tsv").toPath()) : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            long rows = writeStreaming(bw, lipidNames, grammar, threads, parsers);
+            if (rows == 0) {
+                log.info("No results generated. Please check input file or lipid names passed on the cli!");
+                return false;
+            }
+            return true;
+        } catch (IOException | UncheckedIOException ex) {
+            log.error("Caught exception while trying to stream validation results!", ex);
+            return false;
         }
     }
 
+    private static boolean parseAndWrite(Stream<String> lipidNames, ValidationResult.Grammar grammar, int threads, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers, boolean toFile) {
+        List<Pair<String, List<ValidationResult>>> results = parseNames(lipidNames, grammar, threads, parsers);
+        if (results.isEmpty()) {
+            log.info("No results generated. Please check input file or lipid names passed on the cli!");
+            return false;
+        }
+        if (toFile) {
+            log.info("Saving output to 'goslin-out.tsv'.");
+            return writeToFile(new File("goslin-out.tsv"), results);
+        }
+        log.info("Echoing output to stdout.");
+        return writeToStdOut(results);
+    }
+
     @Data
     private static class ValidationResult {
 
@@ -288,6 +405,171 @@ public class CmdLineParser {
         return sb.toString();
     }
 
+    /**
+     * Returns the fixed column names used by
+     * {@link #writeStreaming(BufferedWriter, Stream, ValidationResult.Grammar, int)}.
+     * Fatty acyl columns are reserved for the long chain base and for as many
+     * fatty acyls as the lipid class with the most fatty acyls can hold.
+     *
+     * @return the column names.
+     */
+    protected static List<String> getStreamingColumns() {
+        List<String> columns = new ArrayList<>(Arrays.asList(
+                "Normalized Name",
+                "Original Name",
+                "Grammar",
+                "Message",
+                "Adduct",
+                "Sum Formula",
+                "Mass",
+                "Lipid Maps Category",
+                "Lipid Maps Main Class",
+                "Functional Class Abbr",
+                "Functional Class Synonyms",
+                "Level",
+                "Total #C",
+                "Total #OH",
+                "Total #DB"
+        ));
+        for (String faName : STREAMING_FA_NAMES) {
+            for (String faColumn : FA_COLUMNS) {
+                columns.add(faName + " " + faColumn);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Parses the lipid names one by one and writes each result as a row as
+     * soon as it is available. In contrast to
+     * {@link #writeToWriter(BufferedWriter, List)}, no results are retained and
+     * the columns are fixed up front, see {@link #getStreamingColumns()}, so
+     * that memory use does not grow with the number of names.
+     *
+     * @param bw the writer to write to.
+     * @param lipidNames the lipid names.
+     * @param grammar the grammar to use, or null to try all grammars.
+     * @param threads the number of parser threads.
+     * @param parsers the parsers by grammar, see
+     * {@link #createParsers(ParseCache)}.
+     * @return the number of rows written.
+     * @throws IOException if writing to the writer fails.
+     */
+    protected static long writeStreaming(BufferedWriter bw, Stream<String> lipidNames, ValidationResult.Grammar grammar, int threads, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers) throws IOException {
+        bw.write(String.join("\t", getStreamingColumns()));
+        bw.newLine();
+        long[] rowCount = new long[1];
+        processNames(lipidNames, threads, (lipidName) -> {
+            return createStreamingRows(lipidName, grammar, parsers);
+        }, (rows) -> {
+            bw.write(rows.getRows());
+            rowCount[0] += rows.getRowCount();
+        });
+        bw.flush();
+        return rowCount[0];
+    }
+
+    /**
+     * The formatted output rows for one lipid name.
+     */
+    @Data
+    private static class StreamingRows {
+
+        private final String rows;
+        private final int rowCount;
+    }
+
+    /**
+     * Parses the lipid name and formats its rows. This runs on the parser
+     * threads, so that only writing remains on the calling thread.
+     */
+    private static StreamingRows createStreamingRows(String lipidName, ValidationResult.Grammar grammar, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers) {
+        StringWriter sw = new StringWriter();
+        List<ValidationResult> results = parseName(lipidName, grammar, parsers).getValue();
+        try (BufferedWriter rowWriter = new BufferedWriter(sw)) {
+            for (ValidationResult validationResult : results) {
+                writeStreamingRow(rowWriter, validationResult);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new StreamingRows(sw.toString(), results.size());
+    }
+
+    private static void writeStreamingRow(BufferedWriter bw, ValidationResult t) throws IOException {
+        bw.write(Optional.ofNullable(t.getGoslinName()).orElse(""));
+        bw.write('\t');
+        bw.write(t.getLipidName());
+        bw.write('\t');
+        bw.write(t.getGrammar().name());
+        bw.write('\t');
+        bw.write(String.join(" | ", t.getMessages()));
+        LipidAdduct la = t.getLipidAdduct();
+        if (la != null) {
+            bw.write('\t');
+            la.getAdduct().appendLipidString(bw);
+            bw.write('\t');
+            bw.write(la.getSumFormula());
+            bw.write('\t');
+            bw.write(String.format(Locale.US, "%.4f", la.getMass()));
+            bw.write('\t');
+            bw.write(la.getLipid().getLipidCategory().getFullName() + " [" + la.getLipid().getLipidCategory().name() + "]");
+            LipidClass lclass = la.getLipid().getLipidClass();
+            bw.write('\t');
+            bw.write(lclass.getLipidMapsClassName());
+            bw.write('\t');
+            bw.write("[" + lclass.getAbbreviation() + "]");
+            bw.write('\t');
+            bw.write("[" + String.join(", ", lclass.getSynonyms()) + "]");
+            bw.write('\t');
+            bw.write(t.getLipidSpeciesInfo().getLevel().toString());
+            bw.write('\t');
+            bw.write(Integer.toString(t.getLipidSpeciesInfo().getNCarbon()));
+            bw.write('\t');
+            bw.write(Integer.toString(t.getLipidSpeciesInfo().getNHydroxy()));
+            bw.write('\t');
+            bw.write(Integer.toString(t.getLipidSpeciesInfo().getNDoubleBonds()));
+            for (String faName : STREAMING_FA_NAMES) {
+                FattyAcid fa = t.getFattyAcids().get(faName);
+                if (fa == null) {
+                    writeEmptyCells(bw, FA_COLUMNS.size());
+                } else {
+                    bw.write('\t');
+                    bw.write(Integer.toString(fa.getPosition()));
+                    bw.write('\t');
+                    bw.write(Integer.toString(fa.getNCarbon()));
+                    bw.write('\t');
+                    bw.write(Integer.toString(fa.getNHydroxy()));
+                    bw.write('\t');
+                    bw.write(Integer.toString(fa.getNDoubleBonds()));
+                    bw.write('\t');
+                    bw.write(String.valueOf(fa.getLipidFaBondType()));
+                    bw.write('\t');
+                    boolean first = true;
+                    for (Map.Entry<Integer, String> entry : fa.getDoubleBondPositions().entrySet()) {
+                        if (!first) {
+                            bw.write(',');
+                        }
+                        bw.write(entry.getKey() + "" + entry.getValue());
+                        first = false;
+                    }
+                }
+            }
+            if (t.getFattyAcids().keySet().stream().anyMatch((faName) -> !STREAMING_FA_NAMES.contains(faName))) {
+                log.warn("Fatty acyls of {} do not fit into the streaming columns: {}", t.getLipidName(), t.getFattyAcids().keySet());
+            }
+        } else {
+            writeEmptyCells(bw, STREAMING_COLUMN_COUNT - 4);
+        }
+        bw.newLine();
+    }
+
+    private static void writeEmptyCells(BufferedWriter bw, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            bw.write('\t');
+        }
+    }
+
     protected static void writeToWriter(BufferedWriter bw, List<Pair<String, List<ValidationResult>>> results) {
         try {
             bw.write(toTable(results));
@@ -297,43 +579,69 @@ public class CmdLineParser {
         }
     }
 
-    protected static List<Pair<String, List<ValidationResult>>> parseNames(Stream<String> lipidNames) {
-        return lipidNames.map((t) -> {
-            return parseName(t);
-        }).collect(Collectors.toList());
+    protected static List<Pair<String, List<ValidationResult>>> parseNames(Stream<String> lipidNames, ValidationResult.Grammar grammar, int threads, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers) {
+        List<Pair<String, List<ValidationResult>>> results = new ArrayList<>();
+        try {
+            parseNames(lipidNames, grammar, threads, parsers, results::add);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return results;
     }
 
-    protected static List<Pair<String, List<ValidationResult>>> parseNamesWith(Stream<String> lipidNames, ValidationResult.Grammar grammar) {
-        return lipidNames.map((t) -> {
-            return parseNameWith(t, grammar);
-        }).collect(Collectors.toList()).stream().map((t) -> {
-            return Pair.of(t.getKey(), Arrays.asList(t.getValue()));
-        }).collect(Collectors.toList());
+    /**
+     * Parses the lipid names and passes the results to the consumer in input
+     * order. With more than one thread, names are parsed on a pool of worker
+     * threads that share the parsers, see {@link #createParsers(ParseCache)}.
+     * The calling thread reads the names, submits them and hands the results
+     * to the consumer. At most {@link #REORDER_BUFFER_SIZE_PER_THREAD} times
+     * the number of threads results are pending at any time, see
+     * {@link OrderedParallelExecutor}.
+     *
+     * @param lipidNames the lipid names.
+     * @param grammar the grammar to use, or null to try all grammars.
+     * @param threads the number of parser threads.
+     * @param parsers the parsers by grammar.
+     * @param consumer the consumer of the results.
+     * @throws IOException if the consumer throws an IOException.
+     */
+    protected static void parseNames(Stream<String> lipidNames, ValidationResult.Grammar grammar, int threads, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers, ResultConsumer<Pair<String, List<ValidationResult>>> consumer) throws IOException {
+        processNames(lipidNames, threads, (lipidName) -> {
+            return parseName(lipidName, grammar, parsers);
+        }, consumer);
     }
 
-    protected static Pair<String, ValidationResult> parseNameWith(String lipidName, ValidationResult.Grammar grammar) {
-        VisitorParser<LipidAdduct> parser;
+    /**
+     * Applies the task to the lipid names and passes the results to the
+     * consumer in input order, see
+     * {@link #parseNames(Stream, ValidationResult.Grammar, int, Map, ResultConsumer)}.
+     *
+     * @param <T> the result type.
+     * @param lipidNames the lipid names.
+     * @param threads the number of worker threads.
+     * @param task the task to run for each name.
+     * @param consumer the consumer of the results.
+     * @throws IOException if the consumer throws an IOException.
+     */
+    protected static <T> void processNames(Stream<String> lipidNames, int threads, Function<String, T> task, ResultConsumer<T> consumer) throws IOException {
+        new OrderedParallelExecutor(Math.max(threads, 1), REORDER_BUFFER_SIZE_PER_THREAD, "jgoslin-parser").process(lipidNames.iterator(), task, consumer);
+    }
+
+    protected static Pair<String, List<ValidationResult>> parseName(String lipidName, ValidationResult.Grammar grammar, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers) {
+        if (grammar == null) {
+            return parseName(lipidName, parsers);
+        }
+        Pair<String, ValidationResult> result = parseNameWith(lipidName, grammar, parsers);
+        return Pair.of(result.getKey(), Arrays.asList(result.getValue()));
+    }
+
+    protected static Pair<String, ValidationResult> parseNameWith(String lipidName, ValidationResult.Grammar grammar, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers) {
+        VisitorParser<LipidAdduct> parser = parsers.get(grammar);
+        if (parser == null) {
+            throw new ConstraintViolationException("Unsupported grammar: " + grammar);
+        }
         SyntaxErrorListener listener = new SyntaxErrorListener();
         ValidationResult validationResult = new ValidationResult();
-        switch (grammar) {
-            case GOSLIN:
-                parser = new GoslinVisitorParser();
-                break;
-            case GOSLIN_FRAGMENTS:
-                parser = new GoslinFragmentsVisitorParser();
-                break;
-            case LIPIDMAPS:
-                parser = new LipidMapsVisitorParser();
-                break;
-            case SWISSLIPIDS:
-                parser = new SwissLipidsVisitorParser();
-                break;
-            case HMDB:
-                parser = new HmdbVisitorParser();
-                break;
-            default:
-                throw new ConstraintViolationException("Unsupported grammar: " + grammar);
-        }
         try {
             LipidAdduct la = parser.parse(lipidName, listener);
             validationResult.setLipidName(lipidName);
@@ -361,25 +669,25 @@ public class CmdLineParser {
         return Pair.of(lipidName, validationResult);
     }
 
-    protected static Pair<String, List<ValidationResult>> parseName(String lipidName) {
+    protected static Pair<String, List<ValidationResult>> parseName(String lipidName, Map<ValidationResult.Grammar, VisitorParser<LipidAdduct>> parsers) {
         List<ValidationResult> results = new ArrayList<>();
-        Pair<String, ValidationResult> goslinResult = parseNameWith(lipidName, ValidationResult.Grammar.GOSLIN);
+        Pair<String, ValidationResult> goslinResult = parseNameWith(lipidName, ValidationResult.Grammar.GOSLIN, parsers);
         if (goslinResult.getValue().getMessages().isEmpty()) {
             return Pair.of(goslinResult.getKey(), Arrays.asList(goslinResult.getValue()));
         }
-        Pair<String, ValidationResult> goslinFragmentsResult = parseNameWith(lipidName, ValidationResult.Grammar.GOSLIN_FRAGMENTS);
+        Pair<String, ValidationResult> goslinFragmentsResult = parseNameWith(lipidName, ValidationResult.Grammar.GOSLIN_FRAGMENTS, parsers);
         if (goslinFragmentsResult.getValue().getMessages().isEmpty()) {
             return Pair.of(goslinFragmentsResult.getKey(), Arrays.asList(goslinFragmentsResult.getValue()));
         }
-        Pair<String, ValidationResult> lipidMapsResult = parseNameWith(lipidName, ValidationResult.Grammar.LIPIDMAPS);
+        Pair<String, ValidationResult> lipidMapsResult = parseNameWith(lipidName, ValidationResult.Grammar.LIPIDMAPS, parsers);
         if (lipidMapsResult.getValue().getMessages().isEmpty()) {
             return Pair.of(lipidMapsResult.getKey(), Arrays.asList(lipidMapsResult.getValue()));
         }
-        Pair<String, ValidationResult> swissLipidsResult = parseNameWith(lipidName, ValidationResult.Grammar.SWISSLIPIDS);
+        Pair<String, ValidationResult> swissLipidsResult = parseNameWith(lipidName, ValidationResult.Grammar.SWISSLIPIDS, parsers);
         if (swissLipidsResult.getValue().getMessages().isEmpty()) {
             return Pair.of(swissLipidsResult.getKey(), Arrays.asList(swissLipidsResult.getValue()));
         }
-        Pair<String, ValidationResult> hmdbResult = parseNameWith(lipidName, ValidationResult.Grammar.HMDB);
+        Pair<String, ValidationResult> hmdbResult = parseNameWith(lipidName, ValidationResult.Grammar.HMDB, parsers);
         if (hmdbResult.getValue().getMessages().isEmpty()) {
             return Pair.of(hmdbResult.getKey(), Arrays.asList(hmdbResult.getValue()));
         }
@@ -446,6 +754,24 @@ public class CmdLineParser {
         return outputToFileOpt;
     }
 
+    protected static String addStreamingOption(Options options) {
+        String streamingOpt = "streaming";
+        options.addOption("s", streamingOpt, false, "Write each result as soon as it has been parsed, using a fixed set of columns. Use this for large input files.");
+        return streamingOpt;
+    }
+
+    protected static String addThreadsOption(Options options) {
+        String threadsOpt = "threads";
+        options.addOption("t", threadsOpt, true, "Number of threads to use for parsing. Output is written in input order. Default: 1.");
+        return threadsOpt;
+    }
+
+    protected static String addCacheOption(Options options) {
+        String cacheOpt = "cache";
+        options.addOption("c", cacheOpt, true, "Cache parse results in the given file and reuse them in later runs.");
+        return cacheOpt;
+    }
+
     protected static String addGrammarOption(Options options) {
         String grammarOpt = "grammar";
         options.addOption("g", grammarOpt, true, "Use the provided grammar explicitly instead of all grammars. Options are: " + Arrays.toString(ValidationResult.Grammar.values()));
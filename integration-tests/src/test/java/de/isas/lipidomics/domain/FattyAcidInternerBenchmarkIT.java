@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the heap retained by the fatty acyls of parsed lipids, with the
+ * chains shared through {@link FattyAcidInterner#DEFAULT} and with one equal
+ * copy per chain, as it was before interning. The retained heap is measured
+ * after a full garbage collection and only logged, since it depends on the
+ * JVM and its settings. Run with a fixed heap, e.g. -Xmx2g, to reproduce the
+ * numbers.
+ *
+ * @author nils.hoffmann
+ */
+@Slf4j
+public class FattyAcidInternerBenchmarkIT {
+
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void testRetainedHeapOfParsedChains() throws IOException {
+        List<String> names;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/de/isas/lipidomics/palinom/formulas-swiss-lipids.csv"), StandardCharsets.UTF_8))) {
+            names = reader.lines().map((t) -> {
+                return t.split(",")[0].replaceAll("\"", "");
+            }).collect(Collectors.toList());
+        }
+        SwissLipidsVisitorParser parser = new SwissLipidsVisitorParser();
+        List<LipidAdduct> lipids = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String name : names) {
+                try {
+                    lipids.add(parser.parse(name));
+                } catch (ParsingException | RuntimeException ex) {
+                    // the benchmark only uses names that can be parsed
+                }
+            }
+        }
+        List<FattyAcid> chains = new ArrayList<>();
+        for (LipidAdduct lipid : lipids) {
+            chains.addAll(lipid.getLipid().getFa().values());
+        }
+        // all parsed lipids are still referenced, so equal chains must be the same instance
+        Set<FattyAcid> distinct = new HashSet<>(chains);
+        Set<FattyAcid> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        instances.addAll(chains);
+        assertEquals(distinct.size(), instances.size());
+
+        long baseline = usedHeap();
+        List<FattyAcid> copies = new ArrayList<>(chains.size());
+        for (FattyAcid chain : chains) {
+            copies.add(copy(chain));
+        }
+        long copiedBytes = usedHeap() - baseline;
+        assertEquals(chains, copies);
+        log.info("{} lipids with {} chains, {} distinct chains. Without interning, equal copies of all chains retain {} bytes, {} bytes per chain.",
+                lipids.size(), chains.size(), distinct.size(), copiedBytes, copiedBytes / Math.max(1, chains.size()));
+    }
+
+    private FattyAcid copy(FattyAcid fa) {
+        switch (fa.getType()) {
+            case ISOMERIC:
+                return new FattyAcid(fa.getName(), fa.getPosition(), fa.getNCarbon(), fa.getNHydroxy(), fa.getLipidFaBondType(), fa.isLcb(), fa.getModifications(), fa.getNDoubleBonds(), fa.getDoubleBondPositions());
+            case STRUCTURAL:
+                return new FattyAcid(fa.getName(), fa.getPosition(), fa.getNCarbon(), fa.getNHydroxy(), fa.getNDoubleBonds(), fa.getLipidFaBondType(), fa.isLcb(), fa.getModifications());
+            case MOLECULAR:
+            default:
+                return new FattyAcid(fa.getName(), fa.getNCarbon(), fa.getNHydroxy(), fa.getNDoubleBonds(), fa.getLipidFaBondType(), fa.isLcb(), fa.getModifications());
+        }
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares a species level parse with {@link LipidFactory#SPECIES} to a full
+ * parse, followed by {@link de.isas.lipidomics.domain.LipidSpecies#getLipidString(LipidLevel)}
+ * on the species level.
+ *
+ * @author nils.hoffmann
+ */
+@Slf4j
+public class LipidFactoryBenchmarkIT {
+
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void testSpeciesParseIsLighterThanFullParse() throws IOException {
+        List<String> names;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/de/isas/lipidomics/palinom/formulas-swiss-lipids.csv"), StandardCharsets.UTF_8))) {
+            names = reader.lines().map((t) -> {
+                return t.split(",")[0].replaceAll("\"", "");
+            }).collect(Collectors.toList());
+        }
+        SwissLipidsVisitorParser fullParser = new SwissLipidsVisitorParser();
+        SwissLipidsVisitorParser speciesParser = new SwissLipidsVisitorParser(LipidFactory.SPECIES);
+        List<String> parseable = new ArrayList<>();
+        for (String name : names) {
+            try {
+                fullParser.parse(name);
+                parseable.add(name);
+            } catch (ParsingException | RuntimeException ex) {
+                // the benchmark only uses names that can be parsed
+            }
+        }
+
+        long fullNanos = Long.MAX_VALUE;
+        long speciesNanos = Long.MAX_VALUE;
+        long fullBytes = Long.MAX_VALUE;
+        long speciesBytes = Long.MAX_VALUE;
+        List<String> fullNames = null;
+        List<String> speciesNames = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            fullNames = new ArrayList<>(parseable.size());
+            for (String name : parseable) {
+                fullNames.add(parse(fullParser, name).getLipid().getLipidString(LipidLevel.SPECIES));
+            }
+            fullNanos = Math.min(fullNanos, System.nanoTime() - start);
+            fullBytes = Math.min(fullBytes, allocatedBytes() - bytes);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            speciesNames = new ArrayList<>(parseable.size());
+            for (String name : parseable) {
+                speciesNames.add(parse(speciesParser, name).getLipid().getLipidString(LipidLevel.SPECIES));
+            }
+            speciesNanos = Math.min(speciesNanos, System.nanoTime() - start);
+            speciesBytes = Math.min(speciesBytes, allocatedBytes() - bytes);
+        }
+        assertEquals(fullNames, speciesNames);
+        log.info("{} lipids: full parse took {} ms and allocated {} bytes per lipid, species parse took {} ms and allocated {} bytes per lipid.",
+                parseable.size(),
+                fullNanos / 1_000_000, fullBytes / Math.max(1, parseable.size()),
+                speciesNanos / 1_000_000, speciesBytes / Math.max(1, parseable.size()));
+        if (fullBytes > 0) {
+            assertTrue(speciesBytes < fullBytes, "Species parse allocated " + speciesBytes + " bytes, full parse allocated " + fullBytes + " bytes");
+        }
+    }
+
+    private LipidAdduct parse(SwissLipidsVisitorParser parser, String name) {
+        try {
+            return parser.parse(name);
+        } catch (ParsingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread, or 0, if the JVM
+     * does not support measuring them.
+     */
+    private long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
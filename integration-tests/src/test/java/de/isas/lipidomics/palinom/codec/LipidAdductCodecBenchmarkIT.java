@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.codec;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the time to decode lipid adducts with {@link LipidAdductDecoder}
+ * to the time to parse their names again.
+ *
+ * @author nils.hoffmann
+ */
+@Slf4j
+public class LipidAdductCodecBenchmarkIT {
+
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void testDecodeAndParseTimes() throws IOException {
+        List<String> names;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/de/isas/lipidomics/palinom/formulas-swiss-lipids.csv"), StandardCharsets.UTF_8))) {
+            names = reader.lines().map((t) -> {
+                return t.split(",")[0].replaceAll("\"", "");
+            }).collect(Collectors.toList());
+        }
+        SwissLipidsVisitorParser parser = new SwissLipidsVisitorParser();
+        List<String> parseable = new ArrayList<>();
+        List<LipidAdduct> lipids = new ArrayList<>();
+        for (String name : names) {
+            try {
+                lipids.add(parser.parse(name));
+                parseable.add(name);
+            } catch (ParsingException | RuntimeException ex) {
+                // the benchmark only uses names that can be parsed
+            }
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (LipidAdductEncoder encoder = new LipidAdductEncoder(baos)) {
+            for (LipidAdduct lipid : lipids) {
+                encoder.write(lipid);
+            }
+        }
+        byte[] encoded = baos.toByteArray();
+
+        long parseNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+        List<LipidAdduct> decoded = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String name : parseable) {
+                try {
+                    parser.parse(name);
+                } catch (ParsingException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            parseNanos = Math.min(parseNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            decoded = new ArrayList<>(lipids.size());
+            try (LipidAdductDecoder decoder = new LipidAdductDecoder(new ByteArrayInputStream(encoded))) {
+                LipidAdduct lipid;
+                while ((lipid = decoder.read()) != null) {
+                    decoded.add(lipid);
+                }
+            }
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+        }
+        assertEquals(lipids, decoded);
+        // timings depend on the machine and its load, so they are only reported
+        log.info("{} lipids: {} bytes encoded ({} bytes per lipid), parsing took {} ms, decoding took {} ms, parse to decode time ratio {}.",
+                lipids.size(), encoded.length, encoded.length / Math.max(1, lipids.size()),
+                parseNanos / 1_000_000, decodeNanos / 1_000_000, String.format(Locale.US, "%.1f", parseNanos / (double) Math.max(1, decodeNanos)));
+    }
+}
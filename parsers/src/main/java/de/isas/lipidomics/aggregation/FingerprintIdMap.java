@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from 128 bit keys, given as high and low words,
+ * to int ids. Ids are assigned in insertion order.
+ *
+ * @author nils.hoffmann
+ */
+final class FingerprintIdMap {
+
+    private static final int NO_ID = -1;
+
+    private long[] keys;
+    private int[] ids;
+    private int mask;
+    private int size;
+
+    FingerprintIdMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        this.keys = new long[capacity * 2];
+        this.ids = new int[capacity];
+        Arrays.fill(ids, NO_ID);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the id of the key, adding it with the next id if it is absent.
+     */
+    int getOrAdd(long high, long low) {
+        int slot = slot(high, low);
+        while (ids[slot] != NO_ID) {
+            if (keys[2 * slot] == high && keys[2 * slot + 1] == low) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        keys[2 * slot] = high;
+        keys[2 * slot + 1] = low;
+        ids[slot] = id;
+        if (size * 2 > ids.length) {
+            grow();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the key, or -1 if it is absent.
+     */
+    int get(long high, long low) {
+        int slot = slot(high, low);
+        while (ids[slot] != NO_ID) {
+            if (keys[2 * slot] == high && keys[2 * slot + 1] == low) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_ID;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slot(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L + low;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 29)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new long[oldKeys.length * 2];
+        ids = new int[oldIds.length * 2];
+        Arrays.fill(ids, NO_ID);
+        mask = ids.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != NO_ID) {
+                int slot = slot(oldKeys[2 * i], oldKeys[2 * i + 1]);
+                while (ids[slot] != NO_ID) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[2 * slot] = oldKeys[2 * i];
+                keys[2 * slot + 1] = oldKeys[2 * i + 1];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.aggregation;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidFingerprint;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Rolls up quantification values of lipids to a coarser {@link LipidLevel},
+ * e.g. from molecular subspecies to species, class or category. Rows are
+ * grouped by their {@link LipidFingerprint} on the target level, so no names
+ * are generated. Fingerprints are computed in parallel, grouped with a
+ * primitive hash map, and the value columns of each group are summed in
+ * parallel over blocks of columns.
+ *
+ * Missing values are represented by NaN and are skipped when summing. A sum
+ * is NaN only if all values of the group are missing. Rows whose lipid is
+ * coarser than the target level, e.g. a species for a molecular subspecies
+ * roll-up, can not be assigned and are reported by
+ * {@link Aggregation#getUnassignedRows()}.
+ *
+ * Example:
+ * <pre>
+ * Aggregation species = new LevelAggregator(LipidLevel.SPECIES, true).aggregate(lipids, intensities);
+ * for (int group = 0; group &lt; species.size(); group++) {
+ *     System.out.println(species.getName(group) + "\t" + species.getCount(group) + "\t" + Arrays.toString(species.getValues(group)));
+ * }
+ * </pre>
+ *
+ * @author nils.hoffmann
+ */
+public class LevelAggregator {
+
+    private static final int COLUMN_BLOCK_SIZE = 4096;
+
+    private final LipidLevel level;
+    private final boolean ignoreAdducts;
+
+    /**
+     * Creates a new aggregator.
+     *
+     * @param level the target level.
+     * @param ignoreAdducts if true, rows of the same lipid with different
+     * adducts are summed up, otherwise they are kept apart.
+     */
+    public LevelAggregator(LipidLevel level, boolean ignoreAdducts) {
+        this.level = level;
+        this.ignoreAdducts = ignoreAdducts;
+    }
+
+    /**
+     * Rolls up the value rows of the lipids to the target level.
+     *
+     * @param lipids the lipids, one per row.
+     * @param values the values, one row per lipid, all rows of equal length,
+     * e.g. one column per sample.
+     * @return the aggregation.
+     */
+    public Aggregation aggregate(List<LipidAdduct> lipids, double[][] values) {
+        if (lipids.size() != values.length) {
+            throw new ConstraintViolationException("Number of lipids and value rows must match! Was: " + lipids.size() + " and " + values.length);
+        }
+        int columns = values.length == 0 ? 0 : values[0].length;
+        for (double[] row : values) {
+            if (row.length != columns) {
+                throw new ConstraintViolationException("All value rows must have " + columns + " columns! Found a row with " + row.length + " columns.");
+            }
+        }
+        int rows = lipids.size();
+        long[] fingerprints = new long[rows * 2];
+        boolean[] assigned = new boolean[rows];
+        IntStream.range(0, rows).parallel().forEach((row) -> {
+            LipidAdduct lipid = lipids.get(row);
+            if (lipid.getLipid() == null || lipid.getLipid().getInfo().getLevel().ordinal() < level.ordinal()) {
+                return;
+            }
+            LipidFingerprint.fingerprint(ignoreAdducts ? lipid.withAdduct(null) : lipid, level, fingerprints, 2 * row);
+            assigned[row] = true;
+        });
+        FingerprintIdMap ids = new FingerprintIdMap(rows);
+        int[] groupOfRow = new int[rows];
+        int unassigned = 0;
+        for (int row = 0; row < rows; row++) {
+            if (assigned[row]) {
+                groupOfRow[row] = ids.getOrAdd(fingerprints[2 * row], fingerprints[2 * row + 1]);
+            } else {
+                groupOfRow[row] = -1;
+                unassigned++;
+            }
+        }
+        int groups = ids.size();
+        // sort groups by fingerprint, so that reports come out in a stable order
+        int[] firstRow = new int[groups];
+        Arrays.fill(firstRow, -1);
+        int[] counts = new int[groups];
+        for (int row = 0; row < rows; row++) {
+            int group = groupOfRow[row];
+            if (group >= 0) {
+                counts[group]++;
+                if (firstRow[group] < 0) {
+                    firstRow[group] = row;
+                }
+            }
+        }
+        int[] order = IntStream.range(0, groups).boxed().sorted((l, r) -> {
+            return LipidFingerprint.compare(fingerprints[2 * firstRow[l]], fingerprints[2 * firstRow[l] + 1],
+                    fingerprints[2 * firstRow[r]], fingerprints[2 * firstRow[r] + 1]);
+        }).mapToInt(Integer::intValue).toArray();
+        int[] rank = new int[groups];
+        for (int i = 0; i < groups; i++) {
+            rank[order[i]] = i;
+        }
+        int[][] members = new int[groups][];
+        for (int group = 0; group < groups; group++) {
+            members[rank[group]] = new int[counts[group]];
+        }
+        int[] fill = new int[groups];
+        int[] unassignedRows = new int[unassigned];
+        for (int row = 0, u = 0; row < rows; row++) {
+            if (groupOfRow[row] < 0) {
+                unassignedRows[u++] = row;
+            } else {
+                int group = rank[groupOfRow[row]];
+                groupOfRow[row] = group;
+                members[group][fill[group]++] = row;
+            }
+        }
+        double[][] sums = new double[groups][columns];
+        int blocks = (columns + COLUMN_BLOCK_SIZE - 1) / COLUMN_BLOCK_SIZE;
+        IntStream.range(0, groups * blocks).parallel().forEach((task) -> {
+            int group = task / blocks;
+            int from = (task % blocks) * COLUMN_BLOCK_SIZE;
+            int to = Math.min(columns, from + COLUMN_BLOCK_SIZE);
+            double[] sum = sums[group];
+            Arrays.fill(sum, from, to, Double.NaN);
+            for (int row : members[group]) {
+                double[] value = values[row];
+                for (int column = from; column < to; column++) {
+                    double v = value[column];
+                    if (!Double.isNaN(v)) {
+                        double s = sum[column];
+                        sum[column] = Double.isNaN(s) ? v : s + v;
+                    }
+                }
+            }
+        });
+        LipidFingerprint[] keys = new LipidFingerprint[groups];
+        LipidAdduct[] representatives = new LipidAdduct[groups];
+        for (int group = 0; group < groups; group++) {
+            int row = members[group][0];
+            keys[group] = new LipidFingerprint(fingerprints[2 * row], fingerprints[2 * row + 1]);
+            representatives[group] = ignoreAdducts ? lipids.get(row).withAdduct(null) : lipids.get(row);
+        }
+        return new Aggregation(level, keys, representatives, members, sums, groupOfRow, unassignedRows);
+    }
+
+    /**
+     * The result of a roll-up. Groups are ordered by their fingerprint.
+     */
+    public static final class Aggregation {
+
+        private final LipidLevel level;
+        private final LipidFingerprint[] keys;
+        private final LipidAdduct[] representatives;
+        private final int[][] members;
+        private final double[][] sums;
+        private final int[] groupOfRow;
+        private final int[] unassignedRows;
+
+        private Aggregation(LipidLevel level, LipidFingerprint[] keys, LipidAdduct[] representatives, int[][] members, double[][] sums, int[] groupOfRow, int[] unassignedRows) {
+            this.level = level;
+            this.keys = keys;
+            this.representatives = representatives;
+            this.members = members;
+            this.sums = sums;
+            this.groupOfRow = groupOfRow;
+            this.unassignedRows = unassignedRows;
+        }
+
+        /**
+         * Returns the number of groups.
+         *
+         * @return the number of groups.
+         */
+        public int size() {
+            return keys.length;
+        }
+
+        public LipidLevel getLevel() {
+            return level;
+        }
+
+        public LipidFingerprint getKey(int group) {
+            return keys[group];
+        }
+
+        /**
+         * Returns the first lipid of the group.
+         *
+         * @param group the group.
+         * @return the lipid representing the group.
+         */
+        public LipidAdduct getLipid(int group) {
+            return representatives[group];
+        }
+
+        /**
+         * Returns the name of the group on the target level. Names are only
+         * created by this method.
+         *
+         * @param group the group.
+         * @return the name on the target level.
+         */
+        public String getName(int group) {
+            return representatives[group].getLipidString(level);
+        }
+
+        /**
+         * Returns the number of rows that contributed to the group.
+         *
+         * @param group the group.
+         * @return the number of rows.
+         */
+        public int getCount(int group) {
+            return members[group].length;
+        }
+
+        /**
+         * Returns the indices of the rows that contributed to the group, in
+         * ascending order.
+         *
+         * @param group the group.
+         * @return a copy of the row indices.
+         */
+        public int[] getRows(int group) {
+            return members[group].clone();
+        }
+
+        /**
+         * Returns the summed values of the group. The array is not copied.
+         *
+         * @param group the group.
+         * @return the summed values.
+         */
+        public double[] getValues(int group) {
+            return sums[group];
+        }
+
+        /**
+         * Returns the group of the row, or -1 if it was not assigned.
+         *
+         * @param row the row.
+         * @return the group.
+         */
+        public int getGroup(int row) {
+            return groupOfRow[row];
+        }
+
+        /**
+         * Returns the rows whose lipids are coarser than the target level.
+         *
+         * @return a copy of the unassigned row indices.
+         */
+        public int[] getUnassignedRows() {
+            return unassignedRows.clone();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.aggregation;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidFingerprint;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.palinom.VisitorParser;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import de.isas.lipidomics.palinom.goslinfragments.GoslinFragmentsVisitorParser;
+import de.isas.lipidomics.palinom.hmdb.HmdbVisitorParser;
+import de.isas.lipidomics.palinom.lipidmaps.LipidMapsVisitorParser;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Joins two lists of lipid names, possibly written in different naming
+ * dialects, on a chosen {@link LipidLevel}. Both lists are parsed in parallel,
+ * each name with the first of its side's dialects that accepts it. Each lipid
+ * is reduced to its {@link LipidFingerprint} on the join level and on all
+ * coarser levels down to a minimum level, so that the names themselves are not
+ * kept. The right side is then hashed and probed in parallel with the left
+ * side.
+ *
+ * A left row matches on the join level, if a right row has the same
+ * fingerprint on that level. Otherwise, it matches on the most specific
+ * coarser level with a match, down to the minimum level. Lipids that are
+ * reported on a coarser level than the join level, e.g. species names, are
+ * matched on their own level. Rows without a match and names that none of
+ * the dialects could parse are reported separately.
+ *
+ * Example:
+ * <pre>
+ * LipidListJoiner joiner = new LipidListJoiner(LipidLevel.STRUCTURAL_SUBSPECIES, LipidLevel.SPECIES, true);
+ * LipidListJoiner.Join join = joiner.join(
+ *     lipidMapsNames, Arrays.asList(LipidListJoiner.Dialect.LIPIDMAPS),
+ *     goslinNames, Arrays.asList(LipidListJoiner.Dialect.GOSLIN));
+ * for (int i = 0; i &lt; join.size(); i++) {
+ *     System.out.println(lipidMapsNames.get(join.getLeftRow(i)) + "\t" + goslinNames.get(join.getRightRow(i)) + "\t" + join.getLevel(i));
+ * }
+ * </pre>
+ *
+ * @author nils.hoffmann
+ */
+@Slf4j
+public class LipidListJoiner {
+
+    /**
+     * The naming dialects, one per grammar.
+     */
+    public static enum Dialect {
+        GOSLIN(GoslinVisitorParser::new),
+        GOSLIN_FRAGMENTS(GoslinFragmentsVisitorParser::new),
+        LIPIDMAPS(LipidMapsVisitorParser::new),
+        SWISSLIPIDS(SwissLipidsVisitorParser::new),
+        HMDB(HmdbVisitorParser::new);
+
+        private final Supplier<VisitorParser<LipidAdduct>> parserFactory;
+
+        private Dialect(Supplier<VisitorParser<LipidAdduct>> parserFactory) {
+            this.parserFactory = parserFactory;
+        }
+
+        /**
+         * Creates a new parser for this dialect.
+         *
+         * @return the parser.
+         */
+        public VisitorParser<LipidAdduct> createParser() {
+            return parserFactory.get();
+        }
+    }
+
+    /**
+     * The parsers create a new lexer and parse tree for each name and keep no
+     * other state, so one instance per dialect is shared by all threads.
+     */
+    private static final Map<Dialect, VisitorParser<LipidAdduct>> PARSERS = createParsers();
+
+    private static final byte UNPARSEABLE = -1;
+
+    private final LipidLevel level;
+    private final LipidLevel minLevel;
+    private final boolean ignoreAdducts;
+
+    /**
+     * Creates a new joiner.
+     *
+     * @param level the join level.
+     * @param minLevel the coarsest level to report matches on.
+     * @param ignoreAdducts if true, adducts are not compared.
+     */
+    public LipidListJoiner(LipidLevel level, LipidLevel minLevel, boolean ignoreAdducts) {
+        if (minLevel.ordinal() > level.ordinal() || minLevel.ordinal() < LipidLevel.CATEGORY.ordinal()) {
+            throw new ConstraintViolationException("Minimum level " + minLevel + " must be between " + LipidLevel.CATEGORY + " and the join level " + level + "!");
+        }
+        this.level = level;
+        this.minLevel = minLevel;
+        this.ignoreAdducts = ignoreAdducts;
+    }
+
+    /**
+     * Parses and joins both lists.
+     *
+     * @param left the left lipid names.
+     * @param leftDialects the dialects to try for the left names, in order.
+     * @param right the right lipid names.
+     * @param rightDialects the dialects to try for the right names, in order.
+     * @return the join.
+     */
+    public Join join(List<String> left, List<Dialect> leftDialects, List<String> right, List<Dialect> rightDialects) {
+        Side leftSide = reduce(left, leftDialects);
+        Side rightSide = reduce(right, rightDialects);
+        int levels = level.ordinal() - minLevel.ordinal() + 1;
+        // build side: one map from fingerprint to a contiguous block of right rows per level
+        FingerprintIdMap[] maps = new FingerprintIdMap[levels];
+        int[][] blockStarts = new int[levels][];
+        int[][] blockRows = new int[levels][];
+        for (int l = 0; l < levels; l++) {
+            FingerprintIdMap map = new FingerprintIdMap(right.size());
+            int[] groupOfRow = new int[right.size()];
+            int[] counts = new int[right.size()];
+            int present = 0;
+            for (int row = 0; row < right.size(); row++) {
+                if (rightSide.has(row, l)) {
+                    int group = map.getOrAdd(rightSide.keys[l][2 * row], rightSide.keys[l][2 * row + 1]);
+                    counts[group]++;
+                    groupOfRow[row] = group;
+                    present++;
+                } else {
+                    groupOfRow[row] = -1;
+                }
+            }
+            int[] starts = new int[map.size() + 1];
+            for (int group = 0; group < map.size(); group++) {
+                starts[group + 1] = starts[group] + counts[group];
+            }
+            int[] fill = starts.clone();
+            int[] rows = new int[present];
+            for (int row = 0; row < right.size(); row++) {
+                if (groupOfRow[row] >= 0) {
+                    rows[fill[groupOfRow[row]]++] = row;
+                }
+            }
+            maps[l] = map;
+            blockStarts[l] = starts;
+            blockRows[l] = rows;
+        }
+        // probe side: find the most specific level with a match for each left row
+        int[] matchLevel = new int[left.size()];
+        int[] matchGroup = new int[left.size()];
+        IntStream.range(0, left.size()).parallel().forEach((row) -> {
+            matchLevel[row] = -1;
+            for (int l = levels - 1; l >= 0; l--) {
+                if (leftSide.has(row, l)) {
+                    int group = maps[l].get(leftSide.keys[l][2 * row], leftSide.keys[l][2 * row + 1]);
+                    if (group >= 0) {
+                        matchLevel[row] = l;
+                        matchGroup[row] = group;
+                        return;
+                    }
+                }
+            }
+        });
+        long total = 0;
+        int unmatchedLeft = 0;
+        for (int row = 0; row < left.size(); row++) {
+            if (matchLevel[row] >= 0) {
+                int l = matchLevel[row];
+                total += blockStarts[l][matchGroup[row] + 1] - blockStarts[l][matchGroup[row]];
+            } else if (leftSide.nativeLevels[row] != UNPARSEABLE) {
+                unmatchedLeft++;
+            }
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new ConstraintViolationException("Join would produce " + total + " matches, more than can be reported!");
+        }
+        int[] leftRows = new int[(int) total];
+        int[] rightRows = new int[(int) total];
+        byte[] levelOrdinals = new byte[(int) total];
+        boolean[] rightMatched = new boolean[right.size()];
+        int[] unmatchedLeftRows = new int[unmatchedLeft];
+        for (int row = 0, i = 0, u = 0; row < left.size(); row++) {
+            int l = matchLevel[row];
+            if (l < 0) {
+                if (leftSide.nativeLevels[row] != UNPARSEABLE) {
+                    unmatchedLeftRows[u++] = row;
+                }
+                continue;
+            }
+            for (int j = blockStarts[l][matchGroup[row]]; j < blockStarts[l][matchGroup[row] + 1]; j++) {
+                leftRows[i] = row;
+                rightRows[i] = blockRows[l][j];
+                levelOrdinals[i] = (byte) (minLevel.ordinal() + l);
+                rightMatched[blockRows[l][j]] = true;
+                i++;
+            }
+        }
+        int[] unmatchedRightRows = IntStream.range(0, right.size()).filter((row) -> {
+            return !rightMatched[row] && rightSide.nativeLevels[row] != UNPARSEABLE;
+        }).toArray();
+        return new Join(level, leftRows, rightRows, levelOrdinals, unmatchedLeftRows, unmatchedRightRows,
+                leftSide.unparseableRows(), rightSide.unparseableRows());
+    }
+
+    private Side reduce(List<String> names, List<Dialect> dialects) {
+        if (dialects.isEmpty()) {
+            throw new ConstraintViolationException("At least one dialect is required to parse lipid names!");
+        }
+        int levels = level.ordinal() - minLevel.ordinal() + 1;
+        Side side = new Side(names.size(), levels);
+        IntStream.range(0, names.size()).parallel().forEach((row) -> {
+            LipidAdduct lipid = parse(names.get(row), dialects);
+            if (lipid == null || lipid.getLipid() == null) {
+                side.nativeLevels[row] = UNPARSEABLE;
+                return;
+            }
+            if (ignoreAdducts) {
+                lipid = lipid.withAdduct(null);
+            }
+            int nativeLevel = lipid.getLipid().getInfo().getLevel().ordinal();
+            side.nativeLevels[row] = (byte) nativeLevel;
+            for (int l = 0; l < levels && minLevel.ordinal() + l <= nativeLevel; l++) {
+                LipidFingerprint.fingerprint(lipid, LipidLevel.values()[minLevel.ordinal() + l], side.keys[l], 2 * row);
+            }
+        });
+        return side;
+    }
+
+    private static Map<Dialect, VisitorParser<LipidAdduct>> createParsers() {
+        Map<Dialect, VisitorParser<LipidAdduct>> parsers = new EnumMap<>(Dialect.class);
+        for (Dialect dialect : Dialect.values()) {
+            parsers.put(dialect, dialect.createParser());
+        }
+        return Collections.unmodifiableMap(parsers);
+    }
+
+    private static LipidAdduct parse(String name, List<Dialect> dialects) {
+        for (Dialect dialect : dialects) {
+            try {
+                return PARSERS.get(dialect).parse(name);
+            } catch (ParsingException | ConstraintViolationException | ParseTreeVisitorException ex) {
+                log.debug("Could not parse {} with {} dialect: {}", name, dialect, ex.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The fingerprints of one side of a join, per level from the minimum
+     * level upwards.
+     */
+    private final class Side {
+
+        private final long[][] keys;
+        private final byte[] nativeLevels;
+
+        Side(int rows, int levels) {
+            this.keys = new long[levels][rows * 2];
+            this.nativeLevels = new byte[rows];
+        }
+
+        boolean has(int row, int levelIndex) {
+            return nativeLevels[row] != UNPARSEABLE && minLevel.ordinal() + levelIndex <= nativeLevels[row];
+        }
+
+        int[] unparseableRows() {
+            return IntStream.range(0, nativeLevels.length).filter((row) -> nativeLevels[row] == UNPARSEABLE).toArray();
+        }
+    }
+
+    /**
+     * The result of a join. Matches are ordered by left row and right row.
+     */
+    public static final class Join {
+
+        private final LipidLevel level;
+        private final int[] leftRows;
+        private final int[] rightRows;
+        private final byte[] levels;
+        private final int[] unmatchedLeftRows;
+        private final int[] unmatchedRightRows;
+        private final int[] unparseableLeftRows;
+        private final int[] unparseableRightRows;
+
+        private Join(LipidLevel level, int[] leftRows, int[] rightRows, byte[] levels, int[] unmatchedLeftRows, int[] unmatchedRightRows, int[] unparseableLeftRows, int[] unparseableRightRows) {
+            this.level = level;
+            this.leftRows = leftRows;
+            this.rightRows = rightRows;
+            this.levels = levels;
+            this.unmatchedLeftRows = unmatchedLeftRows;
+            this.unmatchedRightRows = unmatchedRightRows;
+            this.unparseableLeftRows = unparseableLeftRows;
+            this.unparseableRightRows = unparseableRightRows;
+        }
+
+        /**
+         * Returns the number of matches.
+         *
+         * @return the number of matches.
+         */
+        public int size() {
+            return leftRows.length;
+        }
+
+        public int getLeftRow(int match) {
+            return leftRows[match];
+        }
+
+        public int getRightRow(int match) {
+            return rightRows[match];
+        }
+
+        /**
+         * Returns the level the match was found on.
+         *
+         * @param match the match.
+         * @return the level.
+         */
+        public LipidLevel getLevel(int match) {
+            return LipidLevel.values()[levels[match]];
+        }
+
+        /**
+         * Returns true, if the match was found on the join level.
+         *
+         * @param match the match.
+         * @return true for exact matches.
+         */
+        public boolean isExact(int match) {
+            return levels[match] == level.ordinal();
+        }
+
+        public int[] getUnmatchedLeftRows() {
+            return unmatchedLeftRows.clone();
+        }
+
+        public int[] getUnmatchedRightRows() {
+            return unmatchedRightRows.clone();
+        }
+
+        public int[] getUnparseableLeftRows() {
+            return unparseableLeftRows.clone();
+        }
+
+        public int[] getUnparseableRightRows() {
+            return unparseableRightRows.clone();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.concurrent;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Applies a task to a sequence of inputs on a pool of worker threads and
+ * passes the results to a consumer in input order, e.g. to write parsed names
+ * or rendered blocks of a library to a single output.
+ *
+ * The calling thread reads the inputs, submits them and hands the results to
+ * the consumer, so the consumer does not need to be thread-safe. At most
+ * pendingPerThread times the number of threads results are pending at any
+ * time, which bounds the memory required to restore the input order
+ * independently of the number of inputs. With one thread, the task runs on
+ * the calling thread.
+ *
+ * Example:
+ * <pre>
+ * OrderedParallelExecutor executor = new OrderedParallelExecutor(8, 256, "jgoslin-parser");
+ * executor.process(names.iterator(), parser::parse, (lipid) -&gt; {
+ *     writer.write(lipid.getLipidString());
+ *     writer.newLine();
+ * });
+ * </pre>
+ *
+ * @author nils.hoffmann
+ */
+public final class OrderedParallelExecutor {
+
+    /**
+     * Receives the results in input order, on the calling thread.
+     *
+     * @param <T> the result type.
+     */
+    @FunctionalInterface
+    public interface ResultConsumer<T> {
+
+        void accept(T result) throws IOException;
+    }
+
+    private final int threads;
+    private final int pendingPerThread;
+    private final String threadNamePrefix;
+
+    /**
+     * Creates a new executor.
+     *
+     * @param threads the number of worker threads.
+     * @param pendingPerThread the maximum number of pending results per
+     * worker thread.
+     * @param threadNamePrefix the prefix of the worker thread names, which are
+     * numbered from 1.
+     * @throws ConstraintViolationException if threads or pendingPerThread are
+     * less than 1.
+     */
+    public OrderedParallelExecutor(int threads, int pendingPerThread, String threadNamePrefix) {
+        if (threads < 1 || pendingPerThread < 1) {
+            throw new ConstraintViolationException("Threads and pending results per thread must be at least 1! Was threads: " + threads + ", pending results per thread: " + pendingPerThread);
+        }
+        this.threads = threads;
+        this.pendingPerThread = pendingPerThread;
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    /**
+     * Applies the task to all inputs and passes the results to the consumer in
+     * input order. Runtime exceptions of the task are rethrown on the calling
+     * thread, pending tasks are then cancelled.
+     *
+     * @param <I> the input type.
+     * @param <T> the result type.
+     * @param inputs the inputs, which are only read from the calling thread.
+     * @param task the task, which must be thread-safe.
+     * @param consumer the consumer of the results.
+     * @throws IOException if the consumer throws an IOException.
+     */
+    public <I, T> void process(Iterator<I> inputs, Function<? super I, ? extends T> task, ResultConsumer<? super T> consumer) throws IOException {
+        if (threads == 1) {
+            while (inputs.hasNext()) {
+                consumer.accept(task.apply(inputs.next()));
+            }
+            return;
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, (runnable) -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int capacity = threads * pendingPerThread;
+        ArrayDeque<Future<T>> pending = new ArrayDeque<>(capacity);
+        try {
+            while (inputs.hasNext()) {
+                if (pending.size() == capacity) {
+                    consumer.accept(await(pending.poll()));
+                }
+                I input = inputs.next();
+                pending.add(executor.submit(() -> {
+                    return task.apply(input);
+                }));
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(await(pending.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for task results!", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Caught exception while running task!", ex.getCause());
+        }
+    }
+}
@@ -4,18 +4,23 @@
 package de.isas.lipidomics.domain;
 
 import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import java.io.IOException;
 import java.util.Optional;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 /**
  * An adduct, generally, consists of a sum formula part, an adduct string, the
  * charge and the charge sign. An example for a valid adduct is : [M+H]1+.
  *
+ * Adducts are immutable value objects.
+ *
  * @author nils.hoffmann
  */
 @AllArgsConstructor
 @Data
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class Adduct {
 
     private static final class None extends Adduct {
@@ -40,27 +45,69 @@ public class Adduct {
         if (adductString == null || adductString.isEmpty()) {
             return "";
         }
+        return Appendables.appendTo(new StringBuilder(), (out) -> {
+            appendLipidString(out);
+        }).toString();
+    }
+
+    /**
+     * Appends the string representation of this adduct to the provided
+     * appendable. Nothing is appended for an empty adduct.
+     *
+     * @param <T> the type of the appendable.
+     * @param out the appendable to write to.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public <T extends Appendable> T appendLipidString(T out) throws IOException {
+        if (adductString == null || adductString.isEmpty()) {
+            return out;
+        }
         if (positiveElementaryCharge == 0) {
-            return "[M]";
+            out.append("[M]");
+            return out;
+        }
+        out.append("[M").append(sumFormula).append(adductString).append(']');
+        Appendables.appendInt(out, positiveElementaryCharge);
+        if (chargeSign > 0) {
+            out.append('+');
+        } else if (chargeSign < 0) {
+            out.append('-');
         }
-        StringBuilder sb = new StringBuilder();
-        sb.append("[M").append(sumFormula).append(adductString).append("]").append(positiveElementaryCharge).append((chargeSign > 0) ? "+" : ((chargeSign < 0) ? "-" : ""));
-        return sb.toString();
+        return out;
     }
 
+    /**
+     * Returns the elements added to or, for adducts starting with '-',
+     * removed from the lipid. A leading multiplier applies to the whole
+     * formula, e.g. <code>+2H</code> adds two hydrogens. Adduct names that
+     * are no sum formula do not add any elements.
+     *
+     * @return the adduct elements.
+     */
     public ElementTable getElements() {
         ElementTable elements = new ElementTable();
         String adductName = Optional.ofNullable(adductString).map((t) -> {
             return t.length() > 1 ? t.substring(1) : "";
         }).orElse("");
+        int digits = 0;
+        while (digits < adductName.length() && Character.isDigit(adductName.charAt(digits))) {
+            digits++;
+        }
+        int multiplier = 1;
+        if (digits > 0 && digits < adductName.length()) {
+            multiplier = Integer.parseInt(adductName.substring(0, digits));
+            adductName = adductName.substring(digits);
+        }
         try {
             elements.add(new ElementTable(adductName));
         } catch (ParsingException ex) {
             return elements;
         }
-        if (adductString.length() > 0 && adductString.startsWith("-")) {
-            elements.keySet().stream().forEach((t) -> {
-                elements.negate(t);
+        int factor = adductString.startsWith("-") ? -multiplier : multiplier;
+        if (factor != 1) {
+            elements.replaceAll((element, count) -> {
+                return count * factor;
             });
         }
         return elements;
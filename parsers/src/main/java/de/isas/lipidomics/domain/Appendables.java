@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Helpers for the name writer methods, which append lipid names to an
+ * {@link Appendable}.
+ *
+ * @author nils.hoffmann
+ */
+final class Appendables {
+
+    /**
+     * A name writer that appends to the provided appendable.
+     */
+    @FunctionalInterface
+    interface AppendAction {
+
+        void appendTo(Appendable out) throws IOException;
+    }
+
+    private static final String[] SMALL_INTS = new String[256];
+
+    static {
+        for (int i = 0; i < SMALL_INTS.length; i++) {
+            SMALL_INTS[i] = Integer.toString(i);
+        }
+    }
+
+    private Appendables() {
+
+    }
+
+    /**
+     * Runs the action on the provided string builder. Since a StringBuilder
+     * never throws an IOException, none is declared.
+     *
+     * @param sb the string builder.
+     * @param action the name writer.
+     * @return the string builder.
+     */
+    static StringBuilder appendTo(StringBuilder sb, AppendAction action) {
+        try {
+            action.appendTo(sb);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return sb;
+    }
+
+    /**
+     * Appends the decimal representation of an int. Small values, as they
+     * occur for carbon atoms, double bonds and charges, use cached strings, if
+     * the appendable is not a StringBuilder.
+     *
+     * @param out the appendable.
+     * @param value the value to append.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    static Appendable appendInt(Appendable out, int value) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(value);
+        } else if (value >= 0 && value < SMALL_INTS.length) {
+            out.append(SMALL_INTS[value]);
+        } else {
+            out.append(Integer.toString(value));
+        }
+        return out;
+    }
+}
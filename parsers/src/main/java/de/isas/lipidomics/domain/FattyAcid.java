@@ -4,15 +4,18 @@
 package de.isas.lipidomics.domain;
 
 import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.IOException;
 import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 /**
  * A fatty acid with a specific type. This object defines the name, position,
@@ -20,9 +23,14 @@ import lombok.Data;
  * to the head group. A FattyAcid can carry optional modifications and can
  * report double bond positions.
  *
+ * Instances are immutable: double bond positions and modifications are copied
+ * into unmodifiable collections on construction, so that a FattyAcid can be
+ * shared between threads and cached without defensive copies.
+ *
  * @author nils.hoffmann
  */
 @Data
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class FattyAcid {
 
     private final FattyAcidType type;
@@ -35,6 +43,10 @@ public class FattyAcid {
     private final boolean lcb;
     private final ModificationsList modifications;
     private final Map<Integer, String> doubleBondPositions;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient String substructureName;
 
     /**
      * Create a new isomeric level FattyAcid.
@@ -67,7 +79,7 @@ public class FattyAcid {
         this.nHydroxy = nHydroxy;
         this.lipidFaBondType = Optional.ofNullable(lipidFaBondType).orElse(LipidFaBondType.UNDEFINED);
         this.lcb = lcb;
-        this.modifications = modifications == null ? ModificationsList.NONE : modifications;
+        this.modifications = ModificationsList.unmodifiableCopyOf(modifications);
         if (doubleBondPositions == null) {
             this.doubleBondPositions = Collections.emptyMap();
             this.nDoubleBonds = nDoubleBonds;
@@ -75,8 +87,7 @@ public class FattyAcid {
             if (nDoubleBonds != doubleBondPositions.size()) {
                 throw new ConstraintViolationException("Isomeric FattyAcid must receive double bond positions for all double bonds! Got " + nDoubleBonds + " double bonds and " + doubleBondPositions.size() + " positions: " + doubleBondPositions);
             }
-            this.doubleBondPositions = new TreeMap<>();
-            this.doubleBondPositions.putAll(doubleBondPositions);
+            this.doubleBondPositions = Collections.unmodifiableMap(new TreeMap<>(doubleBondPositions));
             this.nDoubleBonds = this.doubleBondPositions.size();
         }
         this.type = FattyAcidType.ISOMERIC;
@@ -116,7 +127,7 @@ public class FattyAcid {
         this.nDoubleBonds = nDoubleBonds;
         this.lipidFaBondType = Optional.ofNullable(lipidFaBondType).orElse(LipidFaBondType.UNDEFINED);
         this.lcb = lcb;
-        this.modifications = modifications == null ? ModificationsList.NONE : modifications;
+        this.modifications = ModificationsList.unmodifiableCopyOf(modifications);
         this.doubleBondPositions = Collections.emptyMap();
         this.type = FattyAcidType.STRUCTURAL;
     }
@@ -154,45 +165,67 @@ public class FattyAcid {
         this.nDoubleBonds = nDoubleBonds;
         this.lipidFaBondType = Optional.ofNullable(lipidFaBondType).orElse(LipidFaBondType.UNDEFINED);
         this.lcb = lcb;
-        this.modifications = modifications == null ? ModificationsList.NONE : modifications;
+        this.modifications = ModificationsList.unmodifiableCopyOf(modifications);
         this.doubleBondPositions = Collections.emptyMap();
         this.type = FattyAcidType.MOLECULAR;
     }
 
     /**
-     * Build the name of this substructure.
+     * Build the name of this substructure. The name does not depend on the
+     * level, so it is computed once and then reused.
      *
      * @param level the structural lipid level to return this substructure's
      * name on.
      * @return the name of this substructure.
      */
     public String buildSubstructureName(LipidLevel level) {
-        StringBuilder sb = new StringBuilder();
-        int nDB = 0;
-        int nHydroxy = 0;
-        int nCarbon = 0;
-        nDB += getNDoubleBonds();
-        StringBuilder dbPos = new StringBuilder();
-        List<String> dbPositions = new LinkedList<>();
-        for (Integer key : getDoubleBondPositions().keySet()) {
-            dbPositions.add(key + getDoubleBondPositions().get(key));
-        }
-        if (!getDoubleBondPositions().isEmpty()) {
-            dbPos.
-                    append("(").
-                    append(dbPositions.stream().collect(Collectors.joining(","))).
-                    append(")");
+        // racy single-check: Strings are safely published, so concurrent
+        // callers may at worst compute the same name twice
+        String name = this.substructureName;
+        if (name == null) {
+            name = createSubstructureName();
+            this.substructureName = name;
         }
+        return name;
+    }
+
+    /**
+     * Appends the name of this substructure to the provided appendable.
+     *
+     * @param <T> the type of the appendable.
+     * @param out the appendable to write to.
+     * @param level the structural lipid level to return this substructure's
+     * name on.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public <T extends Appendable> T appendSubstructureName(T out, LipidLevel level) throws IOException {
+        out.append(buildSubstructureName(level));
+        return out;
+    }
 
-        nCarbon += getNCarbon();
-        nHydroxy += getNHydroxy();
+    private String createSubstructureName() {
+        StringBuilder sb = new StringBuilder();
         sb.
                 append(nCarbon).
                 append(":").
-                append(nDB).
-                append(dbPos.toString()).
-                append(nHydroxy > 0 ? ";" + nHydroxy : "").
-                append(getLipidFaBondType().suffix());
+                append(nDoubleBonds);
+        if (!doubleBondPositions.isEmpty()) {
+            sb.append("(");
+            boolean first = true;
+            for (Map.Entry<Integer, String> entry : doubleBondPositions.entrySet()) {
+                if (!first) {
+                    sb.append(",");
+                }
+                sb.append(entry.getKey()).append(entry.getValue());
+                first = false;
+            }
+            sb.append(")");
+        }
+        if (nHydroxy > 0) {
+            sb.append(";").append(nHydroxy);
+        }
+        sb.append(lipidFaBondType.suffix());
         //TODO reenable once LSI has finished modification specification
 //        if (!getModifications().isEmpty()) {
 //            sb.append("(");
@@ -204,6 +237,42 @@ public class FattyAcid {
         return sb.toString();
     }
 
+    /**
+     * Returns the header word of the packed representation of this fatty acid.
+     *
+     * @return the packed header word.
+     * @throws ConstraintViolationException if this fatty acid is not packable.
+     * @see PackedFattyAcid
+     */
+    public long getPackedHeader() {
+        return PackedFattyAcid.header(this);
+    }
+
+    /**
+     * Returns the double bond word of the packed representation of this fatty
+     * acid.
+     *
+     * @return the packed double bond word.
+     * @throws ConstraintViolationException if this fatty acid is not packable.
+     * @see PackedFattyAcid
+     */
+    public long getPackedDoubleBonds() {
+        return PackedFattyAcid.doubleBonds(this);
+    }
+
+    /**
+     * Create a FattyAcid from its packed representation.
+     *
+     * @param name the name, e.g. FA1 for the first FA.
+     * @param header the packed header word.
+     * @param doubleBonds the packed double bond word.
+     * @return the canonical fatty acid for the packed representation.
+     * @see PackedFattyAcid
+     */
+    public static FattyAcid fromPacked(String name, long header, long doubleBonds) {
+        return PackedFattyAcid.toFattyAcid(name, header, doubleBonds);
+    }
+
     public ElementTable getElements() {
         ElementTable table = new ElementTable();
         if (!isLcb()) {
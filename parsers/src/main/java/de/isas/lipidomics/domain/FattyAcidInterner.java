@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Flyweight factory for {@link FattyAcid} and {@link LipidSpeciesInfo} values.
+ * Since both types are immutable, equal instances can be replaced by a single
+ * canonical instance. In large batches, only a few hundred distinct acyl
+ * chains usually occur, e.g. "16:0" or "18:1", so interning avoids keeping
+ * millions of equal objects, each with its own double bond position map and
+ * modifications list, on the heap.
+ *
+ * A pool holds its canonical instances through weak references only. An
+ * instance stays canonical while any lipid still refers to it, and is evicted
+ * by the garbage collector afterwards, so the pool never retains values on its
+ * own and never stops interning. The pool is thread-safe and split into
+ * stripes, so that concurrent parsers rarely contend for the same lock.
+ *
+ * The parsers, the binary lipid decoder and the lipid constructors use
+ * the {@link #DEFAULT} pool. Code that creates its own, already shared values,
+ * e.g. the library generator, can use a separate pool or {@link #NONE}, which
+ * returns all values as they are.
+ *
+ * @author nils.hoffmann
+ */
+public final class FattyAcidInterner {
+
+    /**
+     * The pool shared by the parsers and the lipid constructors.
+     */
+    public static final FattyAcidInterner DEFAULT = new FattyAcidInterner();
+
+    /**
+     * Returns all values as they are, without pooling.
+     */
+    public static final FattyAcidInterner NONE = new FattyAcidInterner(0);
+
+    private static final int STRIPES = 64;
+
+    private final Map<FattyAcid, WeakReference<FattyAcid>>[] stripes;
+
+    /**
+     * Creates a new, empty pool.
+     */
+    public FattyAcidInterner() {
+        this(STRIPES);
+    }
+
+    @SuppressWarnings("unchecked")
+    private FattyAcidInterner(int stripes) {
+        this.stripes = new Map[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new WeakHashMap<>();
+        }
+    }
+
+    /**
+     * Returns the canonical instance equal to the provided fatty acid or
+     * species info. If no such instance exists yet, the provided one becomes
+     * the canonical instance.
+     *
+     * @param <T> the type of the fatty acid.
+     * @param fattyAcid the fatty acid to intern, may be null.
+     * @return the canonical instance, or null if the argument was null.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends FattyAcid> T intern(T fattyAcid) {
+        if (fattyAcid == null || stripes.length == 0) {
+            return fattyAcid;
+        }
+        Map<FattyAcid, WeakReference<FattyAcid>> stripe = stripe(fattyAcid);
+        FattyAcid canonical;
+        synchronized (stripe) {
+            WeakReference<FattyAcid> reference = stripe.get(fattyAcid);
+            canonical = reference == null ? null : reference.get();
+            if (canonical == null) {
+                stripe.put(fattyAcid, new WeakReference<>(fattyAcid));
+                return fattyAcid;
+            }
+        }
+        // equal instances of different classes, e.g. LipidSpeciesInfo.NONE, are not substituted
+        return canonical.getClass() == fattyAcid.getClass() ? (T) canonical : fattyAcid;
+    }
+
+    /**
+     * Returns the number of canonical instances in the pool. Instances that
+     * have not been evicted by the garbage collector yet are included.
+     *
+     * @return the pool size.
+     */
+    public int size() {
+        int size = 0;
+        for (Map<FattyAcid, WeakReference<FattyAcid>> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all canonical instances from the pool. Instances already handed
+     * out remain valid.
+     */
+    public void clear() {
+        for (Map<FattyAcid, WeakReference<FattyAcid>> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private Map<FattyAcid, WeakReference<FattyAcid>> stripe(FattyAcid fattyAcid) {
+        int hash = fattyAcid.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+}
@@ -18,6 +18,7 @@ package de.isas.lipidomics.domain;
 import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 /**
  * A generic lipid fragment. There is currently no further specialization in
@@ -29,6 +30,7 @@ import lombok.Data;
  */
 @AllArgsConstructor
 @Data
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class Fragment {
 
     private static final class None extends Fragment {
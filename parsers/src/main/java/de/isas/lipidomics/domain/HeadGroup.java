@@ -17,6 +17,7 @@ package de.isas.lipidomics.domain;
 
 import java.util.Optional;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 /**
  * This class represents functional head groups of lipids. This is where the
@@ -25,6 +26,7 @@ import lombok.Data;
  * @author nils.hoffmann
  */
 @Data
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class HeadGroup {
 
     private final String name;
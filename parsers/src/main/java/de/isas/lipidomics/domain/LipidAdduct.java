@@ -19,13 +19,20 @@ import static de.isas.lipidomics.domain.LipidLevel.ISOMERIC_SUBSPECIES;
 import static de.isas.lipidomics.domain.LipidLevel.MOLECULAR_SUBSPECIES;
 import static de.isas.lipidomics.domain.LipidLevel.SPECIES;
 import static de.isas.lipidomics.domain.LipidLevel.STRUCTURAL_SUBSPECIES;
+import java.io.IOException;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.With;
 
 /**
  * Base class for lipid names parsed using the different grammars. This can
  * contain a lipid, an adduct, a sum formula and a fragment.
  *
+ * A lipid adduct is immutable, use the <code>with*</code> methods to derive a
+ * copy with a different lipid, adduct or fragment. Parse results can thus be
+ * cached and handed between threads without copying.
+ *
  * @author nils.hoffmann
  * @see LipidSpecies
  * @see Adduct
@@ -33,11 +40,13 @@ import lombok.Data;
  */
 @AllArgsConstructor
 @Data
+@With
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class LipidAdduct {
 
-    private LipidSpecies lipid;
-    private Adduct adduct;
-    private Fragment fragment;
+    private final LipidSpecies lipid;
+    private final Adduct adduct;
+    private final Fragment fragment;
 
     /**
      * Calculates the mass based on the elements of this lipid adduct.
@@ -120,17 +129,27 @@ public class LipidAdduct {
      * @return the non-normalized lipid name with adduct.
      */
     public String getLipidString(LipidLevel level) {
-        StringBuilder sb = new StringBuilder();
-        if (lipid != null) {
-            sb.append(lipid.getLipidString(level));
-        } else {
+        if (lipid == null) {
             return "";
         }
+        return Appendables.appendTo(new StringBuilder(), (out) -> {
+            appendLipidString(out, level);
+        }).toString();
+    }
 
-        if (adduct != null && !adduct.getLipidString().isEmpty()) {
-            sb.append(adduct.getLipidString());
-        }
-        return sb.toString();
+    /**
+     * Appends the non-normalized (original head group) lipid name with adduct
+     * for the given level to the provided appendable. Nothing is appended, if
+     * no lipid is set.
+     *
+     * @param <T> the type of the appendable.
+     * @param out the appendable to write to.
+     * @param level the lipid level to generate the name on.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public <T extends Appendable> T appendLipidString(T out, LipidLevel level) throws IOException {
+        return appendLipidString(out, level, false, false);
     }
 
     /**
@@ -154,17 +173,27 @@ public class LipidAdduct {
      * @return the normalized lipid name with adduct.
      */
     public String getNormalizedLipidString(LipidLevel level) {
-        StringBuilder sb = new StringBuilder();
-        if (lipid != null) {
-            sb.append(lipid.getLipidString(level, true));
-        } else {
+        if (lipid == null) {
             return "";
         }
+        return Appendables.appendTo(new StringBuilder(), (out) -> {
+            appendNormalizedLipidString(out, level);
+        }).toString();
+    }
 
-        if (adduct != null && !adduct.getLipidString().isEmpty()) {
-            sb.append(adduct.getLipidString());
-        }
-        return sb.toString();
+    /**
+     * Appends the normalized (class name as head group) lipid name with adduct
+     * for the given level to the provided appendable. Nothing is appended, if
+     * no lipid is set.
+     *
+     * @param <T> the type of the appendable.
+     * @param out the appendable to write to.
+     * @param level the lipid level to generate the name on.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public <T extends Appendable> T appendNormalizedLipidString(T out, LipidLevel level) throws IOException {
+        return appendLipidString(out, level, true, false);
     }
 
     /**
@@ -188,19 +217,26 @@ public class LipidAdduct {
      * @return the non-normalized lipid name with adduct and fragment.
      */
     public String getLipidFragmentString(LipidLevel level) {
-        StringBuilder sb = new StringBuilder();
-        if (lipid != null) {
-            sb.append(getLipidString(level));
-        } else {
+        if (lipid == null) {
             return "";
         }
-        if (adduct != null && !adduct.getLipidString().isEmpty()) {
-            sb.append(adduct.getLipidString());
-        }
-        if (fragment != null && !fragment.getLipidString().isEmpty()) {
-            sb.append(" - ").append(fragment.getLipidString());
-        }
-        return sb.toString();
+        return Appendables.appendTo(new StringBuilder(), (out) -> {
+            appendLipidFragmentString(out, level);
+        }).toString();
+    }
+
+    /**
+     * Appends the non-normalized lipid adduct name (original head group) with
+     * fragment, if available, for the given level to the provided appendable.
+     *
+     * @param <T> the type of the appendable.
+     * @param out the appendable to write to.
+     * @param level the lipid level to generate the name on.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public <T extends Appendable> T appendLipidFragmentString(T out, LipidLevel level) throws IOException {
+        return appendLipidString(out, level, false, true);
     }
 
     /**
@@ -211,19 +247,43 @@ public class LipidAdduct {
      * @return the normalized lipid name with adduct and fragment.
      */
     public String getNormalizedLipidFragmentString(LipidLevel level) {
-        StringBuilder sb = new StringBuilder();
-        if (lipid != null) {
-            sb.append(getNormalizedLipidString(level));
-        } else {
+        if (lipid == null) {
             return "";
         }
-        if (adduct != null && !adduct.getLipidString().isEmpty()) {
-            sb.append(adduct.getLipidString());
+        return Appendables.appendTo(new StringBuilder(), (out) -> {
+            appendNormalizedLipidFragmentString(out, level);
+        }).toString();
+    }
+
+    /**
+     * Appends the normalized lipid adduct name (class name as head group) with
+     * fragment, if available, for the given level to the provided appendable.
+     *
+     * @param <T> the type of the appendable.
+     * @param out the appendable to write to.
+     * @param level the lipid level to generate the name on.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public <T extends Appendable> T appendNormalizedLipidFragmentString(T out, LipidLevel level) throws IOException {
+        return appendLipidString(out, level, true, true);
+    }
+
+    private <T extends Appendable> T appendLipidString(T out, LipidLevel level, boolean normalizeHeadGroup, boolean withFragment) throws IOException {
+        if (lipid == null) {
+            return out;
+        }
+        lipid.appendLipidString(out, level, normalizeHeadGroup);
+        if (adduct != null) {
+            adduct.appendLipidString(out);
         }
-        if (fragment != null && !fragment.getLipidString().isEmpty()) {
-            sb.append(" - ").append(fragment.getLipidString());
+        if (withFragment && fragment != null) {
+            String fragmentName = fragment.getLipidString();
+            if (fragmentName != null && !fragmentName.isEmpty()) {
+                out.append(" - ").append(fragmentName);
+            }
         }
-        return sb.toString();
+        return out;
     }
 
     @Override
@@ -0,0 +1,541 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar, struct-of-arrays representation of many parsed lipids. Only
+ * primitive attributes are kept, one array per attribute, so that a batch of
+ * millions of lipids needs about {@link #BYTES_PER_ROW} bytes of heap per
+ * lipid, instead of a full {@link LipidAdduct} object graph each. Lipid names
+ * are dictionary-encoded, each distinct name is stored once.
+ *
+ * Lipid adducts are added with {@link #add(LipidAdduct)}. They can be
+ * discarded afterwards, e.g. directly after parsing each name. Callers that
+ * already have the primitive values add rows with
+ * {@link #add(LipidClass, LipidCategory, LipidLevel, int, int, int, LipidFaBondType, String)}
+ * instead, without a lipid object and, optionally, without a name. Per lipid, the
+ * batch holds the {@link LipidClass}, {@link LipidCategory} and
+ * {@link LipidLevel} ordinals, the total number of carbon atoms, double bonds
+ * and hydroxy groups and the {@link LipidFaBondType} ordinal of the
+ * {@link LipidSpeciesInfo}, and for up to {@link #MAX_CHAINS} fatty acyls their
+ * number of carbon atoms, double bonds and hydroxy groups, the bond type and
+ * the long chain base flag, in the order of {@link LipidSpecies#getFa()}.
+ *
+ * {@link #filter(Column, int, int)}, {@link #countBy(Column)} and
+ * {@link #groupBy(Column)} run simple loops over the primitive columns, which
+ * the JIT compiler can unroll and vectorize. Batches are not thread-safe.
+ *
+ * @author nils.hoffmann
+ */
+public final class LipidBatch {
+
+    /**
+     * The maximum number of fatty acyls per lipid.
+     */
+    public static final int MAX_CHAINS = 4;
+
+    /**
+     * The number of bytes of the column arrays per lipid, excluding the
+     * distinct names in the name dictionary.
+     */
+    public static final int BYTES_PER_ROW = 2 + 1 + 1 + 2 + 1 + 1 + 1 + 1 + 4 + MAX_CHAINS * 5;
+
+    private static final int CHAIN_LCB = 1;
+    private static final LipidClass[] LIPID_CLASSES = LipidClass.values();
+    private static final LipidCategory[] LIPID_CATEGORIES = LipidCategory.values();
+    private static final LipidLevel[] LIPID_LEVELS = LipidLevel.values();
+    private static final LipidFaBondType[] BOND_TYPES = LipidFaBondType.values();
+
+    /**
+     * The per-lipid columns of a batch.
+     */
+    public static enum Column {
+        LIPID_CLASS, CATEGORY, LEVEL, CARBON, DOUBLE_BONDS, HYDROXY, BOND_TYPE, CHAINS, NAME
+    }
+
+    private short[] lipidClass;
+    private byte[] category;
+    private byte[] level;
+    private short[] nCarbon;
+    private byte[] nDoubleBonds;
+    private byte[] nHydroxy;
+    private byte[] bondType;
+    private byte[] nChains;
+    private int[] name;
+    private byte[] chainCarbon;
+    private byte[] chainDoubleBonds;
+    private byte[] chainHydroxy;
+    private byte[] chainBondType;
+    private byte[] chainFlags;
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int size;
+
+    /**
+     * Creates a new, empty batch.
+     */
+    public LipidBatch() {
+        this(1024);
+    }
+
+    /**
+     * Creates a new, empty batch.
+     *
+     * @param initialCapacity the number of lipids to reserve space for.
+     */
+    public LipidBatch(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        lipidClass = new short[capacity];
+        category = new byte[capacity];
+        level = new byte[capacity];
+        nCarbon = new short[capacity];
+        nDoubleBonds = new byte[capacity];
+        nHydroxy = new byte[capacity];
+        bondType = new byte[capacity];
+        nChains = new byte[capacity];
+        name = new int[capacity];
+        chainCarbon = new byte[capacity * MAX_CHAINS];
+        chainDoubleBonds = new byte[capacity * MAX_CHAINS];
+        chainHydroxy = new byte[capacity * MAX_CHAINS];
+        chainBondType = new byte[capacity * MAX_CHAINS];
+        chainFlags = new byte[capacity * MAX_CHAINS];
+    }
+
+    /**
+     * Appends the primitive attributes of the lipid adduct as a new row. The
+     * name of the row is {@link LipidAdduct#getNormalizedLipidString()}.
+     *
+     * @param lipidAdduct the lipid adduct.
+     * @return the row index.
+     * @throws ConstraintViolationException if the lipid has more than
+     * {@link #MAX_CHAINS} fatty acyls or values out of the column ranges, e.g.
+     * more than 255 carbon atoms in a chain.
+     */
+    public int add(LipidAdduct lipidAdduct) {
+        LipidSpecies lipid = lipidAdduct.getLipid() == null ? LipidSpecies.NONE : lipidAdduct.getLipid();
+        Map<String, FattyAcid> fas = lipid.getFa();
+        if (fas.size() > MAX_CHAINS) {
+            throw new ConstraintViolationException("Lipid " + lipidAdduct.getLipidString() + " has more than " + MAX_CHAINS + " fatty acyls!");
+        }
+        LipidSpeciesInfo info = lipid.getInfo();
+        if (!inRange(info.getNCarbon(), info.getNDoubleBonds(), info.getNHydroxy(), Short.MAX_VALUE)) {
+            throw new ConstraintViolationException("Lipid " + lipidAdduct.getLipidString() + " exceeds the column value ranges!");
+        }
+        for (FattyAcid fa : fas.values()) {
+            if (!inRange(fa.getNCarbon(), fa.getNDoubleBonds(), fa.getNHydroxy(), 255)) {
+                throw new ConstraintViolationException("Fatty acyl " + fa.getName() + " of lipid " + lipidAdduct.getLipidString() + " exceeds the column value ranges!");
+            }
+        }
+        int row = add(lipid.getLipidClass(), lipid.getLipidCategory(), info.getLevel(), info.getNCarbon(), info.getNDoubleBonds(), info.getNHydroxy(),
+                info.getLipidFaBondType(), lipidAdduct.getNormalizedLipidString());
+        for (FattyAcid fa : fas.values()) {
+            addChain(fa.getNCarbon(), fa.getNDoubleBonds(), fa.getNHydroxy(), fa.getLipidFaBondType(), fa.isLcb());
+        }
+        return row;
+    }
+
+    /**
+     * Appends a new row without fatty acyls from primitive values, e.g. from
+     * a generator or decoder that has no {@link LipidAdduct}. Fatty acyls are
+     * appended with
+     * {@link #addChain(int, int, int, LipidFaBondType, boolean)}. The name is
+     * optional, so that callers that never read it do not need to build it.
+     *
+     * @param lipidClass the lipid class.
+     * @param lipidCategory the lipid category.
+     * @param level the level of the species info.
+     * @param nCarbon the total number of carbon atoms.
+     * @param nDoubleBonds the total number of double bonds.
+     * @param nHydroxy the total number of hydroxy groups.
+     * @param bondType the bond type of the species info.
+     * @param lipidName the lipid name, may be null.
+     * @return the row index.
+     * @throws ConstraintViolationException if a value is out of its column
+     * range.
+     */
+    public int add(LipidClass lipidClass, LipidCategory lipidCategory, LipidLevel level, int nCarbon, int nDoubleBonds, int nHydroxy, LipidFaBondType bondType, String lipidName) {
+        if (!inRange(nCarbon, nDoubleBonds, nHydroxy, Short.MAX_VALUE)) {
+            throw new ConstraintViolationException("Lipid " + lipidName + " exceeds the column value ranges! Was: " + nCarbon + ":" + nDoubleBonds + ";" + nHydroxy);
+        }
+        ensureCapacity(size + 1);
+        int row = size;
+        this.lipidClass[row] = (short) lipidClass.ordinal();
+        category[row] = (byte) lipidCategory.ordinal();
+        this.level[row] = (byte) level.ordinal();
+        this.nCarbon[row] = (short) nCarbon;
+        this.nDoubleBonds[row] = (byte) nDoubleBonds;
+        this.nHydroxy[row] = (byte) nHydroxy;
+        this.bondType[row] = (byte) bondType.ordinal();
+        nChains[row] = 0;
+        Integer nameId = nameIds.get(lipidName);
+        if (nameId == null) {
+            nameId = names.size();
+            names.add(lipidName);
+            nameIds.put(lipidName, nameId);
+        }
+        name[row] = nameId;
+        size++;
+        return row;
+    }
+
+    /**
+     * Appends a fatty acyl to the last row.
+     *
+     * @param nCarbon the number of carbon atoms.
+     * @param nDoubleBonds the number of double bonds.
+     * @param nHydroxy the number of hydroxy groups.
+     * @param bondType the bond type.
+     * @param lcb true, if the chain is a long chain base.
+     * @throws ConstraintViolationException if the batch is empty, the last row
+     * already has {@link #MAX_CHAINS} fatty acyls or a value is out of its
+     * column range.
+     */
+    public void addChain(int nCarbon, int nDoubleBonds, int nHydroxy, LipidFaBondType bondType, boolean lcb) {
+        if (size == 0) {
+            throw new ConstraintViolationException("Can not add a fatty acyl to an empty batch!");
+        }
+        int row = size - 1;
+        if (nChains[row] >= MAX_CHAINS) {
+            throw new ConstraintViolationException("Row " + row + " already has " + MAX_CHAINS + " fatty acyls!");
+        }
+        if (!inRange(nCarbon, nDoubleBonds, nHydroxy, 255)) {
+            throw new ConstraintViolationException("Fatty acyl of row " + row + " exceeds the column value ranges! Was: " + nCarbon + ":" + nDoubleBonds + ";" + nHydroxy);
+        }
+        int chain = row * MAX_CHAINS + nChains[row];
+        chainCarbon[chain] = (byte) nCarbon;
+        chainDoubleBonds[chain] = (byte) nDoubleBonds;
+        chainHydroxy[chain] = (byte) nHydroxy;
+        chainBondType[chain] = (byte) bondType.ordinal();
+        chainFlags[chain] = (byte) (lcb ? CHAIN_LCB : 0);
+        nChains[row]++;
+    }
+
+    private static boolean inRange(int nCarbon, int nDoubleBonds, int nHydroxy, int maxCarbon) {
+        return nCarbon >= 0 && nCarbon <= maxCarbon
+                && nDoubleBonds >= 0 && nDoubleBonds <= Byte.MAX_VALUE
+                && nHydroxy >= 0 && nHydroxy <= Byte.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of lipids in this batch.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of a column as an int. Enum columns return the
+     * ordinal, the name column returns the dictionary id of the name.
+     *
+     * @param column the column.
+     * @param row the row index.
+     * @return the value.
+     */
+    public int get(Column column, int row) {
+        checkRow(row);
+        switch (column) {
+            case LIPID_CLASS:
+                return lipidClass[row];
+            case CATEGORY:
+                return category[row];
+            case LEVEL:
+                return level[row];
+            case CARBON:
+                return nCarbon[row];
+            case DOUBLE_BONDS:
+                return nDoubleBonds[row];
+            case HYDROXY:
+                return nHydroxy[row];
+            case BOND_TYPE:
+                return bondType[row];
+            case CHAINS:
+                return nChains[row];
+            case NAME:
+                return name[row];
+            default:
+                throw new ConstraintViolationException("Unsupported column: " + column);
+        }
+    }
+
+    public LipidClass getLipidClass(int row) {
+        return LIPID_CLASSES[get(Column.LIPID_CLASS, row)];
+    }
+
+    public LipidCategory getLipidCategory(int row) {
+        return LIPID_CATEGORIES[get(Column.CATEGORY, row)];
+    }
+
+    public LipidLevel getLevel(int row) {
+        return LIPID_LEVELS[get(Column.LEVEL, row)];
+    }
+
+    public LipidFaBondType getLipidFaBondType(int row) {
+        return BOND_TYPES[get(Column.BOND_TYPE, row)];
+    }
+
+    /**
+     * Returns the name of a row. For rows added from a lipid adduct, this is
+     * the name returned by {@link LipidAdduct#getNormalizedLipidString()}.
+     *
+     * @param row the row index.
+     * @return the lipid name, or null for rows added without a name.
+     */
+    public String getName(int row) {
+        return names.get(get(Column.NAME, row));
+    }
+
+    /**
+     * Returns the name for a dictionary id of the name column.
+     *
+     * @param nameId the dictionary id.
+     * @return the lipid name.
+     */
+    public String getNameForId(int nameId) {
+        return names.get(nameId);
+    }
+
+    /**
+     * Returns the number of distinct names in this batch.
+     *
+     * @return the size of the name dictionary.
+     */
+    public int getDistinctNameCount() {
+        return names.size();
+    }
+
+    public int getChainCarbon(int row, int chain) {
+        return chainCarbon[chainIndex(row, chain)] & 0xFF;
+    }
+
+    public int getChainDoubleBonds(int row, int chain) {
+        return chainDoubleBonds[chainIndex(row, chain)];
+    }
+
+    public int getChainHydroxy(int row, int chain) {
+        return chainHydroxy[chainIndex(row, chain)];
+    }
+
+    public LipidFaBondType getChainBondType(int row, int chain) {
+        return BOND_TYPES[chainBondType[chainIndex(row, chain)]];
+    }
+
+    public boolean isChainLcb(int row, int chain) {
+        return (chainFlags[chainIndex(row, chain)] & CHAIN_LCB) != 0;
+    }
+
+    /**
+     * Returns the rows whose column value is within the closed range from min
+     * to max.
+     *
+     * @param column the column.
+     * @param min the minimum value.
+     * @param max the maximum value.
+     * @return the matching rows.
+     */
+    public BitSet filter(Column column, int min, int max) {
+        long[] words = new long[(size + 63) >>> 6];
+        switch (column) {
+            case LIPID_CLASS:
+                filter(lipidClass, min, max, words);
+                break;
+            case CARBON:
+                filter(nCarbon, min, max, words);
+                break;
+            case NAME:
+                for (int i = 0; i < size; i++) {
+                    int value = name[i];
+                    if (value >= min && value <= max) {
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+                break;
+            default:
+                filter(byteColumn(column), min, max, words);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Returns the rows of the lipid class.
+     *
+     * @param lipidClass the lipid class.
+     * @return the matching rows.
+     */
+    public BitSet filter(LipidClass lipidClass) {
+        return filter(Column.LIPID_CLASS, lipidClass.ordinal(), lipidClass.ordinal());
+    }
+
+    /**
+     * Counts the rows per value of the column. The result is indexed by value,
+     * e.g. by {@link LipidClass} ordinal or by the number of carbon atoms.
+     *
+     * @param column the column.
+     * @return the number of rows per value.
+     */
+    public int[] countBy(Column column) {
+        int[] counts = new int[maxValue(column) + 1];
+        switch (column) {
+            case LIPID_CLASS:
+                for (int i = 0; i < size; i++) {
+                    counts[lipidClass[i]]++;
+                }
+                break;
+            case CARBON:
+                for (int i = 0; i < size; i++) {
+                    counts[nCarbon[i]]++;
+                }
+                break;
+            case NAME:
+                for (int i = 0; i < size; i++) {
+                    counts[name[i]]++;
+                }
+                break;
+            default:
+                byte[] values = byteColumn(column);
+                for (int i = 0; i < size; i++) {
+                    counts[values[i]]++;
+                }
+        }
+        return counts;
+    }
+
+    /**
+     * Groups the row indices by the value of the column. The result is indexed
+     * by value, like {@link #countBy(Column)}. Groups of values without rows
+     * are empty arrays.
+     *
+     * @param column the column.
+     * @return the row indices per value, in ascending order.
+     */
+    public int[][] groupBy(Column column) {
+        int[] counts = countBy(column);
+        int[][] groups = new int[counts.length][];
+        for (int value = 0; value < counts.length; value++) {
+            groups[value] = new int[counts[value]];
+        }
+        int[] fill = new int[counts.length];
+        for (int i = 0; i < size; i++) {
+            int value = get(column, i);
+            groups[value][fill[value]++] = i;
+        }
+        return groups;
+    }
+
+    private int maxValue(Column column) {
+        switch (column) {
+            case LIPID_CLASS:
+                return LIPID_CLASSES.length - 1;
+            case CATEGORY:
+                return LIPID_CATEGORIES.length - 1;
+            case LEVEL:
+                return LIPID_LEVELS.length - 1;
+            case BOND_TYPE:
+                return BOND_TYPES.length - 1;
+            case CHAINS:
+                return MAX_CHAINS;
+            case NAME:
+                return names.size() - 1;
+            default:
+                int max = 0;
+                for (int i = 0; i < size; i++) {
+                    max = Math.max(max, get(column, i));
+                }
+                return max;
+        }
+    }
+
+    private byte[] byteColumn(Column column) {
+        switch (column) {
+            case CATEGORY:
+                return category;
+            case LEVEL:
+                return level;
+            case DOUBLE_BONDS:
+                return nDoubleBonds;
+            case HYDROXY:
+                return nHydroxy;
+            case BOND_TYPE:
+                return bondType;
+            case CHAINS:
+                return nChains;
+            default:
+                throw new ConstraintViolationException("Column " + column + " is not a byte column!");
+        }
+    }
+
+    private void filter(short[] values, int min, int max, long[] words) {
+        for (int i = 0; i < size; i++) {
+            int value = values[i];
+            if (value >= min && value <= max) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    private void filter(byte[] values, int min, int max, long[] words) {
+        for (int i = 0; i < size; i++) {
+            int value = values[i];
+            if (value >= min && value <= max) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    private int chainIndex(int row, int chain) {
+        checkRow(row);
+        if (chain < 0 || chain >= nChains[row]) {
+            throw new IndexOutOfBoundsException("Chain " + chain + " of row " + row + " does not exist, row has " + nChains[row] + " chains!");
+        }
+        return row * MAX_CHAINS + chain;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for batch of size " + size + "!");
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= lipidClass.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, lipidClass.length + (lipidClass.length >> 1));
+        lipidClass = Arrays.copyOf(lipidClass, newCapacity);
+        category = Arrays.copyOf(category, newCapacity);
+        level = Arrays.copyOf(level, newCapacity);
+        nCarbon = Arrays.copyOf(nCarbon, newCapacity);
+        nDoubleBonds = Arrays.copyOf(nDoubleBonds, newCapacity);
+        nHydroxy = Arrays.copyOf(nHydroxy, newCapacity);
+        bondType = Arrays.copyOf(bondType, newCapacity);
+        nChains = Arrays.copyOf(nChains, newCapacity);
+        name = Arrays.copyOf(name, newCapacity);
+        chainCarbon = Arrays.copyOf(chainCarbon, newCapacity * MAX_CHAINS);
+        chainDoubleBonds = Arrays.copyOf(chainDoubleBonds, newCapacity * MAX_CHAINS);
+        chainHydroxy = Arrays.copyOf(chainHydroxy, newCapacity * MAX_CHAINS);
+        chainBondType = Arrays.copyOf(chainBondType, newCapacity * MAX_CHAINS);
+        chainFlags = Arrays.copyOf(chainFlags, newCapacity * MAX_CHAINS);
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * A canonical 128 bit fingerprint of a {@link LipidAdduct} on a given
+ * {@link LipidLevel}. Lipids with equal names on that level have equal
+ * fingerprints, so that joins, group-bys, deduplication and sorts can work on
+ * two primitive longs instead of name strings. Chains of molecular subspecies
+ * are sorted before encoding, so that e.g. PC 16:0-18:1 and PC 18:1-16:0 share
+ * a fingerprint.
+ *
+ * The high word holds, from the most significant bits downwards:
+ * <pre>
+ * bits 61-63  {@link LipidLevel} ordinal
+ * bits 52-60  {@link LipidClass} ordinal, or {@link LipidCategory} ordinal on category level
+ * bits 49-51  {@link LipidFaBondType} ordinal of the species
+ * bits 41-48  total number of carbon atoms (0-255)
+ * bits 35-40  total number of double bonds (0-63)
+ * bits 30-34  total number of hydroxy groups (0-31)
+ * bits 27-29  number of chains (0-7)
+ * bit  26     hashed flag
+ * bits  0-25  adduct charge + 16 (bits 21-25) and adduct code (bits 0-20)
+ * </pre> The low word holds up to four chains of 16 bits each, the first
+ * chain in the most significant bits. A chain holds its number of carbon
+ * atoms (bits 9-15, 0-127), double bonds (bits 5-8, 0-15), hydroxy groups
+ * (bits 3-4, 0-3) and its bond type ordinal, or 7 for a long chain base (bits
+ * 0-2).
+ *
+ * Lipids that do not fit this layout, e.g. with more than four chains,
+ * modifications or double bond positions on isomeric level, set the hashed
+ * flag and store a 64 bit hash of their chains in the low word instead.
+ * Lipids of the {@link LipidClass#UNDEFINED} class, e.g. HMDB gangliosides,
+ * share the class ordinal, so they also set the hashed flag and mix a 64 bit
+ * hash of their head group name into the low word.
+ *
+ * Adducts of the goslin grammar and other common adducts are encoded by their
+ * position in a fixed dictionary, 0 encodes no adduct. New adducts must only
+ * be appended to the dictionary. Any other adduct uses the reserved code
+ * 0x1FFFFF, sets the hashed flag and mixes a 64 bit hash of its name into the
+ * low word.
+ *
+ * Hashed fingerprints of different lipids collide with a probability of
+ * about 2^-64 per pair. Consumers that join or group by fingerprints treat
+ * colliding lipids as equal. Use {@link #isHashed()} to detect fingerprints
+ * where this is possible.
+ *
+ * Fingerprints compare as unsigned high and low words. For lipids that fit
+ * the layout, this orders by level, class, bond type, totals and chains.
+ *
+ * @author nils.hoffmann
+ */
+@Value
+public class LipidFingerprint implements Comparable<LipidFingerprint> {
+
+    private static final int LEVEL_SHIFT = 61;
+    private static final int CLASS_SHIFT = 52;
+    private static final int BOND_TYPE_SHIFT = 49;
+    private static final int CARBON_SHIFT = 41;
+    private static final int DB_SHIFT = 35;
+    private static final int HYDROXY_SHIFT = 30;
+    private static final int CHAINS_SHIFT = 27;
+    private static final int HASHED_SHIFT = 26;
+    private static final int CHARGE_SHIFT = 21;
+
+    private static final long CLASS_MASK = 0x1FFL;
+    private static final long CARBON_MASK = 0xFFL;
+    private static final long DB_MASK = 0x3FL;
+    private static final long HYDROXY_MASK = 0x1FL;
+    private static final long CHAINS_MASK = 0x7L;
+    private static final long CHARGE_MASK = 0x1FL;
+    private static final long ADDUCT_CODE_MASK = 0x1FFFFFL;
+    private static final int MIN_CHARGE = -16;
+    private static final int MAX_CHARGE = 15;
+
+    private static final String[] ADDUCTS = new String[]{
+        "+H", "+2H", "+NH4", "-H", "-2H", "+HCOO", "+CH3COO",
+        "+Na", "+K", "+Li", "+Cl", "+H-H2O", "-CH3"
+    };
+    private static final Map<String, Integer> ADDUCT_CODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < ADDUCTS.length; i++) {
+            ADDUCT_CODES.put(ADDUCTS[i], i + 1);
+        }
+    }
+
+    private static final int MAX_CHAINS = 4;
+    private static final int CHAIN_BITS = 16;
+    private static final int CHAIN_CARBON_MASK = 0x7F;
+    private static final int CHAIN_DB_MASK = 0xF;
+    private static final int CHAIN_HYDROXY_MASK = 0x3;
+    private static final int LCB_CODE = 7;
+
+    private final long high;
+    private final long low;
+
+    /**
+     * Returns the fingerprint of the lipid adduct on the provided level.
+     *
+     * @param lipidAdduct the lipid adduct.
+     * @param level the level.
+     * @return the fingerprint.
+     * @throws ConstraintViolationException if the level is more specific than
+     * the level of the lipid.
+     */
+    public static LipidFingerprint of(LipidAdduct lipidAdduct, LipidLevel level) {
+        long[] words = new long[2];
+        fingerprint(lipidAdduct, level, words, 0);
+        return new LipidFingerprint(words[0], words[1]);
+    }
+
+    /**
+     * Writes the high and low words of the fingerprint of the lipid adduct on
+     * the provided level to the array, at the offset and the offset + 1.
+     * Columnar consumers can thus fill primitive key arrays directly.
+     *
+     * @param lipidAdduct the lipid adduct.
+     * @param level the level.
+     * @param words the target array.
+     * @param offset the offset of the high word.
+     * @throws ConstraintViolationException if the level is more specific than
+     * the level of the lipid.
+     */
+    public static void fingerprint(LipidAdduct lipidAdduct, LipidLevel level, long[] words, int offset) {
+        LipidSpecies lipid = lipidAdduct.getLipid();
+        if (lipid == null) {
+            throw new ConstraintViolationException("Can not create a fingerprint for a lipid adduct without lipid!");
+        }
+        LipidSpeciesInfo info = lipid.getInfo();
+        if (level.ordinal() > info.getLevel().ordinal()) {
+            throw new ConstraintViolationException("Can not create a fingerprint for lipid with level " + info.getLevel() + " for level " + level + ": target level is more specific than this lipid's level!");
+        }
+        long high = (long) level.ordinal() << LEVEL_SHIFT;
+        long low = 0L;
+        boolean hashed = false;
+        if (level == LipidLevel.CATEGORY) {
+            high |= (long) lipid.getHeadGroup().getLipidCategory().ordinal() << CLASS_SHIFT;
+        } else {
+            if (level != LipidLevel.UNDEFINED) {
+                high |= ((long) lipid.getLipidClass().ordinal() & CLASS_MASK) << CLASS_SHIFT;
+            }
+            if (level == LipidLevel.UNDEFINED || lipid.getLipidClass() == LipidClass.UNDEFINED) {
+                // lipids without a known class are only known by their head group name
+                hashed = true;
+                low = hash(lipid.getHeadGroup().getName());
+            }
+        }
+        if (level.ordinal() >= LipidLevel.SPECIES.ordinal()) {
+            high |= (long) info.getLipidFaBondType().ordinal() << BOND_TYPE_SHIFT;
+            if (info.getNCarbon() > CARBON_MASK || info.getNDoubleBonds() > DB_MASK || info.getNHydroxy() > HYDROXY_MASK) {
+                hashed = true;
+                low = mix(low ^ ((long) info.getNCarbon() << 32 | (long) info.getNDoubleBonds() << 16 | info.getNHydroxy()));
+            } else {
+                high |= (long) info.getNCarbon() << CARBON_SHIFT
+                        | (long) info.getNDoubleBonds() << DB_SHIFT
+                        | (long) info.getNHydroxy() << HYDROXY_SHIFT;
+            }
+        }
+        if (level.ordinal() >= LipidLevel.MOLECULAR_SUBSPECIES.ordinal()) {
+            Collection<FattyAcid> fas = lipid.getFa().values();
+            high |= Math.min(fas.size(), CHAINS_MASK) << CHAINS_SHIFT;
+            if (!hashed && fas.size() <= MAX_CHAINS && fitsChainCodes(fas, level)) {
+                low = chainCodes(fas, level);
+            } else {
+                hashed = true;
+                low = mix(low ^ chainHashes(fas, level));
+            }
+        }
+        Adduct adduct = lipidAdduct.getAdduct();
+        if (adduct != null && adduct.getAdductString() != null && !adduct.getAdductString().isEmpty()) {
+            int charge = adduct.getCharge();
+            Integer code = adduct.getSumFormula() == null || adduct.getSumFormula().isEmpty() ? ADDUCT_CODES.get(adduct.getAdductString()) : null;
+            if (code != null && charge >= MIN_CHARGE && charge <= MAX_CHARGE) {
+                high |= (long) (charge - MIN_CHARGE) << CHARGE_SHIFT | code;
+            } else {
+                // adducts outside of the dictionary are only known by their name
+                hashed = true;
+                high |= ((long) (charge - MIN_CHARGE) & CHARGE_MASK) << CHARGE_SHIFT | ADDUCT_CODE_MASK;
+                low = mix(low ^ hash(adduct.getLipidString()));
+            }
+        }
+        if (hashed) {
+            high |= 1L << HASHED_SHIFT;
+        }
+        words[offset] = high;
+        words[offset + 1] = low;
+    }
+
+    private static boolean fitsChainCodes(Collection<FattyAcid> fas, LipidLevel level) {
+        for (FattyAcid fa : fas) {
+            if (fa.getNCarbon() > CHAIN_CARBON_MASK || fa.getNDoubleBonds() > CHAIN_DB_MASK || fa.getNHydroxy() > CHAIN_HYDROXY_MASK
+                    || !fa.getModifications().isEmpty()
+                    || (level == LipidLevel.ISOMERIC_SUBSPECIES && !fa.getDoubleBondPositions().isEmpty())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int chainCode(FattyAcid fa) {
+        return fa.getNCarbon() << 9
+                | fa.getNDoubleBonds() << 5
+                | fa.getNHydroxy() << 3
+                | (fa.isLcb() ? LCB_CODE : fa.getLipidFaBondType().ordinal());
+    }
+
+    private static long chainCodes(Collection<FattyAcid> fas, LipidLevel level) {
+        int[] codes = new int[fas.size()];
+        int i = 0;
+        for (FattyAcid fa : fas) {
+            codes[i++] = chainCode(fa);
+        }
+        if (level == LipidLevel.MOLECULAR_SUBSPECIES) {
+            // larger chains first, so that the most significant bits stay occupied
+            Arrays.sort(codes);
+            reverse(codes);
+        }
+        long low = 0L;
+        for (int j = 0; j < codes.length; j++) {
+            low |= (long) codes[j] << (CHAIN_BITS * (MAX_CHAINS - 1 - j));
+        }
+        return low;
+    }
+
+    private static long chainHashes(Collection<FattyAcid> fas, LipidLevel level) {
+        long[] hashes = new long[fas.size()];
+        int i = 0;
+        for (FattyAcid fa : fas) {
+            long hash = chainCode(fa) ^ ((long) fa.getNCarbon() << 32) ^ ((long) fa.getNDoubleBonds() << 48) ^ ((long) fa.getNHydroxy() << 56);
+            if (!fa.getModifications().isEmpty()) {
+                hash = mix(hash) ^ fa.getModifications().toString().hashCode();
+            }
+            if (level == LipidLevel.ISOMERIC_SUBSPECIES) {
+                for (Map.Entry<Integer, String> entry : fa.getDoubleBondPositions().entrySet()) {
+                    hash = mix(hash ^ ((long) entry.getKey() << 32 | (entry.getValue() == null ? 0 : entry.getValue().hashCode() & 0xFFFFFFFFL)));
+                }
+            }
+            hashes[i++] = mix(hash);
+        }
+        if (level == LipidLevel.MOLECULAR_SUBSPECIES) {
+            Arrays.sort(hashes);
+        }
+        long hash = hashes.length;
+        for (long chainHash : hashes) {
+            hash = mix(hash * 31 + chainHash);
+        }
+        return hash;
+    }
+
+    private static void reverse(int[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the string.
+     */
+    private static long hash(String value) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The finalization step of MurmurHash3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Compares two fingerprints given as high and low words.
+     *
+     * @param high1 the high word of the first fingerprint.
+     * @param low1 the low word of the first fingerprint.
+     * @param high2 the high word of the second fingerprint.
+     * @param low2 the low word of the second fingerprint.
+     * @return a negative number, zero, or a positive number if the first
+     * fingerprint is less than, equal to, or greater than the second.
+     */
+    public static int compare(long high1, long low1, long high2, long low2) {
+        int cmp = Long.compareUnsigned(high1, high2);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compareUnsigned(low1, low2);
+    }
+
+    /**
+     * Returns a hash code for a fingerprint given as high and low words.
+     *
+     * @param high the high word.
+     * @param low the low word.
+     * @return the hash code.
+     */
+    public static int hash(long high, long low) {
+        long h = mix(high * 0x9E3779B97F4A7C15L + low);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public LipidLevel getLevel() {
+        return LipidLevel.values()[(int) (high >>> LEVEL_SHIFT)];
+    }
+
+    /**
+     * Returns true, if the chains or the adduct of the lipid did not fit the
+     * layout and are represented by a hash.
+     *
+     * @return true for hashed fingerprints.
+     */
+    public boolean isHashed() {
+        return ((high >>> HASHED_SHIFT) & 1L) != 0;
+    }
+
+    @Override
+    public int compareTo(LipidFingerprint o) {
+        return compare(high, low, o.high, o.low);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
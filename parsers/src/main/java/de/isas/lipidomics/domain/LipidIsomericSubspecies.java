@@ -16,7 +16,7 @@
 package de.isas.lipidomics.domain;
 
 import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
-import java.util.stream.Collectors;
+import java.io.IOException;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -31,7 +31,7 @@ import lombok.EqualsAndHashCode;
  * @see LipidStructuralSubspecies
  */
 @Data
-@EqualsAndHashCode(callSuper = true)
+@EqualsAndHashCode(callSuper = true, cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class LipidIsomericSubspecies extends LipidStructuralSubspecies {
 
     /**
@@ -42,69 +42,29 @@ public class LipidIsomericSubspecies extends LipidStructuralSubspecies {
      */
     @Builder(builderMethodName = "lipidIsomericSubspeciesBuilder")
     public LipidIsomericSubspecies(HeadGroup headGroup, FattyAcid... fa) {
-        super(headGroup);
-        int nCarbon = 0;
-        int nHydroxyl = 0;
-        int nDoubleBonds = 0;
-        ModificationsList mods = new ModificationsList();
-        for (FattyAcid fas : fa) {
-            if (super.fa.containsKey(fas.getName())) {
-                throw new ConstraintViolationException(
-                        "FA names must be unique! FA with name " + fas.getName() + " was already added!");
-            } else {
-                super.fa.put(fas.getName(), fas);
-                nCarbon += fas.getNCarbon();
-                nHydroxyl += fas.getNHydroxy();
-                nDoubleBonds += fas.getNDoubleBonds();
-                mods.addAll(fas.getModifications());
-            }
-        }
-        super.info
-                = LipidSpeciesInfo.lipidSpeciesInfoBuilder().
-                        level(LipidLevel.ISOMERIC_SUBSPECIES).
-                        name(headGroup.getName()).
-                        position(-1).
-                        nCarbon(nCarbon).
-                        nHydroxy(nHydroxyl).
-                        nDoubleBonds(nDoubleBonds).
-                        lipidFaBondType(LipidFaBondType.getLipidFaBondType(headGroup, fa)).
-                        modifications(mods).
-                        build();
-    }
-
-    private String buildLipidIsomericSubstructureName(LipidLevel level, String headGroup, boolean isNormalized) {
-        StringBuilder sb = new StringBuilder();
-        String faStrings = getFa().values().stream().map((fa) -> {
-            return fa.buildSubstructureName(level);
-        }).collect(Collectors.joining("/"));
-        return sb.append(
-                buildSubspeciesHeadGroupString(headGroup, isNormalized)
-        ).append(faStrings).toString();
+        super(headGroup, LipidLevel.ISOMERIC_SUBSPECIES, fa);
     }
 
     @Override
-    public String getLipidString(LipidLevel level, boolean normalizeHeadGroup) {
+    protected void writeLipidString(Appendable out, LipidLevel level, boolean normalizeHeadGroup) throws IOException {
         String headGroup = normalizeHeadGroup ? getNormalizedHeadGroup() : getHeadGroup().getName();
         switch (level) {
             case ISOMERIC_SUBSPECIES:
-                return buildLipidIsomericSubstructureName(level, headGroup, normalizeHeadGroup);
+                writeLipidSubspeciesName(out, level, "/", headGroup, normalizeHeadGroup);
+                break;
             case STRUCTURAL_SUBSPECIES:
             case MOLECULAR_SUBSPECIES:
             case CATEGORY:
             case CLASS:
             case SPECIES:
-                return super.getLipidString(level, normalizeHeadGroup);
+                super.writeLipidString(out, level, normalizeHeadGroup);
+                break;
             default:
                 LipidLevel thisLevel = getInfo().getLevel();
                 throw new ConstraintViolationException(getClass().getSimpleName() + " can not create a string for lipid with level " + thisLevel + " for level " + level + ": target level is more specific than this lipid's level!");
         }
     }
 
-    @Override
-    public String getLipidString(LipidLevel level) {
-        return this.getLipidString(level, false);
-    }
-
     @Override
     public String getNormalizedLipidString() {
         return getLipidString(getInfo().getLevel(), true);
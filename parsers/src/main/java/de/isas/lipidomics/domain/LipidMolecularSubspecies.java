@@ -16,11 +16,10 @@
 package de.isas.lipidomics.domain;
 
 import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -37,18 +36,28 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 @Data
-@EqualsAndHashCode(callSuper = true)
+@EqualsAndHashCode(callSuper = true, cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class LipidMolecularSubspecies extends LipidSpecies {
 
     protected final Map<String, FattyAcid> fa = new LinkedHashMap<>();
 
     @Builder
     public LipidMolecularSubspecies(HeadGroup headGroup, FattyAcid... fa) {
-        super(headGroup);
-        int nCarbon = 0;
-        int nHydroxyl = 0;
-        int nDoubleBonds = 0;
-        ModificationsList mods = new ModificationsList();
+        this(headGroup, LipidLevel.MOLECULAR_SUBSPECIES, fa);
+    }
+
+    /**
+     * Creates a new lipid with the given fatty acyls, whose species info sums
+     * up the fatty acyls at the given level.
+     *
+     * @param headGroup the head group for this lipid.
+     * @param level the level of this lipid.
+     * @param fa the FattyAcids attached to this lipid.
+     * @throws ConstraintViolationException if two fatty acyls have the same
+     * name.
+     */
+    protected LipidMolecularSubspecies(HeadGroup headGroup, LipidLevel level, FattyAcid... fa) {
+        super(headGroup, sumFattyAcyls(headGroup, level, fa));
         for (FattyAcid fas : fa) {
 //            if (fas.getPosition() != -1) {
 //                throw new ConstraintViolationException("MolecularFattyAcid " + fas.getName() + " must have position set to -1! Was: " + fas.getPosition());
@@ -56,17 +65,24 @@ public class LipidMolecularSubspecies extends LipidSpecies {
             if (this.fa.containsKey(fas.getName())) {
                 throw new ConstraintViolationException(
                         "FA names must be unique! FA with name " + fas.getName() + " was already added!");
-            } else {
-                this.fa.put(fas.getName(), fas);
-                nCarbon += fas.getNCarbon();
-                nHydroxyl += fas.getNHydroxy();
-                nDoubleBonds += fas.getNDoubleBonds();
-                mods.addAll(fas.getModifications());
             }
+            this.fa.put(fas.getName(), fas);
+        }
+    }
 
+    private static LipidSpeciesInfo sumFattyAcyls(HeadGroup headGroup, LipidLevel level, FattyAcid... fa) {
+        int nCarbon = 0;
+        int nHydroxyl = 0;
+        int nDoubleBonds = 0;
+        ModificationsList mods = new ModificationsList();
+        for (FattyAcid fas : fa) {
+            nCarbon += fas.getNCarbon();
+            nHydroxyl += fas.getNHydroxy();
+            nDoubleBonds += fas.getNDoubleBonds();
+            mods.addAll(fas.getModifications());
         }
-        super.info = LipidSpeciesInfo.lipidSpeciesInfoBuilder().
-                level(LipidLevel.MOLECULAR_SUBSPECIES).
+        return LipidSpeciesInfo.lipidSpeciesInfoBuilder().
+                level(level).
                 name(headGroup.getName()).
                 position(-1).
                 nCarbon(nCarbon).
@@ -90,50 +106,41 @@ public class LipidMolecularSubspecies extends LipidSpecies {
         return hgToFaSep;
     }
 
-    protected StringBuilder buildSubspeciesHeadGroupString(String headGroup, boolean normalizeHeadGroup) {
-        StringBuilder lipidString = new StringBuilder();
-        lipidString.append(Optional.ofNullable(getHeadGroup().getLipidClass()).map((lclass) -> {
-            switch (lclass) {
-//                case SE:
-                case SE_27_1:
-                case SE_27_2:
-                case SE_28_2:
-                case SE_28_3:
-                case SE_29_2:
-                case SE_30_2:
-                    if (!getFa().isEmpty()) {
-                        return (normalizeHeadGroup ? headGroup : getNormalizedHeadGroup()) + getHeadGroupSuffix().trim() + "/";
-                    }
+    protected void writeSubspeciesHeadGroup(Appendable out, String headGroup, boolean normalizeHeadGroup) throws IOException {
+        if (isSterolEster() && !fa.isEmpty()) {
+            out.append(normalizeHeadGroup ? headGroup : getNormalizedHeadGroup()).append(getHeadGroupSuffix().trim()).append('/');
+        } else {
+            out.append(headGroup);
+            if (!fa.isEmpty()) {
+                out.append(getHeadGroupSuffix());
             }
-            return headGroup + (getFa().isEmpty() ? "" : getHeadGroupSuffix());
-        }).orElse(headGroup + (getFa().isEmpty() ? "" : getHeadGroupSuffix())));
-        return lipidString;
-    }
-
-    protected String buildLipidSubspeciesName(LipidLevel level, String faSeparator, String headGroup, boolean isNormalized) {
-        StringBuilder sb = new StringBuilder();
-        String faStrings = getFa().values().stream().map((fa) -> {
-            return fa.buildSubstructureName(level);
-        }).collect(Collectors.joining(faSeparator));
-        return sb.append(buildSubspeciesHeadGroupString(headGroup, isNormalized)
-        ).append(faStrings).toString();
+        }
     }
 
-    @Override
-    public String getLipidString(LipidLevel level) {
-        return this.getLipidString(level, false);
+    protected void writeLipidSubspeciesName(Appendable out, LipidLevel level, String faSeparator, String headGroup, boolean isNormalized) throws IOException {
+        writeSubspeciesHeadGroup(out, headGroup, isNormalized);
+        boolean first = true;
+        for (FattyAcid fa : this.fa.values()) {
+            if (!first) {
+                out.append(faSeparator);
+            }
+            fa.appendSubstructureName(out, level);
+            first = false;
+        }
     }
 
     @Override
-    public String getLipidString(LipidLevel level, boolean normalizeHeadGroup) {
+    protected void writeLipidString(Appendable out, LipidLevel level, boolean normalizeHeadGroup) throws IOException {
         String headGroup = normalizeHeadGroup ? getNormalizedHeadGroup() : getHeadGroup().getName();
         switch (level) {
             case MOLECULAR_SUBSPECIES:
-                return buildLipidSubspeciesName(level, "-", headGroup, normalizeHeadGroup);
+                writeLipidSubspeciesName(out, level, "-", headGroup, normalizeHeadGroup);
+                break;
             case CATEGORY:
             case CLASS:
             case SPECIES:
-                return super.getLipidString(level, normalizeHeadGroup);
+                super.writeLipidString(out, level, normalizeHeadGroup);
+                break;
             default:
                 LipidLevel thisLevel = getInfo().getLevel();
                 throw new ConstraintViolationException(getClass().getSimpleName() + " can not create a string for lipid with level " + thisLevel + " for level " + level + ": target level is more specific than this lipid's level!");
@@ -5,11 +5,14 @@ package de.isas.lipidomics.domain;
 
 import static de.isas.lipidomics.domain.Element.ELEMENT_H;
 import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.Setter;
 
 /**
@@ -22,6 +25,11 @@ import lombok.Setter;
  * of unknown individual composition, but known total composition (32 carbon
  * atoms, zero double bonds, no hydroxylations).
  *
+ * Lipid species and their subspecies are immutable once constructed. Their
+ * fatty acyls are only exposed as unmodifiable maps and the hash code is
+ * computed once on first use, so instances can be used as cache keys and
+ * shared between threads.
+ *
  * @author nils.hoffmann
  * @see LipidCategory
  * @see LipidClass
@@ -30,6 +38,7 @@ import lombok.Setter;
  * @see LipidIsomericSubspecies
  */
 @Data
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class LipidSpecies {
 
     private static final class None extends LipidSpecies {
@@ -41,8 +50,12 @@ public class LipidSpecies {
 
     public static final LipidSpecies NONE = new None();
     private final HeadGroup headGroup;
+    private final LipidSpeciesInfo info;
+    @Getter(AccessLevel.NONE)
+    private final transient String[] lipidStrings = new String[LipidLevel.values().length * 2];
+    @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
-    protected LipidSpeciesInfo info;
+    private transient byte etherLipid;
 
     /**
      * Create a lipid species using the provided head group and a lipid species
@@ -61,14 +74,28 @@ public class LipidSpecies {
      * retrieve the category of this lipid automatically, or sets the category
      * to {@link LipidCategory#UNDEFINED}. The lipid species info, which
      * contains details about the total no. of carbons in FA chains, no. of
-     * double bonds etc., is used as provided.
+     * double bonds etc., is replaced by its canonical instance, see
+     * {@link FattyAcidInterner}.
      *
      * @param headGroup the lipid species head group.
      * @param lipidSpeciesInfo the lipid species info object.
      */
     public LipidSpecies(HeadGroup headGroup, Optional<LipidSpeciesInfo> lipidSpeciesInfo) {
+        this(headGroup, lipidSpeciesInfo.orElse(LipidSpeciesInfo.NONE));
+    }
+
+    /**
+     * Create a lipid species from a head group and the
+     * {@link LipidSpeciesInfo} that a subclass computed from its fatty acyls.
+     * The lipid species info is replaced by its canonical instance, see
+     * {@link FattyAcidInterner}.
+     *
+     * @param headGroup the lipid species head group.
+     * @param lipidSpeciesInfo the lipid species info object.
+     */
+    protected LipidSpecies(HeadGroup headGroup, LipidSpeciesInfo lipidSpeciesInfo) {
         this.headGroup = headGroup;
-        this.info = lipidSpeciesInfo.orElse(LipidSpeciesInfo.NONE);
+        this.info = FattyAcidInterner.DEFAULT.intern(lipidSpeciesInfo);
     }
 
     /**
@@ -90,6 +117,16 @@ public class LipidSpecies {
      * species, a Plasmanyl or Plasmenyl species.
      */
     public boolean isEtherLipid() {
+        // racy single-check on a tri-state: 0 = unknown, 1 = false, 2 = true
+        byte ether = this.etherLipid;
+        if (ether == 0) {
+            ether = computeEtherLipid() ? (byte) 2 : (byte) 1;
+            this.etherLipid = ether;
+        }
+        return ether == 2;
+    }
+
+    private boolean computeEtherLipid() {
         LipidSpeciesInfo info = this.info;
         LipidFaBondType bondType = info.getLipidFaBondType();
         return bondType == LipidFaBondType.ETHER_PLASMANYL
@@ -117,23 +154,26 @@ public class LipidSpecies {
 
     /**
      * Returns a lipid string representation for the given {@link LipidLevel},
-     * e.g. Category, Species, etc. Please note that this method is overridden
-     * by specific implementations for molecular, structural and isomeric
-     * subspecies levels. This method does not normalize the head group.
+     * e.g. Category, Species, etc. This method does not normalize the head
+     * group.
      *
      * @param level the lipid level to report the name of this lipid on.
      * @return the lipid name.
      */
     public String getLipidString(LipidLevel level) {
-        return this.buildLipidString(level, headGroup.getName(), false);
+        return getLipidString(level, false);
     }
 
     /**
      * Returns a lipid string representation for the given {@link LipidLevel},
-     * e.g. Category, Species, etc. Please note that this method is overridden
-     * by specific implementations for molecular, structural and isomeric
-     * subspecies levels. This method normalizes the head group to the primary
-     * class-specific synonym. E.g. TG would be normalized to TAG.
+     * e.g. Category, Species, etc. This method normalizes the head group to
+     * the primary class-specific synonym. E.g. TG would be normalized to TAG.
+     *
+     * Names are created on first request by
+     * {@link #writeLipidString(Appendable, LipidLevel, boolean)} and cached
+     * per level and normalization flag. The cache uses a racy single-check
+     * without locking: concurrent callers may both create the name, but since
+     * Strings are immutable, each of them observes a complete value.
      *
      * @param level the lipid level to report the name of this lipid on.
      * @param normalizeHeadGroup if true, use class specific synonym for
@@ -141,49 +181,100 @@ public class LipidSpecies {
      * @return the lipid name.
      */
     public String getLipidString(LipidLevel level, boolean normalizeHeadGroup) {
-        return this.buildLipidString(level, normalizeHeadGroup ? getNormalizedHeadGroup() : headGroup.getName(), normalizeHeadGroup);
+        int index = level.ordinal() * 2 + (normalizeHeadGroup ? 1 : 0);
+        String lipidString = lipidStrings[index];
+        if (lipidString == null) {
+            lipidString = Appendables.appendTo(new StringBuilder(), (out) -> {
+                writeLipidString(out, level, normalizeHeadGroup);
+            }).toString();
+            lipidStrings[index] = lipidString;
+        }
+        return lipidString;
     }
 
-    protected StringBuilder buildSpeciesHeadGroupString(String headGroup, boolean normalizeHeadGroup) {
-        StringBuilder lipidString = new StringBuilder();
-        lipidString.append(Optional.ofNullable(this.headGroup.getLipidClass()).map((lclass) -> {
-            switch (lclass) {
-//                case SE:
-                case SE_27_1:
-                case SE_27_2:
-                case SE_28_2:
-                case SE_28_3:
-                case SE_29_2:
-                case SE_30_2:
-                    return getNormalizedHeadGroup() + "/"; // use this for disambiguation to avoid SE 16:1 to be similar to SE 43:2 because of expansion to SE 27:1/16:1
-            }
-            return headGroup + " ";
-        }).orElse(headGroup + " "));
-        return lipidString;
+    /**
+     * Appends the lipid string representation for the given
+     * {@link LipidLevel} to the provided appendable. If the name has been
+     * requested before via {@link #getLipidString(LipidLevel, boolean)}, the
+     * cached name is appended. Otherwise, the name is written directly,
+     * without creating an intermediate String and without caching it.
+     *
+     * @param <T> the type of the appendable.
+     * @param out the appendable to write to.
+     * @param level the lipid level to report the name of this lipid on.
+     * @param normalizeHeadGroup if true, use class specific synonym for
+     * headGroup, if false, use head group as parsed.
+     * @return the appendable.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public <T extends Appendable> T appendLipidString(T out, LipidLevel level, boolean normalizeHeadGroup) throws IOException {
+        String lipidString = lipidStrings[level.ordinal() * 2 + (normalizeHeadGroup ? 1 : 0)];
+        if (lipidString != null) {
+            out.append(lipidString);
+        } else {
+            writeLipidString(out, level, normalizeHeadGroup);
+        }
+        return out;
     }
 
-    protected String buildLipidString(LipidLevel level, String headGroup, boolean isNormalized) throws ConstraintViolationException {
+    /**
+     * Appends the lipid string representation for the given
+     * {@link LipidLevel} to the provided string builder.
+     *
+     * @param sb the string builder to write to.
+     * @param level the lipid level to report the name of this lipid on.
+     * @param normalizeHeadGroup if true, use class specific synonym for
+     * headGroup, if false, use head group as parsed.
+     * @return the string builder.
+     * @see #appendLipidString(Appendable, LipidLevel, boolean)
+     */
+    public StringBuilder appendLipidString(StringBuilder sb, LipidLevel level, boolean normalizeHeadGroup) {
+        return Appendables.appendTo(sb, (out) -> {
+            appendLipidString(out, level, normalizeHeadGroup);
+        });
+    }
+
+    /**
+     * Writes the lipid string representation for the given {@link LipidLevel}
+     * to the provided appendable. Subclasses override this method to write
+     * names on their specific levels and delegate to it for coarser levels.
+     *
+     * @param out the appendable to write to.
+     * @param level the lipid level to report the name of this lipid on.
+     * @param normalizeHeadGroup if true, use class specific synonym for
+     * headGroup, if false, use head group as parsed.
+     * @throws IOException if the appendable throws an IOException.
+     * @throws ConstraintViolationException if the level is more specific than
+     * this lipid's level.
+     */
+    protected void writeLipidString(Appendable out, LipidLevel level, boolean normalizeHeadGroup) throws IOException {
         switch (level) {
             case CATEGORY:
-                return this.headGroup.getLipidCategory().name();
+                out.append(this.headGroup.getLipidCategory().name());
+                break;
             case CLASS:
-                return this.headGroup.getLipidClass().name();
+                out.append(this.headGroup.getLipidClass().name());
+                break;
             case SPECIES:
-                StringBuilder lipidString = new StringBuilder();
-                lipidString.append(buildSpeciesHeadGroupString(headGroup, isNormalized));
                 LipidSpeciesInfo info = this.info;
+                if (isSterolEster()) {
+                    out.append(getNormalizedHeadGroup()).append('/'); // use this for disambiguation to avoid SE 16:1 to be similar to SE 43:2 because of expansion to SE 27:1/16:1
+                } else {
+                    out.append(normalizeHeadGroup ? getNormalizedHeadGroup() : headGroup.getName());
+                    if (info.getNCarbon() > 0) {
+                        out.append(' ');
+                    }
+                }
                 if (info.getNCarbon() > 0) {
-                    int nCarbon = info.getNCarbon();
-                    String hgToFaSep = "";
                     if (isEtherLipid()) {
-                        hgToFaSep = "O-";
+                        out.append("O-");
                     }
-                    lipidString.append(hgToFaSep).append(nCarbon);
-                    int nDB = info.getNDoubleBonds();
-                    lipidString.append(":").append(nDB);
-                    int nHydroxy = info.getNHydroxy();
-                    lipidString.append(nHydroxy > 0 ? ";" + nHydroxy : "");
-                    lipidString.append(info.getLipidFaBondType().suffix());
+                    Appendables.appendInt(out, info.getNCarbon()).append(':');
+                    Appendables.appendInt(out, info.getNDoubleBonds());
+                    if (info.getNHydroxy() > 0) {
+                        Appendables.appendInt(out.append(';'), info.getNHydroxy());
+                    }
+                    out.append(info.getLipidFaBondType().suffix());
                     //TODO reenable once LSI has finished modification specification
 //                    if (!info.getModifications().isEmpty()) {
 //                        lipidString.append("(");
@@ -193,15 +284,41 @@ public class LipidSpecies {
 //                        lipidString.append(")");
 //                    }
                 }
-                return lipidString.toString().trim();
+                break;
             case UNDEFINED:
-                return this.headGroup.getName();
+                out.append(this.headGroup.getName());
+                break;
             default:
                 LipidLevel thisLevel = getInfo().getLevel();
                 throw new ConstraintViolationException(getClass().getSimpleName() + " can not create a string for lipid with level " + thisLevel + " for level " + level + ": target level is more specific than this lipid's level!");
         }
     }
 
+    /**
+     * Returns true, if this lipid belongs to one of the sterol ester classes.
+     * Their names start with the normalized head group and a slash.
+     *
+     * @return true for sterol esters.
+     */
+    protected boolean isSterolEster() {
+        LipidClass lclass = this.headGroup.getLipidClass();
+        if (lclass == null) {
+            return false;
+        }
+        switch (lclass) {
+//            case SE:
+            case SE_27_1:
+            case SE_27_2:
+            case SE_28_2:
+            case SE_28_3:
+            case SE_29_2:
+            case SE_30_2:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Returns a lipid string representation for the head group of this lipid.
      * This method normalizes the original head group name to the class specific
@@ -30,7 +30,7 @@ import lombok.EqualsAndHashCode;
  * @author nils.hoffmann
  */
 @Data
-@EqualsAndHashCode(callSuper = true)
+@EqualsAndHashCode(callSuper = true, cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class LipidSpeciesInfo extends FattyAcid {
 
     private static final class None extends LipidSpeciesInfo {
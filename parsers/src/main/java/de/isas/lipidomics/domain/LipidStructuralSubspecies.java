@@ -16,6 +16,7 @@
 package de.isas.lipidomics.domain;
 
 import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.IOException;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -30,56 +31,41 @@ import lombok.EqualsAndHashCode;
  * @see LipidMolecularSubspecies
  */
 @Data
-@EqualsAndHashCode(callSuper = true)
+@EqualsAndHashCode(callSuper = true, cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class LipidStructuralSubspecies extends LipidMolecularSubspecies {
 
     @Builder(builderMethodName = "lipidStructuralSubspeciesBuilder")
     public LipidStructuralSubspecies(HeadGroup headGroup, FattyAcid... fa) {
-        super(headGroup);
-        int nCarbon = 0;
-        int nHydroxyl = 0;
-        int nDoubleBonds = 0;
-        ModificationsList mods = new ModificationsList();
-        for (FattyAcid fas : fa) {
-            if (super.fa.containsKey(fas.getName())) {
-                throw new ConstraintViolationException(
-                        "FA names must be unique! FA with name " + fas.getName() + " was already added!");
-            } else {
-                super.fa.put(fas.getName(), fas);
-                nCarbon += fas.getNCarbon();
-                nHydroxyl += fas.getNHydroxy();
-                nDoubleBonds += fas.getNDoubleBonds();
-                mods.addAll(fas.getModifications());
-            }
-        }
-        super.info = LipidSpeciesInfo.lipidSpeciesInfoBuilder().
-                level(LipidLevel.STRUCTURAL_SUBSPECIES).
-                name(headGroup.getName()).
-                position(-1).
-                nCarbon(nCarbon).
-                nHydroxy(nHydroxyl).
-                nDoubleBonds(nDoubleBonds).
-                lipidFaBondType(LipidFaBondType.getLipidFaBondType(headGroup, fa)).
-                modifications(mods).
-                build();
+        this(headGroup, LipidLevel.STRUCTURAL_SUBSPECIES, fa);
     }
 
-    @Override
-    public String getLipidString(LipidLevel level) {
-        return this.getLipidString(level, false);
+    /**
+     * Creates a new lipid with the given fatty acyls, whose species info sums
+     * up the fatty acyls at the given level.
+     *
+     * @param headGroup the head group for this lipid.
+     * @param level the level of this lipid.
+     * @param fa the FattyAcids attached to this lipid.
+     * @throws ConstraintViolationException if two fatty acyls have the same
+     * name.
+     */
+    protected LipidStructuralSubspecies(HeadGroup headGroup, LipidLevel level, FattyAcid... fa) {
+        super(headGroup, level, fa);
     }
 
     @Override
-    public String getLipidString(LipidLevel level, boolean normalizeHeadGroup) {
+    protected void writeLipidString(Appendable out, LipidLevel level, boolean normalizeHeadGroup) throws IOException {
         String headGroup = normalizeHeadGroup ? getNormalizedHeadGroup() : getHeadGroup().getName();
         switch (level) {
             case STRUCTURAL_SUBSPECIES:
-                return super.buildLipidSubspeciesName(level, "/", headGroup, normalizeHeadGroup);
+                writeLipidSubspeciesName(out, level, "/", headGroup, normalizeHeadGroup);
+                break;
             case MOLECULAR_SUBSPECIES:
             case CATEGORY:
             case CLASS:
             case SPECIES:
-                return super.getLipidString(level, normalizeHeadGroup);
+                super.writeLipidString(out, level, normalizeHeadGroup);
+                break;
             default:
                 LipidLevel thisLevel = getInfo().getLevel();
                 throw new ConstraintViolationException(getClass().getSimpleName() + " can not create a normalized string for lipid with level " + thisLevel + " for level " + level + ": target level is more specific than this lipid's level!");
@@ -51,6 +51,20 @@ public class ModificationsList implements List<Pair<Integer, String>> {
 
     private final List<Pair<Integer, String>> al;
 
+    /**
+     * Returns an unmodifiable copy of the provided modifications list. Returns
+     * the shared, empty {@link #NONE} instance for null or empty input.
+     *
+     * @param modifications the modifications to copy, may be null.
+     * @return an unmodifiable modifications list.
+     */
+    public static ModificationsList unmodifiableCopyOf(ModificationsList modifications) {
+        if (modifications == null || modifications.isEmpty()) {
+            return NONE;
+        }
+        return new ModificationsList(Collections.unmodifiableList(new ArrayList<>(modifications.al)));
+    }
+
     @Override
     public int size() {
         return al.size();
@@ -0,0 +1,527 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Append-only store for very large numbers of parsed lipids, which keeps them
+ * outside of the Java heap in direct byte buffers. Each lipid occupies a fixed
+ * size record of {@link #RECORD_SIZE} bytes, so that it can be accessed by its
+ * id in constant time, plus its UTF-8 encoded name in a separate name area.
+ * Since the garbage collector only sees a few large buffers, even hundreds of
+ * millions of lipids do not prolong GC pauses.
+ *
+ * A record holds, at the given byte offsets:
+ * <pre>
+ *  0  short  head group id
+ *  2  short  adduct id, -1 for none
+ *  4  short  fragment id, -1 for none
+ *  6  byte   {@link LipidLevel} ordinal
+ *  7  byte   {@link LipidFaBondType} ordinal of the species info
+ *  8  short  total number of carbon atoms
+ * 10  byte   total number of double bonds
+ * 11  byte   total number of hydroxy groups
+ * 12  byte   number of fatty acyls
+ * 14  short  length of the name in bytes
+ * 16  long   offset of the name in the name area
+ * 24  short  name id of each of the up to {@link #MAX_CHAINS} fatty acyls
+ * 32  up to {@link #MAX_CHAINS} fatty acyls as two longs each, see {@link PackedFattyAcid}
+ * </pre> Head groups, adducts, fragments and fatty acyl names, e.g. "LCB" or
+ * "FA1", are few distinct values, which are kept on the heap and referenced by
+ * id. Lipids with fatty acyls that can not be packed, e.g. with modifications,
+ * are rejected.
+ *
+ * Lipids are read through {@link LipidView} and {@link FattyAcidView}
+ * flyweights, which offer the getters of {@link LipidSpecies} and
+ * {@link FattyAcid}, but read directly from the records. A view can be moved
+ * to another record, so iterating over all lipids does not create any objects
+ * per lipid. Adding is synchronized, reading is thread-safe, provided each
+ * thread uses its own views. The off-heap memory is released when the store is
+ * no longer referenced.
+ *
+ * @author nils.hoffmann
+ */
+public final class OffHeapLipidStore implements Iterable<OffHeapLipidStore.LipidView> {
+
+    /**
+     * The maximum number of fatty acyls per lipid.
+     */
+    public static final int MAX_CHAINS = 4;
+
+    /**
+     * The size of a lipid record in bytes.
+     */
+    public static final int RECORD_SIZE = 24 + MAX_CHAINS * 2 + MAX_CHAINS * 16;
+
+    static final int RECORDS_PER_CHUNK = 1 << 18;
+    static final int NAME_CHUNK_SIZE = 1 << 24;
+
+    private static final int HEAD_GROUP = 0;
+    private static final int ADDUCT = 2;
+    private static final int FRAGMENT = 4;
+    private static final int LEVEL = 6;
+    private static final int BOND_TYPE = 7;
+    private static final int CARBON = 8;
+    private static final int DOUBLE_BONDS = 10;
+    private static final int HYDROXY = 11;
+    private static final int CHAINS = 12;
+    private static final int NAME_LENGTH = 14;
+    private static final int NAME_OFFSET = 16;
+    private static final int CHAIN_NAMES = 24;
+    private static final int CHAIN_DATA = CHAIN_NAMES + MAX_CHAINS * 2;
+
+    private static final LipidLevel[] LIPID_LEVELS = LipidLevel.values();
+    private static final LipidFaBondType[] BOND_TYPES = LipidFaBondType.values();
+
+    private volatile ByteBuffer[] recordChunks = new ByteBuffer[0];
+    private volatile ByteBuffer[] nameChunks = new ByteBuffer[0];
+    private volatile int size;
+    private int nameChunkPosition = NAME_CHUNK_SIZE;
+    private final List<HeadGroup> headGroups = new CopyOnWriteArrayList<>();
+    private final List<Adduct> adducts = new CopyOnWriteArrayList<>();
+    private final List<Fragment> fragments = new CopyOnWriteArrayList<>();
+    private final List<String> chainNames = new CopyOnWriteArrayList<>();
+    private final Map<HeadGroup, Integer> headGroupIds = new HashMap<>();
+    private final Map<Adduct, Integer> adductIds = new HashMap<>();
+    private final Map<Fragment, Integer> fragmentIds = new HashMap<>();
+    private final Map<String, Integer> chainNameIds = new HashMap<>();
+
+    /**
+     * Appends the lipid adduct.
+     *
+     * @param lipidAdduct the lipid adduct.
+     * @return the id of the lipid in this store.
+     * @throws ConstraintViolationException if the lipid can not be stored,
+     * e.g. since it has more than {@link #MAX_CHAINS} fatty acyls or fatty
+     * acyls with modifications.
+     */
+    public synchronized int add(LipidAdduct lipidAdduct) {
+        LipidSpecies lipid = lipidAdduct.getLipid() == null ? LipidSpecies.NONE : lipidAdduct.getLipid();
+        Map<String, FattyAcid> fas = lipid.getFa();
+        if (fas.size() > MAX_CHAINS) {
+            throw new ConstraintViolationException("Lipid " + lipidAdduct.getLipidString() + " has more than " + MAX_CHAINS + " fatty acyls!");
+        }
+        for (FattyAcid fa : fas.values()) {
+            if (!PackedFattyAcid.isPackable(fa)) {
+                throw new ConstraintViolationException("Fatty acyl " + fa.getName() + " of lipid " + lipidAdduct.getLipidString() + " can not be stored off-heap!");
+            }
+        }
+        LipidSpeciesInfo info = lipid.getInfo();
+        if (info.getNCarbon() > Short.MAX_VALUE || info.getNDoubleBonds() > Byte.MAX_VALUE || info.getNHydroxy() > Byte.MAX_VALUE) {
+            throw new ConstraintViolationException("Lipid " + lipidAdduct.getLipidString() + " exceeds the record value ranges!");
+        }
+        byte[] name = lipidAdduct.getLipidString().getBytes(StandardCharsets.UTF_8);
+        if (name.length > Short.MAX_VALUE) {
+            throw new ConstraintViolationException("Lipid name must not be longer than " + Short.MAX_VALUE + " bytes!");
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new ConstraintViolationException("Off-heap lipid store is full!");
+        }
+        int id = size;
+        if (id / RECORDS_PER_CHUNK == recordChunks.length) {
+            ByteBuffer[] chunks = Arrays.copyOf(recordChunks, recordChunks.length + 1);
+            chunks[chunks.length - 1] = ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE).order(ByteOrder.nativeOrder());
+            recordChunks = chunks;
+        }
+        ByteBuffer records = recordChunks[id / RECORDS_PER_CHUNK];
+        int base = (id % RECORDS_PER_CHUNK) * RECORD_SIZE;
+        records.putShort(base + HEAD_GROUP, (short) dictionaryId(lipid.getHeadGroup(), headGroups, headGroupIds));
+        records.putShort(base + ADDUCT, (short) dictionaryId(lipidAdduct.getAdduct(), adducts, adductIds));
+        records.putShort(base + FRAGMENT, (short) dictionaryId(lipidAdduct.getFragment(), fragments, fragmentIds));
+        records.put(base + LEVEL, (byte) info.getLevel().ordinal());
+        records.put(base + BOND_TYPE, (byte) info.getLipidFaBondType().ordinal());
+        records.putShort(base + CARBON, (short) info.getNCarbon());
+        records.put(base + DOUBLE_BONDS, (byte) info.getNDoubleBonds());
+        records.put(base + HYDROXY, (byte) info.getNHydroxy());
+        records.put(base + CHAINS, (byte) fas.size());
+        records.putShort(base + NAME_LENGTH, (short) name.length);
+        records.putLong(base + NAME_OFFSET, appendName(name));
+        int chain = 0;
+        for (FattyAcid fa : fas.values()) {
+            records.putShort(base + CHAIN_NAMES + chain * 2, (short) dictionaryId(fa.getName(), chainNames, chainNameIds));
+            records.putLong(base + CHAIN_DATA + chain * 16, fa.getPackedHeader());
+            records.putLong(base + CHAIN_DATA + chain * 16 + 8, fa.getPackedDoubleBonds());
+            chain++;
+        }
+        // publishes the record to readers
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * Returns the number of lipids in this store.
+     *
+     * @return the number of lipids.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a new view positioned on the lipid with the given id.
+     *
+     * @param id the lipid id.
+     * @return a new view.
+     */
+    public LipidView get(int id) {
+        return new LipidView().moveTo(id);
+    }
+
+    /**
+     * Returns an iterator over all lipids. The iterator returns the same view
+     * instance for each lipid, moved to the next record. Do not keep references
+     * to the returned view across iterations.
+     *
+     * @return the iterator.
+     */
+    @Override
+    public Iterator<LipidView> iterator() {
+        return new Iterator<LipidView>() {
+            private final LipidView view = new LipidView();
+            private final int end = size;
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public LipidView next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                return view.moveTo(next++);
+            }
+        };
+    }
+
+    /**
+     * Calls the action for each lipid with a single view, which is moved from
+     * record to record.
+     *
+     * @param action the action.
+     */
+    @Override
+    public void forEach(Consumer<? super LipidView> action) {
+        LipidView view = new LipidView();
+        int end = size;
+        for (int id = 0; id < end; id++) {
+            action.accept(view.moveTo(id));
+        }
+    }
+
+    private static <T> int dictionaryId(T value, List<T> values, Map<T, Integer> ids) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            if (values.size() > Short.MAX_VALUE) {
+                throw new ConstraintViolationException("Too many distinct values of type " + value.getClass().getSimpleName() + " for off-heap lipid store!");
+            }
+            id = values.size();
+            values.add(value);
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    private long appendName(byte[] name) {
+        if (nameChunkPosition + name.length > NAME_CHUNK_SIZE) {
+            ByteBuffer[] chunks = Arrays.copyOf(nameChunks, nameChunks.length + 1);
+            chunks[chunks.length - 1] = ByteBuffer.allocateDirect(NAME_CHUNK_SIZE);
+            nameChunks = chunks;
+            nameChunkPosition = 0;
+        }
+        ByteBuffer chunk = nameChunks[nameChunks.length - 1].duplicate();
+        chunk.position(nameChunkPosition);
+        chunk.put(name);
+        long offset = (long) (nameChunks.length - 1) * NAME_CHUNK_SIZE + nameChunkPosition;
+        nameChunkPosition += name.length;
+        return offset;
+    }
+
+    /**
+     * A flyweight view of a lipid record, with the getters of
+     * {@link LipidSpecies} and its {@link LipidSpeciesInfo}. Views are not
+     * thread-safe.
+     */
+    public final class LipidView {
+
+        private final FattyAcidView[] fas = new FattyAcidView[MAX_CHAINS];
+        private ByteBuffer records;
+        private int base;
+        private int id = -1;
+
+        private LipidView() {
+
+        }
+
+        /**
+         * Moves this view to the lipid with the given id.
+         *
+         * @param id the lipid id.
+         * @return this view.
+         */
+        public LipidView moveTo(int id) {
+            if (id < 0 || id >= size) {
+                throw new IndexOutOfBoundsException("Lipid id " + id + " is out of bounds for store of size " + size + "!");
+            }
+            this.records = recordChunks[id / RECORDS_PER_CHUNK];
+            this.base = (id % RECORDS_PER_CHUNK) * RECORD_SIZE;
+            this.id = id;
+            return this;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public HeadGroup getHeadGroup() {
+            return headGroups.get(records.getShort(base + HEAD_GROUP));
+        }
+
+        public LipidClass getLipidClass() {
+            return getHeadGroup().getLipidClass();
+        }
+
+        public LipidCategory getLipidCategory() {
+            return getHeadGroup().getLipidCategory();
+        }
+
+        public LipidLevel getLevel() {
+            return LIPID_LEVELS[records.get(base + LEVEL)];
+        }
+
+        public LipidFaBondType getLipidFaBondType() {
+            return BOND_TYPES[records.get(base + BOND_TYPE)];
+        }
+
+        public int getNCarbon() {
+            return records.getShort(base + CARBON);
+        }
+
+        public int getNDoubleBonds() {
+            return records.get(base + DOUBLE_BONDS);
+        }
+
+        public int getNHydroxy() {
+            return records.get(base + HYDROXY);
+        }
+
+        /**
+         * Returns the adduct of this lipid.
+         *
+         * @return the adduct, or null if the lipid had none.
+         */
+        public Adduct getAdduct() {
+            int adductId = records.getShort(base + ADDUCT);
+            return adductId < 0 ? null : adducts.get(adductId);
+        }
+
+        /**
+         * Returns the fragment of this lipid.
+         *
+         * @return the fragment, or null if the lipid had none.
+         */
+        public Fragment getFragment() {
+            int fragmentId = records.getShort(base + FRAGMENT);
+            return fragmentId < 0 ? null : fragments.get(fragmentId);
+        }
+
+        /**
+         * Returns true, if the species info or any fatty acyl has an ether
+         * bond type, see {@link LipidSpecies#isEtherLipid()}.
+         *
+         * @return whether this is an ether lipid.
+         */
+        public boolean isEtherLipid() {
+            if (isEther(getLipidFaBondType())) {
+                return true;
+            }
+            for (int i = 0; i < getFaCount(); i++) {
+                if (isEther(getFa(i).getLipidFaBondType())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the number of fatty acyls.
+         *
+         * @return the number of fatty acyls.
+         */
+        public int getFaCount() {
+            return records.get(base + CHAINS);
+        }
+
+        /**
+         * Returns a view of the fatty acyl at the given index, in the order of
+         * {@link LipidSpecies#getFa()}. The view is owned by this lipid view
+         * and is moved along with it.
+         *
+         * @param index the index of the fatty acyl.
+         * @return the fatty acyl view.
+         */
+        public FattyAcidView getFa(int index) {
+            if (index < 0 || index >= getFaCount()) {
+                throw new IndexOutOfBoundsException("Fatty acyl " + index + " does not exist, lipid has " + getFaCount() + " fatty acyls!");
+            }
+            FattyAcidView fa = fas[index];
+            if (fa == null) {
+                fa = new FattyAcidView(this, index);
+                fas[index] = fa;
+            }
+            return fa;
+        }
+
+        /**
+         * Returns the lipid name with adduct, as returned by
+         * {@link LipidAdduct#getLipidString()}. This creates a new string.
+         *
+         * @return the lipid name.
+         */
+        public String getLipidString() {
+            long offset = records.getLong(base + NAME_OFFSET);
+            int length = records.getShort(base + NAME_LENGTH);
+            ByteBuffer chunk = nameChunks[(int) (offset / NAME_CHUNK_SIZE)].duplicate();
+            int position = (int) (offset % NAME_CHUNK_SIZE);
+            chunk.limit(position + length).position(position);
+            return StandardCharsets.UTF_8.decode(chunk).toString();
+        }
+
+        String getChainName(int index) {
+            int nameId = records.getShort(base + CHAIN_NAMES + index * 2);
+            return nameId < 0 ? null : chainNames.get(nameId);
+        }
+
+        long getChainHeader(int index) {
+            return records.getLong(base + CHAIN_DATA + index * 16);
+        }
+
+        long getChainDoubleBonds(int index) {
+            return records.getLong(base + CHAIN_DATA + index * 16 + 8);
+        }
+
+        @Override
+        public String toString() {
+            return getLipidString();
+        }
+    }
+
+    /**
+     * A flyweight view of a fatty acyl in a lipid record, with the getters of
+     * {@link FattyAcid}. It always refers to the record its lipid view is
+     * positioned on.
+     */
+    public static final class FattyAcidView {
+
+        private final LipidView lipid;
+        private final int index;
+
+        private FattyAcidView(LipidView lipid, int index) {
+            this.lipid = lipid;
+            this.index = index;
+        }
+
+        /**
+         * Returns the name of this fatty acyl as assigned by the parsers, e.g.
+         * "LCB" for the long chain base and "FA1", "FA2" and so on for the
+         * other fatty acyls.
+         *
+         * @return the name.
+         */
+        public String getName() {
+            return lipid.getChainName(index);
+        }
+
+        public FattyAcidType getType() {
+            return PackedFattyAcid.getType(lipid.getChainHeader(index));
+        }
+
+        public int getPosition() {
+            return PackedFattyAcid.getPosition(lipid.getChainHeader(index));
+        }
+
+        public int getNCarbon() {
+            return PackedFattyAcid.getNCarbon(lipid.getChainHeader(index));
+        }
+
+        public int getNHydroxy() {
+            return PackedFattyAcid.getNHydroxy(lipid.getChainHeader(index));
+        }
+
+        public int getNDoubleBonds() {
+            return PackedFattyAcid.getNDoubleBonds(lipid.getChainHeader(index));
+        }
+
+        public LipidFaBondType getLipidFaBondType() {
+            return PackedFattyAcid.getLipidFaBondType(lipid.getChainHeader(index));
+        }
+
+        public boolean isLcb() {
+            return PackedFattyAcid.isLcb(lipid.getChainHeader(index));
+        }
+
+        public boolean hasDoubleBondAt(int dbPosition) {
+            return PackedFattyAcid.hasDoubleBondAt(lipid.getChainDoubleBonds(index), dbPosition);
+        }
+
+        /**
+         * Returns the double bond positions and configurations. This creates
+         * a new map.
+         *
+         * @return the double bond positions.
+         */
+        public Map<Integer, String> getDoubleBondPositions() {
+            return PackedFattyAcid.getDoubleBondPositions(lipid.getChainHeader(index), lipid.getChainDoubleBonds(index));
+        }
+
+        /**
+         * Creates the {@link FattyAcid} for this view.
+         *
+         * @return the fatty acid.
+         */
+        public FattyAcid toFattyAcid() {
+            return PackedFattyAcid.toFattyAcid(getName(), lipid.getChainHeader(index), lipid.getChainDoubleBonds(index));
+        }
+
+        @Override
+        public String toString() {
+            return toFattyAcid().toString();
+        }
+    }
+
+    private static boolean isEther(LipidFaBondType bondType) {
+        return bondType == LipidFaBondType.ETHER_PLASMANYL
+                || bondType == LipidFaBondType.ETHER_PLASMENYL
+                || bondType == LipidFaBondType.ETHER_UNSPECIFIED;
+    }
+}
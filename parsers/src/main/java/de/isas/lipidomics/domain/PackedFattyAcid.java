@@ -0,0 +1,350 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact encoding of a {@link FattyAcid} into two primitive longs, a header
+ * and a double bond word. Bulk consumers can compare, hash and sort chains on
+ * these primitives without touching FattyAcid objects.
+ *
+ * The header holds, from the most significant bits downwards:
+ * <pre>
+ * bits 56-63  number of carbon atoms (0-255)
+ * bits 50-55  number of double bonds (0-63)
+ * bits 45-49  number of hydroxy groups (0-31)
+ * bits 42-44  {@link LipidFaBondType} ordinal
+ * bit  41     long chain base flag
+ * bits 35-40  sn position + 1 (0 means undefined)
+ * bits 33-34  {@link FattyAcidType} ordinal
+ * bits  0-31  Z configuration flags for double bond positions 1-32
+ * </pre> The double bond word holds a bitmap of double bond positions 1-32 in
+ * bits 0-31 and the matching E configuration flags in bits 32-63. A position
+ * with neither Z nor E flag set has an unspecified configuration.
+ *
+ * Since the most significant fields come first, comparing headers as unsigned
+ * longs orders chains by carbon count, then double bond count, then hydroxy
+ * count. Modifications are not part of the encoding, see
+ * {@link #isPackable(FattyAcid)}.
+ *
+ * @author nils.hoffmann
+ */
+public final class PackedFattyAcid {
+
+    /**
+     * The highest double bond position that can be encoded.
+     */
+    public static final int MAX_DOUBLE_BOND_POSITION = 32;
+
+    private static final int CARBON_SHIFT = 56;
+    private static final int DB_SHIFT = 50;
+    private static final int HYDROXY_SHIFT = 45;
+    private static final int BOND_TYPE_SHIFT = 42;
+    private static final int LCB_SHIFT = 41;
+    private static final int POSITION_SHIFT = 35;
+    private static final int TYPE_SHIFT = 33;
+
+    private static final long CARBON_MASK = 0xFFL;
+    private static final long DB_MASK = 0x3FL;
+    private static final long HYDROXY_MASK = 0x1FL;
+    private static final long BOND_TYPE_MASK = 0x7L;
+    private static final long POSITION_MASK = 0x3FL;
+    private static final long TYPE_MASK = 0x3L;
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+
+    private static final LipidFaBondType[] BOND_TYPES = LipidFaBondType.values();
+    private static final FattyAcidType[] TYPES = FattyAcidType.values();
+
+    private PackedFattyAcid() {
+
+    }
+
+    /**
+     * Returns true, if the provided fatty acid can be represented without loss
+     * by the packed encoding. This requires that all counts fit into their bit
+     * fields, that double bonds are located at positions 1 to
+     * {@link #MAX_DOUBLE_BOND_POSITION} with a configuration of "Z", "E" or
+     * none, and that the fatty acid carries no modifications.
+     *
+     * @param fa the fatty acid.
+     * @return true if the fatty acid can be packed.
+     */
+    public static boolean isPackable(FattyAcid fa) {
+        if (fa.getNCarbon() > CARBON_MASK
+                || fa.getNDoubleBonds() > DB_MASK
+                || fa.getNHydroxy() > HYDROXY_MASK
+                || fa.getPosition() + 1 > POSITION_MASK
+                || !fa.getModifications().isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<Integer, String> entry : fa.getDoubleBondPositions().entrySet()) {
+            int dbPosition = entry.getKey();
+            if (dbPosition < 1 || dbPosition > MAX_DOUBLE_BOND_POSITION) {
+                return false;
+            }
+            String configuration = entry.getValue();
+            if (configuration == null || !(configuration.isEmpty() || "Z".equals(configuration) || "E".equals(configuration))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the header word of the provided fatty acid.
+     *
+     * @param fa the fatty acid.
+     * @return the header word.
+     * @throws ConstraintViolationException if the fatty acid is not packable.
+     */
+    public static long header(FattyAcid fa) {
+        if (!isPackable(fa)) {
+            throw new ConstraintViolationException("FattyAcid " + fa.getName() + " can not be packed: " + fa);
+        }
+        long header = header(fa.getNCarbon(), fa.getNDoubleBonds(), fa.getNHydroxy(), fa.getLipidFaBondType(), fa.isLcb(), fa.getPosition(), fa.getType());
+        for (Map.Entry<Integer, String> entry : fa.getDoubleBondPositions().entrySet()) {
+            if ("Z".equals(entry.getValue())) {
+                header |= 1L << (entry.getKey() - 1);
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Encodes a header word without double bond configurations.
+     *
+     * @param nCarbon the number of carbons.
+     * @param nDoubleBonds the number of double bonds.
+     * @param nHydroxy the number of hydroxy groups.
+     * @param bondType the bond type.
+     * @param lcb true, if this is a long chain base.
+     * @param position the sn position, -1 if undefined.
+     * @param type the fatty acid type.
+     * @return the header word.
+     */
+    public static long header(int nCarbon, int nDoubleBonds, int nHydroxy, LipidFaBondType bondType, boolean lcb, int position, FattyAcidType type) {
+        return ((nCarbon & CARBON_MASK) << CARBON_SHIFT)
+                | ((nDoubleBonds & DB_MASK) << DB_SHIFT)
+                | ((nHydroxy & HYDROXY_MASK) << HYDROXY_SHIFT)
+                | (((long) bondType.ordinal() & BOND_TYPE_MASK) << BOND_TYPE_SHIFT)
+                | ((lcb ? 1L : 0L) << LCB_SHIFT)
+                | (((position + 1) & POSITION_MASK) << POSITION_SHIFT)
+                | (((long) type.ordinal() & TYPE_MASK) << TYPE_SHIFT);
+    }
+
+    /**
+     * Encodes the double bond word of the provided fatty acid.
+     *
+     * @param fa the fatty acid.
+     * @return the double bond word.
+     * @throws ConstraintViolationException if the fatty acid is not packable.
+     */
+    public static long doubleBonds(FattyAcid fa) {
+        if (!isPackable(fa)) {
+            throw new ConstraintViolationException("FattyAcid " + fa.getName() + " can not be packed: " + fa);
+        }
+        long bonds = 0L;
+        for (Map.Entry<Integer, String> entry : fa.getDoubleBondPositions().entrySet()) {
+            int bit = entry.getKey() - 1;
+            bonds |= 1L << bit;
+            if ("E".equals(entry.getValue())) {
+                bonds |= 1L << (bit + 32);
+            }
+        }
+        return bonds;
+    }
+
+    public static int getNCarbon(long header) {
+        return (int) ((header >>> CARBON_SHIFT) & CARBON_MASK);
+    }
+
+    public static int getNDoubleBonds(long header) {
+        return (int) ((header >>> DB_SHIFT) & DB_MASK);
+    }
+
+    public static int getNHydroxy(long header) {
+        return (int) ((header >>> HYDROXY_SHIFT) & HYDROXY_MASK);
+    }
+
+    public static LipidFaBondType getLipidFaBondType(long header) {
+        return BOND_TYPES[(int) ((header >>> BOND_TYPE_SHIFT) & BOND_TYPE_MASK)];
+    }
+
+    public static boolean isLcb(long header) {
+        return ((header >>> LCB_SHIFT) & 1L) == 1L;
+    }
+
+    public static int getPosition(long header) {
+        return (int) ((header >>> POSITION_SHIFT) & POSITION_MASK) - 1;
+    }
+
+    public static FattyAcidType getType(long header) {
+        return TYPES[(int) ((header >>> TYPE_SHIFT) & TYPE_MASK)];
+    }
+
+    /**
+     * Returns true, if a double bond is located at the given position.
+     *
+     * @param doubleBonds the double bond word.
+     * @param dbPosition the double bond position, starting at 1.
+     * @return true if a double bond is set at that position.
+     */
+    public static boolean hasDoubleBondAt(long doubleBonds, int dbPosition) {
+        return dbPosition >= 1 && dbPosition <= MAX_DOUBLE_BOND_POSITION && ((doubleBonds >>> (dbPosition - 1)) & 1L) == 1L;
+    }
+
+    /**
+     * Returns the double bond configuration at the given position.
+     *
+     * @param header the header word.
+     * @param doubleBonds the double bond word.
+     * @param dbPosition the double bond position, starting at 1.
+     * @return "Z", "E" or the empty string for an unspecified configuration.
+     * Returns null, if no double bond is located at that position.
+     */
+    public static String getDoubleBondConfiguration(long header, long doubleBonds, int dbPosition) {
+        if (!hasDoubleBondAt(doubleBonds, dbPosition)) {
+            return null;
+        }
+        int bit = dbPosition - 1;
+        if (((header >>> bit) & 1L) == 1L) {
+            return "Z";
+        }
+        if (((doubleBonds >>> (bit + 32)) & 1L) == 1L) {
+            return "E";
+        }
+        return "";
+    }
+
+    /**
+     * Decodes the double bond positions and their configurations.
+     *
+     * @param header the header word.
+     * @param doubleBonds the double bond word.
+     * @return an unmodifiable map of double bond positions to configurations.
+     */
+    public static Map<Integer, String> getDoubleBondPositions(long header, long doubleBonds) {
+        int bitmap = (int) (doubleBonds & LOW_MASK);
+        if (bitmap == 0) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, String> positions = new TreeMap<>();
+        while (bitmap != 0) {
+            int dbPosition = Integer.numberOfTrailingZeros(bitmap) + 1;
+            positions.put(dbPosition, getDoubleBondConfiguration(header, doubleBonds, dbPosition));
+            bitmap &= bitmap - 1;
+        }
+        return Collections.unmodifiableMap(positions);
+    }
+
+    /**
+     * Creates a FattyAcid from its packed representation. The returned
+     * instance is the canonical one provided by {@link FattyAcidInterner}.
+     *
+     * @param name the name of the fatty acid, e.g. FA1.
+     * @param header the header word.
+     * @param doubleBonds the double bond word.
+     * @return the fatty acid.
+     */
+    public static FattyAcid toFattyAcid(String name, long header, long doubleBonds) {
+        FattyAcid fa;
+        switch (getType(header)) {
+            case ISOMERIC:
+                Map<Integer, String> dbPositions = getDoubleBondPositions(header, doubleBonds);
+                // isomeric chains may report a double bond count without positions
+                fa = new FattyAcid(name, getPosition(header), getNCarbon(header), getNHydroxy(header), getLipidFaBondType(header), isLcb(header), ModificationsList.NONE, getNDoubleBonds(header), dbPositions.isEmpty() ? null : dbPositions);
+                break;
+            case STRUCTURAL:
+                fa = new FattyAcid(name, getPosition(header), getNCarbon(header), getNHydroxy(header), getNDoubleBonds(header), getLipidFaBondType(header), isLcb(header), ModificationsList.NONE);
+                break;
+            case MOLECULAR:
+            default:
+                fa = new FattyAcid(name, getNCarbon(header), getNHydroxy(header), getNDoubleBonds(header), getLipidFaBondType(header), isLcb(header), ModificationsList.NONE);
+                break;
+        }
+        return FattyAcidInterner.DEFAULT.intern(fa);
+    }
+
+    /**
+     * Compares two packed fatty acids. Chains are ordered by carbon count,
+     * double bond count, hydroxy count, bond type, long chain base flag,
+     * position, type and finally by their double bond positions.
+     *
+     * @param header1 the header word of the first chain.
+     * @param doubleBonds1 the double bond word of the first chain.
+     * @param header2 the header word of the second chain.
+     * @param doubleBonds2 the double bond word of the second chain.
+     * @return a negative number, zero, or a positive number if the first chain
+     * is less than, equal to, or greater than the second.
+     */
+    public static int compare(long header1, long doubleBonds1, long header2, long doubleBonds2) {
+        int cmp = Long.compareUnsigned(header1 & ~LOW_MASK, header2 & ~LOW_MASK);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.compareUnsigned((int) doubleBonds1, (int) doubleBonds2);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.compareUnsigned((int) header1, (int) header2);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Integer.compareUnsigned((int) (doubleBonds1 >>> 32), (int) (doubleBonds2 >>> 32));
+    }
+
+    /**
+     * Returns a hash code for a packed fatty acid.
+     *
+     * @param header the header word.
+     * @param doubleBonds the double bond word.
+     * @return the hash code.
+     */
+    public static int hash(long header, long doubleBonds) {
+        long h = header * 0x9E3779B97F4A7C15L + doubleBonds;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Sorts packed fatty acids in place, following
+     * {@link #compare(long, long, long, long)}. The array holds header and
+     * double bond words interleaved, i.e. chain i is stored at index 2 * i and
+     * 2 * i + 1.
+     *
+     * @param packed the interleaved header and double bond words.
+     */
+    public static void sort(long[] packed) {
+        if ((packed.length & 1) != 0) {
+            throw new ConstraintViolationException("Packed fatty acid array must have an even length! Was: " + packed.length);
+        }
+        PrimitiveSort.sort(0, packed.length / 2 - 1,
+                (i, j) -> compare(packed[2 * i], packed[2 * i + 1], packed[2 * j], packed[2 * j + 1]),
+                (i, j) -> {
+                    long header = packed[2 * i];
+                    long bonds = packed[2 * i + 1];
+                    packed[2 * i] = packed[2 * j];
+                    packed[2 * i + 1] = packed[2 * j + 1];
+                    packed[2 * j] = header;
+                    packed[2 * j + 1] = bonds;
+                });
+    }
+}
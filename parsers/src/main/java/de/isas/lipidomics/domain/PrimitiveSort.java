@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+
+/**
+ * In-place sorting of primitive array layouts without boxing. The sort only
+ * sees positions: the caller compares and swaps the elements at two positions,
+ * so parallel arrays, e.g. keys and indices, or interleaved records, e.g.
+ * packed fatty acids, are sorted together.
+ *
+ * The sort is a three-way quicksort and takes O(n log n) time on average,
+ * also for many equal elements. It is not stable.
+ *
+ * @author nils.hoffmann
+ */
+public final class PrimitiveSort {
+
+    /**
+     * Compares the elements at two positions.
+     */
+    @FunctionalInterface
+    public interface PositionComparator {
+
+        /**
+         * Compares the elements at two positions.
+         *
+         * @param i the first position.
+         * @param j the second position.
+         * @return a negative value, zero or a positive value, if the element
+         * at i is less than, equal to or greater than the element at j.
+         */
+        int compare(int i, int j);
+    }
+
+    /**
+     * Swaps the elements at two positions.
+     */
+    @FunctionalInterface
+    public interface Swapper {
+
+        /**
+         * Swaps the elements at two positions.
+         *
+         * @param i the first position.
+         * @param j the second position.
+         */
+        void swap(int i, int j);
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private PrimitiveSort() {
+
+    }
+
+    /**
+     * Sorts the positions from to to, both inclusive.
+     *
+     * @param from the first position, inclusive.
+     * @param to the last position, inclusive.
+     * @param comparator compares the elements at two positions.
+     * @param swapper swaps the elements at two positions.
+     */
+    public static void sort(int from, int to, PositionComparator comparator, Swapper swapper) {
+        while (to - from >= INSERTION_SORT_THRESHOLD) {
+            swapper.swap(from, (from + to) >>> 1);
+            // [from, lt) < pivot, [lt, i) == pivot, (gt, to] > pivot, lt always holds a pivot
+            int lt = from;
+            int gt = to;
+            int i = from + 1;
+            while (i <= gt) {
+                int cmp = comparator.compare(i, lt);
+                if (cmp < 0) {
+                    swapper.swap(lt++, i++);
+                } else if (cmp > 0) {
+                    swapper.swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            // recurse into the smaller part to bound the stack depth
+            if (lt - from < to - gt) {
+                sort(from, lt - 1, comparator, swapper);
+                from = gt + 1;
+            } else {
+                sort(gt + 1, to, comparator, swapper);
+                to = lt - 1;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && comparator.compare(j - 1, j) > 0; j--) {
+                swapper.swap(j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * Sorts the keys in ascending order and applies the same permutation to
+     * the values.
+     *
+     * @param keys the keys, e.g. m/z values.
+     * @param values the values, e.g. entry indices.
+     */
+    public static void sort(double[] keys, int[] values) {
+        if (keys.length != values.length) {
+            throw new ConstraintViolationException("Keys and values must have the same length! Was: " + keys.length + " and " + values.length);
+        }
+        sort(0, keys.length - 1, (i, j) -> Double.compare(keys[i], keys[j]), (i, j) -> {
+            double key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        });
+    }
+}
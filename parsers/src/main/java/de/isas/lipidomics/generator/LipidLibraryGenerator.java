@@ -0,0 +1,543 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.generator;
+
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidCategory;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidMolecularSubspecies;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidSpeciesInfo;
+import de.isas.lipidomics.domain.LipidStructuralSubspecies;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * Enumerates combinatorial lipid libraries of species, molecular subspecies
+ * and structural subspecies for a set of lipid classes and chain constraints.
+ *
+ * The library is never materialized. Each lipid is decoded from its rank in
+ * the library, so that the {@link #spliterator()} splits the rank range into
+ * halves of exactly equal size and parallel streams keep all cores busy.
+ * Molecular subspecies are enumerated as multisets of chains, so each chain
+ * combination is generated once, regardless of its permutations. Classes are
+ * expanded for each of their allowed numbers of fatty acyl chains, up to the
+ * maximum number of chains of the class. Species of classes with several
+ * allowed numbers of chains cover the union of the total compositions that
+ * each number of chains can reach, so that no species without a matching
+ * subspecies is generated.
+ *
+ * Sphingolipids carry a long chain base with the configured hydroxylations,
+ * followed by the fatty acyls. Since the long chain base always has a defined
+ * position, sphingolipids are generated as species and structural subspecies
+ * only. All fatty acyls are ester-linked and unmodified.
+ *
+ * Example:
+ * <pre>
+ * LipidLibraryGenerator generator = LipidLibraryGenerator.builder().
+ *     lipidClasses(EnumSet.of(LipidClass.PC, LipidClass.PE, LipidClass.TAG, LipidClass.CER)).
+ *     levels(EnumSet.of(LipidLevel.SPECIES, LipidLevel.MOLECULAR_SUBSPECIES)).
+ *     minCarbon(12).maxCarbon(26).
+ *     minDoubleBonds(0).maxDoubleBonds(6).
+ *     minLcbHydroxy(2).maxLcbHydroxy(3).
+ *     build();
+ * generator.generate((name, mass) -&gt; writer.write(name, mass));
+ * </pre>
+ *
+ * @author nils.hoffmann
+ */
+public class LipidLibraryGenerator {
+
+    /**
+     * Receives the generated lipid names and their neutral masses. Sinks are
+     * called concurrently from multiple threads and must be thread-safe.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        void accept(String lipidName, double mass);
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final long[] offsets;
+    private final long size;
+    private final int minLcbHydroxy;
+    private final int maxLcbHydroxy;
+    private final int[] chainCarbon;
+    private final int[] chainDoubleBonds;
+    private final FattyAcid[] lcbs;
+    private final FattyAcid[][] molecularFas;
+    private final FattyAcid[][] structuralFas;
+    private final FattyAcid[][] sphingolipidFas;
+    private final FattyAcidInterner interner;
+
+    /**
+     * Creates a new generator.
+     *
+     * @param lipidClasses the lipid classes.
+     * @param levels the levels to generate, species, molecular and structural
+     * subspecies are supported.
+     * @param minCarbon the minimum number of carbon atoms per chain.
+     * @param maxCarbon the maximum number of carbon atoms per chain.
+     * @param minDoubleBonds the minimum number of double bonds per chain.
+     * @param maxDoubleBonds the maximum number of double bonds per chain.
+     * @param minLcbHydroxy the minimum number of hydroxylations of long chain
+     * bases.
+     * @param maxLcbHydroxy the maximum number of hydroxylations of long chain
+     * bases.
+     * @param interner the pool for the chains of the generator, defaults to
+     * {@link FattyAcidInterner#DEFAULT}. Since each generator creates every
+     * chain only once, {@link FattyAcidInterner#NONE} keeps the generated
+     * chains out of any pool.
+     */
+    @Builder
+    public LipidLibraryGenerator(@NonNull Set<LipidClass> lipidClasses, @NonNull Set<LipidLevel> levels, int minCarbon, int maxCarbon, int minDoubleBonds, int maxDoubleBonds, int minLcbHydroxy, int maxLcbHydroxy, FattyAcidInterner interner) {
+        if (minCarbon < 1 || minCarbon > maxCarbon || minDoubleBonds < 0 || minDoubleBonds > maxDoubleBonds || minLcbHydroxy < 0 || minLcbHydroxy > maxLcbHydroxy) {
+            throw new ConstraintViolationException("Chain ranges must not be negative and min must not exceed max! Was carbon: " + minCarbon + "-" + maxCarbon
+                    + ", double bonds: " + minDoubleBonds + "-" + maxDoubleBonds + ", lcb hydroxy: " + minLcbHydroxy + "-" + maxLcbHydroxy);
+        }
+        for (LipidLevel level : levels) {
+            switch (level) {
+                case SPECIES:
+                case MOLECULAR_SUBSPECIES:
+                case STRUCTURAL_SUBSPECIES:
+                    break;
+                default:
+                    throw new ConstraintViolationException("Unsupported lipid level " + level + " for library generation!");
+            }
+        }
+        this.minLcbHydroxy = minLcbHydroxy;
+        this.maxLcbHydroxy = maxLcbHydroxy;
+        this.interner = interner == null ? FattyAcidInterner.DEFAULT : interner;
+        int carbons = maxCarbon - minCarbon + 1;
+        int doubleBonds = maxDoubleBonds - minDoubleBonds + 1;
+        this.chainCarbon = new int[carbons * doubleBonds];
+        this.chainDoubleBonds = new int[carbons * doubleBonds];
+        for (int c = 0, i = 0; c < carbons; c++) {
+            for (int db = 0; db < doubleBonds; db++, i++) {
+                chainCarbon[i] = minCarbon + c;
+                chainDoubleBonds[i] = minDoubleBonds + db;
+            }
+        }
+        int hydroxies = maxLcbHydroxy - minLcbHydroxy + 1;
+        this.lcbs = new FattyAcid[chainCarbon.length * hydroxies];
+        for (int h = 0, i = 0; h < hydroxies; h++) {
+            for (int chain = 0; chain < chainCarbon.length; chain++, i++) {
+                lcbs[i] = this.interner.intern(FattyAcid.structuralFattyAcidBuilder().name("LCB").position(1).lcb(true).
+                        nCarbon(chainCarbon[chain]).nDoubleBonds(chainDoubleBonds[chain]).nHydroxy(minLcbHydroxy + h).
+                        lipidFaBondType(LipidFaBondType.ESTER).build());
+            }
+        }
+        int maxChains = 0;
+        for (LipidClass lipidClass : lipidClasses) {
+            maxChains = Math.max(maxChains, lipidClass.getMaxNumFa());
+        }
+        this.molecularFas = new FattyAcid[maxChains][chainCarbon.length];
+        this.structuralFas = new FattyAcid[maxChains][chainCarbon.length];
+        this.sphingolipidFas = new FattyAcid[maxChains][chainCarbon.length];
+        for (int fa = 0; fa < maxChains; fa++) {
+            for (int chain = 0; chain < chainCarbon.length; chain++) {
+                molecularFas[fa][chain] = this.interner.intern(FattyAcid.molecularFattyAcidBuilder().name("FA" + (fa + 1)).
+                        nCarbon(chainCarbon[chain]).nDoubleBonds(chainDoubleBonds[chain]).lipidFaBondType(LipidFaBondType.ESTER).build());
+                structuralFas[fa][chain] = structuralFa(fa, fa + 1, chain);
+                // the long chain base takes the first position of sphingolipids
+                sphingolipidFas[fa][chain] = structuralFa(fa, fa + 2, chain);
+            }
+        }
+        long offset = 0;
+        for (LipidClass lipidClass : lipidClasses) {
+            HeadGroup headGroup = new HeadGroup(lipidClass.getAbbreviation(), Optional.of(lipidClass));
+            boolean sphingolipid = lipidClass.getCategory() == LipidCategory.SP;
+            int[] numFas = lipidClass.getAllowedNumFa().stream().mapToInt(Integer::intValue).
+                    filter((n) -> n > 0 && n <= lipidClass.getMaxNumFa()).sorted().toArray();
+            for (LipidLevel level : LipidLevel.values()) {
+                if (!levels.contains(level)) {
+                    continue;
+                }
+                if (level == LipidLevel.SPECIES) {
+                    Compositions compositions = new Compositions(numFas, minCarbon, maxCarbon, minDoubleBonds, maxDoubleBonds);
+                    offset = add(new Segment(headGroup, level, numFas.length == 0 ? 0 : numFas[numFas.length - 1],
+                            compositions, sphingolipid, offset, speciesCount(compositions, sphingolipid)));
+                } else if (level == LipidLevel.MOLECULAR_SUBSPECIES && !sphingolipid) {
+                    for (int numFa : numFas) {
+                        offset = add(new Segment(headGroup, level, numFa, null, false, offset, multisets(chainCarbon.length, numFa)));
+                    }
+                } else if (level == LipidLevel.STRUCTURAL_SUBSPECIES) {
+                    for (int numFa : numFas) {
+                        long count = sphingolipid ? Math.multiplyExact(lcbs.length, pow(chainCarbon.length, numFa - 1)) : pow(chainCarbon.length, numFa);
+                        offset = add(new Segment(headGroup, level, numFa, null, sphingolipid, offset, count));
+                    }
+                }
+            }
+        }
+        this.size = offset;
+        this.offsets = new long[segments.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = segments.get(i).offset;
+        }
+    }
+
+    private FattyAcid structuralFa(int fa, int position, int chain) {
+        return interner.intern(FattyAcid.structuralFattyAcidBuilder().name("FA" + (fa + 1)).position(position).
+                nCarbon(chainCarbon[chain]).nDoubleBonds(chainDoubleBonds[chain]).lipidFaBondType(LipidFaBondType.ESTER).build());
+    }
+
+    private long add(Segment segment) {
+        if (segment.count > 0) {
+            segments.add(segment);
+        }
+        return Math.addExact(segment.offset, segment.count);
+    }
+
+    private long speciesCount(Compositions compositions, boolean sphingolipid) {
+        if (compositions.size() == 0) {
+            return 1;
+        }
+        long hydroxies = sphingolipid ? maxLcbHydroxy - minLcbHydroxy + 1 : 1;
+        return Math.multiplyExact(compositions.size(), hydroxies);
+    }
+
+    /**
+     * The total numbers of carbon atoms and double bonds that the allowed
+     * numbers of chains of a class can reach. n chains reach n times the
+     * per chain ranges, so for several numbers of chains these ranges may
+     * overlap or leave gaps. The compositions are stored as runs of
+     * consecutive double bond counts, ordered by carbon atoms and double
+     * bonds.
+     */
+    static final class Compositions {
+
+        private final int[] carbon;
+        private final int[] firstDoubleBonds;
+        private final long[] offsets;
+        private final long size;
+
+        Compositions(int[] numFas, int minCarbon, int maxCarbon, int minDoubleBonds, int maxDoubleBonds) {
+            if (numFas.length == 0) {
+                carbon = new int[0];
+                firstDoubleBonds = new int[0];
+                offsets = new long[0];
+                size = 0;
+                return;
+            }
+            int fromCarbon = numFas[0] * minCarbon;
+            int toCarbon = numFas[numFas.length - 1] * maxCarbon;
+            int maxRuns = (toCarbon - fromCarbon + 1) * numFas.length;
+            int[] runCarbon = new int[maxRuns];
+            int[] runFirst = new int[maxRuns];
+            long[] runOffsets = new long[maxRuns];
+            int runs = 0;
+            long total = 0;
+            for (int c = fromCarbon; c <= toCarbon; c++) {
+                int first = -1;
+                int last = -1;
+                // the double bond ranges start in ascending order of the number of chains
+                for (int numFa : numFas) {
+                    if (c < numFa * minCarbon || c > numFa * maxCarbon) {
+                        continue;
+                    }
+                    int from = numFa * minDoubleBonds;
+                    int to = numFa * maxDoubleBonds;
+                    if (first >= 0 && from <= last + 1) {
+                        last = Math.max(last, to);
+                        continue;
+                    }
+                    if (first >= 0) {
+                        runCarbon[runs] = c;
+                        runFirst[runs] = first;
+                        runOffsets[runs++] = total;
+                        total += last - first + 1;
+                    }
+                    first = from;
+                    last = to;
+                }
+                if (first >= 0) {
+                    runCarbon[runs] = c;
+                    runFirst[runs] = first;
+                    runOffsets[runs++] = total;
+                    total += last - first + 1;
+                }
+            }
+            carbon = Arrays.copyOf(runCarbon, runs);
+            firstDoubleBonds = Arrays.copyOf(runFirst, runs);
+            offsets = Arrays.copyOf(runOffsets, runs);
+            size = total;
+        }
+
+        /**
+         * Returns the number of compositions.
+         */
+        long size() {
+            return size;
+        }
+
+        /**
+         * Returns the total number of carbon atoms of the composition with
+         * the provided rank.
+         */
+        int getNCarbon(long rank) {
+            return carbon[run(rank)];
+        }
+
+        /**
+         * Returns the total number of double bonds of the composition with
+         * the provided rank.
+         */
+        int getNDoubleBonds(long rank) {
+            int run = run(rank);
+            return firstDoubleBonds[run] + (int) (rank - offsets[run]);
+        }
+
+        private int run(long rank) {
+            int run = Arrays.binarySearch(offsets, rank);
+            return run < 0 ? -run - 2 : run;
+        }
+    }
+
+    /**
+     * Returns the number of multisets of size k drawn from n elements.
+     */
+    static long multisets(int n, int k) {
+        if (k == 0) {
+            return 1;
+        }
+        if (n == 0) {
+            return 0;
+        }
+        // binomial(n + k - 1, k), computed incrementally to stay exact
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = Math.multiplyExact(result, n - 1 + i) / i;
+        }
+        return result;
+    }
+
+    private static long pow(int base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result = Math.multiplyExact(result, base);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of lipids in the library.
+     *
+     * @return the library size.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the lipid with the provided rank in the library.
+     *
+     * @param rank the rank, between 0 and {@link #size()}, exclusive.
+     * @return the lipid.
+     */
+    public LipidSpecies get(long rank) {
+        if (rank < 0 || rank >= size) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " out of bounds for library of size " + size + "!");
+        }
+        int index = Arrays.binarySearch(offsets, rank);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        Segment segment = segments.get(index);
+        return segment.create(rank - segment.offset);
+    }
+
+    /**
+     * Returns a spliterator over the library, which splits into halves of
+     * equal size.
+     *
+     * @return the spliterator.
+     */
+    public Spliterator<LipidSpecies> spliterator() {
+        return new LibrarySpliterator(0, size);
+    }
+
+    /**
+     * Returns a parallel stream over the library.
+     *
+     * @return the lipid stream.
+     */
+    public Stream<LipidSpecies> stream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Generates the library in parallel and passes each lipid name, at its
+     * native level, and its neutral mass to the sink.
+     *
+     * @param sink the thread-safe sink.
+     */
+    public void generate(Sink sink) {
+        stream().forEach((lipid) -> {
+            sink.accept(lipid.getLipidString(), new LipidAdduct(lipid, null, null).getMass());
+        });
+    }
+
+    private final class Segment {
+
+        private final HeadGroup headGroup;
+        private final LipidLevel level;
+        private final int numFa;
+        private final Compositions compositions;
+        private final boolean sphingolipid;
+        private final long offset;
+        private final long count;
+
+        Segment(HeadGroup headGroup, LipidLevel level, int numFa, Compositions compositions, boolean sphingolipid, long offset, long count) {
+            this.headGroup = headGroup;
+            this.level = level;
+            this.numFa = numFa;
+            this.compositions = compositions;
+            this.sphingolipid = sphingolipid;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        LipidSpecies create(long rank) {
+            switch (level) {
+                case SPECIES:
+                    return createSpecies(rank);
+                case MOLECULAR_SUBSPECIES:
+                    return createMolecularSubspecies(rank);
+                default:
+                    return createStructuralSubspecies(rank);
+            }
+        }
+
+        private LipidSpecies createSpecies(long rank) {
+            if (numFa == 0) {
+                return new LipidSpecies(headGroup, Optional.of(new LipidSpeciesInfo(LipidLevel.SPECIES, 0, 0, 0, LipidFaBondType.UNDEFINED)));
+            }
+            int hydroxy = 0;
+            if (sphingolipid) {
+                int hydroxies = maxLcbHydroxy - minLcbHydroxy + 1;
+                hydroxy = minLcbHydroxy + (int) (rank % hydroxies);
+                rank /= hydroxies;
+            }
+            int nCarbon = compositions.getNCarbon(rank);
+            int nDoubleBonds = compositions.getNDoubleBonds(rank);
+            return new LipidSpecies(headGroup, Optional.of(LipidSpeciesInfo.lipidSpeciesInfoBuilder().
+                    level(LipidLevel.SPECIES).
+                    name(sphingolipid ? "LCB" : LipidLevel.SPECIES.name()).
+                    position(-1).
+                    lcb(sphingolipid).
+                    nCarbon(nCarbon).
+                    nHydroxy(hydroxy).
+                    nDoubleBonds(nDoubleBonds).
+                    lipidFaBondType(LipidFaBondType.ESTER).
+                    build()));
+        }
+
+        private LipidSpecies createMolecularSubspecies(long rank) {
+            FattyAcid[] fas = new FattyAcid[numFa];
+            int chains = chainCarbon.length;
+            int start = 0;
+            // unrank the non-decreasing chain indices of the multiset
+            for (int i = 0; i < numFa; i++) {
+                for (int chain = start; chain < chains; chain++) {
+                    long remaining = multisets(chains - chain, numFa - i - 1);
+                    if (rank < remaining) {
+                        fas[i] = molecularFas[i][chain];
+                        start = chain;
+                        break;
+                    }
+                    rank -= remaining;
+                }
+            }
+            return new LipidMolecularSubspecies(headGroup, fas);
+        }
+
+        private LipidSpecies createStructuralSubspecies(long rank) {
+            FattyAcid[] fas = new FattyAcid[numFa];
+            int chains = chainCarbon.length;
+            FattyAcid[][] structural = structuralFas;
+            int first = 0;
+            if (sphingolipid) {
+                fas[0] = lcbs[(int) (rank % lcbs.length)];
+                rank /= lcbs.length;
+                structural = sphingolipidFas;
+                first = 1;
+            }
+            for (int i = first; i < numFa; i++) {
+                fas[i] = structural[i - first][(int) (rank % chains)];
+                rank /= chains;
+            }
+            return new LipidStructuralSubspecies(headGroup, fas);
+        }
+    }
+
+    private final class LibrarySpliterator implements Spliterator<LipidSpecies> {
+
+        private long index;
+        private final long end;
+
+        LibrarySpliterator(long index, long end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super LipidSpecies> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(get(index++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<LipidSpecies> trySplit() {
+            long remaining = end - index;
+            if (remaining < 2) {
+                return null;
+            }
+            long middle = index + remaining / 2;
+            Spliterator<LipidSpecies> prefix = new LibrarySpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL | DISTINCT;
+        }
+    }
+}
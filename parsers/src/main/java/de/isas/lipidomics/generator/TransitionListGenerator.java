@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.generator;
+
+import de.isas.lipidomics.concurrent.OrderedParallelExecutor;
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.mass.FragmentCalculator;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.LongStream;
+import lombok.Builder;
+import lombok.NonNull;
+
+/**
+ * Expands a lipid library into a transition list for targeted MS methods.
+ * Each transition consists of a precursor, the name of a lipid of the library
+ * with an adduct, its m/z, a fragment name, as written after the fragment
+ * separator of the GoslinFragments grammar, and the product ion m/z and
+ * charge. Fragments are those of {@link FragmentCalculator#getFragments(LipidAdduct)}
+ * for each precursor, so that e.g. <code>PC 16:0/18:1[M+H]1+ - HG</code> is
+ * a valid GoslinFragments name for a transition. Only the long chain base
+ * fragment <code>LCB</code> can not be parsed as a fragment name, since it is
+ * a head group token of the grammar.
+ *
+ * Method libraries easily contain tens of millions of transitions. The
+ * library is therefore processed in blocks of consecutive ranks, which are
+ * rendered in parallel and written in library order. At most a fixed number
+ * of blocks per thread is pending at any time, so memory use does not depend
+ * on the library size.
+ *
+ * Example:
+ * <pre>
+ * TransitionListGenerator generator = TransitionListGenerator.builder().
+ *     library(libraryGenerator).
+ *     adducts(TransitionListGenerator.GOSLIN_ADDUCTS).
+ *     threads(8).
+ *     build();
+ * try (Writer writer = Files.newBufferedWriter(path)) {
+ *     long transitions = generator.writeTsv(writer);
+ * }
+ * </pre>
+ *
+ * @author nils.hoffmann
+ */
+public class TransitionListGenerator {
+
+    /**
+     * Receives the generated transitions. Sinks passed to
+     * {@link #generate(Sink)} are called concurrently from multiple threads
+     * and must be thread-safe.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        void accept(String precursor, double precursorMz, String fragment, double productMz, int productCharge);
+    }
+
+    /**
+     * The fixed adducts of the Goslin grammar.
+     */
+    public static final List<Adduct> GOSLIN_ADDUCTS = Collections.unmodifiableList(Arrays.asList(
+            new Adduct("", "+H", 1, 1),
+            new Adduct("", "+2H", 2, 1),
+            new Adduct("", "+NH4", 1, 1),
+            new Adduct("", "-H", 1, -1),
+            new Adduct("", "-2H", 2, -1),
+            new Adduct("", "+HCOO", 1, -1),
+            new Adduct("", "+CH3COO", 1, -1)
+    ));
+
+    /**
+     * The header line of the TSV output.
+     */
+    public static final String TSV_HEADER = "Precursor\tPrecursor m/z\tFragment\tProduct m/z\tProduct Charge";
+
+    static final int DEFAULT_BLOCK_SIZE = 128;
+    private static final int PENDING_BLOCKS_PER_THREAD = 4;
+
+    private final LipidLibraryGenerator library;
+    private final List<Adduct> adducts;
+    private final FragmentCalculator fragmentCalculator;
+    private final int threads;
+    private final int blockSize;
+
+    /**
+     * Creates a new generator.
+     *
+     * @param library the lipid library.
+     * @param adducts the precursor adducts, which are applied to all lipids of
+     * the library, e.g. {@link #GOSLIN_ADDUCTS}.
+     * @param fragmentCalculator the fragment calculator, or null for the
+     * default one.
+     * @param threads the number of worker threads, or 0 for the number of
+     * available processors.
+     * @param blockSize the number of lipids per block, or 0 for the default.
+     */
+    @Builder
+    public TransitionListGenerator(@NonNull LipidLibraryGenerator library, @NonNull List<Adduct> adducts, FragmentCalculator fragmentCalculator, int threads, int blockSize) {
+        if (adducts.isEmpty()) {
+            throw new ConstraintViolationException("At least one adduct is required for transition list generation!");
+        }
+        if (threads < 0 || blockSize < 0) {
+            throw new ConstraintViolationException("Threads and block size must not be negative! Was threads: " + threads + ", block size: " + blockSize);
+        }
+        for (Adduct adduct : adducts) {
+            if (adduct.getCharge() == 0) {
+                throw new ConstraintViolationException("Adduct " + adduct.getLipidString() + " must be charged!");
+            }
+        }
+        this.library = library;
+        this.adducts = new ArrayList<>(adducts);
+        this.fragmentCalculator = fragmentCalculator == null ? new FragmentCalculator() : fragmentCalculator;
+        this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.blockSize = blockSize == 0 ? DEFAULT_BLOCK_SIZE : blockSize;
+    }
+
+    /**
+     * Generates all transitions in parallel and passes them to the sink, in
+     * no particular order.
+     *
+     * @param sink the thread-safe sink.
+     */
+    public void generate(Sink sink) {
+        LongStream.range(0, library.size()).parallel().forEach((rank) -> {
+            transitions(library.get(rank), sink);
+        });
+    }
+
+    /**
+     * Writes the header and all transitions as tab-separated values, one
+     * transition per line, in library order.
+     *
+     * @param out the appendable to write to, which is only called from the
+     * calling thread.
+     * @return the number of transitions written.
+     * @throws IOException if the appendable throws an IOException.
+     */
+    public long writeTsv(Appendable out) throws IOException {
+        out.append(TSV_HEADER).append('\n');
+        long size = library.size();
+        long[] transitions = new long[1];
+        OrderedParallelExecutor executor = new OrderedParallelExecutor(threads, PENDING_BLOCKS_PER_THREAD, "jgoslin-transitions");
+        executor.process(LongStream.range(0, (size + blockSize - 1) / blockSize).iterator(), (blockIndex) -> {
+            long start = blockIndex * blockSize;
+            return block(start, Math.min(size, start + blockSize));
+        }, (block) -> {
+            out.append(block.text);
+            transitions[0] += block.transitions;
+        });
+        return transitions[0];
+    }
+
+    /**
+     * Passes the transitions of all adducts of the lipid to the sink.
+     *
+     * @param lipid the lipid.
+     * @param sink the sink.
+     */
+    void transitions(LipidSpecies lipid, Sink sink) {
+        for (Adduct adduct : adducts) {
+            LipidAdduct precursor = new LipidAdduct(lipid, adduct, null);
+            List<String> fragments = fragmentCalculator.getFragments(precursor);
+            if (fragments.isEmpty()) {
+                continue;
+            }
+            String precursorName = precursor.getLipidString();
+            double precursorMz = precursor.getMass();
+            for (String fragment : fragments) {
+                FragmentCalculator.Product product = fragmentCalculator.getProduct(precursor, fragment);
+                sink.accept(precursorName, precursorMz, fragment, product.getMz(), product.getCharge());
+            }
+        }
+    }
+
+    private Block block(long start, long end) {
+        Block block = new Block();
+        for (long rank = start; rank < end; rank++) {
+            transitions(library.get(rank), (precursor, precursorMz, fragment, productMz, productCharge) -> {
+                block.text.append(precursor).append('\t').
+                        append(precursorMz).append('\t').
+                        append(fragment).append('\t').
+                        append(productMz).append('\t').
+                        append(productCharge).append('\n');
+                block.transitions++;
+            });
+        }
+        return block;
+    }
+
+    private static final class Block {
+
+        private final StringBuilder text = new StringBuilder();
+        private long transitions;
+    }
+}
@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 /**
- * This package contains the code to generate the LipidClass class from lipid-list.csv.
+ * This package contains the code to generate the LipidClass class from lipid-list.csv
+ * and the combinatorial lipid library generator.
  */
 package de.isas.lipidomics.generator;
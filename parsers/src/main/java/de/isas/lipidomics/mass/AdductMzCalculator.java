@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates the m/z matrix of many neutral lipid compositions under a table
+ * of adducts. Compositions are passed as element count columns, one int array
+ * per {@link Element#ordinal()} with one entry per lipid, which can be created
+ * with {@link #fromCompositions(List)} or {@link #fromElementTables(List)}.
+ * Absent elements may be null columns.
+ *
+ * For each adduct, the masses of all lipids are accumulated column by column,
+ * in simple loops over primitive arrays, which the JIT compiler can unroll and
+ * vectorize. Elements are summed in ordinal order and the charge is applied
+ * as in {@link LipidAdduct#getMass()}, so that the results are equal to
+ * {@link LipidAdduct#getMass()} for a lipid on species level or below with
+ * the respective adduct.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author nils.hoffmann
+ */
+public final class AdductMzCalculator {
+
+    private static final Element[] ELEMENTS = Element.values();
+
+    private final List<Adduct> adducts;
+    private final int[][] adductCounts;
+    private final int[] charges;
+
+    /**
+     * Creates a calculator for the provided adducts.
+     *
+     * @param adducts the adducts, e.g. as parsed with a lipid name.
+     */
+    public AdductMzCalculator(List<Adduct> adducts) {
+        this.adducts = Collections.unmodifiableList(new ArrayList<>(adducts));
+        this.adductCounts = new int[this.adducts.size()][ELEMENTS.length];
+        this.charges = new int[this.adducts.size()];
+        for (int adduct = 0; adduct < this.adducts.size(); adduct++) {
+            for (Map.Entry<Element, Integer> entry : this.adducts.get(adduct).getElements().entrySet()) {
+                if (entry.getValue() != null) {
+                    adductCounts[adduct][entry.getKey().ordinal()] = entry.getValue();
+                }
+            }
+            charges[adduct] = this.adducts.get(adduct).getCharge();
+        }
+    }
+
+    /**
+     * Returns the adducts in the order of the m/z matrix rows.
+     *
+     * @return the adducts.
+     */
+    public List<Adduct> getAdducts() {
+        return adducts;
+    }
+
+    /**
+     * Calculates the m/z matrix.
+     *
+     * @param counts the element count columns, indexed by element ordinal.
+     * @param size the number of lipids.
+     * @return the m/z values, indexed by adduct and lipid.
+     */
+    public double[][] calculate(int[][] counts, int size) {
+        return calculate(counts, size, new double[adducts.size()][size]);
+    }
+
+    /**
+     * Calculates the m/z matrix into the provided array, which can be reused
+     * for multiple batches.
+     *
+     * @param counts the element count columns, indexed by element ordinal.
+     * @param size the number of lipids.
+     * @param mz the m/z values, indexed by adduct and lipid.
+     * @return the m/z values.
+     * @throws ConstraintViolationException if the array dimensions do not
+     * match the elements, adducts or number of lipids.
+     */
+    public double[][] calculate(int[][] counts, int size, double[][] mz) {
+        if (counts.length != ELEMENTS.length) {
+            throw new ConstraintViolationException("Expected " + ELEMENTS.length + " element count columns, got " + counts.length + "!");
+        }
+        for (int element = 0; element < counts.length; element++) {
+            if (counts[element] != null && counts[element].length < size) {
+                throw new ConstraintViolationException("Column for element " + ELEMENTS[element].getName() + " has " + counts[element].length + " entries, expected " + size + "!");
+            }
+        }
+        if (mz.length != adducts.size()) {
+            throw new ConstraintViolationException("Expected " + adducts.size() + " m/z rows, got " + mz.length + "!");
+        }
+        for (int adduct = 0; adduct < mz.length; adduct++) {
+            double[] row = mz[adduct];
+            if (row.length < size) {
+                throw new ConstraintViolationException("Row for adduct " + adducts.get(adduct).getLipidString() + " has " + row.length + " entries, expected " + size + "!");
+            }
+            Arrays.fill(row, 0, size, 0.0d);
+            for (int element = 0; element < ELEMENTS.length; element++) {
+                int[] column = counts[element];
+                int adductCount = adductCounts[adduct][element];
+                double mass = ELEMENTS[element].getMass();
+                if (column != null) {
+                    for (int lipid = 0; lipid < size; lipid++) {
+                        row[lipid] += (column[lipid] + adductCount) * mass;
+                    }
+                } else if (adductCount != 0) {
+                    double adductMass = adductCount * mass;
+                    for (int lipid = 0; lipid < size; lipid++) {
+                        row[lipid] += adductMass;
+                    }
+                }
+            }
+            int charge = charges[adduct];
+            if (charge != 0) {
+                double electrons = charge * Element.ELECTRON_REST_MASS;
+                int absCharge = Math.abs(charge);
+                for (int lipid = 0; lipid < size; lipid++) {
+                    row[lipid] = (row[lipid] - electrons) / absCharge;
+                }
+            }
+        }
+        return mz;
+    }
+
+    /**
+     * Creates the element count columns for the provided compositions.
+     *
+     * @param compositions the neutral compositions, without adduct.
+     * @return the element count columns, null for absent elements.
+     */
+    public static int[][] fromCompositions(List<LipidMassCalculator.Composition> compositions) {
+        int[][] counts = new int[ELEMENTS.length][];
+        for (int lipid = 0; lipid < compositions.size(); lipid++) {
+            LipidMassCalculator.Composition composition = compositions.get(lipid);
+            for (int element = 0; element < ELEMENTS.length; element++) {
+                if (composition.contains(ELEMENTS[element])) {
+                    column(counts, element, compositions.size())[lipid] = composition.getCount(ELEMENTS[element]);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Creates the element count columns for the provided element tables, e.g.
+     * as returned by {@link de.isas.lipidomics.domain.LipidSpecies#getElements()}.
+     *
+     * @param elementTables the neutral element tables, without adduct.
+     * @return the element count columns, null for absent elements.
+     */
+    public static int[][] fromElementTables(List<ElementTable> elementTables) {
+        int[][] counts = new int[ELEMENTS.length][];
+        for (int lipid = 0; lipid < elementTables.size(); lipid++) {
+            for (Map.Entry<Element, Integer> entry : elementTables.get(lipid).entrySet()) {
+                if (entry.getValue() != null) {
+                    column(counts, entry.getKey().ordinal(), elementTables.size())[lipid] = entry.getValue();
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static int[] column(int[][] counts, int element, int size) {
+        if (counts[element] == null) {
+            counts[element] = new int[size];
+        }
+        return counts[element];
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Calculates the composition and m/z of product ions for precursor lipid
+ * adducts and fragment names, as written after the fragment separator of the
+ * GoslinFragments grammar, e.g. <code>PC 16:0/18:1[M+H]1+ - HG</code>.
+ *
+ * Supported fragment names are:
+ * <ul>
+ * <li><code>HG</code>, the head group ion of the precursor class, e.g. the
+ * phosphocholine ion at m/z 184.07 for PC, LPC and SM, or the inositol
+ * phosphate ion at m/z 241.01 for PI and LPI.</li>
+ * <li><code>-(HG)</code>, the neutral loss of the head group of the precursor
+ * class, e.g. phosphoethanolamine for PE and LPE.</li>
+ * <li><code>-(FA1)</code>, the neutral loss of an ester chain of the precursor
+ * as free fatty acid, using the fatty acyl names of the parsed lipid, e.g.
+ * FA1 or FA2.</li>
+ * <li><code>FA1</code>, the carboxylate anion of an ester chain.</li>
+ * <li><code>LCB</code>, the long chain base ion [LCB + H - n H2O]+ of a
+ * sphingolipid with n hydroxy groups, e.g. m/z 264.27 for 18:1;2.</li>
+ * <li><code>-(H2O)</code>, or any other sum formula in parentheses, the
+ * neutral loss of that formula.</li>
+ * </ul>
+ * Neutral losses are subtracted from the precursor elements, including the
+ * adduct, and keep the precursor charge. Product ions have their own elements
+ * and charge, which must have the sign of the precursor charge. Masses and
+ * charges are applied as in {@link LipidAdduct#getMass()}.
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author nils.hoffmann
+ */
+public final class FragmentCalculator {
+
+    /**
+     * The head group ion fragment name.
+     */
+    public static final String HEAD_GROUP = "HG";
+
+    /**
+     * The head group neutral loss fragment name.
+     */
+    public static final String HEAD_GROUP_LOSS = "-(HG)";
+
+    /**
+     * The long chain base ion fragment name.
+     */
+    public static final String LONG_CHAIN_BASE = "LCB";
+
+    private final Map<LipidClass, Map<String, Product>> headGroupFragments;
+
+    /**
+     * The composition and charge of a fragment and of the product ion it
+     * creates from a precursor.
+     */
+    public static final class Product {
+
+        private final String fragment;
+        private final boolean neutralLoss;
+        private final ElementTable fragmentElements;
+        private final ElementTable elements;
+        private final int charge;
+
+        private Product(String fragment, boolean neutralLoss, ElementTable fragmentElements, ElementTable elements, int charge) {
+            this.fragment = fragment;
+            this.neutralLoss = neutralLoss;
+            this.fragmentElements = withoutEmpty(fragmentElements);
+            this.elements = withoutEmpty(elements);
+            this.charge = charge;
+        }
+
+        /**
+         * Removes elements that were consumed by the fragmentation, which
+         * would otherwise appear in the sum formula.
+         */
+        private static ElementTable withoutEmpty(ElementTable elements) {
+            ElementTable copy = elements.copy();
+            copy.values().removeIf((count) -> {
+                return count == null || count == 0;
+            });
+            return copy;
+        }
+
+        /**
+         * Returns the fragment name.
+         *
+         * @return the fragment name.
+         */
+        public String getFragment() {
+            return fragment;
+        }
+
+        /**
+         * Returns true, if the fragment is lost from the precursor, or false,
+         * if the fragment is the product ion.
+         *
+         * @return true for neutral losses.
+         */
+        public boolean isNeutralLoss() {
+            return neutralLoss;
+        }
+
+        /**
+         * Returns the elements of the neutral loss or of the product ion.
+         *
+         * @return a copy of the fragment elements.
+         */
+        public ElementTable getFragmentElements() {
+            return fragmentElements.copy();
+        }
+
+        /**
+         * Returns the mass of the neutral loss or of the product ion elements.
+         *
+         * @return the fragment mass.
+         */
+        public double getFragmentMass() {
+            return fragmentElements.getMass();
+        }
+
+        /**
+         * Returns the elements of the product ion.
+         *
+         * @return a copy of the product ion elements.
+         */
+        public ElementTable getElements() {
+            return elements.copy();
+        }
+
+        /**
+         * Returns the net charge of the product ion.
+         *
+         * @return the net charge.
+         */
+        public int getCharge() {
+            return charge;
+        }
+
+        /**
+         * Returns the m/z of the product ion.
+         *
+         * @return the m/z.
+         */
+        public double getMz() {
+            return mz(elements, charge);
+        }
+    }
+
+    /**
+     * Creates a calculator with the head group fragments of the
+     * glycerophospholipid classes and sphingomyelin.
+     */
+    public FragmentCalculator() {
+        Map<LipidClass, Map<String, Product>> fragments = new EnumMap<>(LipidClass.class);
+        addHeadGroup(fragments, HEAD_GROUP, "C5H15NO4P", 1, LipidClass.PC, LipidClass.LPC, LipidClass.SM);
+        addHeadGroup(fragments, HEAD_GROUP_LOSS, "C2H8NO4P", 0, LipidClass.PE, LipidClass.LPE);
+        addHeadGroup(fragments, HEAD_GROUP_LOSS, "C3H8NO6P", 0, LipidClass.PS, LipidClass.LPS);
+        addHeadGroup(fragments, HEAD_GROUP_LOSS, "C3H9O6P", 0, LipidClass.PG, LipidClass.LPG);
+        addHeadGroup(fragments, HEAD_GROUP_LOSS, "C6H13O9P", 0, LipidClass.PI, LipidClass.LPI);
+        addHeadGroup(fragments, HEAD_GROUP, "C6H10O8P", -1, LipidClass.PI, LipidClass.LPI);
+        addHeadGroup(fragments, HEAD_GROUP_LOSS, "H3O4P", 0, LipidClass.PA, LipidClass.LPA);
+        this.headGroupFragments = Collections.unmodifiableMap(fragments);
+    }
+
+    /**
+     * Returns the names of all fragments of the precursor, whose product ions
+     * have the charge sign of the precursor: the head group fragments of its
+     * class, the chain fragments and the long chain base ion. Generic neutral
+     * losses like <code>-(H2O)</code> are not included.
+     *
+     * @param precursor the precursor.
+     * @return the fragment names.
+     */
+    public List<String> getFragments(LipidAdduct precursor) {
+        int charge = charge(precursor);
+        List<String> fragments = new ArrayList<>();
+        for (Product product : headGroupFragments.getOrDefault(precursor.getLipid().getLipidClass(), Collections.emptyMap()).values()) {
+            if (product.neutralLoss || Integer.signum(product.charge) == Integer.signum(charge)) {
+                fragments.add(product.fragment);
+            }
+        }
+        for (FattyAcid fa : precursor.getLipid().getFa().values()) {
+            if (isEsterChain(fa)) {
+                fragments.add("-(" + fa.getName() + ")");
+                if (charge < 0) {
+                    fragments.add(fa.getName());
+                }
+            } else if (fa.isLcb() && charge > 0) {
+                fragments.add(LONG_CHAIN_BASE);
+            }
+        }
+        return fragments;
+    }
+
+    /**
+     * Calculates the product ion of the fragment of the lipid adduct, as
+     * parsed with the GoslinFragments grammar.
+     *
+     * @param lipidAdduct the lipid adduct with fragment.
+     * @return the product ion.
+     * @throws ConstraintViolationException if the lipid adduct has no fragment
+     * or the fragment is not applicable to it.
+     */
+    public Product getProduct(LipidAdduct lipidAdduct) {
+        if (lipidAdduct.getFragment() == null || lipidAdduct.getFragment().getName().isEmpty()) {
+            throw new ConstraintViolationException("Lipid adduct " + lipidAdduct.getLipidString() + " has no fragment!");
+        }
+        return getProduct(lipidAdduct, lipidAdduct.getFragment().getName());
+    }
+
+    /**
+     * Calculates the product ion of the fragment of the precursor.
+     *
+     * @param precursor the precursor.
+     * @param fragment the fragment name.
+     * @return the product ion.
+     * @throws ConstraintViolationException if the fragment is not applicable to
+     * the precursor.
+     */
+    public Product getProduct(LipidAdduct precursor, String fragment) {
+        int charge = charge(precursor);
+        String name = fragment.trim();
+        Product headGroup = headGroupFragments.getOrDefault(precursor.getLipid().getLipidClass(), Collections.emptyMap()).get(name);
+        if (headGroup != null) {
+            return product(precursor, name, headGroup.neutralLoss, headGroup.fragmentElements, headGroup.charge);
+        }
+        boolean neutralLoss = name.startsWith("-(") && name.endsWith(")");
+        String chainName = neutralLoss ? name.substring(2, name.length() - 1) : name;
+        FattyAcid fa = precursor.getLipid().getFa().get(chainName);
+        if (fa != null && isEsterChain(fa)) {
+            ElementTable freeAcid = fa.getElements();
+            freeAcid.increment(Element.ELEMENT_H);
+            freeAcid.increment(Element.ELEMENT_O);
+            if (neutralLoss) {
+                return product(precursor, name, true, freeAcid, charge);
+            }
+            freeAcid.decrement(Element.ELEMENT_H);
+            return product(precursor, name, false, freeAcid, -1);
+        }
+        if (LONG_CHAIN_BASE.equals(name)) {
+            for (FattyAcid lcb : precursor.getLipid().getFa().values()) {
+                if (lcb.isLcb()) {
+                    ElementTable ion = lcb.getElements();
+                    ion.incrementBy(Element.ELEMENT_H, 3 - 2 * lcb.getNHydroxy());
+                    ion.decrementBy(Element.ELEMENT_O, lcb.getNHydroxy());
+                    return product(precursor, name, false, ion, 1);
+                }
+            }
+        } else if (neutralLoss && fa == null) {
+            try {
+                return product(precursor, name, true, new ElementTable(chainName), charge);
+            } catch (ParsingException ex) {
+                throw new ConstraintViolationException("Neutral loss " + name + " is not a sum formula!", ex);
+            }
+        }
+        throw new ConstraintViolationException("Fragment " + name + " is not applicable to " + precursor.getLipidString() + "!");
+    }
+
+    /**
+     * Calculates the product ion m/z for many precursor and fragment pairs in
+     * parallel, e.g. to generate spectral libraries.
+     *
+     * @param precursors the precursors.
+     * @param fragments the fragment names, one per precursor.
+     * @return the product ion m/z values, or NaN for fragments that are not
+     * applicable to their precursor.
+     * @throws ConstraintViolationException if the number of precursors and
+     * fragments differ.
+     */
+    public double[] getProductMz(List<LipidAdduct> precursors, List<String> fragments) {
+        if (precursors.size() != fragments.size()) {
+            throw new ConstraintViolationException("Expected one fragment per precursor, got " + precursors.size() + " precursors and " + fragments.size() + " fragments!");
+        }
+        double[] mz = new double[precursors.size()];
+        IntStream.range(0, mz.length).parallel().forEach((pair) -> {
+            try {
+                mz[pair] = getProduct(precursors.get(pair), fragments.get(pair)).getMz();
+            } catch (ConstraintViolationException ex) {
+                mz[pair] = Double.NaN;
+            }
+        });
+        return mz;
+    }
+
+    private Product product(LipidAdduct precursor, String fragment, boolean neutralLoss, ElementTable fragmentElements, int charge) {
+        int precursorCharge = charge(precursor);
+        if (neutralLoss) {
+            ElementTable elements = precursor.getElements().subtract(fragmentElements);
+            for (Map.Entry<Element, Integer> entry : elements.entrySet()) {
+                if (entry.getValue() != null && entry.getValue() < 0) {
+                    throw new ConstraintViolationException("Neutral loss " + fragment + " exceeds the elements of " + precursor.getLipidString() + "!");
+                }
+            }
+            return new Product(fragment, true, fragmentElements, elements, precursorCharge);
+        }
+        if (Integer.signum(charge) != Integer.signum(precursorCharge)) {
+            throw new ConstraintViolationException("Fragment " + fragment + " with charge " + charge + " is not observed for precursor " + precursor.getLipidString() + " with charge " + precursorCharge + "!");
+        }
+        return new Product(fragment, false, fragmentElements, fragmentElements, charge);
+    }
+
+    private static void addHeadGroup(Map<LipidClass, Map<String, Product>> fragments, String fragment, String sumFormula, int charge, LipidClass... lipidClasses) {
+        ElementTable elements;
+        try {
+            elements = new ElementTable(sumFormula);
+        } catch (ParsingException ex) {
+            throw new ConstraintViolationException("Invalid sum formula " + sumFormula + " for fragment " + fragment + "!", ex);
+        }
+        boolean neutralLoss = charge == 0;
+        for (LipidClass lipidClass : Arrays.asList(lipidClasses)) {
+            fragments.computeIfAbsent(lipidClass, (k) -> {
+                return new LinkedHashMap<>();
+            }).put(fragment, new Product(fragment, neutralLoss, elements, elements, charge));
+        }
+    }
+
+    private static boolean isEsterChain(FattyAcid fa) {
+        return !fa.isLcb() && fa.getLipidFaBondType() == LipidFaBondType.ESTER && (fa.getNCarbon() > 0 || fa.getNDoubleBonds() > 0);
+    }
+
+    private static int charge(LipidAdduct precursor) {
+        Adduct adduct = precursor.getAdduct();
+        return adduct == null ? 0 : adduct.getCharge();
+    }
+
+    private static double mz(ElementTable elements, int charge) {
+        double mass = elements.getMass();
+        if (charge != 0) {
+            mass = (mass - charge * Element.ELECTRON_REST_MASS) / Math.abs(charge);
+        }
+        return mass;
+    }
+}
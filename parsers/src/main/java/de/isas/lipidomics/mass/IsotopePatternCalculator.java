@@ -0,0 +1,389 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.Arrays;
+
+/**
+ * Calculates the aggregated isotope pattern of an element composition. Each
+ * peak of the pattern sums all isotopologues with the same nominal mass shift,
+ * i.e. M, M+1, M+2 and so on, and reports their abundance and their
+ * abundance-weighted mean mass.
+ *
+ * The distributions of the naturally occurring elements C, H, N, O, P and S
+ * are precomputed for up to {@link #MAX_PRECOMPUTED_ATOMS} atoms when the
+ * calculator is created, so that a pattern only requires one pruned
+ * convolution per element. Convolutions keep the first {@code maxPeaks}
+ * nominal mass shifts only, which are exact, since higher shifts never
+ * contribute to lower ones. Peaks below the relative intensity cut-off are
+ * removed from the result. Explicit heavy isotopes, e.g.
+ * {@link Element#ELEMENT_C13}, are treated as labels with a fixed mass.
+ *
+ * Instances are immutable and thread-safe. Patterns are not thread-safe and
+ * should be reused by one thread.
+ *
+ * @author nils.hoffmann
+ */
+public final class IsotopePatternCalculator {
+
+    /**
+     * The largest atom count of an element with a precomputed distribution.
+     * Larger counts are convolved from multiple precomputed distributions.
+     */
+    public static final int MAX_PRECOMPUTED_ATOMS = 512;
+
+    /**
+     * The default number of nominal mass shifts, M to M+9.
+     */
+    public static final int DEFAULT_MAX_PEAKS = 10;
+
+    /**
+     * The default cut-off for the intensity relative to the most intense
+     * peak.
+     */
+    public static final double DEFAULT_MIN_RELATIVE_INTENSITY = 1e-4;
+
+    private static final Element[] ELEMENTS = Element.values();
+    private static final int NATURAL_ELEMENTS = Element.ELEMENT_S.ordinal() + 1;
+    private static final double MASS_S36 = 35.96708071;
+
+    /*
+     * Natural isotope masses and abundances of C, H, N, O, P and S, indexed by
+     * the element ordinal and the nominal mass shift.
+     */
+    private static final double[][] ISOTOPE_MASSES = new double[][]{
+        {Element.ELEMENT_C.getMass(), Element.ELEMENT_C13.getMass()},
+        {Element.ELEMENT_H.getMass(), Element.ELEMENT_H2.getMass()},
+        {Element.ELEMENT_N.getMass(), Element.ELEMENT_N15.getMass()},
+        {Element.ELEMENT_O.getMass(), Element.ELEMENT_O17.getMass(), Element.ELEMENT_O18.getMass()},
+        {Element.ELEMENT_P.getMass()},
+        {Element.ELEMENT_S.getMass(), Element.ELEMENT_S33.getMass(), Element.ELEMENT_S34.getMass(), 0.0d, MASS_S36}
+    };
+    private static final double[][] ISOTOPE_ABUNDANCES = new double[][]{
+        {0.9893, 0.0107},
+        {0.999885, 0.000115},
+        {0.99636, 0.00364},
+        {0.99757, 0.00038, 0.00205},
+        {1.0},
+        {0.9499, 0.0075, 0.0425, 0.0, 0.0001}
+    };
+
+    private final int maxPeaks;
+    private final double minRelativeIntensity;
+    /*
+     * Abundances and abundance-weighted mass sums per element, atom count and
+     * nominal mass shift.
+     */
+    private final double[][][] abundances;
+    private final double[][][] massSums;
+
+    /**
+     * An aggregated isotope pattern. Peaks are ordered by their nominal mass
+     * shift.
+     */
+    public static final class IsotopePattern {
+
+        private final LipidMassCalculator.Composition composition = new LipidMassCalculator.Composition();
+        private final int[] shifts;
+        private final double[] masses;
+        private final double[] abundances;
+        private final double[] abundanceBuffer;
+        private final double[] massSumBuffer;
+        private final double[] convolutionAbundances;
+        private final double[] convolutionMassSums;
+        private int size;
+        private int charge;
+        private double maxAbundance;
+
+        private IsotopePattern(int maxPeaks) {
+            this.shifts = new int[maxPeaks];
+            this.masses = new double[maxPeaks];
+            this.abundances = new double[maxPeaks];
+            this.abundanceBuffer = new double[maxPeaks];
+            this.massSumBuffer = new double[maxPeaks];
+            this.convolutionAbundances = new double[maxPeaks];
+            this.convolutionMassSums = new double[maxPeaks];
+        }
+
+        /**
+         * Returns the number of peaks above the cut-off.
+         *
+         * @return the number of peaks.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the net charge the pattern was calculated for.
+         *
+         * @return the net charge.
+         */
+        public int getCharge() {
+            return charge;
+        }
+
+        /**
+         * Returns the nominal mass shift of the peak relative to the
+         * monoisotopic peak, e.g. 1 for M+1.
+         *
+         * @param peak the peak index.
+         * @return the nominal mass shift.
+         */
+        public int getNominalShift(int peak) {
+            checkPeak(peak);
+            return shifts[peak];
+        }
+
+        /**
+         * Returns the abundance-weighted mean mass of all isotopologues of the
+         * peak.
+         *
+         * @param peak the peak index.
+         * @return the mass.
+         */
+        public double getMass(int peak) {
+            checkPeak(peak);
+            return masses[peak];
+        }
+
+        /**
+         * Returns the m/z of the peak for the charge, or its mass, if the
+         * charge is 0. The charge is applied as in {@link LipidAdduct#getMass()}.
+         *
+         * @param peak the peak index.
+         * @return the m/z.
+         */
+        public double getMz(int peak) {
+            double mass = getMass(peak);
+            if (charge != 0) {
+                mass = (mass - charge * Element.ELECTRON_REST_MASS) / Math.abs(charge);
+            }
+            return mass;
+        }
+
+        /**
+         * Returns the fraction of all molecules that belong to the peak.
+         *
+         * @param peak the peak index.
+         * @return the abundance between 0 and 1.
+         */
+        public double getAbundance(int peak) {
+            checkPeak(peak);
+            return abundances[peak];
+        }
+
+        /**
+         * Returns the abundance of the peak relative to the most abundant
+         * peak.
+         *
+         * @param peak the peak index.
+         * @return the relative intensity between 0 and 1.
+         */
+        public double getRelativeIntensity(int peak) {
+            return getAbundance(peak) / maxAbundance;
+        }
+
+        private void checkPeak(int peak) {
+            if (peak < 0 || peak >= size) {
+                throw new IndexOutOfBoundsException("Peak " + peak + " is not within [0, " + size + ")!");
+            }
+        }
+    }
+
+    /**
+     * Creates a calculator for {@link #DEFAULT_MAX_PEAKS} peaks and a cut-off
+     * of {@link #DEFAULT_MIN_RELATIVE_INTENSITY}.
+     */
+    public IsotopePatternCalculator() {
+        this(DEFAULT_MAX_PEAKS, DEFAULT_MIN_RELATIVE_INTENSITY);
+    }
+
+    /**
+     * Creates a calculator.
+     *
+     * @param maxPeaks the number of nominal mass shifts to calculate, starting
+     * with the monoisotopic peak.
+     * @param minRelativeIntensity peaks with a lower intensity relative to the
+     * most intense peak are removed.
+     * @throws ConstraintViolationException if maxPeaks is smaller than 1 or
+     * the cut-off is not within [0, 1].
+     */
+    public IsotopePatternCalculator(int maxPeaks, double minRelativeIntensity) {
+        if (maxPeaks < 1) {
+            throw new ConstraintViolationException("Isotope pattern must have at least 1 peak, was " + maxPeaks + "!");
+        }
+        if (!(minRelativeIntensity >= 0.0d && minRelativeIntensity <= 1.0d)) {
+            throw new ConstraintViolationException("Relative intensity cut-off must be within [0, 1], was " + minRelativeIntensity + "!");
+        }
+        this.maxPeaks = maxPeaks;
+        this.minRelativeIntensity = minRelativeIntensity;
+        this.abundances = new double[NATURAL_ELEMENTS][MAX_PRECOMPUTED_ATOMS + 1][];
+        this.massSums = new double[NATURAL_ELEMENTS][MAX_PRECOMPUTED_ATOMS + 1][];
+        for (int element = 0; element < NATURAL_ELEMENTS; element++) {
+            double[] atomAbundances = new double[maxPeaks];
+            double[] atomMassSums = new double[maxPeaks];
+            for (int shift = 0; shift < Math.min(maxPeaks, ISOTOPE_ABUNDANCES[element].length); shift++) {
+                atomAbundances[shift] = ISOTOPE_ABUNDANCES[element][shift];
+                atomMassSums[shift] = ISOTOPE_ABUNDANCES[element][shift] * ISOTOPE_MASSES[element][shift];
+            }
+            abundances[element][0] = new double[maxPeaks];
+            abundances[element][0][0] = 1.0d;
+            massSums[element][0] = new double[maxPeaks];
+            for (int atoms = 1; atoms <= MAX_PRECOMPUTED_ATOMS; atoms++) {
+                abundances[element][atoms] = new double[maxPeaks];
+                massSums[element][atoms] = new double[maxPeaks];
+                convolve(abundances[element][atoms - 1], massSums[element][atoms - 1], atomAbundances, atomMassSums, abundances[element][atoms], massSums[element][atoms]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of nominal mass shifts that are calculated.
+     *
+     * @return the maximum number of peaks.
+     */
+    public int getMaxPeaks() {
+        return maxPeaks;
+    }
+
+    /**
+     * Returns the cut-off for the intensity relative to the most intense peak.
+     *
+     * @return the relative intensity cut-off.
+     */
+    public double getMinRelativeIntensity() {
+        return minRelativeIntensity;
+    }
+
+    /**
+     * Creates a pattern that can be reused for multiple calculations.
+     *
+     * @return a new, empty pattern.
+     */
+    public IsotopePattern newPattern() {
+        return new IsotopePattern(maxPeaks);
+    }
+
+    /**
+     * Calculates the isotope pattern of the lipid adduct, using its elements
+     * and the adduct charge.
+     *
+     * @param lipidAdduct the lipid adduct.
+     * @return the isotope pattern.
+     */
+    public IsotopePattern calculate(LipidAdduct lipidAdduct) {
+        Adduct adduct = lipidAdduct.getAdduct();
+        return calculate(lipidAdduct.getElements(), adduct == null ? 0 : adduct.getCharge(), newPattern());
+    }
+
+    /**
+     * Calculates the isotope pattern of the element table.
+     *
+     * @param elements the element table.
+     * @param charge the net charge, or 0.
+     * @param pattern the pattern to store the result in.
+     * @return the pattern.
+     */
+    public IsotopePattern calculate(ElementTable elements, int charge, IsotopePattern pattern) {
+        pattern.composition.set(elements, charge);
+        return calculate(pattern.composition, pattern);
+    }
+
+    /**
+     * Calculates the isotope pattern of the composition, e.g. as computed by
+     * {@link LipidMassCalculator#compute(CharSequence, LipidMassCalculator.Composition)}.
+     *
+     * @param composition the composition.
+     * @param pattern the pattern to store the result in.
+     * @return the pattern.
+     * @throws ConstraintViolationException if an element count is negative.
+     */
+    public IsotopePattern calculate(LipidMassCalculator.Composition composition, IsotopePattern pattern) {
+        if (pattern.masses.length != maxPeaks) {
+            throw new ConstraintViolationException("Isotope pattern was created for " + pattern.masses.length + " peaks, expected " + maxPeaks + "!");
+        }
+        double labelMass = 0.0d;
+        for (int element = NATURAL_ELEMENTS; element < ELEMENTS.length; element++) {
+            labelMass += checkedCount(composition, element) * ELEMENTS[element].getMass();
+        }
+        double[] patternAbundances = pattern.abundanceBuffer;
+        double[] patternMassSums = pattern.massSumBuffer;
+        Arrays.fill(patternAbundances, 0.0d);
+        Arrays.fill(patternMassSums, 0.0d);
+        patternAbundances[0] = 1.0d;
+        patternMassSums[0] = labelMass;
+        for (int element = 0; element < NATURAL_ELEMENTS; element++) {
+            int atoms = checkedCount(composition, element);
+            while (atoms > 0) {
+                int precomputed = Math.min(atoms, MAX_PRECOMPUTED_ATOMS);
+                convolve(patternAbundances, patternMassSums, abundances[element][precomputed], massSums[element][precomputed], pattern.convolutionAbundances, pattern.convolutionMassSums);
+                System.arraycopy(pattern.convolutionAbundances, 0, patternAbundances, 0, maxPeaks);
+                System.arraycopy(pattern.convolutionMassSums, 0, patternMassSums, 0, maxPeaks);
+                atoms -= precomputed;
+            }
+        }
+        double maxAbundance = 0.0d;
+        for (int shift = 0; shift < maxPeaks; shift++) {
+            maxAbundance = Math.max(maxAbundance, patternAbundances[shift]);
+        }
+        int size = 0;
+        for (int shift = 0; shift < maxPeaks; shift++) {
+            if (patternAbundances[shift] > 0.0d && patternAbundances[shift] >= minRelativeIntensity * maxAbundance) {
+                pattern.shifts[size] = shift;
+                pattern.masses[size] = patternMassSums[shift] / patternAbundances[shift];
+                pattern.abundances[size] = patternAbundances[shift];
+                size++;
+            }
+        }
+        pattern.size = size;
+        pattern.charge = composition.getCharge();
+        pattern.maxAbundance = maxAbundance;
+        return pattern;
+    }
+
+    private static int checkedCount(LipidMassCalculator.Composition composition, int element) {
+        int count = composition.getCount(ELEMENTS[element]);
+        if (count < 0) {
+            throw new ConstraintViolationException("Isotope pattern can not be calculated for negative count " + count + " of element " + ELEMENTS[element].getName() + "!");
+        }
+        return count;
+    }
+
+    /**
+     * Convolves two distributions, keeping the nominal mass shifts that fit
+     * into the result arrays. The mass sums of a combined isotopologue are the
+     * abundance-weighted sums of both masses.
+     */
+    private static void convolve(double[] leftAbundances, double[] leftMassSums, double[] rightAbundances, double[] rightMassSums, double[] abundances, double[] massSums) {
+        for (int shift = 0; shift < abundances.length; shift++) {
+            double abundance = 0.0d;
+            double massSum = 0.0d;
+            for (int left = 0; left <= shift; left++) {
+                int right = shift - left;
+                abundance += leftAbundances[left] * rightAbundances[right];
+                massSum += leftMassSums[left] * rightAbundances[right] + leftAbundances[left] * rightMassSums[right];
+            }
+            abundances[shift] = abundance;
+            massSums[shift] = massSum;
+        }
+    }
+}
@@ -0,0 +1,636 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidCategory;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.palinom.GoslinLexer;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Calculates the sum formula, mass and m/z of a lipid directly from its
+ * Goslin name. Mass lists only need these numbers, so the calculator sums the
+ * element counts of the head group, the chains and the adduct into the
+ * primitive array of a reusable {@link Composition}, without creating
+ * {@link de.isas.lipidomics.domain.LipidSpecies},
+ * {@link de.isas.lipidomics.domain.FattyAcid} or {@link ElementTable} objects.
+ *
+ * The fast path covers glycerolipid, glycerophospholipid and sphingolipid
+ * shorthand names on species, molecular and structural subspecies level, with
+ * or without double bond positions, and an optional adduct, e.g.
+ * <code>PC 34:1</code>, <code>PC 16:0_18:1[M+H]1+</code> or
+ * <code>Cer d18:1/16:0 [M-H]1-</code>. It applies the element accounting of
+ * {@link LipidAdduct#getElements()}. All other names, e.g. sterols, mediators,
+ * ether head groups or heavy labels, are parsed with the
+ * {@link GoslinVisitorParser}. The results are thus equal to
+ * {@link LipidAdduct#getMass()} and {@link LipidAdduct#getSumFormula()} for
+ * all names accepted by the Goslin grammar. The fast path only accepts head
+ * groups of the Goslin grammar and, on subspecies level, the numbers of chains
+ * allowed for their lipid class. It does not check all rules of the grammar,
+ * so callers that need to validate names should use the parser.
+ *
+ * Instances are immutable and thread-safe. Compositions are not thread-safe
+ * and should be reused by one thread.
+ *
+ * @author nils.hoffmann
+ */
+public final class LipidMassCalculator {
+
+    private static final Element[] ELEMENTS = Element.values();
+    private static final int C = Element.ELEMENT_C.ordinal();
+    private static final int H = Element.ELEMENT_H.ordinal();
+    private static final int N = Element.ELEMENT_N.ordinal();
+    private static final int O = Element.ELEMENT_O.ordinal();
+    private static final int P = Element.ELEMENT_P.ordinal();
+    private static final int S = Element.ELEMENT_S.ordinal();
+    private static final int ESTER = 0;
+    private static final int ETHER_PLASMANYL = 1;
+    private static final int ETHER_PLASMENYL = 2;
+    private static final int MAX_DIGITS = 4;
+
+    private static final String[] HEAD_GROUPS;
+    private static final LipidClass[] HEAD_GROUP_CLASSES;
+    private static final int[][] CLASS_COUNTS;
+    private static final int[] CLASS_PRESENT;
+    private static final int[] MAX_NUM_FA;
+    private static final int[] MAX_POSS_NUM_FA;
+    private static final int[] ALLOWED_NUM_FA;
+
+    static {
+        LipidClass[] classes = LipidClass.values();
+        CLASS_COUNTS = new int[classes.length][ELEMENTS.length];
+        CLASS_PRESENT = new int[classes.length];
+        MAX_NUM_FA = new int[classes.length];
+        MAX_POSS_NUM_FA = new int[classes.length];
+        ALLOWED_NUM_FA = new int[classes.length];
+        Set<String> literals = new HashSet<>();
+        for (int i = 0; i <= GoslinLexer.VOCABULARY.getMaxTokenType(); i++) {
+            String literal = GoslinLexer.VOCABULARY.getLiteralName(i);
+            if (literal != null) {
+                literals.add(literal.substring(1, literal.length() - 1));
+            }
+        }
+        TreeMap<String, LipidClass> headGroups = new TreeMap<>();
+        for (LipidClass lipidClass : classes) {
+            int index = lipidClass.ordinal();
+            for (Map.Entry<Element, Integer> entry : lipidClass.getElements().entrySet()) {
+                if (entry.getValue() != null) {
+                    CLASS_COUNTS[index][entry.getKey().ordinal()] = entry.getValue();
+                    CLASS_PRESENT[index] |= 1 << entry.getKey().ordinal();
+                }
+            }
+            MAX_NUM_FA[index] = lipidClass.getMaxNumFa();
+            MAX_POSS_NUM_FA[index] = lipidClass.getAllowedNumFa().stream().max(Integer::compareTo).orElse(0);
+            for (Integer allowedNumFa : lipidClass.getAllowedNumFa()) {
+                if (allowedNumFa != null && allowedNumFa >= 0 && allowedNumFa < Integer.SIZE) {
+                    ALLOWED_NUM_FA[index] |= 1 << allowedNumFa;
+                }
+            }
+            if (lipidClass != LipidClass.UNDEFINED) {
+                for (String synonym : lipidClass.getSynonyms()) {
+                    // only head groups of the Goslin grammar, LipidClass.forHeadGroup returns the first class with a matching synonym
+                    if (literals.contains(synonym)) {
+                        headGroups.putIfAbsent(synonym, lipidClass);
+                    }
+                }
+            }
+        }
+        HEAD_GROUPS = headGroups.keySet().toArray(new String[headGroups.size()]);
+        HEAD_GROUP_CLASSES = headGroups.values().toArray(new LipidClass[headGroups.size()]);
+    }
+
+    /**
+     * The element counts and charge of a lipid adduct. The counts are stored
+     * in a primitive array, indexed by {@link Element#ordinal()}. Like an
+     * {@link ElementTable}, a composition tracks which elements were added,
+     * even if their count is zero, since those appear in the sum formula.
+     */
+    public static final class Composition {
+
+        private final int[] counts = new int[ELEMENTS.length];
+        private int present;
+        private int charge;
+
+        /**
+         * Returns the count of the provided element.
+         *
+         * @param element the element.
+         * @return the count.
+         */
+        public int getCount(Element element) {
+            return counts[element.ordinal()];
+        }
+
+        /**
+         * Returns true, if the provided element was added to this composition.
+         *
+         * @param element the element.
+         * @return true, if the element is part of the composition.
+         */
+        public boolean contains(Element element) {
+            return (present & (1 << element.ordinal())) != 0;
+        }
+
+        /**
+         * Returns the net charge of the adduct, or 0 without an adduct.
+         *
+         * @return the net charge.
+         */
+        public int getCharge() {
+            return charge;
+        }
+
+        /**
+         * Returns the summed monoisotopic mass of all elements of lipid and
+         * adduct, as {@link ElementTable#getMass()} does.
+         *
+         * @return the monoisotopic mass.
+         */
+        public double getMonoisotopicMass() {
+            double mass = 0.0d;
+            for (int i = 0; i < counts.length; i++) {
+                if ((present & (1 << i)) != 0) {
+                    mass += counts[i] * ELEMENTS[i].getMass();
+                }
+            }
+            return mass;
+        }
+
+        /**
+         * Returns the m/z for the adduct charge, or the monoisotopic mass, if
+         * the charge is 0. This is equal to {@link LipidAdduct#getMass()}.
+         *
+         * @return the m/z.
+         */
+        public double getMz() {
+            double mass = getMonoisotopicMass();
+            if (charge != 0) {
+                mass = (mass - charge * Element.ELECTRON_REST_MASS) / Math.abs(charge);
+            }
+            return mass;
+        }
+
+        /**
+         * Returns the sum formula, as {@link ElementTable#getSumFormula()}
+         * does.
+         *
+         * @return the sum formula.
+         */
+        public String getSumFormula() {
+            return appendSumFormula(new StringBuilder()).toString();
+        }
+
+        /**
+         * Appends the sum formula to the provided string builder.
+         *
+         * @param sb the string builder.
+         * @return the string builder.
+         */
+        public StringBuilder appendSumFormula(StringBuilder sb) {
+            for (int i = 0; i < counts.length; i++) {
+                if ((present & (1 << i)) != 0) {
+                    sb.append(ELEMENTS[i].getName());
+                    if (counts[i] > 1) {
+                        sb.append(counts[i]);
+                    }
+                }
+            }
+            return sb;
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            present = 0;
+            charge = 0;
+        }
+
+        void add(int element, int count) {
+            counts[element] += count;
+            present |= 1 << element;
+        }
+
+        void set(ElementTable elements, int charge) {
+            clear();
+            for (Map.Entry<Element, Integer> entry : elements.entrySet()) {
+                if (entry.getValue() != null) {
+                    add(entry.getKey().ordinal(), entry.getValue());
+                }
+            }
+            this.charge = charge;
+        }
+    }
+
+    /**
+     * Returns the m/z of the provided lipid name, see
+     * {@link Composition#getMz()}.
+     *
+     * @param lipidName the Goslin lipid name.
+     * @return the m/z, or the mass, if the name has no adduct.
+     * @throws ParsingException if the name is not a valid Goslin name.
+     */
+    public double getMz(CharSequence lipidName) throws ParsingException {
+        return compute(lipidName, new Composition()).getMz();
+    }
+
+    /**
+     * Returns the sum formula of the provided lipid name, see
+     * {@link Composition#getSumFormula()}.
+     *
+     * @param lipidName the Goslin lipid name.
+     * @return the sum formula.
+     * @throws ParsingException if the name is not a valid Goslin name.
+     */
+    public String getSumFormula(CharSequence lipidName) throws ParsingException {
+        return compute(lipidName, new Composition()).getSumFormula();
+    }
+
+    /**
+     * Calculates the composition of the provided lipid name into the provided
+     * composition, which is cleared first.
+     *
+     * @param lipidName the Goslin lipid name.
+     * @param composition the composition to reuse.
+     * @return the composition.
+     * @throws ParsingException if the name is not a valid Goslin name.
+     */
+    public Composition compute(CharSequence lipidName, Composition composition) throws ParsingException {
+        composition.clear();
+        if (!computeShorthand(lipidName, composition)) {
+            LipidAdduct lipidAdduct = new GoslinVisitorParser().parse(lipidName.toString());
+            composition.set(lipidAdduct.getElements(), lipidAdduct.getAdduct() == null ? 0 : lipidAdduct.getAdduct().getCharge());
+        }
+        return composition;
+    }
+
+    /**
+     * Calculates the composition of a shorthand name on the fast path.
+     *
+     * @param s the lipid name.
+     * @param composition the cleared composition.
+     * @return false, if the name is not covered by the fast path. The
+     * composition then contains partial results.
+     */
+    static boolean computeShorthand(CharSequence s, Composition composition) {
+        int n = s.length();
+        int space = indexOf(s, ' ', 0);
+        if (space <= 0) {
+            return false;
+        }
+        LipidClass lipidClass = forHeadGroup(s, 0, space);
+        if (lipidClass == null) {
+            return false;
+        }
+        boolean sphingoLipid = lipidClass.getCategory() == LipidCategory.SP;
+        if (!sphingoLipid && lipidClass.getCategory() != LipidCategory.GL && lipidClass.getCategory() != LipidCategory.GP) {
+            return false;
+        }
+        int classIndex = lipidClass.ordinal();
+        for (int i = 0; i < ELEMENTS.length; i++) {
+            if ((CLASS_PRESENT[classIndex] & (1 << i)) != 0) {
+                composition.add(i, CLASS_COUNTS[classIndex][i]);
+            }
+        }
+        int pos = space + 1;
+        int nChains = 0;
+        int nEther = 0;
+        boolean oldHydroxylLcb = false;
+        char separator = 0;
+        while (true) {
+            boolean lcb = sphingoLipid && nChains == 0;
+            int oldHydroxyl = -1;
+            if (pos < n && (s.charAt(pos) == 'd' || s.charAt(pos) == 't')) {
+                if (!lcb) {
+                    return false;
+                }
+                oldHydroxyl = s.charAt(pos) == 'd' ? 2 : 3;
+                pos++;
+            }
+            int end = digitsEnd(s, pos);
+            if (end == pos || end - pos > MAX_DIGITS || end >= n || s.charAt(end) != ':') {
+                return false;
+            }
+            int nCarbon = intValue(s, pos, end);
+            pos = end + 1;
+            end = digitsEnd(s, pos);
+            if (end == pos || end - pos > MAX_DIGITS) {
+                return false;
+            }
+            int nDoubleBonds = intValue(s, pos, end);
+            pos = end;
+            if (pos < n && s.charAt(pos) == '(') {
+                pos = doubleBondPositionsEnd(s, pos + 1);
+                if (pos < 0) {
+                    return false;
+                }
+            }
+            int nHydroxy = 0;
+            boolean hydroxy = false;
+            if (pos < n && s.charAt(pos) == ';') {
+                end = digitsEnd(s, pos + 1);
+                if (end == pos + 1 || end - pos - 1 > MAX_DIGITS) {
+                    return false;
+                }
+                nHydroxy = intValue(s, pos + 1, end);
+                hydroxy = true;
+                pos = end;
+            }
+            int bondType = ESTER;
+            if (pos < n && (s.charAt(pos) == 'a' || s.charAt(pos) == 'p')) {
+                if (lcb) {
+                    return false;
+                }
+                bondType = s.charAt(pos) == 'a' ? ETHER_PLASMANYL : ETHER_PLASMENYL;
+                nEther++;
+                pos++;
+            }
+            if (lcb) {
+                if ((oldHydroxyl >= 0) == hydroxy) {
+                    return false;
+                }
+                if (oldHydroxyl >= 0) {
+                    nHydroxy = oldHydroxyl;
+                    oldHydroxylLcb = true;
+                }
+            }
+            if (nCarbon == 0 && nDoubleBonds == 0) {
+                // empty chains are accounted differently on species and subspecies level
+                return false;
+            }
+            addChain(composition, nCarbon, nDoubleBonds, nHydroxy, bondType, lcb);
+            nChains++;
+            if (pos >= n) {
+                break;
+            }
+            char c = s.charAt(pos);
+            if (c == '/' || c == '\\' || c == '_' || c == '-') {
+                if ((separator != 0 && c != separator) || (sphingoLipid && (c == '_' || c == '-'))) {
+                    return false;
+                }
+                separator = c;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (nEther > 1 || nChains > MAX_NUM_FA[classIndex] || (sphingoLipid && nChains > 2)) {
+            return false;
+        }
+        if (nChains > 1 && (ALLOWED_NUM_FA[classIndex] & (1 << nChains)) == 0) {
+            // subspecies names must list one of the allowed numbers of chains, e.g. three for TAG
+            return false;
+        }
+        if (oldHydroxylLcb && (nChains > 1 || MAX_POSS_NUM_FA[classIndex] < 2)) {
+            // the Goslin subspecies handlers do not count the hydroxyls of a d or t prefix
+            return false;
+        }
+        if (nChains == 1) {
+            // species level, see LipidSpecies.getElements and LipidSpeciesInfo.getElements
+            int maxPossNumFa = MAX_POSS_NUM_FA[classIndex];
+            if (maxPossNumFa > 0) {
+                composition.add(O, maxPossNumFa - 1);
+                composition.add(H, -(maxPossNumFa - 1));
+            }
+            composition.add(H, MAX_NUM_FA[classIndex] - maxPossNumFa);
+        } else {
+            composition.add(H, MAX_NUM_FA[classIndex] - nChains);
+        }
+        if (pos < n) {
+            return addAdduct(s, pos, composition);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the elements of a chain, as {@link de.isas.lipidomics.domain.FattyAcid#getElements()}
+     * does.
+     */
+    private static void addChain(Composition composition, int nCarbon, int nDoubleBonds, int nHydroxy, int bondType, boolean lcb) {
+        composition.add(C, nCarbon);
+        if (lcb) {
+            composition.add(H, 2 * (nCarbon - nDoubleBonds) + 1);
+            composition.add(O, nHydroxy);
+            composition.add(N, 1);
+            return;
+        }
+        switch (bondType) {
+            case ETHER_PLASMENYL:
+                composition.add(H, 2 * nCarbon - 1 - 2 * nDoubleBonds + 2);
+                composition.add(O, nHydroxy);
+                break;
+            case ETHER_PLASMANYL:
+                composition.add(H, (nCarbon + 1) * 2 - 1 - 2 * nDoubleBonds);
+                composition.add(O, nHydroxy);
+                break;
+            default:
+                composition.add(H, 2 * nCarbon - 1 - 2 * nDoubleBonds);
+                composition.add(O, 1 + nHydroxy);
+                break;
+        }
+    }
+
+    /**
+     * Adds the adduct elements and charge, as
+     * {@link de.isas.lipidomics.domain.Adduct#getElements()} does. The adduct
+     * has the form <code>[M+H]1+</code>, optionally preceded by a space.
+     */
+    private static boolean addAdduct(CharSequence s, int pos, Composition composition) {
+        int n = s.length();
+        if (s.charAt(pos) == ' ') {
+            pos++;
+        }
+        if (pos + 2 > n || s.charAt(pos) != '[' || s.charAt(pos + 1) != 'M') {
+            return false;
+        }
+        int start = pos + 2;
+        int close = indexOf(s, ']', start);
+        // sign, 1 to 8 characters, ']', charge and charge sign
+        if (close < 0 || close - start < 2 || close - start > 9 || close + 3 != n) {
+            return false;
+        }
+        char sign = s.charAt(start);
+        if (sign != '+' && sign != '-') {
+            return false;
+        }
+        for (int i = start + 1; i < close; i++) {
+            if (!Character.isLetterOrDigit(s.charAt(i)) || s.charAt(i) > 'z') {
+                return false;
+            }
+        }
+        char charge = s.charAt(close + 1);
+        char chargeSign = s.charAt(close + 2);
+        if (charge < '1' || charge > '4' || (chargeSign != '+' && chargeSign != '-')) {
+            return false;
+        }
+        composition.charge = (charge - '0') * (chargeSign == '+' ? 1 : -1);
+        // a leading multiplier applies to the whole formula, e.g. +2H
+        int formulaStart = digitsEnd(s, start + 1);
+        int multiplier = 1;
+        if (formulaStart == close) {
+            formulaStart = start + 1;
+        } else if (formulaStart > start + 1) {
+            multiplier = intValue(s, start + 1, formulaStart);
+        }
+        if (isSumFormula(s, formulaStart, close)) {
+            int factor = sign == '-' ? -multiplier : multiplier;
+            int i = formulaStart;
+            while (i < close) {
+                int element = element(s.charAt(i));
+                int end = digitsEnd(s, i + 1);
+                int count = end == i + 1 ? 1 : intValue(s, i + 1, end);
+                composition.add(element, factor * count);
+                i = end;
+            }
+        }
+        // adduct names that are no sum formula do not add any elements
+        return true;
+    }
+
+    private static boolean isSumFormula(CharSequence s, int from, int to) {
+        if (from == to || element(s.charAt(from)) < 0) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (element(c) < 0 && !isDigit(c)) {
+                return false;
+            }
+        }
+        return to - from <= 8;
+    }
+
+    private static int element(char c) {
+        switch (c) {
+            case 'C':
+                return C;
+            case 'H':
+                return H;
+            case 'N':
+                return N;
+            case 'O':
+                return O;
+            case 'P':
+                return P;
+            case 'S':
+                return S;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Skips double bond positions, e.g. <code>9Z,12Z)</code>.
+     *
+     * @return the index after the closing bracket, or -1.
+     */
+    private static int doubleBondPositionsEnd(CharSequence s, int pos) {
+        int n = s.length();
+        while (true) {
+            int end = digitsEnd(s, pos);
+            if (end == pos || end >= n) {
+                return -1;
+            }
+            pos = end;
+            if (s.charAt(pos) == 'E' || s.charAt(pos) == 'Z') {
+                pos++;
+            }
+            if (pos >= n) {
+                return -1;
+            }
+            if (s.charAt(pos) == ')') {
+                return pos + 1;
+            }
+            if (s.charAt(pos) != ',') {
+                return -1;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Looks up the lipid class of a head group, as
+     * {@link LipidClass#forHeadGroup(String)} does, without creating a
+     * string.
+     *
+     * @return the lipid class, or null.
+     */
+    private static LipidClass forHeadGroup(CharSequence s, int from, int to) {
+        int low = 0;
+        int high = HEAD_GROUPS.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(HEAD_GROUPS[mid], s, from, to);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return HEAD_GROUP_CLASSES[mid];
+            }
+        }
+        return null;
+    }
+
+    private static int compare(String headGroup, CharSequence s, int from, int to) {
+        int length = to - from;
+        int min = Math.min(headGroup.length(), length);
+        for (int i = 0; i < min; i++) {
+            char c1 = headGroup.charAt(i);
+            char c2 = s.charAt(from + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return headGroup.length() - length;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digitsEnd(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int intValue(CharSequence s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, memory-mapped index of lipid m/z values, as written by
+ * {@link MassIndexBuilder}. Entries are sorted by m/z, so that ppm tolerance
+ * queries are answered by binary search directly on the mapped file.
+ *
+ * The index itself is immutable and may be shared by any number of threads.
+ * Each thread obtains its own {@link Cursor}, which is reusable and does not
+ * allocate per query or per hit:
+ * <pre>
+ * try (MassIndex index = MassIndex.open(Paths.get("library.mzi"))) {
+ *     MassIndex.Cursor cursor = index.cursor();
+ *     cursor.query(760.5851, 5.0);
+ *     while (cursor.next()) {
+ *         System.out.println(cursor.getLipidName() + " " + cursor.getAdductName() + " " + cursor.getPpmError());
+ *     }
+ * }
+ * </pre>
+ *
+ * The file layout is a header, followed by the entries of m/z (double), lipid
+ * id (int) and adduct id (int), and two name tables for lipids and adducts.
+ * A name table holds the char offsets of all names, followed by their UTF-16
+ * chars.
+ *
+ * @author nils.hoffmann
+ */
+public final class MassIndex implements Closeable {
+
+    static final long MAGIC = 0x4A474F534C4D5A49L;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    static final int ENTRY_SIZE = 16;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int lipidCount;
+    private final int adductCount;
+    private final int entriesOffset;
+    private final NameTable lipidNames;
+    private final NameTable adductNames;
+
+    private MassIndex(Path file, ByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+            throw new ConstraintViolationException("File " + file + " is not a mass index!");
+        }
+        int version = buffer.getInt(8);
+        if (version != FORMAT_VERSION) {
+            throw new ConstraintViolationException("Unsupported mass index version " + version + " in " + file + ", expected " + FORMAT_VERSION + "!");
+        }
+        this.size = buffer.getInt(12);
+        this.lipidCount = buffer.getInt(16);
+        this.adductCount = buffer.getInt(20);
+        this.entriesOffset = (int) buffer.getLong(24);
+        this.lipidNames = new NameTable((int) buffer.getLong(32), lipidCount);
+        this.adductNames = new NameTable((int) buffer.getLong(40), adductCount);
+        if ((long) entriesOffset + (long) size * ENTRY_SIZE > buffer.capacity()
+                || adductNames.charsOffset + 2L * adductNames.offset(adductCount) > buffer.capacity()) {
+            throw new ConstraintViolationException("Mass index " + file + " is truncated!");
+        }
+    }
+
+    /**
+     * Opens and maps the index file read-only.
+     *
+     * @param file the index file.
+     * @return the mass index.
+     * @throws IOException if the file can not be read.
+     * @throws ConstraintViolationException if the file is not a valid mass
+     * index.
+     */
+    public static MassIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ConstraintViolationException("Mass index " + file + " exceeds the maximum size of 2 GB!");
+            }
+            return new MassIndex(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns a new cursor on this index. Cursors must not be shared between
+     * threads.
+     *
+     * @return the cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of distinct lipid names.
+     *
+     * @return the number of lipid names.
+     */
+    public int getLipidCount() {
+        return lipidCount;
+    }
+
+    /**
+     * Returns the number of distinct adduct names.
+     *
+     * @return the number of adduct names.
+     */
+    public int getAdductCount() {
+        return adductCount;
+    }
+
+    /**
+     * Returns the lipid name for the lipid id. This allocates a new string.
+     *
+     * @param lipidId the lipid id.
+     * @return the lipid name.
+     */
+    public String getLipidName(int lipidId) {
+        return lipidNames.toString(lipidId);
+    }
+
+    /**
+     * Returns the adduct name for the adduct id. This allocates a new string.
+     *
+     * @param adductId the adduct id.
+     * @return the adduct name.
+     */
+    public String getAdductName(int adductId) {
+        return adductNames.toString(adductId);
+    }
+
+    /**
+     * Returns the m/z of the entry at the provided position, in ascending
+     * order.
+     *
+     * @param position the entry position.
+     * @return the m/z value.
+     */
+    public double getMz(int position) {
+        return buffer.getDouble(entriesOffset + position * ENTRY_SIZE);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Does nothing besides documenting the end of use, the mapping is released
+     * once the index is garbage collected.
+     */
+    @Override
+    public void close() {
+
+    }
+
+    /**
+     * Returns the position of the first entry with an m/z greater than or
+     * equal to the provided value (or greater than, if inclusive is false).
+     */
+    private int lowerBound(double mz, boolean inclusive) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            double value = getMz(mid);
+            if (value < mz || (!inclusive && value == mz)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private final class NameTable {
+
+        private final int offsetsOffset;
+        private final int charsOffset;
+        private final int count;
+
+        NameTable(int offset, int count) {
+            this.offsetsOffset = offset;
+            this.charsOffset = offset + 4 * (count + 1);
+            this.count = count;
+        }
+
+        int offset(int id) {
+            return buffer.getInt(offsetsOffset + 4 * id);
+        }
+
+        int length(int id) {
+            return offset(id + 1) - offset(id);
+        }
+
+        char charAt(int id, int index) {
+            return buffer.getChar(charsOffset + 2 * (offset(id) + index));
+        }
+
+        String toString(int id) {
+            if (id < 0 || id >= count) {
+                throw new IndexOutOfBoundsException("Name id " + id + " out of bounds for " + count + " names!");
+            }
+            int length = length(id);
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = charAt(id, i);
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * A reusable char sequence view on a name in the mapped file. Its content
+     * changes when the cursor moves, call {@link #toString()} to keep a copy.
+     */
+    public final class Name implements CharSequence {
+
+        private final NameTable table;
+        private int id = -1;
+
+        private Name(NameTable table) {
+            this.table = table;
+        }
+
+        /**
+         * Returns the id of the current name.
+         *
+         * @return the name id.
+         */
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public int length() {
+            return table.length(id);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return table.charAt(id, index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        /**
+         * Returns true, if the current name equals the provided char sequence.
+         *
+         * @param other the char sequence to compare to.
+         * @return true, if both have the same chars.
+         */
+        public boolean contentEquals(CharSequence other) {
+            int length = length();
+            if (other.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (charAt(i) != other.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return table.toString(id);
+        }
+    }
+
+    /**
+     * A cursor over the hits of a ppm tolerance query. Cursors are reusable,
+     * each call to {@link #query(double, double)} resets the cursor to before
+     * the first hit, in ascending order of m/z.
+     */
+    public final class Cursor {
+
+        private final Name lipidName = new Name(lipidNames);
+        private final Name adductName = new Name(adductNames);
+        private double queryMz;
+        private int start;
+        private int end;
+        private int position;
+
+        private Cursor() {
+
+        }
+
+        /**
+         * Queries all entries within the ppm tolerance of the provided m/z.
+         *
+         * @param mz the query m/z.
+         * @param ppm the tolerance in parts per million.
+         * @return the number of hits.
+         */
+        public int query(double mz, double ppm) {
+            if (!Double.isFinite(mz) || !Double.isFinite(ppm) || ppm < 0) {
+                throw new ConstraintViolationException("Query m/z and ppm must be finite and ppm must not be negative! Was: " + mz + ", " + ppm);
+            }
+            double tolerance = Math.abs(mz) * ppm * 1e-6;
+            return query(mz, mz - tolerance, mz + tolerance);
+        }
+
+        /**
+         * Queries all entries with an m/z in the closed interval from lower
+         * to upper.
+         *
+         * @param mz the query m/z, used for the ppm error.
+         * @param lower the lower m/z bound.
+         * @param upper the upper m/z bound.
+         * @return the number of hits.
+         */
+        public int query(double mz, double lower, double upper) {
+            this.queryMz = mz;
+            this.start = lowerBound(lower, true);
+            this.end = Math.max(start, lowerBound(upper, false));
+            this.position = start - 1;
+            lipidName.id = -1;
+            adductName.id = -1;
+            return end - start;
+        }
+
+        /**
+         * Moves to the next hit.
+         *
+         * @return true, if there is another hit, false otherwise.
+         */
+        public boolean next() {
+            if (position + 1 >= end) {
+                position = end;
+                return false;
+            }
+            position++;
+            int offset = entriesOffset + position * ENTRY_SIZE;
+            lipidName.id = buffer.getInt(offset + 8);
+            adductName.id = buffer.getInt(offset + 12);
+            return true;
+        }
+
+        /**
+         * Returns the number of hits of the last query.
+         *
+         * @return the number of hits.
+         */
+        public int getCount() {
+            return end - start;
+        }
+
+        /**
+         * Returns the position of the current hit in the index.
+         *
+         * @return the entry position.
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        public double getMz() {
+            return MassIndex.this.getMz(position);
+        }
+
+        public double getPpmError() {
+            return (getMz() - queryMz) / queryMz * 1e6;
+        }
+
+        public int getLipidId() {
+            return lipidName.id;
+        }
+
+        public int getAdductId() {
+            return adductName.id;
+        }
+
+        /**
+         * Returns a view on the lipid name of the current hit. The view is
+         * reused by this cursor.
+         *
+         * @return the lipid name view.
+         */
+        public Name getLipidName() {
+            return lipidName;
+        }
+
+        /**
+         * Returns a view on the adduct name of the current hit. The view is
+         * reused by this cursor.
+         *
+         * @return the adduct name view.
+         */
+        public Name getAdductName() {
+            return adductName;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.PrimitiveSort;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link MassIndex} file from lipid names, adduct names and their
+ * m/z values. Entries are collected in primitive arrays and sorted by m/z when
+ * the index is written. Lipid and adduct names are stored once each. Builders
+ * are not thread-safe.
+ *
+ * Example:
+ * <pre>
+ * MassIndexBuilder builder = new MassIndexBuilder();
+ * for (LipidAdduct lipidAdduct : library) {
+ *     builder.add(lipidAdduct);
+ * }
+ * builder.write(Paths.get("library.mzi"));
+ * </pre>
+ *
+ * @author nils.hoffmann
+ */
+public class MassIndexBuilder {
+
+    private double[] mz = new double[1024];
+    private int[] lipidIds = new int[1024];
+    private int[] adductIds = new int[1024];
+    private int size;
+    private final Map<String, Integer> lipidNameIds = new HashMap<>();
+    private final List<String> lipidNames = new ArrayList<>();
+    private final Map<String, Integer> adductNameIds = new HashMap<>();
+    private final List<String> adductNames = new ArrayList<>();
+
+    /**
+     * Adds an entry for the lipid adduct, using the mass as returned by
+     * {@link LipidAdduct#getMass()}, the lipid name without adduct and the
+     * adduct name, e.g. "[M+H]1+". Lipids without adduct have an empty adduct
+     * name and their neutral mass.
+     *
+     * @param lipidAdduct the lipid adduct.
+     * @return the id of the lipid name in the index.
+     */
+    public int add(LipidAdduct lipidAdduct) {
+        String lipidName = lipidAdduct.getLipid() == null ? "" : lipidAdduct.getLipid().getLipidString();
+        String adductName = lipidAdduct.getAdduct() == null ? "" : lipidAdduct.getAdduct().getLipidString();
+        return add(lipidName, adductName, lipidAdduct.getMass());
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param lipidName the lipid name.
+     * @param adductName the adduct name.
+     * @param mz the m/z value.
+     * @return the id of the lipid name in the index.
+     */
+    public int add(String lipidName, String adductName, double mz) {
+        if (!Double.isFinite(mz) || mz < 0) {
+            throw new ConstraintViolationException("m/z of " + lipidName + adductName + " must be a finite, positive number! Was: " + mz);
+        }
+        if (size == this.mz.length) {
+            int capacity = size + (size >> 1);
+            this.mz = Arrays.copyOf(this.mz, capacity);
+            this.lipidIds = Arrays.copyOf(this.lipidIds, capacity);
+            this.adductIds = Arrays.copyOf(this.adductIds, capacity);
+        }
+        int lipidId = id(lipidName, lipidNames, lipidNameIds);
+        this.mz[size] = mz;
+        this.lipidIds[size] = lipidId;
+        this.adductIds[size] = id(adductName, adductNames, adductNameIds);
+        size++;
+        return lipidId;
+    }
+
+    /**
+     * Returns the number of entries added so far.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the entries by m/z and writes the index file. The file is written
+     * to a temporary sibling file first, which then replaces the target file,
+     * so that readers never see a partially written index.
+     *
+     * @param file the index file.
+     * @throws IOException if writing fails.
+     */
+    public void write(Path file) throws IOException {
+        long size = MassIndex.HEADER_SIZE + (long) this.size * MassIndex.ENTRY_SIZE
+                + nameTableSize(lipidNames) + nameTableSize(adductNames);
+        if (size > Integer.MAX_VALUE) {
+            throw new ConstraintViolationException("Mass index would exceed the maximum size of 2 GB!");
+        }
+        double[] keys = Arrays.copyOf(mz, this.size);
+        int[] order = new int[this.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        PrimitiveSort.sort(keys, order);
+        long entriesOffset = MassIndex.HEADER_SIZE;
+        long lipidNamesOffset = entriesOffset + (long) this.size * MassIndex.ENTRY_SIZE;
+        long adductNamesOffset = lipidNamesOffset + nameTableSize(lipidNames);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeLong(MassIndex.MAGIC);
+            out.writeInt(MassIndex.FORMAT_VERSION);
+            out.writeInt(this.size);
+            out.writeInt(lipidNames.size());
+            out.writeInt(adductNames.size());
+            out.writeLong(entriesOffset);
+            out.writeLong(lipidNamesOffset);
+            out.writeLong(adductNamesOffset);
+            for (int i = 0; i < this.size; i++) {
+                out.writeDouble(keys[i]);
+                out.writeInt(lipidIds[order[i]]);
+                out.writeInt(adductIds[order[i]]);
+            }
+            writeNameTable(out, lipidNames);
+            writeNameTable(out, adductNames);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int id(String name, List<String> names, Map<String, Integer> ids) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    private static long nameTableSize(List<String> names) {
+        long chars = 0;
+        for (String name : names) {
+            chars += name.length();
+        }
+        return 4L * (names.size() + 1) + 2 * chars;
+    }
+
+    /**
+     * Writes the char offsets of the names, followed by their UTF-16 chars.
+     */
+    private static void writeNameTable(DataOutputStream out, List<String> names) throws IOException {
+        int offset = 0;
+        out.writeInt(offset);
+        for (String name : names) {
+            offset += name.length();
+            out.writeInt(offset);
+        }
+        for (String name : names) {
+            out.writeChars(name);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidCategory;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidSpeciesInfo;
+import de.isas.lipidomics.domain.PrimitiveSort;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Annotates MS1 peak lists with lipid candidates by m/z. Candidates are kept
+ * sorted by charge and m/z in primitive arrays, peaks are sorted the same way,
+ * and both are walked in a single merge-join pass per charge. Annotating a
+ * peak list thus takes O(p log p) time to sort p peaks plus time linear in the
+ * number of peaks, candidates and hits for the merge-join, instead of
+ * comparing every peak with every candidate. Sorting the candidates takes
+ * O(c log c) time once per annotator.
+ *
+ * Peaks only match candidates with the same charge, e.g. 1 for [M+H]1+ and -1
+ * for [M-H]1-. An annotator is immutable and may be shared between threads.
+ *
+ * Example:
+ * <pre>
+ * Ms1Annotator annotator = new Ms1Annotator(Ms1Annotator.CandidateSpace.builder().
+ *     lipidClasses(EnumSet.of(LipidClass.PC, LipidClass.PE)).
+ *     adducts(Arrays.asList(new Adduct("", "+H", 1, 1))).
+ *     minChainCarbon(12).maxChainCarbon(26).
+ *     minChainDoubleBonds(0).maxChainDoubleBonds(6).
+ *     build());
+ * List&lt;Ms1Annotator.Annotation&gt; annotations = annotator.annotate(peakMz, peakCharges, 5.0);
+ * </pre>
+ *
+ * @author nils.hoffmann
+ */
+public class Ms1Annotator {
+
+    /**
+     * The lipid classes, adducts and chain ranges to generate candidates for.
+     * Carbon and double bond ranges apply to each fatty acyl chain, the
+     * species totals are derived from the maximum allowed number of chains of
+     * each class. The hydroxy range applies to the species total.
+     */
+    @Value
+    @Builder
+    public static class CandidateSpace {
+
+        @NonNull
+        private final Set<LipidClass> lipidClasses;
+        @NonNull
+        private final List<Adduct> adducts;
+        private final int minChainCarbon;
+        private final int maxChainCarbon;
+        private final int minChainDoubleBonds;
+        private final int maxChainDoubleBonds;
+        private final int minHydroxy;
+        private final int maxHydroxy;
+    }
+
+    /**
+     * A candidate within the tolerance of a peak.
+     */
+    @Value
+    public static class Annotation {
+
+        private final int peakIndex;
+        private final double peakMz;
+        private final LipidAdduct lipidAdduct;
+        private final double mz;
+        private final double ppmError;
+    }
+
+    private final LipidAdduct[] candidates;
+    private final double[] mz;
+    private final int[] charges;
+
+    /**
+     * Creates an annotator for the species level candidates of the provided
+     * candidate space. MS1 data can not distinguish the chains of a species,
+     * so no subspecies are generated.
+     *
+     * @param candidateSpace the candidate space.
+     */
+    public Ms1Annotator(CandidateSpace candidateSpace) {
+        this(generateCandidates(candidateSpace));
+    }
+
+    /**
+     * Creates an annotator for the provided candidates.
+     *
+     * @param candidates the candidates.
+     */
+    public Ms1Annotator(Collection<LipidAdduct> candidates) {
+        LipidAdduct[] unsorted = candidates.toArray(new LipidAdduct[0]);
+        this.candidates = new LipidAdduct[unsorted.length];
+        this.mz = new double[unsorted.length];
+        this.charges = new int[unsorted.length];
+        int[] order = new int[unsorted.length];
+        for (int i = 0; i < unsorted.length; i++) {
+            this.mz[i] = unsorted[i].getMass();
+            this.charges[i] = getCharge(unsorted[i]);
+            order[i] = i;
+        }
+        sortByChargeAndMz(this.charges, this.mz, order);
+        for (int i = 0; i < order.length; i++) {
+            this.candidates[i] = unsorted[order[i]];
+        }
+    }
+
+    /**
+     * Sorts the parallel arrays by charge and m/z, ties keep the order of the
+     * original indices.
+     *
+     * @param charges the charges.
+     * @param mz the m/z values.
+     * @param order the original indices.
+     */
+    private static void sortByChargeAndMz(int[] charges, double[] mz, int[] order) {
+        PrimitiveSort.sort(0, order.length - 1, (i, j) -> {
+            int cmp = Integer.compare(charges[i], charges[j]);
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = Double.compare(mz[i], mz[j]);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Integer.compare(order[i], order[j]);
+        }, (i, j) -> {
+            int charge = charges[i];
+            charges[i] = charges[j];
+            charges[j] = charge;
+            double value = mz[i];
+            mz[i] = mz[j];
+            mz[j] = value;
+            int index = order[i];
+            order[i] = order[j];
+            order[j] = index;
+        });
+    }
+
+    /**
+     * Generates the species level candidates of the candidate space.
+     *
+     * @param candidateSpace the candidate space.
+     * @return the candidates.
+     */
+    public static List<LipidAdduct> generateCandidates(CandidateSpace candidateSpace) {
+        if (candidateSpace.getMinChainCarbon() < 0 || candidateSpace.getMinChainCarbon() > candidateSpace.getMaxChainCarbon()
+                || candidateSpace.getMinChainDoubleBonds() < 0 || candidateSpace.getMinChainDoubleBonds() > candidateSpace.getMaxChainDoubleBonds()
+                || candidateSpace.getMinHydroxy() < 0 || candidateSpace.getMinHydroxy() > candidateSpace.getMaxHydroxy()) {
+            throw new ConstraintViolationException("Candidate space ranges must not be negative and min must not exceed max! Was: " + candidateSpace);
+        }
+        List<LipidAdduct> candidates = new ArrayList<>();
+        for (LipidClass lipidClass : candidateSpace.getLipidClasses()) {
+            HeadGroup headGroup = new HeadGroup(lipidClass.getAbbreviation(), Optional.of(lipidClass));
+            int numFa = lipidClass.getAllowedNumFa().stream().max(Integer::compareTo).orElse(0);
+            if (numFa == 0) {
+                addCandidates(candidates, new LipidSpecies(headGroup, Optional.of(new LipidSpeciesInfo(LipidLevel.SPECIES, 0, 0, 0, LipidFaBondType.UNDEFINED))), candidateSpace.getAdducts());
+                continue;
+            }
+            for (int nCarbon = numFa * candidateSpace.getMinChainCarbon(); nCarbon <= numFa * candidateSpace.getMaxChainCarbon(); nCarbon++) {
+                for (int nDoubleBonds = numFa * candidateSpace.getMinChainDoubleBonds(); nDoubleBonds <= Math.min(nCarbon, numFa * candidateSpace.getMaxChainDoubleBonds()); nDoubleBonds++) {
+                    for (int nHydroxy = candidateSpace.getMinHydroxy(); nHydroxy <= candidateSpace.getMaxHydroxy(); nHydroxy++) {
+                        addCandidates(candidates, new LipidSpecies(headGroup, Optional.of(speciesInfo(lipidClass, nCarbon, nDoubleBonds, nHydroxy))), candidateSpace.getAdducts());
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static LipidSpeciesInfo speciesInfo(LipidClass lipidClass, int nCarbon, int nDoubleBonds, int nHydroxy) {
+        // sphingolipid species carry the long chain base, as parsed by the goslin grammar
+        boolean lcb = lipidClass.getCategory() == LipidCategory.SP;
+        return LipidSpeciesInfo.lipidSpeciesInfoBuilder().
+                level(LipidLevel.SPECIES).
+                name(lcb ? "LCB" : LipidLevel.SPECIES.name()).
+                position(-1).
+                lcb(lcb).
+                nCarbon(nCarbon).
+                nHydroxy(nHydroxy).
+                nDoubleBonds(nDoubleBonds).
+                lipidFaBondType(LipidFaBondType.ESTER).
+                build();
+    }
+
+    private static void addCandidates(List<LipidAdduct> candidates, LipidSpecies species, List<Adduct> adducts) {
+        for (Adduct adduct : adducts) {
+            candidates.add(new LipidAdduct(species, adduct, null));
+        }
+    }
+
+    private static int getCharge(LipidAdduct lipidAdduct) {
+        return lipidAdduct.getAdduct() == null ? 0 : lipidAdduct.getAdduct().getCharge();
+    }
+
+    /**
+     * Returns the number of candidates.
+     *
+     * @return the number of candidates.
+     */
+    public int size() {
+        return candidates.length;
+    }
+
+    /**
+     * Returns the candidate at the provided index, in ascending order of
+     * charge and m/z.
+     *
+     * @param index the candidate index.
+     * @return the candidate.
+     */
+    public LipidAdduct getCandidate(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * Returns the m/z of the candidate at the provided index.
+     *
+     * @param index the candidate index.
+     * @return the candidate m/z.
+     */
+    public double getCandidateMz(int index) {
+        return mz[index];
+    }
+
+    /**
+     * Annotates the peaks with all candidates of the same charge within the
+     * ppm tolerance. Annotations are returned in the order of the peaks and,
+     * for each peak, in ascending order of candidate m/z. Isobaric candidates
+     * keep the order in which they were passed to the annotator.
+     *
+     * @param peakMz the peak m/z values.
+     * @param peakCharges the peak charges, including the sign.
+     * @param ppm the tolerance in parts per million.
+     * @return the annotations.
+     */
+    public List<Annotation> annotate(double[] peakMz, int[] peakCharges, double ppm) {
+        if (peakMz.length != peakCharges.length) {
+            throw new ConstraintViolationException("Peak m/z and charge arrays must have the same length! Was: " + peakMz.length + " and " + peakCharges.length);
+        }
+        if (!Double.isFinite(ppm) || ppm < 0) {
+            throw new ConstraintViolationException("Tolerance must be a finite, positive ppm value! Was: " + ppm);
+        }
+        if (peakMz.length == 0 || candidates.length == 0) {
+            return Collections.emptyList();
+        }
+        int[] peaks = new int[peakMz.length];
+        for (int i = 0; i < peaks.length; i++) {
+            peaks[i] = i;
+        }
+        sortByChargeAndMz(Arrays.copyOf(peakCharges, peakCharges.length), Arrays.copyOf(peakMz, peakMz.length), peaks);
+        List<Annotation> annotations = new ArrayList<>();
+        double factor = ppm * 1e-6;
+        int candidate = 0;
+        for (int peakIndex : peaks) {
+            int charge = peakCharges[peakIndex];
+            double mz = peakMz[peakIndex];
+            double tolerance = Math.abs(mz) * factor;
+            double lower = mz - tolerance;
+            // both sides are sorted by charge and m/z, so the lower bound only moves forward
+            while (candidate < candidates.length && (charges[candidate] < charge
+                    || (charges[candidate] == charge && this.mz[candidate] < lower))) {
+                candidate++;
+            }
+            double upper = mz + tolerance;
+            for (int i = candidate; i < candidates.length && charges[i] == charge && this.mz[i] <= upper; i++) {
+                annotations.add(new Annotation(peakIndex, mz, candidates[i], this.mz[i], (this.mz[i] - mz) / mz * 1e6));
+            }
+        }
+        annotations.sort(Comparator.comparingInt(Annotation::getPeakIndex));
+        return annotations;
+    }
+}
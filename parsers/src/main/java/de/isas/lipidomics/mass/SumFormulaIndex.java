@@ -0,0 +1,294 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidCategory;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidSpeciesInfo;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the lipid classes and species that explain a sum formula, e.g.
+ * C42H82NO8P for PC 34:1 or PE 37:1.
+ *
+ * The index holds one entry per {@link LipidClass} and chain variant: ester
+ * chains, plasmanyl and plasmenyl ethers for glycerolipids and
+ * glycerophospholipids, and a long chain base for sphingolipids. The elements
+ * of a species are linear in its total number of carbon atoms, double bonds
+ * and hydroxy groups, so each entry stores the elements of its species without
+ * chain carbons, double bonds and hydroxy groups. A query solves for these
+ * three numbers from the C, H and O counts, instead of generating species.
+ * Classes without fatty acyls, e.g. mediators, match their class formula
+ * exactly. Entries are bucketed by their remaining elements, e.g. N and P, so
+ * that a query only checks the entries of one bucket.
+ *
+ * Candidates are species level lipids, whose
+ * {@link LipidSpecies#getElements()} equals the queried formula, or class
+ * level lipids for classes without fatty acyls. The index is immutable and
+ * thread-safe.
+ *
+ * @author nils.hoffmann
+ */
+@Slf4j
+public final class SumFormulaIndex {
+
+    private static final Element[] ELEMENTS = Element.values();
+    private static final int C = Element.ELEMENT_C.ordinal();
+    private static final int H = Element.ELEMENT_H.ordinal();
+    private static final int O = Element.ELEMENT_O.ordinal();
+    private static final int BITS_PER_ELEMENT = 5;
+    private static final int REFERENCE_CARBON = 20;
+
+    private static final class Entry {
+
+        private final HeadGroup headGroup;
+        private final LipidFaBondType lipidFaBondType;
+        private final boolean lcb;
+        private final boolean chains;
+        private final int carbon;
+        private final int hydrogen;
+        private final int oxygen;
+
+        private Entry(HeadGroup headGroup, LipidFaBondType lipidFaBondType, boolean lcb, boolean chains, int carbon, int hydrogen, int oxygen) {
+            this.headGroup = headGroup;
+            this.lipidFaBondType = lipidFaBondType;
+            this.lcb = lcb;
+            this.chains = chains;
+            this.carbon = carbon;
+            this.hydrogen = hydrogen;
+            this.oxygen = oxygen;
+        }
+    }
+
+    private final Map<Long, Entry[]> buckets;
+    private final int size;
+
+    /**
+     * Creates the index for all lipid classes.
+     */
+    public SumFormulaIndex() {
+        this(Arrays.asList(LipidClass.values()));
+    }
+
+    /**
+     * Creates the index for the provided lipid classes. Classes without an
+     * element composition are skipped.
+     *
+     * @param lipidClasses the lipid classes.
+     */
+    public SumFormulaIndex(List<LipidClass> lipidClasses) {
+        Map<Long, List<Entry>> entries = new HashMap<>();
+        int entryCount = 0;
+        for (LipidClass lipidClass : lipidClasses) {
+            if (lipidClass == LipidClass.UNDEFINED || lipidClass.getElements().isEmpty()) {
+                continue;
+            }
+            HeadGroup headGroup = new HeadGroup(lipidClass.getSynonyms().get(0), Optional.of(lipidClass));
+            int maxPossNumFa = lipidClass.getAllowedNumFa().stream().max(Integer::compareTo).orElse(0);
+            if (maxPossNumFa == 0) {
+                entryCount += add(entries, lipidClass.getElements(), new Entry(headGroup, LipidFaBondType.UNDEFINED, false, false, 0, 0, 0));
+            } else if (lipidClass.getCategory() == LipidCategory.SP) {
+                entryCount += add(entries, headGroup, LipidFaBondType.ESTER, true);
+            } else {
+                entryCount += add(entries, headGroup, LipidFaBondType.ESTER, false);
+                if (lipidClass.getCategory() == LipidCategory.GL || lipidClass.getCategory() == LipidCategory.GP) {
+                    entryCount += add(entries, headGroup, LipidFaBondType.ETHER_PLASMANYL, false);
+                    entryCount += add(entries, headGroup, LipidFaBondType.ETHER_PLASMENYL, false);
+                }
+            }
+        }
+        this.buckets = new HashMap<>();
+        for (Map.Entry<Long, List<Entry>> bucket : entries.entrySet()) {
+            buckets.put(bucket.getKey(), bucket.getValue().toArray(new Entry[bucket.getValue().size()]));
+        }
+        this.size = entryCount;
+    }
+
+    /**
+     * Returns the number of class and chain variant entries.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns all lipids, whose elements equal the provided sum formula.
+     *
+     * @param sumFormula the sum formula, e.g. C42H82NO8P.
+     * @return the candidate lipids, ordered by lipid class.
+     * @throws ParsingException if the sum formula can not be parsed.
+     */
+    public List<LipidSpecies> lookup(String sumFormula) throws ParsingException {
+        return lookup(new ElementTable(sumFormula));
+    }
+
+    /**
+     * Returns all lipids, whose elements equal the provided element table.
+     *
+     * @param elements the element table.
+     * @return the candidate lipids, ordered by lipid class.
+     */
+    public List<LipidSpecies> lookup(ElementTable elements) {
+        int[] counts = new int[ELEMENTS.length];
+        for (Map.Entry<Element, Integer> entry : elements.entrySet()) {
+            if (entry.getValue() != null) {
+                counts[entry.getKey().ordinal()] = entry.getValue();
+            }
+        }
+        long key = key(counts);
+        Entry[] bucket = key < 0 ? null : buckets.get(key);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        List<LipidSpecies> candidates = new ArrayList<>();
+        for (Entry entry : bucket) {
+            if (!entry.chains) {
+                if (counts[C] == entry.carbon && counts[H] == entry.hydrogen && counts[O] == entry.oxygen) {
+                    candidates.add(new LipidSpecies(entry.headGroup));
+                }
+                continue;
+            }
+            int nCarbon = counts[C] - entry.carbon;
+            int hydrogenDifference = entry.hydrogen + 2 * nCarbon - counts[H];
+            int nHydroxy = counts[O] - entry.oxygen;
+            if (nCarbon < 1 || hydrogenDifference < 0 || (hydrogenDifference & 1) != 0 || hydrogenDifference / 2 > nCarbon || nHydroxy < 0 || nHydroxy > nCarbon) {
+                continue;
+            }
+            candidates.add(species(entry.headGroup, entry.lipidFaBondType, entry.lcb, nCarbon, nHydroxy, hydrogenDifference / 2));
+        }
+        return candidates;
+    }
+
+    /**
+     * Looks up many sum formulas in parallel, e.g. as read from a file, one
+     * formula per line. Formulas that can not be parsed are logged and have
+     * no candidates.
+     *
+     * @param sumFormulas the sum formulas.
+     * @return the candidate lipids for each sum formula, in the order of the
+     * formulas.
+     */
+    public List<List<LipidSpecies>> lookup(List<String> sumFormulas) {
+        return IntStream.range(0, sumFormulas.size()).parallel().mapToObj((row) -> {
+            String sumFormula = sumFormulas.get(row).trim();
+            try {
+                return lookup(sumFormula);
+            } catch (ParsingException | ConstraintViolationException ex) {
+                log.warn("Could not parse sum formula '{}' in row {}: {}", sumFormula, row, ex.getMessage());
+                return Collections.<LipidSpecies>emptyList();
+            }
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Creates the species info as the grammar handlers do for a species level
+     * name.
+     */
+    private static LipidSpecies species(HeadGroup headGroup, LipidFaBondType lipidFaBondType, boolean lcb, int nCarbon, int nHydroxy, int nDoubleBonds) {
+        LipidSpeciesInfo info;
+        if (lcb) {
+            info = LipidSpeciesInfo.lipidSpeciesInfoBuilder().
+                    level(LipidLevel.SPECIES).
+                    name("LCB").
+                    lcb(true).
+                    nCarbon(nCarbon).
+                    nHydroxy(nHydroxy).
+                    nDoubleBonds(nDoubleBonds).
+                    lipidFaBondType(lipidFaBondType).
+                    build();
+        } else {
+            info = new LipidSpeciesInfo(LipidLevel.SPECIES, nCarbon, nHydroxy, nDoubleBonds, lipidFaBondType);
+        }
+        return new LipidSpecies(headGroup, Optional.of(info));
+    }
+
+    /**
+     * Adds the entry for a chain variant. The elements of a species without
+     * double bonds and hydroxy groups are reduced by the chain carbons, which
+     * add one C and two H each.
+     */
+    private static int add(Map<Long, List<Entry>> entries, HeadGroup headGroup, LipidFaBondType lipidFaBondType, boolean lcb) {
+        ElementTable elements;
+        try {
+            elements = species(headGroup, lipidFaBondType, lcb, REFERENCE_CARBON, 0, 0).getElements();
+        } catch (ConstraintViolationException ex) {
+            log.debug("Skipping lipid class {} with bond type {}: {}", headGroup.getLipidClass(), lipidFaBondType, ex.getMessage());
+            return 0;
+        }
+        int carbon = elements.getOrDefault(Element.ELEMENT_C, 0) - REFERENCE_CARBON;
+        int hydrogen = elements.getOrDefault(Element.ELEMENT_H, 0) - 2 * REFERENCE_CARBON;
+        int oxygen = elements.getOrDefault(Element.ELEMENT_O, 0);
+        return add(entries, elements, new Entry(headGroup, lipidFaBondType, lcb, true, carbon, hydrogen, oxygen));
+    }
+
+    private static int add(Map<Long, List<Entry>> entries, ElementTable elements, Entry entry) {
+        int[] counts = new int[ELEMENTS.length];
+        for (Map.Entry<Element, Integer> element : elements.entrySet()) {
+            if (element.getValue() != null) {
+                counts[element.getKey().ordinal()] = element.getValue();
+            }
+        }
+        long key = key(counts);
+        if (key < 0) {
+            log.debug("Skipping lipid class {} with element counts out of range: {}", entry.headGroup.getLipidClass(), elements);
+            return 0;
+        }
+        if (!entry.chains) {
+            entry = new Entry(entry.headGroup, entry.lipidFaBondType, false, false, counts[C], counts[H], counts[O]);
+        }
+        entries.computeIfAbsent(key, (k) -> {
+            return new ArrayList<>();
+        }).add(entry);
+        return 1;
+    }
+
+    /**
+     * Packs the counts of all elements but C, H and O into a bucket key, or
+     * returns -1, if a count is negative or too large.
+     */
+    private static long key(int[] counts) {
+        long key = 0L;
+        for (int element = 0; element < counts.length; element++) {
+            if (element == C || element == H || element == O) {
+                continue;
+            }
+            if (counts[element] < 0 || counts[element] >= (1 << BITS_PER_ELEMENT)) {
+                return -1L;
+            }
+            key = (key << BITS_PER_ELEMENT) | counts[element];
+        }
+        return key;
+    }
+}
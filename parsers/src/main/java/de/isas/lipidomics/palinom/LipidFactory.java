@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom;
+
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidIsomericSubspecies;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidMolecularSubspecies;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidSpeciesInfo;
+import de.isas.lipidomics.domain.LipidStructuralSubspecies;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.Optional;
+
+/**
+ * Creates the lipid objects for the fatty acyls that a grammar handler has
+ * parsed. The grammar handlers of all parsers call this factory instead of the
+ * subspecies constructors, so that the parse mode decides which structure is
+ * built.
+ *
+ * {@link #FULL} creates the molecular, structural and isomeric subspecies, as
+ * reported by the name. The other factories collapse lipids that are more
+ * specific than their target level, see {@link #forLevel(LipidLevel)}, so
+ * that only the information of that level is retained.
+ * {@link #STRUCTURAL} drops the double bond positions of isomeric subspecies,
+ * {@link #MOLECULAR} additionally drops the sn positions. {@link #SPECIES}
+ * skips the subspecies and their fatty acyl maps and returns a
+ * {@link LipidSpecies} with the summed species info directly. Its name equals
+ * the one returned by {@link LipidSpecies#getLipidString(LipidLevel)} on
+ * {@link LipidLevel#SPECIES} for the full parse, and its mass equals the mass
+ * of that species name when it is parsed. Lipids without fatty acyls, e.g.
+ * mediators, are created as reported by the name.
+ *
+ * @author nils.hoffmann
+ */
+public final class LipidFactory {
+
+    /**
+     * Creates subspecies on the level reported by the lipid name.
+     */
+    public static final LipidFactory FULL = new LipidFactory(LipidLevel.ISOMERIC_SUBSPECIES);
+
+    /**
+     * Creates structural subspecies at most.
+     */
+    public static final LipidFactory STRUCTURAL = new LipidFactory(LipidLevel.STRUCTURAL_SUBSPECIES);
+
+    /**
+     * Creates molecular subspecies at most.
+     */
+    public static final LipidFactory MOLECULAR = new LipidFactory(LipidLevel.MOLECULAR_SUBSPECIES);
+
+    /**
+     * Creates species level lipids only.
+     */
+    public static final LipidFactory SPECIES = new LipidFactory(LipidLevel.SPECIES);
+
+    private final LipidLevel level;
+
+    private LipidFactory(LipidLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Returns the factory for the provided target level. Since the sum
+     * formula and mass require the species info, category and class are
+     * collapsed to the species level, too.
+     *
+     * @param level the target level.
+     * @return the lipid factory.
+     * @throws ConstraintViolationException if the level is undefined.
+     */
+    public static LipidFactory forLevel(LipidLevel level) {
+        switch (level) {
+            case ISOMERIC_SUBSPECIES:
+                return FULL;
+            case STRUCTURAL_SUBSPECIES:
+                return STRUCTURAL;
+            case MOLECULAR_SUBSPECIES:
+                return MOLECULAR;
+            case SPECIES:
+            case CLASS:
+            case CATEGORY:
+                return SPECIES;
+            default:
+                throw new ConstraintViolationException("Can not create lipids for target level " + level + "!");
+        }
+    }
+
+    /**
+     * Returns the most specific level that this factory creates.
+     *
+     * @return the lipid level.
+     */
+    public LipidLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Creates a lipid for fatty acyls with unknown sn positions.
+     *
+     * @param headGroup the head group.
+     * @param fa the fatty acyls.
+     * @return the lipid.
+     */
+    public LipidSpecies molecularSubspecies(HeadGroup headGroup, FattyAcid... fa) {
+        if (level == LipidLevel.SPECIES && fa.length > 0) {
+            return species(headGroup, fa);
+        }
+        return new LipidMolecularSubspecies(headGroup, fa);
+    }
+
+    /**
+     * Creates a lipid for fatty acyls with known sn positions.
+     *
+     * @param headGroup the head group.
+     * @param fa the fatty acyls.
+     * @return the lipid.
+     */
+    public LipidSpecies structuralSubspecies(HeadGroup headGroup, FattyAcid... fa) {
+        if (level == LipidLevel.SPECIES && fa.length > 0) {
+            return species(headGroup, fa);
+        } else if (level == LipidLevel.MOLECULAR_SUBSPECIES) {
+            return new LipidMolecularSubspecies(headGroup, molecular(fa));
+        }
+        return new LipidStructuralSubspecies(headGroup, fa);
+    }
+
+    /**
+     * Creates a lipid for fatty acyls with known sn and double bond positions.
+     *
+     * @param headGroup the head group.
+     * @param fa the fatty acyls.
+     * @return the lipid.
+     */
+    public LipidSpecies isomericSubspecies(HeadGroup headGroup, FattyAcid... fa) {
+        if (level == LipidLevel.SPECIES && fa.length > 0) {
+            return species(headGroup, fa);
+        } else if (level == LipidLevel.MOLECULAR_SUBSPECIES) {
+            return new LipidMolecularSubspecies(headGroup, molecular(fa));
+        } else if (level == LipidLevel.STRUCTURAL_SUBSPECIES) {
+            return new LipidStructuralSubspecies(headGroup, structural(fa));
+        }
+        return new LipidIsomericSubspecies(headGroup, fa);
+    }
+
+    /**
+     * Drops the sn and double bond positions of the fatty acyls.
+     */
+    private FattyAcid[] molecular(FattyAcid... fa) {
+        FattyAcid[] molecular = new FattyAcid[fa.length];
+        for (int i = 0; i < fa.length; i++) {
+            FattyAcid fas = fa[i];
+            molecular[i] = FattyAcidInterner.DEFAULT.intern(new FattyAcid(fas.getName(), fas.getNCarbon(), fas.getNHydroxy(), fas.getNDoubleBonds(), fas.getLipidFaBondType(), fas.isLcb(), fas.getModifications()));
+        }
+        return molecular;
+    }
+
+    /**
+     * Drops the double bond positions of the fatty acyls.
+     */
+    private FattyAcid[] structural(FattyAcid... fa) {
+        FattyAcid[] structural = new FattyAcid[fa.length];
+        for (int i = 0; i < fa.length; i++) {
+            FattyAcid fas = fa[i];
+            structural[i] = FattyAcidInterner.DEFAULT.intern(new FattyAcid(fas.getName(), fas.getPosition(), fas.getNCarbon(), fas.getNHydroxy(), fas.getNDoubleBonds(), fas.getLipidFaBondType(), fas.isLcb(), fas.getModifications()));
+        }
+        return structural;
+    }
+
+    /**
+     * Sums the fatty acyls into a species info, which is equal to the one
+     * created by the grammar handlers for a species level name.
+     */
+    private LipidSpecies species(HeadGroup headGroup, FattyAcid... fa) {
+        int nCarbon = 0;
+        int nHydroxy = 0;
+        int nDoubleBonds = 0;
+        boolean lcb = false;
+        for (FattyAcid fas : fa) {
+            nCarbon += fas.getNCarbon();
+            nHydroxy += fas.getNHydroxy();
+            nDoubleBonds += fas.getNDoubleBonds();
+            lcb |= fas.isLcb();
+        }
+        LipidFaBondType lipidFaBondType = LipidFaBondType.getLipidFaBondType(headGroup, fa);
+        LipidSpeciesInfo info;
+        if (lcb) {
+            info = LipidSpeciesInfo.lipidSpeciesInfoBuilder().
+                    level(LipidLevel.SPECIES).
+                    name("LCB").
+                    lcb(true).
+                    nCarbon(nCarbon).
+                    nHydroxy(nHydroxy).
+                    nDoubleBonds(nDoubleBonds).
+                    lipidFaBondType(lipidFaBondType).
+                    build();
+        } else {
+            info = new LipidSpeciesInfo(LipidLevel.SPECIES, nCarbon, nHydroxy, nDoubleBonds, lipidFaBondType);
+        }
+        return new LipidSpecies(headGroup, Optional.of(info));
+    }
+}
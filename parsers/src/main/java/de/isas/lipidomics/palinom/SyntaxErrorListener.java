@@ -48,19 +48,26 @@ public class SyntaxErrorListener extends BaseErrorListener {
         throw new ParseCancellationException(getErrorString());
     }
 
+    /**
+     * Returns the syntax errors, one per line. Errors without a recognizer,
+     * e.g. errors restored from a parse cache, report an unknown grammar.
+     *
+     * @return the syntax errors.
+     */
     public String getErrorString() {
         return syntaxErrors.stream().map((error) -> {
+            String grammarFileName = error.getRecognizer() == null ? "unknown" : error.getRecognizer().getGrammarFileName();
             if (error.getOffendingSymbol() == null) {
                 return String.format(
                         "Parser %s syntax error at line %d, position %d: %s",
-                        error.getRecognizer().getGrammarFileName(),
+                        grammarFileName,
                         error.getLine(),
                         error.getCharPositionInLine(),
                         error.getMessage());
             } else {
                 return String.format(
                         "Parser %s syntax error on '%s', at line %d, position %d: %s",
-                        error.getRecognizer().getGrammarFileName(),
+                        grammarFileName,
                         error.getOffendingSymbol(),
                         error.getLine(),
                         error.getCharPositionInLine(),
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.cache;
+
+import de.isas.lipidomics.palinom.SyntaxError;
+import de.isas.lipidomics.palinom.SyntaxErrorListener;
+import de.isas.lipidomics.palinom.VisitorParser;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A visitor parser that looks up parse results in a {@link ParseCache} before
+ * delegating to another parser. Each cached record starts with a tag byte.
+ * Successfully parsed results are stored in the format of the provided
+ * {@link ResultCodec}. Names that the delegate rejects with a
+ * {@link ParsingException} are stored as failure records with the exception
+ * message and the syntax errors. A cached failure is thrown again as a
+ * {@link ParsingException} with the same message, after its syntax errors
+ * have been added to the listener. Their recognizer and exception are not
+ * restored. Runtime exceptions of the delegate are not cached.
+ *
+ * Example:
+ * <pre>
+ * try (ParseCache cache = ParseCache.open(Paths.get("goslin.cache"), ParseCache.getLibraryVersion())) {
+ *     VisitorParser&lt;LipidAdduct&gt; parser = new CachingVisitorParser&lt;&gt;(new GoslinVisitorParser(), "GOSLIN", cache, codec);
+ *     LipidAdduct lipidAdduct = parser.parse("PC 32:0");
+ * }
+ * </pre>
+ *
+ * Instances are thread-safe, if the delegate parser and the codec are.
+ *
+ * @author nils.hoffmann
+ * @param <T> the type of the parse results.
+ */
+@Slf4j
+public class CachingVisitorParser<T> implements VisitorParser<T> {
+
+    /**
+     * Tag of records that hold an encoded parse result.
+     */
+    public static final byte RESULT = 0;
+
+    /**
+     * Tag of records that hold a failed parse.
+     */
+    public static final byte FAILURE = 1;
+
+    private final VisitorParser<T> delegate;
+    private final String grammar;
+    private final ParseCache cache;
+    private final ResultCodec<T> codec;
+
+    /**
+     * Creates a new caching parser.
+     *
+     * @param delegate the parser to use on cache misses.
+     * @param grammar the name of the delegate's grammar, used as part of the
+     * cache key.
+     * @param cache the cache.
+     * @param codec the codec for the cached parse results.
+     */
+    public CachingVisitorParser(VisitorParser<T> delegate, String grammar, ParseCache cache, ResultCodec<T> codec) {
+        this.delegate = delegate;
+        this.grammar = grammar;
+        this.cache = cache;
+        this.codec = codec;
+    }
+
+    @Override
+    public T parse(String lipidString, SyntaxErrorListener listener) throws ParsingException {
+        Optional<byte[]> cached = cache.get(grammar, lipidString);
+        if (cached.isPresent()) {
+            try {
+                return decode(cached.get(), listener);
+            } catch (IOException ex) {
+                log.warn("Could not decode cached parse result for " + lipidString + ", parsing it again.", ex);
+            }
+        }
+        T result;
+        try {
+            result = delegate.parse(lipidString, listener);
+        } catch (ParsingException ex) {
+            cache.put(grammar, lipidString, encodeFailure(ex, listener));
+            throw ex;
+        }
+        try {
+            byte[] encoded = codec.encode(result);
+            byte[] record = new byte[encoded.length + 1];
+            record[0] = RESULT;
+            System.arraycopy(encoded, 0, record, 1, encoded.length);
+            cache.put(grammar, lipidString, record);
+        } catch (ConstraintViolationException ex) {
+            log.debug("Not caching parse result for {}: {}", lipidString, ex.getMessage());
+        }
+        return result;
+    }
+
+    private T decode(byte[] record, SyntaxErrorListener listener) throws IOException, ParsingException {
+        if (record.length == 0) {
+            throw new IOException("Empty cache record!");
+        }
+        switch (record[0]) {
+            case RESULT:
+                return codec.decode(Arrays.copyOfRange(record, 1, record.length));
+            case FAILURE:
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+                String message = readString(in);
+                int nErrors = in.readInt();
+                if (nErrors < 0) {
+                    throw new IOException("Invalid number of syntax errors " + nErrors + "!");
+                }
+                List<SyntaxError> syntaxErrors = new ArrayList<>(nErrors);
+                for (int i = 0; i < nErrors; i++) {
+                    String offendingSymbol = in.readBoolean() ? readString(in) : null;
+                    int line = in.readInt();
+                    int charPositionInLine = in.readInt();
+                    syntaxErrors.add(new SyntaxError(null, offendingSymbol, line, charPositionInLine, readString(in), null));
+                }
+                listener.getSyntaxErrors().addAll(syntaxErrors);
+                throw new ParsingException(message);
+            default:
+                throw new IOException("Unknown cache record tag " + record[0] + "!");
+        }
+    }
+
+    private byte[] encodeFailure(ParsingException ex, SyntaxErrorListener listener) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FAILURE);
+            writeString(out, ex.getMessage() == null ? "" : ex.getMessage());
+            out.writeInt(listener.getSyntaxErrors().size());
+            for (SyntaxError error : listener.getSyntaxErrors()) {
+                out.writeBoolean(error.getOffendingSymbol() != null);
+                if (error.getOffendingSymbol() != null) {
+                    writeString(out, error.getOffendingSymbol().toString());
+                }
+                out.writeInt(error.getLine());
+                out.writeInt(error.getCharPositionInLine());
+                writeString(out, error.getMessage() == null ? "" : error.getMessage());
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length " + length + "!");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
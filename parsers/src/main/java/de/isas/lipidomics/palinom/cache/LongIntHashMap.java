@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.cache;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to int values, used as
+ * the in-memory index of the {@link ParseCache}. The key 0 is mapped to a
+ * dedicated slot, so that 0 can mark empty table slots. This class is not
+ * thread-safe.
+ *
+ * @author nils.hoffmann
+ */
+final class LongIntHashMap {
+
+    /**
+     * The value returned for absent keys.
+     */
+    static final int NO_VALUE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue = NO_VALUE;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+    }
+
+    int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    int get(long key) {
+        if (key == 0L) {
+            return hasZeroKey ? zeroValue : NO_VALUE;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0L) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @param key the key.
+     * @param value the value, must not be {@link #NO_VALUE}.
+     * @return the previous value, or {@link #NO_VALUE}.
+     */
+    int put(long key, int value) {
+        if (key == 0L) {
+            int previous = hasZeroKey ? zeroValue : NO_VALUE;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0L) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns all values in unspecified order.
+     *
+     * @return the values.
+     */
+    int[] values() {
+        int[] result = new int[size()];
+        int i = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0L) {
+                result[i++] = values[slot];
+            }
+        }
+        if (hasZeroKey) {
+            result[i] = zeroValue;
+        }
+        return result;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0L);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = NO_VALUE;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0L) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != 0L) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.cache;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A persistent, append-only cache for serialized parse results, backed by a
+ * memory-mapped file. Entries are keyed by a 64 bit hash of the grammar, the
+ * library version and the lipid name. The full key is stored with each record
+ * and verified on lookup, so hash collisions result in cache misses, never in
+ * wrong results. Values are opaque byte arrays, e.g. an encoded
+ * {@link de.isas.lipidomics.domain.LipidAdduct} or a formatted output row.
+ * Failed parses can be cached just like successful ones.
+ *
+ * The file starts with a 16 byte header (magic number, format version,
+ * reserved), followed by records of the form
+ * <pre>
+ * int   body length (0 marks the end of the data)
+ * int   CRC32 of the body
+ * body: long key hash, short grammar length, grammar (UTF-8),
+ *       short version length, version (UTF-8), int name length,
+ *       name (UTF-8), int value length, value
+ * </pre> The body and checksum of a record are written before its length, and
+ * the file is scanned up to the first record with an invalid length or
+ * checksum when it is opened. A record that was torn by a crash is thus never
+ * returned and is overwritten by the next append.
+ *
+ * Only one process can write to a cache file at a time. This is enforced by an
+ * exclusive lock on a sibling file with the suffix <code>.lock</code>.
+ * {@link #open(Path, String)} falls back to a read-only cache if another
+ * process holds the lock. Read-only caches see records appended by the writer
+ * after calling {@link #refresh()}. Within a process, an instance can be used
+ * by multiple threads concurrently.
+ *
+ * The writer maps the file in growing chunks, so that the file may be larger
+ * than its data. A single cache file holds at most 2 GB. Records of other
+ * library versions and records superseded by newer ones for the same key stay
+ * in the file until {@link #compact()} is called.
+ *
+ * @author nils.hoffmann
+ */
+@Slf4j
+public final class ParseCache implements Closeable {
+
+    /**
+     * The magic number at the start of each cache file, "JGOSLINC" in ASCII.
+     */
+    public static final long MAGIC = 0x4A474F534C494E43L;
+
+    /**
+     * The version of the file format.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int INITIAL_CAPACITY = 1 << 20;
+    static final int MAX_CAPACITY = Integer.MAX_VALUE;
+
+    private final Path file;
+    private final String version;
+    private final byte[] versionBytes;
+    private final boolean writable;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongIntHashMap index = new LongIntHashMap(1024);
+    private FileChannel lockChannel;
+    private FileLock fileLock;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+    private int staleRecords;
+    private boolean closed;
+
+    private ParseCache(Path file, String version, boolean writable) {
+        this.file = file;
+        this.version = version;
+        this.versionBytes = version.getBytes(StandardCharsets.UTF_8);
+        if (versionBytes.length > Short.MAX_VALUE) {
+            throw new ConstraintViolationException("Cache version must not be longer than " + Short.MAX_VALUE + " bytes!");
+        }
+        this.writable = writable;
+    }
+
+    /**
+     * Opens or creates the cache file for writing. If another process or
+     * another cache instance in this process already writes to the file, the
+     * cache is opened read-only.
+     *
+     * @param file the cache file.
+     * @param version the version of the library or application producing the
+     * cached values. Records of other versions are ignored.
+     * @return the cache.
+     * @throws IOException if the file can not be opened or is not a cache
+     * file.
+     */
+    public static ParseCache open(Path file, String version) throws IOException {
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            log.info("Cache file {} is locked by another writer, opening it read-only.", file);
+            return openReadOnly(file, version);
+        }
+        ParseCache cache = new ParseCache(file, version, true);
+        cache.lockChannel = lockChannel;
+        cache.fileLock = fileLock;
+        try {
+            cache.openWritable();
+        } catch (IOException | RuntimeException ex) {
+            cache.close();
+            throw ex;
+        }
+        return cache;
+    }
+
+    /**
+     * Opens the cache file for reading only. If the file does not exist yet,
+     * the cache is empty until it has been created by a writer and
+     * {@link #refresh()} is called.
+     *
+     * @param file the cache file.
+     * @param version the version of the library or application producing the
+     * cached values. Records of other versions are ignored.
+     * @return the cache.
+     * @throws IOException if the file can not be opened or is not a cache
+     * file.
+     */
+    public static ParseCache openReadOnly(Path file, String version) throws IOException {
+        ParseCache cache = new ParseCache(file, version, false);
+        try {
+            cache.refresh();
+        } catch (IOException | RuntimeException ex) {
+            cache.close();
+            throw ex;
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the implementation version of this library, as recorded in the
+     * jar manifest, or "unknown" if it is not available.
+     *
+     * @return the library version.
+     */
+    public static String getLibraryVersion() {
+        return Optional.ofNullable(ParseCache.class.getPackage().getImplementationVersion()).orElse("unknown");
+    }
+
+    /**
+     * Returns the cached value for the grammar and lipid name.
+     *
+     * @param grammar the grammar, or any other namespace used for the key.
+     * @param lipidName the lipid name.
+     * @return the cached value, or an empty optional.
+     * @throws IllegalStateException if the cache has been closed.
+     */
+    public Optional<byte[]> get(String grammar, String lipidName) {
+        byte[] grammarBytes = grammar.getBytes(StandardCharsets.UTF_8);
+        byte[] nameBytes = lipidName.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(grammarBytes, versionBytes, nameBytes);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int offset = index.get(hash);
+            if (offset == LongIntHashMap.NO_VALUE) {
+                return Optional.empty();
+            }
+            ByteBuffer record = buffer.duplicate();
+            int p = offset + RECORD_HEADER_SIZE + 8;
+            if (!matches(record, p, grammarBytes, 2)) {
+                return Optional.empty();
+            }
+            p += 2 + grammarBytes.length;
+            p += 2 + record.getShort(p);
+            if (!matches(record, p, nameBytes, 4)) {
+                return Optional.empty();
+            }
+            p += 4 + nameBytes.length;
+            byte[] value = new byte[record.getInt(p)];
+            record.position(p + 4);
+            record.get(value);
+            return Optional.of(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a value for the grammar and lipid name. A value stored before
+     * for the same key is superseded.
+     *
+     * @param grammar the grammar, or any other namespace used for the key.
+     * @param lipidName the lipid name.
+     * @param value the value.
+     * @return true if the value was stored, false if this cache is read-only
+     * or the cache file is full.
+     * @throws IllegalStateException if the cache has been closed.
+     */
+    public boolean put(String grammar, String lipidName, byte[] value) {
+        if (!writable) {
+            return false;
+        }
+        byte[] grammarBytes = grammar.getBytes(StandardCharsets.UTF_8);
+        if (grammarBytes.length > Short.MAX_VALUE) {
+            throw new ConstraintViolationException("Cache grammar key must not be longer than " + Short.MAX_VALUE + " bytes!");
+        }
+        byte[] nameBytes = lipidName.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(grammarBytes, versionBytes, nameBytes);
+        long bodyLength = 8L + 2 + grammarBytes.length + 2 + versionBytes.length + 4 + nameBytes.length + 4 + value.length;
+        long recordLength = RECORD_HEADER_SIZE + bodyLength;
+        ByteBuffer body = ByteBuffer.allocate((int) Math.min(bodyLength, Integer.MAX_VALUE));
+        if (recordLength > MAX_CAPACITY - HEADER_SIZE) {
+            return false;
+        }
+        body.putLong(hash);
+        body.putShort((short) grammarBytes.length).put(grammarBytes);
+        body.putShort((short) versionBytes.length).put(versionBytes);
+        body.putInt(nameBytes.length).put(nameBytes);
+        body.putInt(value.length).put(value);
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            try {
+                if (!ensureCapacity(end + recordLength)) {
+                    log.warn("Cache file {} is full, not storing further values. Please compact or remove it.", file);
+                    return false;
+                }
+            } catch (IOException ex) {
+                log.warn("Could not grow cache file " + file + ", not storing value.", ex);
+                return false;
+            }
+            int offset = end;
+            ByteBuffer target = buffer.duplicate();
+            target.position(offset + RECORD_HEADER_SIZE);
+            target.put(body);
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            // the length is written last, it marks the record as complete
+            buffer.putInt(offset, (int) bodyLength);
+            end = (int) (offset + recordLength);
+            if (index.put(hash, offset) != LongIntHashMap.NO_VALUE) {
+                staleRecords++;
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads records appended to the file by the writer since this cache was
+     * opened or last refreshed. This is only required for read-only caches.
+     *
+     * @return the number of new records.
+     * @throws IOException if the file can not be read.
+     * @throws IllegalStateException if the cache has been closed.
+     */
+    public int refresh() throws IOException {
+        if (writable) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (channel == null) {
+                if (!Files.exists(file)) {
+                    return 0;
+                }
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            }
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return 0;
+            }
+            if (buffer == null || size > buffer.capacity()) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_CAPACITY));
+                if (end == 0) {
+                    checkHeader();
+                    end = HEADER_SIZE;
+                }
+            }
+            int before = index.size() + staleRecords;
+            scan();
+            return index.size() + staleRecords - before;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the cache file, keeping only the latest record of the current
+     * version for each key. The file is written to a temporary sibling file,
+     * which then atomically replaces the cache file. Read-only caches opened
+     * before compaction keep reading the old file until they are reopened. If
+     * compaction fails, the cache keeps using the original file.
+     *
+     * @throws IOException if the file can not be written.
+     * @throws IllegalStateException if the cache is read-only or closed.
+     */
+    public void compact() throws IOException {
+        if (!writable) {
+            throw new IllegalStateException("Read-only cache " + file + " can not be compacted!");
+        }
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            int[] offsets = index.values();
+            Arrays.sort(offsets);
+            Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(0).flip();
+                writeFully(out, header);
+                for (int offset : offsets) {
+                    ByteBuffer record = buffer.duplicate();
+                    record.position(offset).limit(offset + RECORD_HEADER_SIZE + buffer.getInt(offset));
+                    writeFully(out, record);
+                }
+                out.force(true);
+            }
+            buffer.force();
+            buffer = null;
+            channel.close();
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Files.deleteIfExists(tmp);
+                throw ex;
+            } finally {
+                // map the compacted file, or the original file if the move failed
+                index.clear();
+                staleRecords = 0;
+                end = 0;
+                openWritable();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces written records to the storage device.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            if (writable && buffer != null) {
+                buffer.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of keys with a value for the current version.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of records that are not reachable by a lookup,
+     * because they belong to another version or have been superseded. These
+     * are removed by {@link #compact()}.
+     *
+     * @return the number of stale records.
+     */
+    public int getStaleRecordCount() {
+        lock.readLock().lock();
+        try {
+            return staleRecords;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true, if this cache holds the writer lock of its file.
+     *
+     * @return true for writable caches.
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Releases the file and its lock. Lookups and updates on a closed cache
+     * throw an {@link IllegalStateException}.
+     *
+     * @throws IOException if the file can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (writable && buffer != null) {
+                buffer.force();
+            }
+            closed = true;
+            buffer = null;
+            index.clear();
+            staleRecords = 0;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            if (fileLock != null) {
+                fileLock.release();
+                fileLock = null;
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+                lockChannel = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Cache " + file + " has been closed!");
+        }
+    }
+
+    private void openWritable() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(Math.min(size, MAX_CAPACITY), INITIAL_CAPACITY));
+        if (size < HEADER_SIZE) {
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(8, FORMAT_VERSION);
+            buffer.putInt(12, 0);
+        } else {
+            checkHeader();
+        }
+        end = HEADER_SIZE;
+        if (scan()) {
+            log.warn("Discarding incomplete record at the end of cache file {} at offset {}.", file, end);
+            // zero the torn tail, so that later appends can not be followed by stale bytes
+            for (int i = end; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private void checkHeader() throws IOException {
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("File " + file + " is not a jgoslin parse cache!");
+        }
+        int formatVersion = buffer.getInt(8);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Cache file " + file + " has unsupported format version " + formatVersion + ", expected " + FORMAT_VERSION + "!");
+        }
+    }
+
+    /**
+     * Scans and indexes records from the current end of the data.
+     *
+     * @return true, if the scan stopped at an incomplete or corrupt record.
+     */
+    private boolean scan() {
+        ByteBuffer data = buffer.duplicate();
+        int limit = data.capacity();
+        CRC32 crc = new CRC32();
+        while (end + RECORD_HEADER_SIZE <= limit) {
+            int bodyLength = data.getInt(end);
+            if (bodyLength == 0) {
+                return false;
+            }
+            if (bodyLength < 0 || (long) end + RECORD_HEADER_SIZE + bodyLength > limit) {
+                return true;
+            }
+            int bodyStart = end + RECORD_HEADER_SIZE;
+            crc.reset();
+            data.limit(bodyStart + bodyLength).position(bodyStart);
+            crc.update(data);
+            data.limit(limit);
+            if ((int) crc.getValue() != data.getInt(end + 4)) {
+                return true;
+            }
+            long hash = data.getLong(bodyStart);
+            int grammarLength = data.getShort(bodyStart + 8);
+            if (matches(data, bodyStart + 10 + grammarLength, versionBytes, 2)) {
+                if (index.put(hash, end) != LongIntHashMap.NO_VALUE) {
+                    staleRecords++;
+                }
+            } else {
+                staleRecords++;
+            }
+            end = bodyStart + bodyLength;
+        }
+        return false;
+    }
+
+    private boolean ensureCapacity(long required) throws IOException {
+        if (required <= buffer.capacity()) {
+            return true;
+        }
+        if (required > MAX_CAPACITY) {
+            return false;
+        }
+        long capacity = Math.min(Math.max(2L * buffer.capacity(), required), MAX_CAPACITY);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return true;
+    }
+
+    private static boolean matches(ByteBuffer data, int offset, byte[] expected, int lengthBytes) {
+        int length = lengthBytes == 2 ? data.getShort(offset) : data.getInt(offset);
+        if (length != expected.length) {
+            return false;
+        }
+        int start = offset + lengthBytes;
+        for (int i = 0; i < expected.length; i++) {
+            if (data.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            out.write(data);
+        }
+    }
+
+    static long hash(byte[] grammar, byte[] version, byte[] name) {
+        long h = 0xCBF29CE484222325L;
+        h = fnv(h, grammar);
+        h = (h ^ 0xFF) * 0x100000001B3L;
+        h = fnv(h, version);
+        h = (h ^ 0xFF) * 0x100000001B3L;
+        h = fnv(h, name);
+        // final avalanche, spreads the FNV bits over the whole word
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long fnv(long h, byte[] bytes) {
+        for (byte b : bytes) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.cache;
+
+import java.io.IOException;
+
+/**
+ * Converts parse results into the values stored in a {@link ParseCache} and
+ * back.
+ *
+ * @author nils.hoffmann
+ * @param <T> the type of the parse results.
+ */
+public interface ResultCodec<T> {
+
+    /**
+     * Encodes the parse result.
+     *
+     * @param result the parse result.
+     * @return the encoded bytes.
+     * @throws de.isas.lipidomics.palinom.exceptions.ConstraintViolationException
+     * if the result can not be encoded.
+     */
+    byte[] encode(T result);
+
+    /**
+     * Decodes a parse result, as encoded by {@link #encode(Object)}.
+     *
+     * @param bytes the encoded bytes.
+     * @return the parse result.
+     * @throws IOException if the bytes are not a valid encoding.
+     */
+    T decode(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.codec;
+
+import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.palinom.cache.ResultCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Compact, versioned binary format for {@link LipidAdduct} instances. Use this
+ * to persist parse results or to hand them between processes instead of
+ * parsing the names again, which is considerably more expensive.
+ *
+ * A stream starts with a header of the format version, a flags byte and a
+ * schema hash over the constant names of the enums that are encoded by
+ * ordinal, namely {@link LipidClass}, {@link LipidLevel},
+ * {@link LipidFaBondType} and {@link FattyAcidType}. Data written by a library
+ * version with different enum constants is thus rejected instead of being
+ * decoded into wrong values. The header is followed by the encoded lipid
+ * adducts. Integers are written as variable length integers, so that typical
+ * values, e.g. carbon counts or sn positions, take a single byte.
+ *
+ * Strings, e.g. head groups, fatty acyl names or double bond configurations,
+ * can optionally be written to a dictionary that is shared by all lipid adducts
+ * in a stream. The first occurrence of a string is written literally, later
+ * occurrences only as a reference. This pays off for streams of many lipids.
+ *
+ * @author nils.hoffmann
+ * @see LipidAdductEncoder
+ * @see LipidAdductDecoder
+ */
+public final class LipidAdductCodec {
+
+    /**
+     * The version of the binary format.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The maximum number of strings in a stream's dictionary. Later strings
+     * are written literally.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /**
+     * The maximum length of a string in UTF-8 bytes. Decoders reject longer
+     * lengths as malformed instead of allocating them.
+     */
+    public static final int MAX_STRING_LENGTH = 1 << 16;
+
+    static final int FLAG_DICTIONARY = 1;
+
+    static final int TAG_NULL = 0;
+    static final int TAG_NONE = 1;
+    static final int TAG_VALUE = 2;
+    static final int TAG_SPECIES = 2;
+    static final int TAG_MOLECULAR_SUBSPECIES = 3;
+    static final int TAG_STRUCTURAL_SUBSPECIES = 4;
+    static final int TAG_ISOMERIC_SUBSPECIES = 5;
+
+    static final int FA_TYPE_MASK = 0x03;
+    static final int FA_LCB = 0x04;
+    static final int FA_MODIFICATIONS = 0x08;
+
+    static final int SCHEMA_HASH = computeSchemaHash();
+
+    /**
+     * This codec as a {@link ResultCodec}, e.g. to store parse results with a
+     * {@link de.isas.lipidomics.palinom.cache.CachingVisitorParser}.
+     */
+    public static final ResultCodec<LipidAdduct> RESULT_CODEC = new ResultCodec<LipidAdduct>() {
+        @Override
+        public byte[] encode(LipidAdduct result) {
+            return LipidAdductCodec.encode(result);
+        }
+
+        @Override
+        public LipidAdduct decode(byte[] bytes) throws IOException {
+            return LipidAdductCodec.decode(bytes);
+        }
+    };
+
+    private LipidAdductCodec() {
+
+    }
+
+    /**
+     * Encodes a single lipid adduct without a string dictionary.
+     *
+     * @param lipidAdduct the lipid adduct.
+     * @return the encoded bytes.
+     */
+    public static byte[] encode(LipidAdduct lipidAdduct) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+        try (LipidAdductEncoder encoder = new LipidAdductEncoder(baos, false)) {
+            encoder.write(lipidAdduct);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decodes a single lipid adduct, as encoded by
+     * {@link #encode(LipidAdduct)}.
+     *
+     * @param bytes the encoded bytes.
+     * @return the lipid adduct.
+     * @throws IOException if the bytes are not a valid encoding.
+     */
+    public static LipidAdduct decode(byte[] bytes) throws IOException {
+        try (LipidAdductDecoder decoder = new LipidAdductDecoder(new ByteArrayInputStream(bytes))) {
+            LipidAdduct lipidAdduct = decoder.read();
+            if (lipidAdduct == null) {
+                throw new IOException("No lipid adduct encoded in input!");
+            }
+            return lipidAdduct;
+        }
+    }
+
+    private static int computeSchemaHash() {
+        int hash = 1;
+        Class<?>[] types = new Class<?>[]{LipidClass.class, LipidLevel.class, LipidFaBondType.class, FattyAcidType.class};
+        for (Class<?> type : types) {
+            hash = 31 * hash + type.getSimpleName().hashCode();
+            for (Object constant : type.getEnumConstants()) {
+                hash = 31 * hash + ((Enum<?>) constant).name().hashCode();
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.codec;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.Fragment;
+import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidIsomericSubspecies;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidMolecularSubspecies;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidSpeciesInfo;
+import de.isas.lipidomics.domain.LipidStructuralSubspecies;
+import de.isas.lipidomics.domain.ModificationsList;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Reads lipid adducts in the binary format described in
+ * {@link LipidAdductCodec} from an input stream. Fatty acyls and species infos
+ * are interned, see {@link FattyAcidInterner}, and head groups are shared
+ * within a stream. Instances are not thread-safe.
+ *
+ * @author nils.hoffmann
+ */
+public final class LipidAdductDecoder implements Closeable {
+
+    private static final LipidClass[] LIPID_CLASSES = LipidClass.values();
+    private static final LipidLevel[] LIPID_LEVELS = LipidLevel.values();
+    private static final LipidFaBondType[] BOND_TYPES = LipidFaBondType.values();
+    private static final FattyAcidType[] FA_TYPES = FattyAcidType.values();
+
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, HeadGroup> headGroups = new HashMap<>();
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+    private boolean headerRead;
+    private boolean useDictionary;
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param in the input stream to read from.
+     */
+    public LipidAdductDecoder(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next lipid adduct.
+     *
+     * @return the lipid adduct, or null at the end of the stream.
+     * @throws IOException if reading fails or the input is not a valid
+     * encoding.
+     */
+    public LipidAdduct read() throws IOException {
+        if (!fill(1)) {
+            return null;
+        }
+        if (!headerRead) {
+            int version = readByte();
+            if (version != LipidAdductCodec.FORMAT_VERSION) {
+                throw new IOException("Unsupported lipid adduct format version " + version + ", expected " + LipidAdductCodec.FORMAT_VERSION + "!");
+            }
+            useDictionary = (readByte() & LipidAdductCodec.FLAG_DICTIONARY) != 0;
+            int schemaHash = readFixedInt();
+            if (schemaHash != LipidAdductCodec.SCHEMA_HASH) {
+                throw new IOException("Lipid adducts were encoded with an incompatible version of the lipid classes, levels or bond types!");
+            }
+            headerRead = true;
+            if (!fill(1)) {
+                return null;
+            }
+        }
+        try {
+            LipidSpecies lipid = readLipid();
+            Adduct adduct = readAdduct();
+            Fragment fragment = readFragment();
+            return new LipidAdduct(lipid, adduct, fragment);
+        } catch (ConstraintViolationException | IndexOutOfBoundsException ex) {
+            throw new IOException("Malformed lipid adduct encoding!", ex);
+        }
+    }
+
+    private LipidSpecies readLipid() throws IOException {
+        int tag = readVarInt();
+        switch (tag) {
+            case LipidAdductCodec.TAG_NULL:
+                return null;
+            case LipidAdductCodec.TAG_NONE:
+                return LipidSpecies.NONE;
+            case LipidAdductCodec.TAG_SPECIES:
+                HeadGroup headGroup = readHeadGroup();
+                return new LipidSpecies(headGroup, Optional.ofNullable(readSpeciesInfo()));
+            case LipidAdductCodec.TAG_MOLECULAR_SUBSPECIES:
+                return new LipidMolecularSubspecies(readHeadGroup(), readFattyAcids());
+            case LipidAdductCodec.TAG_STRUCTURAL_SUBSPECIES:
+                return new LipidStructuralSubspecies(readHeadGroup(), readFattyAcids());
+            case LipidAdductCodec.TAG_ISOMERIC_SUBSPECIES:
+                return new LipidIsomericSubspecies(readHeadGroup(), readFattyAcids());
+            default:
+                throw new IOException("Unknown lipid tag " + tag + "!");
+        }
+    }
+
+    private HeadGroup readHeadGroup() throws IOException {
+        String rawName = readString();
+        LipidClass lipidClass = LIPID_CLASSES[readVarInt()];
+        HeadGroup headGroup = headGroups.get(rawName);
+        if (headGroup == null || headGroup.getLipidClass() != lipidClass) {
+            headGroup = new HeadGroup(rawName, Optional.of(lipidClass));
+            headGroups.put(rawName, headGroup);
+        }
+        return headGroup;
+    }
+
+    private FattyAcid[] readFattyAcids() throws IOException {
+        FattyAcid[] fas = new FattyAcid[readVarInt()];
+        for (int i = 0; i < fas.length; i++) {
+            fas[i] = readFattyAcid(null);
+        }
+        return fas;
+    }
+
+    private LipidSpeciesInfo readSpeciesInfo() throws IOException {
+        int tag = readVarInt();
+        switch (tag) {
+            case LipidAdductCodec.TAG_NULL:
+                return null;
+            case LipidAdductCodec.TAG_NONE:
+                return LipidSpeciesInfo.NONE;
+            case LipidAdductCodec.TAG_VALUE:
+                return (LipidSpeciesInfo) readFattyAcid(LIPID_LEVELS[readVarInt()]);
+            default:
+                throw new IOException("Unknown species info tag " + tag + "!");
+        }
+    }
+
+    /**
+     * Reads a fatty acyl, or a species info if the level is not null.
+     */
+    private FattyAcid readFattyAcid(LipidLevel level) throws IOException {
+        int flags = readByte();
+        FattyAcidType type = FA_TYPES[flags & LipidAdductCodec.FA_TYPE_MASK];
+        boolean lcb = (flags & LipidAdductCodec.FA_LCB) != 0;
+        String name = readString();
+        int faPosition = readVarInt() - 1;
+        int nCarbon = readVarInt();
+        int nHydroxy = readVarInt();
+        int nDoubleBonds = readVarInt();
+        LipidFaBondType bondType = BOND_TYPES[readVarInt()];
+        ModificationsList modifications = null;
+        if ((flags & LipidAdductCodec.FA_MODIFICATIONS) != 0) {
+            int n = readVarInt();
+            modifications = new ModificationsList();
+            for (int i = 0; i < n; i++) {
+                int modificationPosition = unZigZag(readVarInt());
+                modifications.add(Pair.of(modificationPosition, readString()));
+            }
+        }
+        Map<Integer, String> doubleBondPositions = null;
+        if (type == FattyAcidType.ISOMERIC) {
+            int n = readVarInt();
+            if (n > 0) {
+                doubleBondPositions = new TreeMap<>();
+                for (int i = 0; i < n; i++) {
+                    int doubleBondPosition = unZigZag(readVarInt());
+                    doubleBondPositions.put(doubleBondPosition, readString());
+                }
+            }
+        }
+        FattyAcid fa;
+        if (level != null) {
+            if (type == FattyAcidType.ISOMERIC) {
+                fa = new LipidSpeciesInfo(level, name, faPosition, nCarbon, nHydroxy, bondType, lcb, modifications, nDoubleBonds, doubleBondPositions);
+            } else {
+                fa = new LipidSpeciesInfo(level, name, faPosition, nCarbon, nHydroxy, nDoubleBonds, bondType, lcb, modifications);
+            }
+        } else {
+            switch (type) {
+                case ISOMERIC:
+                    fa = new FattyAcid(name, faPosition, nCarbon, nHydroxy, bondType, lcb, modifications, nDoubleBonds, doubleBondPositions);
+                    break;
+                case STRUCTURAL:
+                    fa = new FattyAcid(name, faPosition, nCarbon, nHydroxy, nDoubleBonds, bondType, lcb, modifications);
+                    break;
+                default:
+                    fa = new FattyAcid(name, nCarbon, nHydroxy, nDoubleBonds, bondType, lcb, modifications);
+            }
+        }
+        return FattyAcidInterner.DEFAULT.intern(fa);
+    }
+
+    private Adduct readAdduct() throws IOException {
+        int tag = readVarInt();
+        switch (tag) {
+            case LipidAdductCodec.TAG_NULL:
+                return null;
+            case LipidAdductCodec.TAG_NONE:
+                return Adduct.NONE;
+            case LipidAdductCodec.TAG_VALUE:
+                String sumFormula = readString();
+                String adductString = readString();
+                Integer charge = readNullableInt();
+                Integer chargeSign = readNullableInt();
+                return new Adduct(sumFormula, adductString, charge, chargeSign);
+            default:
+                throw new IOException("Unknown adduct tag " + tag + "!");
+        }
+    }
+
+    private Fragment readFragment() throws IOException {
+        int tag = readVarInt();
+        switch (tag) {
+            case LipidAdductCodec.TAG_NULL:
+                return null;
+            case LipidAdductCodec.TAG_NONE:
+                return Fragment.NONE;
+            case LipidAdductCodec.TAG_VALUE:
+                return new Fragment(readString());
+            default:
+                throw new IOException("Unknown fragment tag " + tag + "!");
+        }
+    }
+
+    private String readString() throws IOException {
+        int value = readVarInt();
+        if (value == 0) {
+            return null;
+        }
+        if (useDictionary) {
+            if (value > 1) {
+                return dictionary.get(value - 2);
+            }
+            value = readVarInt();
+        }
+        int length = value - 1;
+        if (length < 0 || length > LipidAdductCodec.MAX_STRING_LENGTH) {
+            throw new IOException("Malformed string length " + length + ", expected at most " + LipidAdductCodec.MAX_STRING_LENGTH + " bytes!");
+        }
+        String s;
+        if (length <= buffer.length) {
+            require(length);
+            s = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+        } else {
+            byte[] bytes = new byte[length];
+            int offset = Math.min(limit - position, length);
+            System.arraycopy(buffer, position, bytes, 0, offset);
+            position += offset;
+            while (offset < length) {
+                int n = in.read(bytes, offset, length - offset);
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of lipid adduct stream!");
+                }
+                offset += n;
+            }
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (useDictionary && dictionary.size() < LipidAdductCodec.MAX_DICTIONARY_SIZE) {
+            dictionary.add(s);
+        }
+        return s;
+    }
+
+    private Integer readNullableInt() throws IOException {
+        int value = readVarInt();
+        return value == 0 ? null : unZigZag(value - 1);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer!");
+    }
+
+    private int readFixedInt() throws IOException {
+        require(4);
+        int value = ((buffer[position] & 0xFF) << 24)
+                | ((buffer[position + 1] & 0xFF) << 16)
+                | ((buffer[position + 2] & 0xFF) << 8)
+                | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit) {
+            require(1);
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private void require(int n) throws IOException {
+        if (!fill(n)) {
+            throw new EOFException("Unexpected end of lipid adduct stream!");
+        }
+    }
+
+    /**
+     * Ensures that at least n bytes are buffered, n must not exceed the buffer
+     * size.
+     *
+     * @return false, if the stream ended before.
+     */
+    private boolean fill(int n) throws IOException {
+        if (limit - position >= n) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < n) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
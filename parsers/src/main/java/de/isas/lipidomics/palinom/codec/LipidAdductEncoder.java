@@ -0,0 +1,302 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.codec;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.Fragment;
+import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidIsomericSubspecies;
+import de.isas.lipidomics.domain.LipidMolecularSubspecies;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidSpeciesInfo;
+import de.isas.lipidomics.domain.LipidStructuralSubspecies;
+import de.isas.lipidomics.domain.ModificationsList;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Writes lipid adducts in the binary format described in
+ * {@link LipidAdductCodec} to an output stream. The encoder buffers its
+ * output, call {@link #flush()} or {@link #close()} when done. Instances are
+ * not thread-safe.
+ *
+ * @author nils.hoffmann
+ */
+public final class LipidAdductEncoder implements Closeable, Flushable {
+
+    private final OutputStream out;
+    private final Map<String, Integer> dictionary;
+    private final byte[] buffer = new byte[8192];
+    private int count;
+    private boolean headerWritten;
+
+    /**
+     * Creates a new encoder with a shared string dictionary.
+     *
+     * @param out the output stream to write to.
+     */
+    public LipidAdductEncoder(OutputStream out) {
+        this(out, true);
+    }
+
+    /**
+     * Creates a new encoder.
+     *
+     * @param out the output stream to write to.
+     * @param useDictionary whether repeated strings are written as references
+     * to a shared dictionary.
+     */
+    public LipidAdductEncoder(OutputStream out, boolean useDictionary) {
+        this.out = out;
+        this.dictionary = useDictionary ? new HashMap<>() : null;
+    }
+
+    /**
+     * Writes the lipid adduct.
+     *
+     * @param lipidAdduct the lipid adduct, must not be null.
+     * @throws IOException if writing to the output stream fails.
+     */
+    public void write(LipidAdduct lipidAdduct) throws IOException {
+        if (lipidAdduct == null) {
+            throw new ConstraintViolationException("Lipid adduct to encode must not be null!");
+        }
+        if (!headerWritten) {
+            writeByte(LipidAdductCodec.FORMAT_VERSION);
+            writeByte(dictionary == null ? 0 : LipidAdductCodec.FLAG_DICTIONARY);
+            writeFixedInt(LipidAdductCodec.SCHEMA_HASH);
+            headerWritten = true;
+        }
+        writeLipid(lipidAdduct.getLipid());
+        writeAdduct(lipidAdduct.getAdduct());
+        writeFragment(lipidAdduct.getFragment());
+    }
+
+    private void writeLipid(LipidSpecies lipid) throws IOException {
+        if (lipid == null) {
+            writeVarInt(LipidAdductCodec.TAG_NULL);
+            return;
+        }
+        if (lipid == LipidSpecies.NONE) {
+            writeVarInt(LipidAdductCodec.TAG_NONE);
+            return;
+        }
+        Class<?> type = lipid.getClass();
+        if (type == LipidSpecies.class) {
+            writeVarInt(LipidAdductCodec.TAG_SPECIES);
+            writeHeadGroup(lipid.getHeadGroup());
+            writeSpeciesInfo(lipid.getInfo());
+            return;
+        } else if (type == LipidMolecularSubspecies.class) {
+            writeVarInt(LipidAdductCodec.TAG_MOLECULAR_SUBSPECIES);
+        } else if (type == LipidStructuralSubspecies.class) {
+            writeVarInt(LipidAdductCodec.TAG_STRUCTURAL_SUBSPECIES);
+        } else if (type == LipidIsomericSubspecies.class) {
+            writeVarInt(LipidAdductCodec.TAG_ISOMERIC_SUBSPECIES);
+        } else {
+            throw new ConstraintViolationException("Unsupported lipid type for encoding: " + type.getName());
+        }
+        writeHeadGroup(lipid.getHeadGroup());
+        Map<String, FattyAcid> fas = lipid.getFa();
+        writeVarInt(fas.size());
+        for (FattyAcid fa : fas.values()) {
+            writeFattyAcid(fa);
+        }
+    }
+
+    private void writeHeadGroup(HeadGroup headGroup) throws IOException {
+        writeString(headGroup.getRawName());
+        writeVarInt(headGroup.getLipidClass().ordinal());
+    }
+
+    private void writeSpeciesInfo(LipidSpeciesInfo info) throws IOException {
+        if (info == null) {
+            writeVarInt(LipidAdductCodec.TAG_NULL);
+        } else if (info == LipidSpeciesInfo.NONE) {
+            writeVarInt(LipidAdductCodec.TAG_NONE);
+        } else {
+            writeVarInt(LipidAdductCodec.TAG_VALUE);
+            writeVarInt(info.getLevel().ordinal());
+            writeFattyAcid(info);
+        }
+    }
+
+    private void writeFattyAcid(FattyAcid fa) throws IOException {
+        ModificationsList modifications = fa.getModifications();
+        int flags = fa.getType().ordinal();
+        if (fa.isLcb()) {
+            flags |= LipidAdductCodec.FA_LCB;
+        }
+        if (!modifications.isEmpty()) {
+            flags |= LipidAdductCodec.FA_MODIFICATIONS;
+        }
+        writeByte(flags);
+        writeString(fa.getName());
+        writeVarInt(fa.getPosition() + 1);
+        writeVarInt(fa.getNCarbon());
+        writeVarInt(fa.getNHydroxy());
+        writeVarInt(fa.getNDoubleBonds());
+        writeVarInt(fa.getLipidFaBondType().ordinal());
+        if (!modifications.isEmpty()) {
+            writeVarInt(modifications.size());
+            for (Pair<Integer, String> modification : modifications) {
+                writeVarInt(zigZag(modification.getLeft()));
+                writeString(modification.getRight());
+            }
+        }
+        if (fa.getType() == FattyAcidType.ISOMERIC) {
+            Map<Integer, String> doubleBondPositions = fa.getDoubleBondPositions();
+            writeVarInt(doubleBondPositions.size());
+            for (Map.Entry<Integer, String> entry : doubleBondPositions.entrySet()) {
+                writeVarInt(zigZag(entry.getKey()));
+                writeString(entry.getValue());
+            }
+        }
+    }
+
+    private void writeAdduct(Adduct adduct) throws IOException {
+        if (adduct == null) {
+            writeVarInt(LipidAdductCodec.TAG_NULL);
+        } else if (adduct == Adduct.NONE) {
+            writeVarInt(LipidAdductCodec.TAG_NONE);
+        } else {
+            writeVarInt(LipidAdductCodec.TAG_VALUE);
+            writeString(adduct.getSumFormula());
+            writeString(adduct.getAdductString());
+            writeNullableInt(adduct.getPositiveElementaryCharge());
+            writeNullableInt(adduct.getChargeSign());
+        }
+    }
+
+    private void writeFragment(Fragment fragment) throws IOException {
+        if (fragment == null) {
+            writeVarInt(LipidAdductCodec.TAG_NULL);
+        } else if (fragment == Fragment.NONE) {
+            writeVarInt(LipidAdductCodec.TAG_NONE);
+        } else {
+            writeVarInt(LipidAdductCodec.TAG_VALUE);
+            writeString(fragment.getName());
+        }
+    }
+
+    /**
+     * Writes a string as 0 for null, or as its UTF-8 length plus one and the
+     * UTF-8 bytes. With a dictionary, 1 precedes a new string literal and
+     * values above 1 refer to the dictionary entry at the value minus two.
+     */
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+        if (dictionary != null) {
+            Integer index = dictionary.get(s);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+            writeVarInt(1);
+            if (dictionary.size() < LipidAdductCodec.MAX_DICTIONARY_SIZE) {
+                dictionary.put(s, dictionary.size());
+            }
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > LipidAdductCodec.MAX_STRING_LENGTH) {
+            throw new ConstraintViolationException("String to encode must not be longer than " + LipidAdductCodec.MAX_STRING_LENGTH + " bytes! Was: " + bytes.length);
+        }
+        writeVarInt(bytes.length + 1);
+        writeBytes(bytes);
+    }
+
+    private void writeNullableInt(Integer value) throws IOException {
+        writeVarInt(value == null ? 0 : zigZag(value) + 1);
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeFixedInt(int value) throws IOException {
+        ensure(4);
+        buffer[count++] = (byte) (value >>> 24);
+        buffer[count++] = (byte) (value >>> 16);
+        buffer[count++] = (byte) (value >>> 8);
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flushBuffer();
+            out.write(bytes);
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (count + n > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
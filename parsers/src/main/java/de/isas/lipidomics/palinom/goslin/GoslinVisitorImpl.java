@@ -17,13 +17,14 @@ package de.isas.lipidomics.palinom.goslin;
 
 import de.isas.lipidomics.domain.Adduct;
 import de.isas.lipidomics.domain.Fragment;
-import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.LipidAdduct;
 import de.isas.lipidomics.domain.LipidCategory;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.palinom.GoslinBaseVisitor;
-import de.isas.lipidomics.palinom.GoslinParser;
 import de.isas.lipidomics.palinom.GoslinParser.Adduct_infoContext;
 import de.isas.lipidomics.palinom.GoslinParser.Lipid_pureContext;
+import de.isas.lipidomics.palinom.GoslinParser;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -42,6 +43,25 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class GoslinVisitorImpl extends GoslinBaseVisitor<LipidAdduct> {
 
+    private final LipidFactory lipidFactory;
+
+    /**
+     * Creates a visitor that builds lipids on the level reported by the
+     * lipid name.
+     */
+    public GoslinVisitorImpl() {
+        this(LipidFactory.FULL);
+    }
+
+    /**
+     * Creates a visitor that builds lipids with the provided factory.
+     *
+     * @param lipidFactory the lipid factory.
+     */
+    public GoslinVisitorImpl(LipidFactory lipidFactory) {
+        this.lipidFactory = lipidFactory;
+    }
+
     /**
      * Produces a LipidAdduct given the LipidContext.
      * @throws ParseTreeVisitorException for structural or state-related issues
@@ -57,7 +77,7 @@ public class GoslinVisitorImpl extends GoslinBaseVisitor<LipidAdduct> {
         Optional<Adduct_infoContext> adductTermContext = Optional.ofNullable(lipid.adduct_info());
 
         LipidAdduct la = new LipidAdduct(categoryContext.map((cc) -> {
-            return new LipidVisitor().visitLipid_pure(cc);
+            return new LipidVisitor(lipidFactory).visitLipid_pure(cc);
         }).orElse(LipidSpecies.NONE), adductTermContext.map((t) -> {
             return new AdductVisitor().visitAdduct_info(t);
         }).orElse(Adduct.NONE), new Fragment(""));
@@ -66,6 +86,12 @@ public class GoslinVisitorImpl extends GoslinBaseVisitor<LipidAdduct> {
 
     private static class LipidVisitor extends GoslinBaseVisitor<LipidSpecies> {
 
+        private final LipidFactory lipidFactory;
+
+        LipidVisitor(LipidFactory lipidFactory) {
+            this.lipidFactory = lipidFactory;
+        }
+
         @Override
         public LipidSpecies visitLipid_pure(GoslinParser.Lipid_pureContext ctx) {
             LipidSpecies lipid = null;
@@ -76,11 +102,11 @@ public class GoslinVisitorImpl extends GoslinBaseVisitor<LipidAdduct> {
             bs.set(LipidCategory.GP.ordinal(), ctx.pl() != null);
             bs.set(LipidCategory.SP.ordinal(), ctx.sl() != null);
             final FattyAcylHelper faHelper = new FattyAcylHelper();
-            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper);
+            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper, lipidFactory);
             final IsomericSubspeciesFasHandler isfh = new IsomericSubspeciesFasHandler(faHelper);
-            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper);
+            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper, lipidFactory);
             final IsomericSubspeciesLcbHandler islh = new IsomericSubspeciesLcbHandler(isfh, faHelper);
-            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh);
+            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, lipidFactory);
             final FattyAcylHandler faHandler = new FattyAcylHandler();
             LipidCategory contextCategory = LipidCategory.UNDEFINED;
             switch (bs.cardinality()) {
@@ -3,12 +3,13 @@
  */
 package de.isas.lipidomics.palinom.goslin;
 
-import de.isas.lipidomics.palinom.VisitorParser;
-import de.isas.lipidomics.palinom.exceptions.ParsingException;
 import de.isas.lipidomics.domain.LipidAdduct;
 import de.isas.lipidomics.palinom.GoslinLexer;
 import de.isas.lipidomics.palinom.GoslinParser;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.SyntaxErrorListener;
+import de.isas.lipidomics.palinom.VisitorParser;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
 import lombok.extern.slf4j.Slf4j;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
@@ -24,6 +25,29 @@ import org.antlr.v4.runtime.misc.ParseCancellationException;
 @Slf4j
 public class GoslinVisitorParser implements VisitorParser<LipidAdduct> {
 
+    private final LipidFactory lipidFactory;
+
+    /**
+     * Creates a parser that returns lipids on the level reported by the
+     * lipid name.
+     */
+    public GoslinVisitorParser() {
+        this(LipidFactory.FULL);
+    }
+
+    /**
+     * Creates a parser that returns lipids created by the provided factory.
+     * Use {@link LipidFactory#SPECIES} to skip building the subspecies and to
+     * return species level lipids directly, or
+     * {@link LipidFactory#forLevel(de.isas.lipidomics.domain.LipidLevel)} to
+     * collapse lipids to a target level.
+     *
+     * @param lipidFactory the lipid factory.
+     */
+    public GoslinVisitorParser(LipidFactory lipidFactory) {
+        this.lipidFactory = lipidFactory;
+    }
+
     @Override
     public LipidAdduct parse(String lipidString, SyntaxErrorListener listener) throws ParsingException {
         return parseWithModernGrammar(lipidString, listener);
@@ -41,7 +65,7 @@ public class GoslinVisitorParser implements VisitorParser<LipidAdduct> {
             if (parser.getNumberOfSyntaxErrors() > 0) {
                 throw new ParsingException("Parsing of " + lipidString + " failed with " + parser.getNumberOfSyntaxErrors() + " syntax errors!\n" + listener.getErrorString());
             }
-            GoslinVisitorImpl lipidVisitor = new GoslinVisitorImpl();
+            GoslinVisitorImpl lipidVisitor = new GoslinVisitorImpl(lipidFactory);
             return lipidVisitor.visit(context);
         } catch (ParseCancellationException pce) {
             throw new ParsingException("Parsing of " + lipidString + " failed with " + parser.getNumberOfSyntaxErrors() + " syntax errors!\n" + listener.getErrorString());
@@ -16,6 +16,7 @@
 package de.isas.lipidomics.palinom.goslin;
 
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
 import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
@@ -59,7 +60,7 @@ class IsomericSubspeciesFasHandler {
                 fa.doubleBondPositions(Collections.emptyMap());
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).position(position).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).build());
         } else {
             throw new ParseTreeVisitorException("Uninitialized FaContext!");
         }
@@ -16,6 +16,7 @@
 package de.isas.lipidomics.palinom.goslin;
 
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
 import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
@@ -64,7 +65,7 @@ class IsomericSubspeciesLcbHandler {
             }
         }
         fa.lipidFaBondType(LipidFaBondType.ESTER);
-        return fa.name(faName).position(position).lcb(true).build();
+        return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).lcb(true).build());
     }
 
 }
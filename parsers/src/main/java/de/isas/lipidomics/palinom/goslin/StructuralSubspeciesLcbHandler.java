@@ -15,15 +15,15 @@
  */
 package de.isas.lipidomics.palinom.goslin;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.palinom.GoslinParser;
 import static de.isas.lipidomics.palinom.HandlerUtils.asInt;
+import de.isas.lipidomics.palinom.LipidFactory;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,10 +39,12 @@ class StructuralSubspeciesLcbHandler {
 
     private final StructuralSubspeciesFasHandler ssfh;
     private final IsomericSubspeciesLcbHandler islh;
+    private final LipidFactory lipidFactory;
 
-    public StructuralSubspeciesLcbHandler(StructuralSubspeciesFasHandler ssfh, IsomericSubspeciesLcbHandler islh) {
+    public StructuralSubspeciesLcbHandler(StructuralSubspeciesFasHandler ssfh, IsomericSubspeciesLcbHandler islh, LipidFactory lipidFactory) {
         this.ssfh = ssfh;
         this.islh = islh;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitStructuralSubspeciesLcb(HeadGroup headGroup, GoslinParser.LcbContext lcbContext, List<GoslinParser.FaContext> faContexts) {
@@ -65,11 +67,11 @@ class StructuralSubspeciesLcbHandler {
             fas.stream().map((t) -> {
                 return t;
             }).collect(Collectors.toList()).toArray(arrs);
-            return Optional.of(new LipidIsomericSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.isomericSubspecies(headGroup, arrs));
         } else {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidStructuralSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.structuralSubspecies(headGroup, arrs));
         }
     }
 
@@ -94,7 +96,7 @@ class StructuralSubspeciesLcbHandler {
             }
         }
         fa.lipidFaBondType(LipidFaBondType.ESTER);
-        return fa.name(faName).position(position).lcb(true).build();
+        return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).lcb(true).build());
     }
 
 }
@@ -22,6 +22,7 @@ import de.isas.lipidomics.domain.LipidCategory;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.palinom.GoslinFragmentsBaseVisitor;
 import de.isas.lipidomics.palinom.GoslinFragmentsParser;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -39,6 +40,25 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class GoslinFragmentsVisitorImpl extends GoslinFragmentsBaseVisitor<LipidAdduct> {
 
+    private final LipidFactory lipidFactory;
+
+    /**
+     * Creates a visitor that builds lipids on the level reported by the
+     * lipid name.
+     */
+    public GoslinFragmentsVisitorImpl() {
+        this(LipidFactory.FULL);
+    }
+
+    /**
+     * Creates a visitor that builds lipids with the provided factory.
+     *
+     * @param lipidFactory the lipid factory.
+     */
+    public GoslinFragmentsVisitorImpl(LipidFactory lipidFactory) {
+        this.lipidFactory = lipidFactory;
+    }
+
     /**
      * Produces a LipidAdduct given the LipidContext.
      *
@@ -55,7 +75,7 @@ public class GoslinFragmentsVisitorImpl extends GoslinFragmentsBaseVisitor<Lipid
         Optional<GoslinFragmentsParser.Lipid_pureContext> lipidContext = Optional.ofNullable(lipid.just_lipid().lipid_pure());
         Optional<GoslinFragmentsParser.Adduct_infoContext> adductTermContext = Optional.ofNullable(lipid.just_lipid().adduct_info());
         LipidAdduct la = new LipidAdduct(lipidContext.map((cc) -> {
-            return new GoslinFragmentsVisitorImpl.LipidVisitor().visitLipid_pure(cc);
+            return new GoslinFragmentsVisitorImpl.LipidVisitor(lipidFactory).visitLipid_pure(cc);
         }).orElse(LipidSpecies.NONE), adductTermContext.map((t) -> {
             return new GoslinFragmentsVisitorImpl.AdductVisitor().visitAdduct_info(t);
         }).orElse(Adduct.NONE), fragmentContext.map((t) -> {
@@ -66,6 +86,12 @@ public class GoslinFragmentsVisitorImpl extends GoslinFragmentsBaseVisitor<Lipid
 
     private static class LipidVisitor extends GoslinFragmentsBaseVisitor<LipidSpecies> {
 
+        private final LipidFactory lipidFactory;
+
+        LipidVisitor(LipidFactory lipidFactory) {
+            this.lipidFactory = lipidFactory;
+        }
+
         @Override
         public LipidSpecies visitLipid_pure(GoslinFragmentsParser.Lipid_pureContext ctx) {
             LipidSpecies lipid = null;
@@ -76,11 +102,11 @@ public class GoslinFragmentsVisitorImpl extends GoslinFragmentsBaseVisitor<Lipid
             bs.set(LipidCategory.GP.ordinal(), ctx.pl() != null);
             bs.set(LipidCategory.SP.ordinal(), ctx.sl() != null);
             final FattyAcylHelper faHelper = new FattyAcylHelper();
-            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper);
+            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper, lipidFactory);
             final IsomericSubspeciesFasHandler isfh = new IsomericSubspeciesFasHandler(faHelper);
-            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper);
+            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper, lipidFactory);
             final IsomericSubspeciesLcbHandler islh = new IsomericSubspeciesLcbHandler(isfh, faHelper);
-            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh);
+            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, lipidFactory);
             final FattyAcylHandler faHandler = new FattyAcylHandler();
             LipidCategory contextCategory = LipidCategory.UNDEFINED;
             switch (bs.cardinality()) {
@@ -15,13 +15,14 @@
  */
 package de.isas.lipidomics.palinom.goslinfragments;
 
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
 import de.isas.lipidomics.domain.LipidIsomericSubspecies;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.LipidStructuralSubspecies;
-import de.isas.lipidomics.domain.FattyAcid;
-import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.palinom.GoslinFragmentsParser;
 import static de.isas.lipidomics.palinom.HandlerUtils.asInt;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
@@ -59,7 +60,7 @@ class IsomericSubspeciesFasHandler {
                 fa.doubleBondPositions(Collections.emptyMap());
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).position(position).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).build());
         } else {
             throw new ParseTreeVisitorException("Uninitialized FaContext!");
         }
@@ -15,13 +15,14 @@
  */
 package de.isas.lipidomics.palinom.goslinfragments;
 
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
 import de.isas.lipidomics.domain.LipidIsomericSubspecies;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.LipidStructuralSubspecies;
-import de.isas.lipidomics.domain.FattyAcid;
-import de.isas.lipidomics.domain.FattyAcidType;
-import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.palinom.GoslinFragmentsParser;
 import static de.isas.lipidomics.palinom.HandlerUtils.asInt;
 import java.util.Collections;
@@ -64,7 +65,7 @@ class IsomericSubspeciesLcbHandler {
             }
         }
         fa.lipidFaBondType(LipidFaBondType.ESTER);
-        return fa.name(faName).position(position).lcb(true).build();
+        return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).lcb(true).build());
     }
 
 }
@@ -15,13 +15,14 @@
  */
 package de.isas.lipidomics.palinom.goslinfragments;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidMolecularSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.HeadGroup;
-import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.palinom.GoslinFragmentsParser;
+import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedList;
 import java.util.List;
@@ -35,9 +36,11 @@ import java.util.Optional;
 class MolecularSubspeciesFasHandler {
 
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public MolecularSubspeciesFasHandler(FattyAcylHelper faHelper) {
+    public MolecularSubspeciesFasHandler(FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitMolecularSubspeciesFas(HeadGroup headGroup, List<GoslinFragmentsParser.FaContext> faContexts) {
@@ -48,7 +51,7 @@ class MolecularSubspeciesFasHandler {
         }
         FattyAcid[] arrs = new FattyAcid[fas.size()];
         fas.toArray(arrs);
-        return Optional.of(new LipidMolecularSubspecies(headGroup, arrs));
+        return Optional.of(lipidFactory.molecularSubspecies(headGroup, arrs));
     }
 
     public FattyAcid buildMolecularFa(HeadGroup headGroup, GoslinFragmentsParser.FaContext ctx, String faName) {
@@ -67,7 +70,7 @@ class MolecularSubspeciesFasHandler {
                 }
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).build());
         } else {
             throw new ParseTreeVisitorException("Uninitialized FaContext!");
         }
@@ -15,15 +15,15 @@
  */
 package de.isas.lipidomics.palinom.goslinfragments;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import static de.isas.lipidomics.domain.FattyAcidType.ISOMERIC;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.palinom.GoslinFragmentsParser;
 import static de.isas.lipidomics.palinom.HandlerUtils.asInt;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,10 +39,12 @@ class StructuralSubspeciesFasHandler {
 
     private final IsomericSubspeciesFasHandler isfh;
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public StructuralSubspeciesFasHandler(IsomericSubspeciesFasHandler isfh, FattyAcylHelper faHelper) {
+    public StructuralSubspeciesFasHandler(IsomericSubspeciesFasHandler isfh, FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.isfh = isfh;
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitStructuralSubspeciesFas(HeadGroup headGroup, List<GoslinFragmentsParser.FaContext> faContexts) {
@@ -60,11 +62,11 @@ class StructuralSubspeciesFasHandler {
             fas.stream().map((t) -> {
                 return t;
             }).collect(Collectors.toList()).toArray(arrs);
-            return Optional.of(new LipidIsomericSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.isomericSubspecies(headGroup, arrs));
         } else {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidStructuralSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.structuralSubspecies(headGroup, arrs));
         }
     }
 
@@ -86,7 +88,7 @@ class StructuralSubspeciesFasHandler {
                 }
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).position(position).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).build());
         } else {
             throw new ParseTreeVisitorException("Uninitialized FaContext!");
         }
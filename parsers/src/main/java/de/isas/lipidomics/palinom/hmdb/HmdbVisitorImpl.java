@@ -22,6 +22,7 @@ import de.isas.lipidomics.domain.LipidCategory;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.palinom.HMDBBaseVisitor;
 import de.isas.lipidomics.palinom.HMDBParser;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -38,6 +39,25 @@ import java.util.Optional;
  */
 public class HmdbVisitorImpl extends HMDBBaseVisitor<LipidAdduct> {
 
+    private final LipidFactory lipidFactory;
+
+    /**
+     * Creates a visitor that builds lipids on the level reported by the
+     * lipid name.
+     */
+    public HmdbVisitorImpl() {
+        this(LipidFactory.FULL);
+    }
+
+    /**
+     * Creates a visitor that builds lipids with the provided factory.
+     *
+     * @param lipidFactory the lipid factory.
+     */
+    public HmdbVisitorImpl(LipidFactory lipidFactory) {
+        this.lipidFactory = lipidFactory;
+    }
+
     /**
      * Produces a LipidAdduct given the LipidContext.
      * @throws ParseTreeVisitorException for structural or state-related issues
@@ -51,13 +71,19 @@ public class HmdbVisitorImpl extends HMDBBaseVisitor<LipidAdduct> {
         Optional<HMDBParser.Lipid_pureContext> categoryContext = Optional.ofNullable(ctx.lipid_pure());
 
         LipidAdduct la = new LipidAdduct(categoryContext.map((cc) -> {
-            return new LipidVisitor().visitLipid_pure(cc);
+            return new LipidVisitor(lipidFactory).visitLipid_pure(cc);
         }).orElse(LipidSpecies.NONE), Adduct.NONE, new Fragment(""));
         return la;
     }
 
     private static class LipidVisitor extends HMDBBaseVisitor<LipidSpecies> {
 
+        private final LipidFactory lipidFactory;
+
+        LipidVisitor(LipidFactory lipidFactory) {
+            this.lipidFactory = lipidFactory;
+        }
+
         @Override
         public LipidSpecies visitLipid_pure(HMDBParser.Lipid_pureContext ctx) {
             LipidSpecies lipid = null;
@@ -68,11 +94,11 @@ public class HmdbVisitorImpl extends HMDBBaseVisitor<LipidAdduct> {
             bs.set(LipidCategory.GP.ordinal(), ctx.lipid_class().pl() != null);
             bs.set(LipidCategory.SP.ordinal(), ctx.lipid_class().sl() != null);
             final FattyAcylHelper faHelper = new FattyAcylHelper();
-            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper);
-            final IsomericSubspeciesFasHandler isfh = new IsomericSubspeciesFasHandler(faHelper);
-            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper);
-            final IsomericSubspeciesLcbHandler islh = new IsomericSubspeciesLcbHandler(isfh, faHelper);
-            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, faHelper);
+            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper, lipidFactory);
+            final IsomericSubspeciesFasHandler isfh = new IsomericSubspeciesFasHandler(faHelper, lipidFactory);
+            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper, lipidFactory);
+            final IsomericSubspeciesLcbHandler islh = new IsomericSubspeciesLcbHandler(isfh, faHelper, lipidFactory);
+            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, faHelper, lipidFactory);
             final FattyAcylHandler faHandler = new FattyAcylHandler();
             String lipidSuffix = "";
             if (ctx.lipid_suffix() != null) {
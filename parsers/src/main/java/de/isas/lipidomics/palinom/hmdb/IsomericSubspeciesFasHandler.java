@@ -15,16 +15,16 @@
  */
 package de.isas.lipidomics.palinom.hmdb;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.ModificationsList;
-import de.isas.lipidomics.palinom.HandlerUtils;
 import de.isas.lipidomics.palinom.HMDBParser;
+import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -41,9 +41,11 @@ import java.util.stream.Collectors;
 class IsomericSubspeciesFasHandler {
 
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public IsomericSubspeciesFasHandler(FattyAcylHelper faHelper) {
+    public IsomericSubspeciesFasHandler(FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitIsomericSubspeciesFas(HeadGroup headGroup, List<HMDBParser.FaContext> faContexts) {
@@ -61,11 +63,11 @@ class IsomericSubspeciesFasHandler {
             fas.stream().map((t) -> {
                 return (FattyAcid) t;
             }).collect(Collectors.toList()).toArray(arrs);
-            return Optional.of(new LipidIsomericSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.isomericSubspecies(headGroup, arrs));
         } else {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidStructuralSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.structuralSubspecies(headGroup, arrs));
         }
     }
 
@@ -93,7 +95,7 @@ class IsomericSubspeciesFasHandler {
                     Map<Integer, String> doubleBondPositions = new LinkedHashMap<>();
                     if (ctx.fa_core().db().db_count() != null) {
                         if (doubleBonds > 0) {
-                            return FattyAcid.structuralFattyAcidBuilder().
+                            return FattyAcidInterner.DEFAULT.intern(FattyAcid.structuralFattyAcidBuilder().
                                     lipidFaBondType(lfbt).
                                     name(faName).
                                     nCarbon(HandlerUtils.asInt(ctx.fa_core().carbon(), 0)).
@@ -101,14 +103,14 @@ class IsomericSubspeciesFasHandler {
                                     nDoubleBonds(doubleBonds).
                                     position(position).
                                     modifications(modifications).
-                                    build();
+                                    build());
                         }
                     }
                     fa.doubleBondPositions(doubleBondPositions);
                 }
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).position(position).nHydroxy(modificationHydroxyls).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).nHydroxy(modificationHydroxyls).build());
         } else if (ctx.fa_lcb_prefix() != null || ctx.fa_lcb_suffix() != null) { //handling of lcbs
             throw new ParseTreeVisitorException("LCBs are handled by " + IsomericSubspeciesLcbHandler.class.getSimpleName() + "!");
         } else if (ctx.furan_fa() != null) {
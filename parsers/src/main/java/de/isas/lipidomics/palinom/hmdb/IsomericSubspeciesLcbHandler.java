@@ -15,16 +15,16 @@
  */
 package de.isas.lipidomics.palinom.hmdb;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.ModificationsList;
-import de.isas.lipidomics.palinom.HandlerUtils;
 import de.isas.lipidomics.palinom.HMDBParser;
+import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -42,10 +42,12 @@ class IsomericSubspeciesLcbHandler {
 
     private final IsomericSubspeciesFasHandler isfh;
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public IsomericSubspeciesLcbHandler(IsomericSubspeciesFasHandler isfh, FattyAcylHelper faHelper) {
+    public IsomericSubspeciesLcbHandler(IsomericSubspeciesFasHandler isfh, FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.isfh = isfh;
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitIsomericSubspeciesLcb(HeadGroup headGroup, HMDBParser.LcbContext lcbContext, List<HMDBParser.FaContext> faContexts) {
@@ -68,11 +70,11 @@ class IsomericSubspeciesLcbHandler {
             fas.stream().map((t) -> {
                 return (FattyAcid) t;
             }).collect(Collectors.toList()).toArray(arrs);
-            return Optional.of(new LipidIsomericSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.isomericSubspecies(headGroup, arrs));
         } else {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidStructuralSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.structuralSubspecies(headGroup, arrs));
         }
     }
 
@@ -101,7 +103,7 @@ class IsomericSubspeciesLcbHandler {
                     Map<Integer, String> doubleBondPositions = new LinkedHashMap<>();
                     if (ctx.lcb_core().db().db_count() != null) {
                         if (doubleBonds > 0) {
-                            return FattyAcid.structuralFattyAcidBuilder().
+                            return FattyAcidInterner.DEFAULT.intern(FattyAcid.structuralFattyAcidBuilder().
                                     lipidFaBondType(lfbt).
                                     name(faName).
                                     lcb(true).
@@ -110,14 +112,14 @@ class IsomericSubspeciesLcbHandler {
                                     nDoubleBonds(doubleBonds).
                                     position(position).
                                     modifications(modifications).
-                                    build();
+                                    build());
                         }
                     }
                     fa.doubleBondPositions(doubleBondPositions);
                 }
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).lcb(true).position(position).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).lcb(true).position(position).build());
         } else {
             throw new ParseTreeVisitorException("Uninitialized FaContext!");
         }
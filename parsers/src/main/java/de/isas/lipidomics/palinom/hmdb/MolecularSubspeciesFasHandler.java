@@ -15,14 +15,15 @@
  */
 package de.isas.lipidomics.palinom.hmdb;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidMolecularSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.ModificationsList;
-import de.isas.lipidomics.palinom.HandlerUtils;
 import de.isas.lipidomics.palinom.HMDBParser;
+import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,9 +37,11 @@ import java.util.Optional;
 class MolecularSubspeciesFasHandler {
 
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public MolecularSubspeciesFasHandler(FattyAcylHelper faHelper) {
+    public MolecularSubspeciesFasHandler(FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitMolecularSubspeciesFas(HeadGroup headGroup, List<HMDBParser.FaContext> faContexts) {
@@ -49,7 +52,7 @@ class MolecularSubspeciesFasHandler {
         }
         FattyAcid[] arrs = new FattyAcid[fas.size()];
         fas.toArray(arrs);
-        return Optional.of(new LipidMolecularSubspecies(headGroup, arrs));
+        return Optional.of(lipidFactory.molecularSubspecies(headGroup, arrs));
     }
 
     public FattyAcid buildMolecularFa(HeadGroup headGroup, HMDBParser.FaContext ctx, String faName) {
@@ -71,7 +74,7 @@ class MolecularSubspeciesFasHandler {
                 }
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).nHydroxy(modificationHydroxyls).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).nHydroxy(modificationHydroxyls).build());
         } else if (ctx.fa_lcb_prefix() != null || ctx.fa_lcb_suffix() != null) { //handling of lcbs
             throw new RuntimeException("Support for lcbs is implemented in " + StructuralSubspeciesLcbHandler.class.getSimpleName() + "!");
         } else if (ctx.furan_fa() != null) {
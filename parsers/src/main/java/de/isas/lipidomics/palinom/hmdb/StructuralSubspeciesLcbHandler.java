@@ -15,16 +15,16 @@
  */
 package de.isas.lipidomics.palinom.hmdb;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.ModificationsList;
-import de.isas.lipidomics.palinom.HandlerUtils;
 import de.isas.lipidomics.palinom.HMDBParser;
+import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
@@ -40,11 +40,13 @@ class StructuralSubspeciesLcbHandler {
     private final StructuralSubspeciesFasHandler ssfh;
     private final IsomericSubspeciesLcbHandler islh;
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public StructuralSubspeciesLcbHandler(StructuralSubspeciesFasHandler ssfh, IsomericSubspeciesLcbHandler islh, FattyAcylHelper faHelper) {
+    public StructuralSubspeciesLcbHandler(StructuralSubspeciesFasHandler ssfh, IsomericSubspeciesLcbHandler islh, FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.ssfh = ssfh;
         this.islh = islh;
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitStructuralSubspeciesLcb(HeadGroup headGroup, HMDBParser.LcbContext lcbContext, List<HMDBParser.FaContext> faContexts) {
@@ -67,17 +69,17 @@ class StructuralSubspeciesLcbHandler {
             fas.stream().map((t) -> {
                 return (FattyAcid) t;
             }).collect(Collectors.toList()).toArray(arrs);
-            return Optional.of(new LipidIsomericSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.isomericSubspecies(headGroup, arrs));
         } else {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidStructuralSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.structuralSubspecies(headGroup, arrs));
         }
     }
 
     public Optional<LipidSpecies> visitStructuralSubspeciesLcb(HeadGroup headGroup, HMDBParser.LcbContext lcbContext) {
         FattyAcid fa = buildStructuralLcb(headGroup, lcbContext, "LCB", 1);
-        return Optional.of(new LipidStructuralSubspecies(headGroup, fa));
+        return Optional.of(lipidFactory.structuralSubspecies(headGroup, fa));
     }
 
     public FattyAcid buildStructuralLcb(HeadGroup headGroup, HMDBParser.LcbContext ctx, String faName, int position) {
@@ -100,7 +102,7 @@ class StructuralSubspeciesLcbHandler {
             }
         }
         fa.lipidFaBondType(LipidFaBondType.ESTER);
-        return fa.name(faName).position(position).lcb(true).build();
+        return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).lcb(true).build());
     }
 
 }
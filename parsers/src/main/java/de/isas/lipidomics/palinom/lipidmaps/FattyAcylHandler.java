@@ -15,20 +15,19 @@
  */
 package de.isas.lipidomics.palinom.lipidmaps;
 
-import de.isas.lipidomics.palinom.ParserRuleContextHandler;
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
 import de.isas.lipidomics.domain.LipidIsomericSubspecies;
 import de.isas.lipidomics.domain.LipidLevel;
-import de.isas.lipidomics.domain.LipidMolecularSubspecies;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.LipidSpeciesInfo;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
-import de.isas.lipidomics.domain.FattyAcid;
-import de.isas.lipidomics.domain.FattyAcidType;
-import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.ModificationsList;
 import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.LipidMapsParser;
+import de.isas.lipidomics.palinom.ParserRuleContextHandler;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -47,12 +46,14 @@ class FattyAcylHandler implements ParserRuleContextHandler<LipidMapsParser.Lipid
     private final StructuralSubspeciesFasHandler ssfah;
     private final StructuralSubspeciesLcbHandler sslah;
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public FattyAcylHandler(MolecularSubspeciesFasHandler msfah, StructuralSubspeciesFasHandler ssfah, StructuralSubspeciesLcbHandler sslah, FattyAcylHelper faHelper) {
+    public FattyAcylHandler(MolecularSubspeciesFasHandler msfah, StructuralSubspeciesFasHandler ssfah, StructuralSubspeciesLcbHandler sslah, FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.msfah = msfah;
         this.ssfah = ssfah;
         this.sslah = sslah;
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     @Override
@@ -132,15 +133,15 @@ class FattyAcylHandler implements ParserRuleContextHandler<LipidMapsParser.Lipid
             fas.stream().map((t) -> {
                 return (FattyAcid) t;
             }).collect(Collectors.toList()).toArray(arrs);
-            return Optional.of(new LipidIsomericSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.isomericSubspecies(headGroup, arrs));
         } else if (nMolecularFas < fas.size()) {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidStructuralSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.structuralSubspecies(headGroup, arrs));
         } else {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidMolecularSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.molecularSubspecies(headGroup, arrs));
         }
     }
 
@@ -15,16 +15,17 @@
  */
 package de.isas.lipidomics.palinom.lipidmaps;
 
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
 import de.isas.lipidomics.domain.LipidIsomericSubspecies;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.LipidStructuralSubspecies;
-import de.isas.lipidomics.domain.FattyAcid;
-import de.isas.lipidomics.domain.FattyAcidType;
-import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.ModificationsList;
-import de.isas.lipidomics.palinom.HandlerUtils;
 import static de.isas.lipidomics.palinom.HandlerUtils.asInt;
+import de.isas.lipidomics.palinom.HandlerUtils;
 import de.isas.lipidomics.palinom.LipidMapsParser;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedHashMap;
@@ -73,7 +74,7 @@ class IsomericSubspeciesFasHandler {
                     Map<Integer, String> doubleBondPositions = new LinkedHashMap<>();
                     if (ctx.fa_unmod().fa_pure().db().db_count() != null) {
                         if (doubleBonds > 0) {
-                            return FattyAcid.structuralFattyAcidBuilder().
+                            return FattyAcidInterner.DEFAULT.intern(FattyAcid.structuralFattyAcidBuilder().
                                     lipidFaBondType(faBondType).
                                     name(faName).
                                     lcb(true).
@@ -81,13 +82,13 @@ class IsomericSubspeciesFasHandler {
                                     nDoubleBonds(doubleBonds).
                                     position(position).
                                     modifications(modifications).
-                                    build();
+                                    build());
                         }
                     }
                     fa.doubleBondPositions(doubleBondPositions);
                 }
             }
-            return fa.name(faName).position(position).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).build());
         } else {
             throw new ParseTreeVisitorException("No FaContext!");
         }
@@ -15,13 +15,14 @@
  */
 package de.isas.lipidomics.palinom.lipidmaps;
 
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.FattyAcidType;
+import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
 import de.isas.lipidomics.domain.LipidIsomericSubspecies;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.LipidStructuralSubspecies;
-import de.isas.lipidomics.domain.FattyAcid;
-import de.isas.lipidomics.domain.FattyAcidType;
-import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.ModificationsList;
 import de.isas.lipidomics.palinom.HandlerUtils;
 import de.isas.lipidomics.palinom.LipidMapsParser;
@@ -75,7 +76,7 @@ class IsomericSubspeciesLcbHandler {
                         Map<Integer, String> doubleBondPositions = new LinkedHashMap<>();
                         if (factx.db().db_count() != null) {
                             if (doubleBonds > 0) {
-                                return FattyAcid.structuralFattyAcidBuilder().
+                                return FattyAcidInterner.DEFAULT.intern(FattyAcid.structuralFattyAcidBuilder().
                                         lipidFaBondType(lfbt).
                                         name(faName).
                                         lcb(true).
@@ -84,14 +85,14 @@ class IsomericSubspeciesLcbHandler {
                                         nDoubleBonds(doubleBonds).
                                         position(position).
                                         modifications(modifications).
-                                        build();
+                                        build());
                             }
                         }
                         fa.doubleBondPositions(doubleBondPositions);
                     }
                 }
                 fa.lipidFaBondType(lfbt);
-                return fa.name(faName).lcb(true).position(position).build();
+                return FattyAcidInterner.DEFAULT.intern(fa.name(faName).lcb(true).position(position).build());
             } else {
                 throw new ParseTreeVisitorException("Uninitialized FaContext!");
             }
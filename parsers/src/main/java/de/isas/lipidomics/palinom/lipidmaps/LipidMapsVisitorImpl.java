@@ -18,13 +18,14 @@ package de.isas.lipidomics.palinom.lipidmaps;
 import de.isas.lipidomics.domain.Adduct;
 import de.isas.lipidomics.domain.Fragment;
 import de.isas.lipidomics.domain.LipidAdduct;
-import de.isas.lipidomics.domain.LipidCategory;
 import static de.isas.lipidomics.domain.LipidCategory.GL;
 import static de.isas.lipidomics.domain.LipidCategory.ST;
+import de.isas.lipidomics.domain.LipidCategory;
 import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.LipidMapsBaseVisitor;
-import de.isas.lipidomics.palinom.LipidMapsParser;
 import de.isas.lipidomics.palinom.LipidMapsParser.Lipid_pureContext;
+import de.isas.lipidomics.palinom.LipidMapsParser;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -44,6 +45,25 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 class LipidMapsVisitorImpl extends LipidMapsBaseVisitor<LipidAdduct> {
 
+    private final LipidFactory lipidFactory;
+
+    /**
+     * Creates a visitor that builds lipids on the level reported by the
+     * lipid name.
+     */
+    LipidMapsVisitorImpl() {
+        this(LipidFactory.FULL);
+    }
+
+    /**
+     * Creates a visitor that builds lipids with the provided factory.
+     *
+     * @param lipidFactory the lipid factory.
+     */
+    LipidMapsVisitorImpl(LipidFactory lipidFactory) {
+        this.lipidFactory = lipidFactory;
+    }
+
     /**
      * Produces a LipidAdduct given the LipidContext.
      * @throws ParseTreeVisitorException for structural or state-related issues
@@ -64,13 +84,19 @@ class LipidMapsVisitorImpl extends LipidMapsBaseVisitor<LipidAdduct> {
         Optional<Lipid_pureContext> categoryContext = Optional.ofNullable(lipid.lipid_mono().lipid_pure());
 
         LipidAdduct la = new LipidAdduct(categoryContext.map((cc) -> {
-            return new LipidVisitor().visitLipid_pure(cc);
+            return new LipidVisitor(lipidFactory).visitLipid_pure(cc);
         }).orElse(LipidSpecies.NONE), Adduct.NONE, new Fragment(""));
         return la;
     }
 
     private static class LipidVisitor extends LipidMapsBaseVisitor<LipidSpecies> {
 
+        private final LipidFactory lipidFactory;
+
+        LipidVisitor(LipidFactory lipidFactory) {
+            this.lipidFactory = lipidFactory;
+        }
+
         @Override
         public LipidSpecies visitLipid_pure(LipidMapsParser.Lipid_pureContext ctx) {
             LipidSpecies lipid = null;
@@ -83,11 +109,11 @@ class LipidMapsVisitorImpl extends LipidMapsBaseVisitor<LipidAdduct> {
             bs.set(LipidCategory.PK.ordinal(), ctx.pk() != null);
             final FattyAcylHelper faHelper = new FattyAcylHelper();
             final IsomericSubspeciesFasHandler isfh = new IsomericSubspeciesFasHandler(faHelper);
-            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper);
-            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(ssfh, faHelper);
+            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper, lipidFactory);
+            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(ssfh, faHelper, lipidFactory);
             final IsomericSubspeciesLcbHandler islh = new IsomericSubspeciesLcbHandler(isfh, faHelper);
-            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, faHelper);
-            final FattyAcylHandler faHandler = new FattyAcylHandler(msfh, ssfh, sslh, faHelper);
+            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, faHelper, lipidFactory);
+            final FattyAcylHandler faHandler = new FattyAcylHandler(msfh, ssfh, sslh, faHelper, lipidFactory);
             LipidCategory contextCategory = LipidCategory.UNDEFINED;
             switch (bs.cardinality()) {
                 case 0:
@@ -100,7 +126,7 @@ class LipidMapsVisitorImpl extends LipidMapsBaseVisitor<LipidAdduct> {
             }
             switch (contextCategory) {
                 case ST:
-                    lipid = new SterolLipidHandler(ssfh).handle(ctx);
+                    lipid = new SterolLipidHandler(ssfh, lipidFactory).handle(ctx);
                     break;
                 case GL:
                     lipid = new GlyceroLipidHandler(msfh, ssfh, faHandler).handle(ctx);
@@ -15,17 +15,16 @@
  */
 package de.isas.lipidomics.palinom.lipidmaps;
 
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.HeadGroup;
 import de.isas.lipidomics.domain.LipidFaBondType;
 import de.isas.lipidomics.domain.LipidLevel;
-import de.isas.lipidomics.domain.LipidMolecularSubspecies;
 import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.LipidSpeciesInfo;
-import de.isas.lipidomics.domain.FattyAcid;
-import de.isas.lipidomics.domain.HeadGroup;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
 import de.isas.lipidomics.domain.ModificationsList;
 import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.LipidMapsParser;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedList;
@@ -41,10 +40,12 @@ class MolecularSubspeciesFasHandler {
 
     private final FattyAcylHelper faHelper;
     private final StructuralSubspeciesFasHandler ssfh;
+    private final LipidFactory lipidFactory;
 
-    public MolecularSubspeciesFasHandler(StructuralSubspeciesFasHandler ssfh, FattyAcylHelper faHelper) {
+    public MolecularSubspeciesFasHandler(StructuralSubspeciesFasHandler ssfh, FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.ssfh = ssfh;
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public LipidSpecies handlePureFaContext(LipidMapsParser.Pure_faContext ctx) {
@@ -52,14 +53,14 @@ class MolecularSubspeciesFasHandler {
             FattyAcid fa = buildMolecularFa(ctx.fa_no_hg().fa(), "FA1");
             switch (fa.getType()) {
                 case ISOMERIC:
-                    return new LipidIsomericSubspecies(
+                    return lipidFactory.isomericSubspecies(
                             new HeadGroup(
                                     "FA"),
                             fa
                     );
                 case STRUCTURAL:
                 case MOLECULAR:
-                    return new LipidStructuralSubspecies(
+                    return lipidFactory.structuralSubspecies(
                             new HeadGroup(
                                     "FA"),
                             fa
@@ -86,14 +87,14 @@ class MolecularSubspeciesFasHandler {
                 FattyAcid fa = buildMolecularFa(speciesContext.fa(), "FA1");
                 switch (fa.getType()) {
                     case ISOMERIC:
-                        return new LipidIsomericSubspecies(
+                        return lipidFactory.isomericSubspecies(
                                 new HeadGroup(
                                         ctx.hg_fa().getText()),
                                 fa
                         );
                     case STRUCTURAL:
                     case MOLECULAR:
-                        return new LipidStructuralSubspecies(
+                        return lipidFactory.structuralSubspecies(
                                 new HeadGroup(
                                         ctx.hg_fa().getText()),
                                 fa
@@ -130,7 +131,7 @@ class MolecularSubspeciesFasHandler {
         }
         FattyAcid[] arrs = new FattyAcid[fas.size()];
         fas.toArray(arrs);
-        return Optional.of(new LipidMolecularSubspecies(headGroup, arrs));
+        return Optional.of(lipidFactory.molecularSubspecies(headGroup, arrs));
     }
 
     public FattyAcid buildMolecularFa(LipidMapsParser.FaContext ctx, String faName) {
@@ -155,7 +156,7 @@ class MolecularSubspeciesFasHandler {
                     return ssfh.buildStructuralFa(ctx, faName, -1);
                 }
             }
-            return fa.name(faName).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).build());
 
         } else {
             throw new ParseTreeVisitorException("No FaContext!");
@@ -16,11 +16,11 @@
 package de.isas.lipidomics.palinom.lipidmaps;
 
 import de.isas.lipidomics.domain.HeadGroup;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.palinom.ParserRuleContextHandler;
 import de.isas.lipidomics.domain.LipidSpecies;
-import de.isas.lipidomics.palinom.LipidMapsParser;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.LipidMapsParser.Lipid_pureContext;
+import de.isas.lipidomics.palinom.LipidMapsParser;
+import de.isas.lipidomics.palinom.ParserRuleContextHandler;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.Arrays;
 import java.util.Optional;
@@ -33,9 +33,11 @@ import java.util.Optional;
 class SterolLipidHandler implements ParserRuleContextHandler<Lipid_pureContext, LipidSpecies> {
 
     private final StructuralSubspeciesFasHandler ssfh;
+    private final LipidFactory lipidFactory;
 
-    public SterolLipidHandler(StructuralSubspeciesFasHandler ssfh) {
+    public SterolLipidHandler(StructuralSubspeciesFasHandler ssfh, LipidFactory lipidFactory) {
         this.ssfh = ssfh;
+        this.lipidFactory = lipidFactory;
     }
 
     @Override
@@ -55,7 +57,7 @@ class SterolLipidHandler implements ParserRuleContextHandler<Lipid_pureContext,
 
     private LipidSpecies handleSt(Lipid_pureContext ctx) {
         if (ctx.sterol() != null && ctx.sterol().chc().ch() != null) {
-            return new LipidIsomericSubspecies(new HeadGroup(ctx.sterol().chc().ch().getText()));
+            return lipidFactory.isomericSubspecies(new HeadGroup(ctx.sterol().chc().ch().getText()));
         } else {
             throw new ParseTreeVisitorException("Unhandled context state in Sterol!");
         }
@@ -15,16 +15,16 @@
  */
 package de.isas.lipidomics.palinom.swisslipids;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidIsomericSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
-import de.isas.lipidomics.domain.LipidStructuralSubspecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.FattyAcidType;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.ModificationsList;
-import de.isas.lipidomics.palinom.HandlerUtils;
 import static de.isas.lipidomics.palinom.HandlerUtils.asInt;
+import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.SwissLipidsParser;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedHashMap;
@@ -44,9 +44,11 @@ import lombok.extern.slf4j.Slf4j;
 class IsomericSubspeciesFasHandler {
 
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public IsomericSubspeciesFasHandler(FattyAcylHelper faHelper) {
+    public IsomericSubspeciesFasHandler(FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitIsomericSubspeciesFas(HeadGroup headGroup, List<SwissLipidsParser.FaContext> faContexts) {
@@ -64,11 +66,11 @@ class IsomericSubspeciesFasHandler {
             fas.stream().map((t) -> {
                 return (FattyAcid) t;
             }).collect(Collectors.toList()).toArray(arrs);
-            return Optional.of(new LipidIsomericSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.isomericSubspecies(headGroup, arrs));
         } else {
             FattyAcid[] arrs = new FattyAcid[fas.size()];
             fas.toArray(arrs);
-            return Optional.of(new LipidStructuralSubspecies(headGroup, arrs));
+            return Optional.of(lipidFactory.structuralSubspecies(headGroup, arrs));
         }
     }
 
@@ -98,7 +100,7 @@ class IsomericSubspeciesFasHandler {
                     Map<Integer, String> doubleBondPositions = new LinkedHashMap<>();
                     if (ctx.fa_core().db().db_count() != null) {
                         if (nDoubleBonds > 0) {
-                            return FattyAcid.structuralFattyAcidBuilder().
+                            return FattyAcidInterner.DEFAULT.intern(FattyAcid.structuralFattyAcidBuilder().
                                     lipidFaBondType(lfbt).
                                     name(faName).
                                     nCarbon(HandlerUtils.asInt(ctx.fa_core().carbon(), 0)).
@@ -106,14 +108,14 @@ class IsomericSubspeciesFasHandler {
                                     nHydroxy(nHydroxyl).
                                     position(position).
                                     modifications(modifications).
-                                    build();
+                                    build());
                         }
                     }
                     fa.doubleBondPositions(doubleBondPositions);
                 }
             }
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).position(position).modifications(modifications).nHydroxy(nHydroxyl).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).position(position).modifications(modifications).nHydroxy(nHydroxyl).build());
         } else if (ctx.fa_lcb_prefix() != null || ctx.fa_lcb_suffix() != null) { //handling of lcbs
             throw new ParseTreeVisitorException("LCBs are handled by " + IsomericSubspeciesLcbHandler.class.getSimpleName() + "!");
         } else {
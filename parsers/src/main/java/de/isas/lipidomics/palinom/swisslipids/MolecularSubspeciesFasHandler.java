@@ -15,13 +15,14 @@
  */
 package de.isas.lipidomics.palinom.swisslipids;
 
-import de.isas.lipidomics.domain.LipidFaBondType;
-import de.isas.lipidomics.domain.LipidMolecularSubspecies;
-import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.FattyAcidInterner;
 import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidSpecies;
 import de.isas.lipidomics.domain.ModificationsList;
 import de.isas.lipidomics.palinom.HandlerUtils;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.SwissLipidsParser;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
 import java.util.LinkedList;
@@ -38,9 +39,11 @@ import lombok.extern.slf4j.Slf4j;
 class MolecularSubspeciesFasHandler {
 
     private final FattyAcylHelper faHelper;
+    private final LipidFactory lipidFactory;
 
-    public MolecularSubspeciesFasHandler(FattyAcylHelper faHelper) {
+    public MolecularSubspeciesFasHandler(FattyAcylHelper faHelper, LipidFactory lipidFactory) {
         this.faHelper = faHelper;
+        this.lipidFactory = lipidFactory;
     }
 
     public Optional<LipidSpecies> visitMolecularSubspeciesFas(HeadGroup headGroup, List<SwissLipidsParser.FaContext> faContexts) {
@@ -51,7 +54,7 @@ class MolecularSubspeciesFasHandler {
         }
         FattyAcid[] arrs = new FattyAcid[fas.size()];
         fas.toArray(arrs);
-        return Optional.of(new LipidMolecularSubspecies(headGroup, arrs));
+        return Optional.of(lipidFactory.molecularSubspecies(headGroup, arrs));
     }
 
     public FattyAcid buildMolecularFa(HeadGroup headGroup, SwissLipidsParser.FaContext ctx, String faName) {
@@ -76,7 +79,7 @@ class MolecularSubspeciesFasHandler {
             }
             fa.nHydroxy(nHydroxyl);
             fa.lipidFaBondType(lfbt);
-            return fa.name(faName).modifications(modifications).build();
+            return FattyAcidInterner.DEFAULT.intern(fa.name(faName).modifications(modifications).build());
         } else if (ctx.fa_lcb_prefix() != null || ctx.fa_lcb_suffix() != null) { //handling of lcbs
             throw new RuntimeException("Support for lcbs is implemented in " + StructuralSubspeciesLcbHandler.class.getSimpleName() + "!");
         } else {
@@ -20,6 +20,7 @@ import de.isas.lipidomics.domain.Fragment;
 import de.isas.lipidomics.domain.LipidAdduct;
 import de.isas.lipidomics.domain.LipidCategory;
 import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.SwissLipidsBaseVisitor;
 import de.isas.lipidomics.palinom.SwissLipidsParser;
 import de.isas.lipidomics.palinom.exceptions.ParseTreeVisitorException;
@@ -39,6 +40,25 @@ import java.util.Optional;
  */
 public class SwissLipidsVisitorImpl extends SwissLipidsBaseVisitor<LipidAdduct> {
 
+    private final LipidFactory lipidFactory;
+
+    /**
+     * Creates a visitor that builds lipids on the level reported by the
+     * lipid name.
+     */
+    public SwissLipidsVisitorImpl() {
+        this(LipidFactory.FULL);
+    }
+
+    /**
+     * Creates a visitor that builds lipids with the provided factory.
+     *
+     * @param lipidFactory the lipid factory.
+     */
+    public SwissLipidsVisitorImpl(LipidFactory lipidFactory) {
+        this.lipidFactory = lipidFactory;
+    }
+
     /**
      * Produces a LipidAdduct given the LipidContext.
      * @throws ParseTreeVisitorException for structural or state-related issues
@@ -52,13 +72,19 @@ public class SwissLipidsVisitorImpl extends SwissLipidsBaseVisitor<LipidAdduct>
         Optional<SwissLipidsParser.Lipid_pureContext> categoryContext = Optional.ofNullable(ctx.lipid_pure());
 
         LipidAdduct la = new LipidAdduct(categoryContext.map((cc) -> {
-            return new LipidVisitor().visitLipid_pure(cc);
+            return new LipidVisitor(lipidFactory).visitLipid_pure(cc);
         }).orElse(LipidSpecies.NONE), Adduct.NONE, new Fragment(""));
         return la;
     }
 
     private static class LipidVisitor extends SwissLipidsBaseVisitor<LipidSpecies> {
 
+        private final LipidFactory lipidFactory;
+
+        LipidVisitor(LipidFactory lipidFactory) {
+            this.lipidFactory = lipidFactory;
+        }
+
         @Override
         public LipidSpecies visitLipid_pure(SwissLipidsParser.Lipid_pureContext ctx) {
             LipidSpecies lipid = null;
@@ -69,11 +95,11 @@ public class SwissLipidsVisitorImpl extends SwissLipidsBaseVisitor<LipidAdduct>
             bs.set(LipidCategory.GP.ordinal(), ctx.pl() != null);
             bs.set(LipidCategory.SP.ordinal(), ctx.sl() != null);
             final FattyAcylHelper faHelper = new FattyAcylHelper();
-            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper);
-            final IsomericSubspeciesFasHandler isfh = new IsomericSubspeciesFasHandler(faHelper);
-            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper);
-            final IsomericSubspeciesLcbHandler islh = new IsomericSubspeciesLcbHandler(isfh, faHelper);
-            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, faHelper);
+            final MolecularSubspeciesFasHandler msfh = new MolecularSubspeciesFasHandler(faHelper, lipidFactory);
+            final IsomericSubspeciesFasHandler isfh = new IsomericSubspeciesFasHandler(faHelper, lipidFactory);
+            final StructuralSubspeciesFasHandler ssfh = new StructuralSubspeciesFasHandler(isfh, faHelper, lipidFactory);
+            final IsomericSubspeciesLcbHandler islh = new IsomericSubspeciesLcbHandler(isfh, faHelper, lipidFactory);
+            final StructuralSubspeciesLcbHandler sslh = new StructuralSubspeciesLcbHandler(ssfh, islh, faHelper, lipidFactory);
             final FattyAcylHandler faHandler = new FattyAcylHandler(ssfh, sslh);
             LipidCategory contextCategory = LipidCategory.UNDEFINED;
             switch (bs.cardinality()) {
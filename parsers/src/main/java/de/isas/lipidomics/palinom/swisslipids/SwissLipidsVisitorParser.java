@@ -3,12 +3,13 @@
  */
 package de.isas.lipidomics.palinom.swisslipids;
 
-import de.isas.lipidomics.palinom.exceptions.ParsingException;
 import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.LipidFactory;
 import de.isas.lipidomics.palinom.SwissLipidsLexer;
 import de.isas.lipidomics.palinom.SwissLipidsParser;
 import de.isas.lipidomics.palinom.SyntaxErrorListener;
 import de.isas.lipidomics.palinom.VisitorParser;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
 import lombok.extern.slf4j.Slf4j;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
@@ -25,6 +26,29 @@ import org.antlr.v4.runtime.misc.ParseCancellationException;
 @Slf4j
 public class SwissLipidsVisitorParser implements VisitorParser<LipidAdduct> {
 
+    private final LipidFactory lipidFactory;
+
+    /**
+     * Creates a parser that returns lipids on the level reported by the
+     * lipid name.
+     */
+    public SwissLipidsVisitorParser() {
+        this(LipidFactory.FULL);
+    }
+
+    /**
+     * Creates a parser that returns lipids created by the provided factory.
+     * Use {@link LipidFactory#SPECIES} to skip building the subspecies and to
+     * return species level lipids directly, or
+     * {@link LipidFactory#forLevel(de.isas.lipidomics.domain.LipidLevel)} to
+     * collapse lipids to a target level.
+     *
+     * @param lipidFactory the lipid factory.
+     */
+    public SwissLipidsVisitorParser(LipidFactory lipidFactory) {
+        this.lipidFactory = lipidFactory;
+    }
+
     @Override
     public LipidAdduct parse(String lipidString, SyntaxErrorListener listener) throws ParsingException {
         return parseWithSwissLipidsGrammar(lipidString, listener);
@@ -42,7 +66,7 @@ public class SwissLipidsVisitorParser implements VisitorParser<LipidAdduct> {
             if (parser.getNumberOfSyntaxErrors() > 0) {
                 throw new ParsingException("Parsing of " + lipidString + " failed with " + parser.getNumberOfSyntaxErrors() + " syntax errors!\n" + listener.getErrorString());
             }
-            SwissLipidsVisitorImpl lipidVisitor = new SwissLipidsVisitorImpl();
+            SwissLipidsVisitorImpl lipidVisitor = new SwissLipidsVisitorImpl(lipidFactory);
             return lipidVisitor.visit(context);
         } catch (ParseCancellationException pce) {
             throw new ParsingException("Parsing of " + lipidString + " failed with " + parser.getNumberOfSyntaxErrors() + " syntax errors!\n" + listener.getErrorString());
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.aggregation;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LevelAggregatorTest {
+
+    private List<LipidAdduct> parse(String... names) throws ParsingException {
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        List<LipidAdduct> lipids = new ArrayList<>();
+        for (String name : names) {
+            lipids.add(parser.parse(name));
+        }
+        return lipids;
+    }
+
+    @Test
+    public void testRollUp() throws ParsingException {
+        List<LipidAdduct> lipids = parse("PC 16:0/18:1", "PC 18:1/16:0", "PC 16:0-18:1", "PC 34:1", "PE 18:0-18:1", "TAG 16:0-18:1-18:2");
+        double[][] values = new double[][]{
+            {1, Double.NaN},
+            {2, Double.NaN},
+            {4, 1},
+            {8, 2},
+            {16, 4},
+            {32, 8}
+        };
+        LevelAggregator.Aggregation molecular = new LevelAggregator(LipidLevel.MOLECULAR_SUBSPECIES, false).aggregate(lipids, values);
+        assertEquals(3, molecular.size());
+        assertArrayEquals(new int[]{3}, molecular.getUnassignedRows());
+        assertEquals(-1, molecular.getGroup(3));
+        int pc = molecular.getGroup(0);
+        assertEquals(pc, molecular.getGroup(1));
+        assertEquals(pc, molecular.getGroup(2));
+        assertEquals(3, molecular.getCount(pc));
+        assertArrayEquals(new int[]{0, 1, 2}, molecular.getRows(pc));
+        assertArrayEquals(new double[]{7, 1}, molecular.getValues(pc));
+        assertEquals("PC 16:0-18:1", molecular.getName(pc));
+
+        LevelAggregator.Aggregation species = new LevelAggregator(LipidLevel.SPECIES, false).aggregate(lipids, values);
+        assertEquals(3, species.size());
+        assertEquals(0, species.getUnassignedRows().length);
+        assertArrayEquals(new double[]{15, 3}, species.getValues(species.getGroup(0)));
+        assertEquals("PC 34:1", species.getName(species.getGroup(3)));
+
+        LevelAggregator.Aggregation category = new LevelAggregator(LipidLevel.CATEGORY, false).aggregate(lipids, values);
+        assertEquals(2, category.size());
+        assertArrayEquals(new double[]{31, 7}, category.getValues(category.getGroup(4)));
+        assertEquals(5, category.getCount(category.getGroup(0)));
+        assertEquals("GL", category.getName(category.getGroup(5)));
+        for (int group = 1; group < category.size(); group++) {
+            assertTrue(category.getKey(group - 1).compareTo(category.getKey(group)) < 0);
+        }
+    }
+
+    @Test
+    public void testAdducts() throws ParsingException {
+        List<LipidAdduct> lipids = parse("PC 34:1[M+H]1+", "PC 34:1[M+Na]1+", "PC 16:0-18:1[M+H]1+");
+        double[][] values = new double[][]{{1}, {2}, {4}};
+        LevelAggregator.Aggregation separate = new LevelAggregator(LipidLevel.SPECIES, false).aggregate(lipids, values);
+        assertEquals(2, separate.size());
+        assertArrayEquals(new double[]{5}, separate.getValues(separate.getGroup(0)));
+        LevelAggregator.Aggregation combined = new LevelAggregator(LipidLevel.SPECIES, true).aggregate(lipids, values);
+        assertEquals(1, combined.size());
+        assertArrayEquals(new double[]{7}, combined.getValues(0));
+        assertEquals("PC 34:1", combined.getName(0));
+    }
+
+    @Test
+    public void testInvalidInput() throws ParsingException {
+        List<LipidAdduct> lipids = parse("PC 34:1", "PE 34:1");
+        assertThrows(ConstraintViolationException.class, () -> {
+            new LevelAggregator(LipidLevel.SPECIES, false).aggregate(lipids, new double[][]{{1}});
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            new LevelAggregator(LipidLevel.SPECIES, false).aggregate(lipids, new double[][]{{1}, {1, 2}});
+        });
+        LevelAggregator.Aggregation empty = new LevelAggregator(LipidLevel.SPECIES, false).aggregate(Arrays.asList(), new double[0][]);
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    public void testLargeMatrix() throws ParsingException {
+        int columns = 1000;
+        int rows = 5000;
+        List<LipidAdduct> lipids = new ArrayList<>();
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        double[][] values = new double[rows][columns];
+        for (int row = 0; row < rows; row++) {
+            lipids.add(parser.parse("PC " + (12 + row % 15) + ":" + (row % 7) + "-" + (12 + (row / 15) % 15) + ":0"));
+            Arrays.fill(values[row], 1.0);
+        }
+        LevelAggregator.Aggregation species = new LevelAggregator(LipidLevel.SPECIES, false).aggregate(lipids, values);
+        double total = 0;
+        int count = 0;
+        for (int group = 0; group < species.size(); group++) {
+            total += species.getValues(group)[columns - 1];
+            count += species.getCount(group);
+        }
+        assertEquals(rows, count);
+        assertEquals(rows, total, 1e-9);
+    }
+}
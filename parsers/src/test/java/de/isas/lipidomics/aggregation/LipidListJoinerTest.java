@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.aggregation;
+
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LipidListJoinerTest {
+
+    @Test
+    public void testJoinAcrossDialects() {
+        List<String> left = Arrays.asList("PC(16:0/18:1(9Z))", "PE(18:0/20:4(5Z,8Z,11Z,14Z))", "PC(18:0/18:1(9Z))", "PS(16:0/18:1(9Z))", "no lipid");
+        List<String> right = Arrays.asList("PC 16:0/18:1", "PE 18:0-20:4", "PC 36:1", "TAG 16:0/18:1/18:2", "PC 34:1", "no lipid either");
+        LipidListJoiner joiner = new LipidListJoiner(LipidLevel.STRUCTURAL_SUBSPECIES, LipidLevel.SPECIES, true);
+        LipidListJoiner.Join join = joiner.join(left, Arrays.asList(LipidListJoiner.Dialect.LIPIDMAPS),
+                right, Arrays.asList(LipidListJoiner.Dialect.GOSLIN));
+        assertEquals(3, join.size());
+        assertEquals(0, join.getLeftRow(0));
+        assertEquals(0, join.getRightRow(0));
+        assertTrue(join.isExact(0));
+        assertEquals(LipidLevel.STRUCTURAL_SUBSPECIES, join.getLevel(0));
+        assertEquals(1, join.getLeftRow(1));
+        assertEquals(1, join.getRightRow(1));
+        assertFalse(join.isExact(1));
+        assertEquals(LipidLevel.MOLECULAR_SUBSPECIES, join.getLevel(1));
+        assertEquals(2, join.getLeftRow(2));
+        assertEquals(2, join.getRightRow(2));
+        assertEquals(LipidLevel.SPECIES, join.getLevel(2));
+        assertArrayEquals(new int[]{3}, join.getUnmatchedLeftRows());
+        assertArrayEquals(new int[]{3, 4}, join.getUnmatchedRightRows());
+        assertArrayEquals(new int[]{4}, join.getUnparseableLeftRows());
+        assertArrayEquals(new int[]{5}, join.getUnparseableRightRows());
+    }
+
+    @Test
+    public void testOneToManyAndFallbackDialects() {
+        List<String> left = Arrays.asList("PC 34:1", "PE 34:1[M+H]1+");
+        List<String> right = Arrays.asList("PC(16:0/18:1(9Z))", "PC 18:1-16:0", "PE 34:1[M+Na]1+", "PE 34:1[M+H]1+");
+        LipidListJoiner joiner = new LipidListJoiner(LipidLevel.SPECIES, LipidLevel.SPECIES, false);
+        LipidListJoiner.Join join = joiner.join(left, Arrays.asList(LipidListJoiner.Dialect.GOSLIN),
+                right, Arrays.asList(LipidListJoiner.Dialect.GOSLIN, LipidListJoiner.Dialect.LIPIDMAPS));
+        assertEquals(3, join.size());
+        assertArrayEquals(new int[]{0, 0, 1}, new int[]{join.getLeftRow(0), join.getLeftRow(1), join.getLeftRow(2)});
+        assertArrayEquals(new int[]{0, 1, 3}, new int[]{join.getRightRow(0), join.getRightRow(1), join.getRightRow(2)});
+        assertArrayEquals(new int[]{2}, join.getUnmatchedRightRows());
+        assertEquals(0, join.getUnparseableRightRows().length);
+
+        assertThrows(ConstraintViolationException.class, () -> {
+            new LipidListJoiner(LipidLevel.SPECIES, LipidLevel.MOLECULAR_SUBSPECIES, false);
+        });
+    }
+
+    @Test
+    public void testFallbackOnUnsupportedNames() {
+        // HMDB does not support the [rac] suffix and LIPIDMAPS rejects molecular lyso fatty acyls, both throw a ParseTreeVisitorException
+        List<String> left = Arrays.asList("PC(16:0/0:0)[rac]", "LPS(O-17:0_0:0)");
+        List<String> right = Arrays.asList("LPS(O-17:0_0:0)", "PC(16:0/0:0)[rac]");
+        LipidListJoiner joiner = new LipidListJoiner(LipidLevel.SPECIES, LipidLevel.SPECIES, true);
+        LipidListJoiner.Join join = joiner.join(left, Arrays.asList(LipidListJoiner.Dialect.HMDB, LipidListJoiner.Dialect.LIPIDMAPS),
+                right, Arrays.asList(LipidListJoiner.Dialect.LIPIDMAPS, LipidListJoiner.Dialect.SWISSLIPIDS));
+        assertEquals(2, join.size());
+        assertArrayEquals(new int[]{0, 1}, new int[]{join.getLeftRow(0), join.getLeftRow(1)});
+        assertArrayEquals(new int[]{1, 0}, new int[]{join.getRightRow(0), join.getRightRow(1)});
+        assertEquals(0, join.getUnparseableLeftRows().length);
+        assertEquals(0, join.getUnparseableRightRows().length);
+
+        LipidListJoiner.Join unparseable = joiner.join(left, Arrays.asList(LipidListJoiner.Dialect.HMDB),
+                right, Arrays.asList(LipidListJoiner.Dialect.LIPIDMAPS));
+        assertEquals(0, unparseable.size());
+        assertArrayEquals(new int[]{0}, unparseable.getUnparseableLeftRows());
+        assertArrayEquals(new int[]{0}, unparseable.getUnparseableRightRows());
+    }
+
+    @Test
+    public void testLargeJoin() {
+        List<String> left = new ArrayList<>();
+        List<String> right = new ArrayList<>();
+        for (int c1 = 12; c1 <= 26; c1++) {
+            for (int c2 = 12; c2 <= 26; c2++) {
+                for (int db = 0; db <= 6; db++) {
+                    left.add("PC(" + c1 + ":0/" + c2 + ":" + db + ")");
+                    right.add("PC " + c2 + ":" + db + "-" + c1 + ":0");
+                }
+            }
+        }
+        LipidListJoiner.Join join = new LipidListJoiner(LipidLevel.MOLECULAR_SUBSPECIES, LipidLevel.SPECIES, true).join(
+                left, Arrays.asList(LipidListJoiner.Dialect.LIPIDMAPS), right, Arrays.asList(LipidListJoiner.Dialect.GOSLIN));
+        assertEquals(0, join.getUnmatchedLeftRows().length);
+        assertEquals(0, join.getUnmatchedRightRows().length);
+        for (int i = 0; i < join.size(); i++) {
+            assertTrue(join.isExact(i));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.concurrent;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class OrderedParallelExecutorTest {
+
+    private static final int PENDING_PER_THREAD = 3;
+
+    private static List<Integer> process(int threads, List<Integer> inputs) throws IOException {
+        AtomicInteger submitted = new AtomicInteger();
+        Iterator<Integer> iterator = inputs.iterator();
+        Iterator<Integer> counting = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                submitted.incrementAndGet();
+                return iterator.next();
+            }
+        };
+        List<Integer> results = new ArrayList<>();
+        new OrderedParallelExecutor(threads, PENDING_PER_THREAD, "jgoslin-test").process(counting, (input) -> {
+            // later inputs finish first, so results arrive out of order
+            LockSupport.parkNanos((inputs.size() - input) % 7 * 100_000L);
+            return input * 2;
+        }, (result) -> {
+            assertTrue(submitted.get() - results.size() <= threads * PENDING_PER_THREAD, "Too many pending results: " + (submitted.get() - results.size()));
+            results.add(result);
+        });
+        return results;
+    }
+
+    @Test
+    public void testResultsKeepInputOrder() throws IOException {
+        List<Integer> inputs = IntStream.range(0, 500).boxed().collect(Collectors.toList());
+        List<Integer> expected = inputs.stream().map((input) -> input * 2).collect(Collectors.toList());
+        assertEquals(expected, process(1, inputs));
+        assertEquals(expected, process(4, inputs));
+        assertEquals(expected.subList(0, 5), process(4, inputs.subList(0, 5)));
+        assertEquals(new ArrayList<>(), process(4, new ArrayList<>()));
+    }
+
+    @Test
+    public void testTaskExceptionsAreRethrown() {
+        OrderedParallelExecutor executor = new OrderedParallelExecutor(4, PENDING_PER_THREAD, "jgoslin-test");
+        List<Integer> inputs = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        ConstraintViolationException ex = assertThrows(ConstraintViolationException.class, () -> {
+            executor.process(inputs.iterator(), (input) -> {
+                if (input == 42) {
+                    throw new ConstraintViolationException("Input " + input);
+                }
+                return input;
+            }, (result) -> {
+            });
+        });
+        assertEquals("Input 42", ex.getMessage());
+        assertThrows(IOException.class, () -> {
+            executor.process(inputs.iterator(), (input) -> input, (result) -> {
+                throw new IOException("Consumer failed");
+            });
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            new OrderedParallelExecutor(0, PENDING_PER_THREAD, "jgoslin-test");
+        });
+    }
+}
@@ -50,4 +50,16 @@ public class AdductTest {
         assertEquals(Element.ELEMENT_N.getMass() + (4 * (Element.ELEMENT_H.getMass())), a.getElements().getMass());
     }
 
+    @Test
+    public void testMultipliedAdduct() {
+        Adduct a = new Adduct("", "+2H", 2, 1);
+        assertEquals(2, a.getCharge());
+        assertEquals("[M+2H]2+", a.getLipidString());
+        assertEquals(2, a.getElements().get(Element.ELEMENT_H));
+        assertEquals(2 * Element.ELEMENT_H.getMass(), a.getElements().getMass());
+        Adduct b = new Adduct("", "-2H", 2, -1);
+        assertEquals(-2, b.getElements().get(Element.ELEMENT_H));
+        assertEquals(-2 * Element.ELEMENT_H.getMass(), b.getElements().getMass());
+    }
+
 }
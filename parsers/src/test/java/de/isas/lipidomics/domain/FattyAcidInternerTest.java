@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class FattyAcidInternerTest {
+
+    @Test
+    public void testIntern() {
+        FattyAcidInterner interner = new FattyAcidInterner();
+        FattyAcid fa1 = new FattyAcid("FA1", 1, 16, 0, 0, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        FattyAcid fa2 = new FattyAcid("FA1", 1, 16, 0, 0, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        assertNotSame(fa1, fa2);
+        FattyAcid canonical = interner.intern(fa1);
+        assertSame(fa1, canonical);
+        assertSame(canonical, interner.intern(fa2));
+        assertSame(canonical, interner.intern(canonical));
+        assertNull(interner.intern(null));
+        assertEquals(1, interner.size());
+        interner.clear();
+        assertEquals(0, interner.size());
+        assertSame(fa2, interner.intern(fa2));
+    }
+
+    @Test
+    public void testInternSpeciesInfo() {
+        FattyAcidInterner interner = new FattyAcidInterner();
+        LipidSpeciesInfo info1 = new LipidSpeciesInfo(LipidLevel.SPECIES, 34, 0, 1, LipidFaBondType.ESTER);
+        LipidSpeciesInfo info2 = new LipidSpeciesInfo(LipidLevel.SPECIES, 34, 0, 1, LipidFaBondType.ESTER);
+        assertSame(interner.intern(info1), interner.intern(info2));
+        assertSame(LipidSpeciesInfo.NONE, interner.intern(LipidSpeciesInfo.NONE));
+    }
+
+    @Test
+    public void testPoolsAreIsolated() {
+        FattyAcidInterner interner1 = new FattyAcidInterner();
+        FattyAcidInterner interner2 = new FattyAcidInterner();
+        FattyAcid fa1 = new FattyAcid("FA1", 18, 0, 1, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        FattyAcid fa2 = new FattyAcid("FA1", 18, 0, 1, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        assertSame(fa1, interner1.intern(fa1));
+        assertSame(fa2, interner2.intern(fa2));
+        assertSame(fa1, interner1.intern(fa2));
+        assertSame(fa2, FattyAcidInterner.NONE.intern(fa2));
+        assertSame(fa1, FattyAcidInterner.NONE.intern(fa1));
+        assertEquals(0, FattyAcidInterner.NONE.size());
+    }
+
+    @Test
+    public void testParsedFattyAcidsAreShared() throws ParsingException {
+        // the pool keeps an instance canonical while the first lipid refers to it
+        LipidAdduct pc = new GoslinVisitorParser().parse("PC 16:0/18:1");
+        LipidAdduct pe = new GoslinVisitorParser().parse("PE 16:0/18:1");
+        assertEquals(pc.getLipid().getFa().get("FA1"), pe.getLipid().getFa().get("FA1"));
+        assertSame(pc.getLipid().getFa().get("FA1"), pe.getLipid().getFa().get("FA1"));
+        assertSame(pc.getLipid().getFa().get("FA2"), pe.getLipid().getFa().get("FA2"));
+
+        LipidAdduct pc1 = new SwissLipidsVisitorParser().parse("PC(16:0/18:1(9Z))");
+        LipidAdduct pc2 = new SwissLipidsVisitorParser().parse("PC(16:0/18:1(9Z))");
+        assertNotSame(pc1.getLipid(), pc2.getLipid());
+        assertSame(pc1.getLipid().getFa().get("FA2"), pc2.getLipid().getFa().get("FA2"));
+        assertSame(pc1.getLipid().getInfo(), pc2.getLipid().getInfo());
+    }
+}
@@ -245,4 +245,26 @@ public class FattyAcidTest {
         });
     }
 
+    @Test
+    public void testImmutableCollections() {
+        Map<Integer, String> doubleBondPositions = new LinkedHashMap<>();
+        doubleBondPositions.put(9, "Z");
+        ModificationsList ml = new ModificationsList();
+        ml.add(Pair.of(2, "OH"));
+        FattyAcid fa = new FattyAcid("FA1", 1, 18, 1, LipidFaBondType.ESTER, false, ml, 1, doubleBondPositions);
+        doubleBondPositions.put(12, "Z");
+        ml.add(Pair.of(3, "OH"));
+        assertEquals(1, fa.getDoubleBondPositions().size());
+        assertEquals(1, fa.getModifications().size());
+        assertThrows(UnsupportedOperationException.class, () -> {
+            fa.getDoubleBondPositions().put(15, "Z");
+        });
+        assertThrows(UnsupportedOperationException.class, () -> {
+            fa.getModifications().add(Pair.of(4, "OH"));
+        });
+        FattyAcid other = new FattyAcid("FA1", 1, 18, 1, LipidFaBondType.ESTER, false, fa.getModifications(), 1, fa.getDoubleBondPositions());
+        assertEquals(fa, other);
+        assertEquals(fa.hashCode(), other.hashCode());
+    }
+
 }
@@ -21,9 +21,14 @@ import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
 import de.isas.lipidomics.palinom.lipidmaps.LipidMapsVisitorParser;
 import de.isas.lipidomics.palinom.sumformula.SumFormulaVisitorParser;
 import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.io.IOException;
+import java.io.StringWriter;
 import org.junit.jupiter.api.Assertions;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -214,4 +219,62 @@ public class LipidAdductTest {
             LipidAdduct lipidAdduct = new LipidMapsVisitorParser().parse(ref);
         });
     }
+
+    @Test
+    public void testWithCopies() throws ParsingException {
+        LipidAdduct la = new GoslinVisitorParser().parse("PC 16:0/18:1[M+H]1+");
+        int hashCode = la.hashCode();
+        LipidAdduct other = new GoslinVisitorParser().parse("PC 16:0/18:1[M+H]1+");
+        assertEquals(la, other);
+        assertEquals(hashCode, other.hashCode());
+        LipidAdduct withoutAdduct = la.withAdduct(Adduct.NONE);
+        assertNotSame(la, withoutAdduct);
+        assertEquals("PC 16:0/18:1[M+H]1+", la.getLipidString());
+        assertEquals("PC 16:0/18:1", withoutAdduct.getLipidString());
+        assertSame(la.getLipid(), withoutAdduct.getLipid());
+        assertNotEquals(la, withoutAdduct);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> {
+            la.getLipid().getFa().clear();
+        });
+        assertEquals(hashCode, la.hashCode());
+    }
+
+    @Test
+    public void testLipidFragmentStringWritesAdductOnce() throws ParsingException {
+        LipidAdduct la = new GoslinVisitorParser().parse("PE 16:0-18:1[M+H]1+").withFragment(new Fragment("-(H2O)"));
+        assertEquals("PE 16:0-18:1[M+H]1+ - -(H2O)", la.getLipidFragmentString(LipidLevel.MOLECULAR_SUBSPECIES));
+        assertEquals("PE 34:1[M+H]1+ - -(H2O)", la.getNormalizedLipidFragmentString(LipidLevel.SPECIES));
+        assertEquals("PE 16:0-18:1[M+H]1+ - -(H2O)", la.toString());
+    }
+
+    @Test
+    public void testAppendLipidString() throws ParsingException, IOException {
+        LipidAdduct la = new GoslinVisitorParser().parse("TAG 16:0-18:1-18:2[M+H]1+");
+        LipidAdduct withFragment = la.withFragment(new Fragment("-FA 16:0"));
+        StringWriter writer = new StringWriter();
+        for (LipidLevel level : new LipidLevel[]{LipidLevel.CATEGORY, LipidLevel.CLASS, LipidLevel.SPECIES, LipidLevel.MOLECULAR_SUBSPECIES}) {
+            writer.getBuffer().setLength(0);
+            assertEquals(la.getLipidString(level), la.appendLipidString(writer, level).toString());
+            writer.getBuffer().setLength(0);
+            assertEquals(la.getNormalizedLipidString(level), la.appendNormalizedLipidString(writer, level).toString());
+            writer.getBuffer().setLength(0);
+            assertEquals(withFragment.getLipidFragmentString(level), withFragment.appendLipidFragmentString(writer, level).toString());
+        }
+        assertEquals("TAG 16:0-18:1-18:2[M+H]1+", la.getLipidString());
+        assertEquals("TAG 52:3[M+H]1+", la.getNormalizedLipidString(LipidLevel.SPECIES));
+        assertEquals("TAG 16:0-18:1-18:2[M+H]1+ - -FA 16:0", withFragment.getLipidFragmentString(LipidLevel.MOLECULAR_SUBSPECIES));
+        StringBuilder sb = new StringBuilder("name: ");
+        la.getLipid().appendLipidString(sb, LipidLevel.SPECIES, false);
+        assertEquals("name: TAG 52:3", sb.toString());
+    }
+
+    @Test
+    public void testMultiplyChargedAdductMass() throws ParsingException {
+        LipidAdduct singly = new GoslinVisitorParser().parse("PC 34:1[M+H]1+");
+        LipidAdduct doubly = new GoslinVisitorParser().parse("PC 34:1[M+2H]2+");
+        assertEquals(760.5851, singly.getMass(), 1e-4);
+        assertEquals(380.7962, doubly.getMass(), 1e-4);
+        assertEquals("C42H84NO8P", doubly.getSumFormula());
+        assertEquals(378.7816, new GoslinVisitorParser().parse("PC 34:1[M-2H]2-").getMass(), 1e-4);
+    }
 }
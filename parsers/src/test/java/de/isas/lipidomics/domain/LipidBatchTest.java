@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.util.BitSet;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LipidBatchTest {
+
+    private static LipidBatch createBatch(String... lipidNames) throws ParsingException {
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        LipidBatch batch = new LipidBatch(2);
+        for (String lipidName : lipidNames) {
+            batch.add(parser.parse(lipidName));
+        }
+        return batch;
+    }
+
+    @Test
+    public void testAdd() throws ParsingException {
+        LipidBatch batch = createBatch("PC 16:0/18:1", "Cer 18:1;2/16:0", "PE O-34:1", "PC 16:0/18:1");
+        assertEquals(4, batch.size());
+        assertEquals(LipidClass.forHeadGroup("PC"), batch.getLipidClass(0));
+        assertEquals(LipidCategory.GP, batch.getLipidCategory(0));
+        assertEquals(LipidLevel.STRUCTURAL_SUBSPECIES, batch.getLevel(0));
+        assertEquals(34, batch.get(LipidBatch.Column.CARBON, 0));
+        assertEquals(1, batch.get(LipidBatch.Column.DOUBLE_BONDS, 0));
+        assertEquals(2, batch.get(LipidBatch.Column.CHAINS, 0));
+        assertEquals(18, batch.getChainCarbon(0, 1));
+        assertEquals(1, batch.getChainDoubleBonds(0, 1));
+        assertEquals(LipidFaBondType.ESTER, batch.getChainBondType(0, 1));
+        assertEquals("PC 16:0/18:1", batch.getName(0));
+
+        assertTrue(batch.isChainLcb(1, 0));
+        assertFalse(batch.isChainLcb(1, 1));
+        assertEquals(2, batch.getChainHydroxy(1, 0));
+        assertEquals(LipidCategory.SP, batch.getLipidCategory(1));
+
+        assertEquals(LipidLevel.SPECIES, batch.getLevel(2));
+        assertEquals(LipidFaBondType.ETHER_UNSPECIFIED, batch.getLipidFaBondType(2));
+        assertEquals(0, batch.get(LipidBatch.Column.CHAINS, 2));
+
+        assertEquals(3, batch.getDistinctNameCount());
+        assertEquals(batch.get(LipidBatch.Column.NAME, 0), batch.get(LipidBatch.Column.NAME, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            batch.getChainCarbon(2, 0);
+        });
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            batch.get(LipidBatch.Column.CARBON, 4);
+        });
+    }
+
+    @Test
+    public void testAddPrimitiveRow() throws ParsingException {
+        LipidBatch parsed = createBatch("Cer 18:1;2/16:0");
+        LipidBatch batch = new LipidBatch(2);
+        assertThrows(ConstraintViolationException.class, () -> {
+            batch.addChain(16, 0, 0, LipidFaBondType.ESTER, false);
+        });
+        assertEquals(0, batch.add(LipidClass.forHeadGroup("Cer"), LipidCategory.SP, LipidLevel.STRUCTURAL_SUBSPECIES, 34, 1, 2, LipidFaBondType.ESTER, null));
+        batch.addChain(18, 1, 2, LipidFaBondType.ESTER, true);
+        batch.addChain(16, 0, 0, LipidFaBondType.ESTER, false);
+        for (LipidBatch.Column column : LipidBatch.Column.values()) {
+            if (column != LipidBatch.Column.NAME) {
+                assertEquals(parsed.get(column, 0), batch.get(column, 0), column.name());
+            }
+        }
+        for (int chain = 0; chain < 2; chain++) {
+            assertEquals(parsed.getChainCarbon(0, chain), batch.getChainCarbon(0, chain));
+            assertEquals(parsed.getChainDoubleBonds(0, chain), batch.getChainDoubleBonds(0, chain));
+            assertEquals(parsed.getChainHydroxy(0, chain), batch.getChainHydroxy(0, chain));
+            assertEquals(parsed.isChainLcb(0, chain), batch.isChainLcb(0, chain));
+        }
+        assertNull(batch.getName(0));
+        assertEquals(1, batch.add(LipidClass.forHeadGroup("PC"), LipidCategory.GP, LipidLevel.SPECIES, 32, 0, 0, LipidFaBondType.ESTER, "PC 32:0"));
+        assertEquals("PC 32:0", batch.getName(1));
+        assertEquals(0, batch.get(LipidBatch.Column.CHAINS, 1));
+        assertEquals(2, batch.getDistinctNameCount());
+        assertThrows(ConstraintViolationException.class, () -> {
+            batch.add(LipidClass.forHeadGroup("PC"), LipidCategory.GP, LipidLevel.SPECIES, 32, -1, 0, LipidFaBondType.ESTER, null);
+        });
+        for (int i = 0; i < LipidBatch.MAX_CHAINS; i++) {
+            batch.addChain(16, 0, 0, LipidFaBondType.ESTER, false);
+        }
+        assertThrows(ConstraintViolationException.class, () -> {
+            batch.addChain(16, 0, 0, LipidFaBondType.ESTER, false);
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            batch.addChain(16, 0, 0, LipidFaBondType.ESTER, false);
+        });
+        assertEquals(2, batch.size());
+    }
+
+    @Test
+    public void testFilterCountAndGroup() throws ParsingException {
+        LipidBatch batch = createBatch("PC 16:0/18:1", "Cer 18:1;2/16:0", "PE O-34:1", "PC 16:0/18:1", "PC 32:0");
+        BitSet pcs = batch.filter(LipidClass.forHeadGroup("PC"));
+        assertEquals(BitSet.valueOf(new long[]{0b11001}), pcs);
+        BitSet c34 = batch.filter(LipidBatch.Column.CARBON, 34, 34);
+        assertEquals(BitSet.valueOf(new long[]{0b01111}), c34);
+        BitSet unsaturated = batch.filter(LipidBatch.Column.DOUBLE_BONDS, 1, Integer.MAX_VALUE);
+        assertEquals(4, unsaturated.cardinality());
+
+        int[] countsByCategory = batch.countBy(LipidBatch.Column.CATEGORY);
+        assertEquals(LipidCategory.values().length, countsByCategory.length);
+        assertEquals(4, countsByCategory[LipidCategory.GP.ordinal()]);
+        assertEquals(1, countsByCategory[LipidCategory.SP.ordinal()]);
+        int[] countsByCarbon = batch.countBy(LipidBatch.Column.CARBON);
+        assertEquals(35, countsByCarbon.length);
+        assertEquals(4, countsByCarbon[34]);
+
+        int[][] byLevel = batch.groupBy(LipidBatch.Column.LEVEL);
+        assertArrayEquals(new int[]{2, 4}, byLevel[LipidLevel.SPECIES.ordinal()]);
+        assertArrayEquals(new int[]{0, 1, 3}, byLevel[LipidLevel.STRUCTURAL_SUBSPECIES.ordinal()]);
+        assertArrayEquals(new int[0], byLevel[LipidLevel.CATEGORY.ordinal()]);
+    }
+
+    @Test
+    public void testGrowsAndRejectsOutOfRange() throws ParsingException {
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        LipidBatch batch = new LipidBatch(16);
+        LipidAdduct lipid = parser.parse("TAG 16:0-18:1-18:2");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, batch.add(lipid));
+        }
+        assertEquals(1000, batch.countBy(LipidBatch.Column.CHAINS)[3]);
+        assertEquals(1, batch.getDistinctNameCount());
+        FattyAcid longChain = new FattyAcid("FA1", 300, 0, 0, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        LipidAdduct tooLong = new LipidAdduct(new LipidMolecularSubspecies(new HeadGroup("PA"), longChain), Adduct.NONE, Fragment.NONE);
+        assertThrows(ConstraintViolationException.class, () -> {
+            batch.add(tooLong);
+        });
+        assertEquals(1000, batch.size());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import de.isas.lipidomics.palinom.hmdb.HmdbVisitorParser;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LipidFingerprintTest {
+
+    private final GoslinVisitorParser parser = new GoslinVisitorParser();
+
+    private LipidFingerprint fingerprint(String name, LipidLevel level) throws ParsingException {
+        return LipidFingerprint.of(parser.parse(name), level);
+    }
+
+    @Test
+    public void testMolecularChainsAreCanonical() throws ParsingException {
+        LipidFingerprint pc1 = fingerprint("PC 16:0-18:1", LipidLevel.MOLECULAR_SUBSPECIES);
+        LipidFingerprint pc2 = fingerprint("PC 18:1-16:0", LipidLevel.MOLECULAR_SUBSPECIES);
+        assertEquals(pc1, pc2);
+        assertEquals(LipidFingerprint.hash(pc1.getHigh(), pc1.getLow()), LipidFingerprint.hash(pc2.getHigh(), pc2.getLow()));
+        assertFalse(pc1.isHashed());
+        assertEquals(LipidLevel.MOLECULAR_SUBSPECIES, pc1.getLevel());
+        assertEquals(fingerprint("PC 34:1", LipidLevel.SPECIES), fingerprint("PC 16:0-18:1", LipidLevel.SPECIES));
+        assertNotEquals(fingerprint("PE 16:0-18:1", LipidLevel.MOLECULAR_SUBSPECIES), pc1);
+        assertNotEquals(fingerprint("PC O-16:0-18:1", LipidLevel.MOLECULAR_SUBSPECIES), pc1);
+
+        LipidFingerprint sn1 = fingerprint("PC 16:0/18:1", LipidLevel.STRUCTURAL_SUBSPECIES);
+        LipidFingerprint sn2 = fingerprint("PC 18:1/16:0", LipidLevel.STRUCTURAL_SUBSPECIES);
+        assertNotEquals(sn1, sn2);
+        assertEquals(fingerprint("PC 16:0/18:1", LipidLevel.MOLECULAR_SUBSPECIES), fingerprint("PC 18:1/16:0", LipidLevel.MOLECULAR_SUBSPECIES));
+        assertEquals(pc1.getLow(), fingerprint("PC 16:0/18:1", LipidLevel.MOLECULAR_SUBSPECIES).getLow());
+    }
+
+    @Test
+    public void testAdductsAndLevels() throws ParsingException {
+        assertEquals(fingerprint("PC 34:1[M+H]1+", LipidLevel.SPECIES), fingerprint("PC 34:1[M+H]1+", LipidLevel.SPECIES));
+        assertNotEquals(fingerprint("PC 34:1[M+H]1+", LipidLevel.SPECIES), fingerprint("PC 34:1[M+Na]1+", LipidLevel.SPECIES));
+        assertNotEquals(fingerprint("PC 34:1[M+H]1+", LipidLevel.SPECIES), fingerprint("PC 34:1", LipidLevel.SPECIES));
+        assertEquals(fingerprint("PC 34:1", LipidLevel.CLASS), fingerprint("PC 36:2", LipidLevel.CLASS));
+        assertEquals(fingerprint("PC 34:1", LipidLevel.CATEGORY), fingerprint("PE 36:2", LipidLevel.CATEGORY));
+        assertThrows(ConstraintViolationException.class, () -> {
+            fingerprint("PC 34:1", LipidLevel.MOLECULAR_SUBSPECIES);
+        });
+        long[] words = new long[4];
+        LipidFingerprint.fingerprint(parser.parse("Cer 18:1;2/16:0"), LipidLevel.STRUCTURAL_SUBSPECIES, words, 2);
+        assertEquals(fingerprint("Cer 18:1;2/16:0", LipidLevel.STRUCTURAL_SUBSPECIES), new LipidFingerprint(words[2], words[3]));
+    }
+
+    @Test
+    public void testAdductEncoding() throws ParsingException {
+        assertFalse(fingerprint("PC 34:1[M+H]1+", LipidLevel.SPECIES).isHashed());
+        assertFalse(fingerprint("PC 34:1[M+CH3COO]1-", LipidLevel.SPECIES).isHashed());
+        assertNotEquals(fingerprint("PC 34:1[M+2H]2+", LipidLevel.SPECIES), fingerprint("PC 34:1[M+H]1+", LipidLevel.SPECIES));
+        // adducts outside of the dictionary are hashed, but still distinguished by name
+        LipidFingerprint xy = fingerprint("PC 34:1[M+XY]1+", LipidLevel.SPECIES);
+        assertTrue(xy.isHashed());
+        assertEquals(xy, fingerprint("PC 34:1[M+XY]1+", LipidLevel.SPECIES));
+        assertNotEquals(xy, fingerprint("PC 34:1[M+YX]1+", LipidLevel.SPECIES));
+        assertNotEquals(xy, fingerprint("PC 34:1[M+XY]2+", LipidLevel.SPECIES));
+        assertNotEquals(xy, fingerprint("PC 34:1", LipidLevel.SPECIES));
+    }
+
+    @Test
+    public void testUndefinedClassesAreHashed() throws ParsingException {
+        HmdbVisitorParser hmdb = new HmdbVisitorParser();
+        LipidAdduct gm1 = hmdb.parse("Ganglioside GM1 (d18:1/16:0)");
+        LipidAdduct gm3 = hmdb.parse("Ganglioside GM3 (d18:1/16:0)");
+        assertEquals(LipidClass.UNDEFINED, gm1.getLipid().getLipidClass());
+        assertEquals(LipidClass.UNDEFINED, gm3.getLipid().getLipidClass());
+        for (LipidLevel level : new LipidLevel[]{LipidLevel.CLASS, LipidLevel.SPECIES, LipidLevel.STRUCTURAL_SUBSPECIES}) {
+            LipidFingerprint gm1Fingerprint = LipidFingerprint.of(gm1, level);
+            assertTrue(gm1Fingerprint.isHashed(), level.name());
+            assertNotEquals(gm1Fingerprint, LipidFingerprint.of(gm3, level), level.name());
+            assertEquals(gm1Fingerprint, LipidFingerprint.of(hmdb.parse("Ganglioside GM1 (d18:1/16:0)"), level), level.name());
+        }
+        assertNotEquals(LipidFingerprint.of(gm1, LipidLevel.SPECIES), LipidFingerprint.of(hmdb.parse("Ganglioside GM1 (d18:1/18:0)"), LipidLevel.SPECIES));
+        assertEquals(LipidFingerprint.of(gm1, LipidLevel.CATEGORY), LipidFingerprint.of(gm3, LipidLevel.CATEGORY));
+    }
+
+    @Test
+    public void testIsomericFingerprintsAreHashed() throws ParsingException {
+        SwissLipidsVisitorParser swissLipids = new SwissLipidsVisitorParser();
+        LipidFingerprint z = LipidFingerprint.of(swissLipids.parse("PC(16:0/18:1(9Z))"), LipidLevel.ISOMERIC_SUBSPECIES);
+        LipidFingerprint e = LipidFingerprint.of(swissLipids.parse("PC(16:0/18:1(9E))"), LipidLevel.ISOMERIC_SUBSPECIES);
+        LipidFingerprint z11 = LipidFingerprint.of(swissLipids.parse("PC(16:0/18:1(11Z))"), LipidLevel.ISOMERIC_SUBSPECIES);
+        assertTrue(z.isHashed());
+        assertEquals(z, LipidFingerprint.of(swissLipids.parse("PC(16:0/18:1(9Z))"), LipidLevel.ISOMERIC_SUBSPECIES));
+        assertNotEquals(z, e);
+        assertNotEquals(z, z11);
+        LipidFingerprint structural = LipidFingerprint.of(swissLipids.parse("PC(16:0/18:1(9Z))"), LipidLevel.STRUCTURAL_SUBSPECIES);
+        assertFalse(structural.isHashed());
+        assertEquals(structural, LipidFingerprint.of(swissLipids.parse("PC(16:0/18:1(11Z))"), LipidLevel.STRUCTURAL_SUBSPECIES));
+    }
+
+    @Test
+    public void testOrderMatchesSpeciesNames() throws ParsingException {
+        List<String> names = Arrays.asList("PC 36:2", "PC 32:0", "PC 34:1", "PC 34:0", "PC 34:1", "PE 34:1", "TAG 52:2", "PC O-34:1");
+        Set<LipidFingerprint> fingerprints = new TreeSet<>();
+        for (String name : names) {
+            fingerprints.add(fingerprint(name, LipidLevel.SPECIES));
+        }
+        assertEquals(names.stream().distinct().count(), fingerprints.size());
+        List<LipidFingerprint> pcs = Arrays.asList(fingerprint("PC 32:0", LipidLevel.SPECIES), fingerprint("PC 34:0", LipidLevel.SPECIES),
+                fingerprint("PC 34:1", LipidLevel.SPECIES), fingerprint("PC 36:2", LipidLevel.SPECIES));
+        assertEquals(pcs, pcs.stream().sorted().collect(Collectors.toList()));
+    }
+}
@@ -16,6 +16,8 @@
 package de.isas.lipidomics.domain;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -44,4 +46,22 @@ public class LipidMolecularSubspeciesTest {
         }
     }
 
+    @Test
+    public void testCachedLipidStrings() {
+        LipidMolecularSubspecies lss = new LipidMolecularSubspecies(
+                new HeadGroup("TG"),
+                new FattyAcid("FA1", 16, 0, 0, LipidFaBondType.ETHER_PLASMANYL, false, ModificationsList.NONE),
+                new FattyAcid("FA2", 18, 0, 1, LipidFaBondType.ESTER, false, ModificationsList.NONE),
+                new FattyAcid("FA3", 18, 0, 2, LipidFaBondType.ESTER, false, ModificationsList.NONE)
+        );
+        assertTrue(lss.isEtherLipid());
+        String molecular = lss.getLipidString(LipidLevel.MOLECULAR_SUBSPECIES);
+        assertEquals("TG O-16:0a-18:1-18:2", molecular);
+        assertSame(molecular, lss.getLipidString(LipidLevel.MOLECULAR_SUBSPECIES));
+        assertSame(molecular, lss.getLipidString());
+        String normalized = lss.getNormalizedLipidString();
+        assertEquals("TAG O-16:0a-18:1-18:2", normalized);
+        assertSame(normalized, lss.getLipidString(LipidLevel.MOLECULAR_SUBSPECIES, true));
+        assertSame(lss.getLipidString(LipidLevel.SPECIES), lss.getLipidString(LipidLevel.SPECIES));
+    }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import de.isas.lipidomics.palinom.lipidmaps.LipidMapsVisitorParser;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.tuple.Pair;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class OffHeapLipidStoreTest {
+
+    @Test
+    public void testAddAndView() throws ParsingException {
+        GoslinVisitorParser goslin = new GoslinVisitorParser();
+        List<LipidAdduct> lipids = new ArrayList<>();
+        lipids.add(goslin.parse("PC 16:0/18:1"));
+        lipids.add(goslin.parse("Cer 18:1;2/16:0"));
+        lipids.add(goslin.parse("TAG 16:0-18:1-18:2[M+H]1+"));
+        lipids.add(goslin.parse("PE O-34:1"));
+        lipids.add(new SwissLipidsVisitorParser().parse("PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))"));
+        OffHeapLipidStore store = new OffHeapLipidStore();
+        for (int i = 0; i < lipids.size(); i++) {
+            assertEquals(i, store.add(lipids.get(i)));
+        }
+        assertEquals(lipids.size(), store.size());
+        for (int i = 0; i < lipids.size(); i++) {
+            LipidAdduct expected = lipids.get(i);
+            LipidSpecies lipid = expected.getLipid();
+            OffHeapLipidStore.LipidView view = store.get(i);
+            assertEquals(i, view.getId());
+            assertEquals(expected.getLipidString(), view.getLipidString());
+            assertEquals(lipid.getHeadGroup(), view.getHeadGroup());
+            assertEquals(lipid.getLipidClass(), view.getLipidClass());
+            assertEquals(lipid.getLipidCategory(), view.getLipidCategory());
+            assertEquals(lipid.getInfo().getLevel(), view.getLevel());
+            assertEquals(lipid.getInfo().getNCarbon(), view.getNCarbon());
+            assertEquals(lipid.getInfo().getNDoubleBonds(), view.getNDoubleBonds());
+            assertEquals(lipid.getInfo().getNHydroxy(), view.getNHydroxy());
+            assertEquals(lipid.getInfo().getLipidFaBondType(), view.getLipidFaBondType());
+            assertEquals(lipid.isEtherLipid(), view.isEtherLipid());
+            assertEquals(expected.getAdduct(), view.getAdduct());
+            assertEquals(expected.getFragment(), view.getFragment());
+            assertEquals(lipid.getFa().size(), view.getFaCount());
+            int index = 0;
+            for (FattyAcid fa : lipid.getFa().values()) {
+                OffHeapLipidStore.FattyAcidView faView = view.getFa(index++);
+                assertEquals(fa.getName(), faView.getName());
+                assertEquals(fa.getNCarbon(), faView.getNCarbon());
+                assertEquals(fa.getNDoubleBonds(), faView.getNDoubleBonds());
+                assertEquals(fa.getNHydroxy(), faView.getNHydroxy());
+                assertEquals(fa.getLipidFaBondType(), faView.getLipidFaBondType());
+                assertEquals(fa.isLcb(), faView.isLcb());
+                assertEquals(fa.getPosition(), faView.getPosition());
+                assertEquals(fa.getDoubleBondPositions(), faView.getDoubleBondPositions());
+                assertEquals(fa, faView.toFattyAcid());
+            }
+        }
+        OffHeapLipidStore.LipidView pe = store.get(4);
+        assertTrue(pe.getFa(1).hasDoubleBondAt(4));
+        assertFalse(pe.getFa(1).hasDoubleBondAt(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            store.get(lipids.size());
+        });
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            pe.getFa(2);
+        });
+    }
+
+    @Test
+    public void testKeepsFattyAcylNames() throws ParsingException {
+        LipidMapsVisitorParser lipidMaps = new LipidMapsVisitorParser();
+        List<LipidAdduct> lipids = new ArrayList<>();
+        lipids.add(lipidMaps.parse("SPH(d18:1)"));
+        lipids.add(lipidMaps.parse("LysoSM(d18:1)"));
+        lipids.add(lipidMaps.parse("S1P(d18:1)"));
+        lipids.add(lipidMaps.parse("Cer(d18:1/16:0)"));
+        OffHeapLipidStore store = new OffHeapLipidStore();
+        lipids.forEach(store::add);
+        for (int i = 0; i < lipids.size(); i++) {
+            OffHeapLipidStore.LipidView view = store.get(i);
+            int index = 0;
+            for (FattyAcid fa : lipids.get(i).getLipid().getFa().values()) {
+                OffHeapLipidStore.FattyAcidView faView = view.getFa(index++);
+                assertEquals(fa.getName(), faView.getName());
+                assertEquals(fa, faView.toFattyAcid());
+            }
+        }
+        assertEquals("FA1", store.get(0).getFa(0).getName());
+    }
+
+    @Test
+    public void testIterationReusesView() throws ParsingException {
+        OffHeapLipidStore store = new OffHeapLipidStore();
+        LipidAdduct pc = new GoslinVisitorParser().parse("PC 16:0/18:1");
+        LipidAdduct species = new LipidAdduct(new LipidSpecies(new HeadGroup("PE")), null, null);
+        int n = OffHeapLipidStore.RECORDS_PER_CHUNK + 10;
+        for (int i = 0; i < n; i++) {
+            store.add(i % 2 == 0 ? pc : species);
+        }
+        AtomicInteger carbons = new AtomicInteger();
+        store.forEach((view) -> {
+            carbons.addAndGet(view.getNCarbon());
+        });
+        assertEquals((n + 1) / 2 * 34, carbons.get());
+        OffHeapLipidStore.LipidView first = null;
+        int count = 0;
+        for (OffHeapLipidStore.LipidView view : store) {
+            if (first == null) {
+                first = view;
+            }
+            assertSame(first, view);
+            count++;
+        }
+        assertEquals(n, count);
+        OffHeapLipidStore.LipidView last = store.get(n - 1);
+        assertEquals("PE", last.getLipidString());
+        assertNull(last.getAdduct());
+        assertEquals("PC 16:0/18:1", store.get(n - 2).getLipidString());
+    }
+
+    @Test
+    public void testRejectsModifiedFattyAcyls() {
+        ModificationsList modifications = new ModificationsList();
+        modifications.add(Pair.of(5, "OH"));
+        FattyAcid modified = new FattyAcid("FA1", 18, 0, 0, LipidFaBondType.ESTER, false, modifications);
+        LipidAdduct lipid = new LipidAdduct(new LipidMolecularSubspecies(new HeadGroup("PA"), modified), Adduct.NONE, Fragment.NONE);
+        OffHeapLipidStore store = new OffHeapLipidStore();
+        assertThrows(ConstraintViolationException.class, () -> {
+            store.add(lipid);
+        });
+        assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.apache.commons.lang3.tuple.Pair;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class PackedFattyAcidTest {
+
+    @Test
+    public void testRoundTrip() {
+        Map<Integer, String> dbPositions = new TreeMap<>();
+        dbPositions.put(9, "Z");
+        dbPositions.put(12, "E");
+        dbPositions.put(15, "");
+        FattyAcid isomeric = new FattyAcid("FA2", 1, 18, 1, LipidFaBondType.ESTER, false, ModificationsList.NONE, 3, dbPositions);
+        long header = isomeric.getPackedHeader();
+        long bonds = isomeric.getPackedDoubleBonds();
+        assertEquals(18, PackedFattyAcid.getNCarbon(header));
+        assertEquals(3, PackedFattyAcid.getNDoubleBonds(header));
+        assertEquals(1, PackedFattyAcid.getNHydroxy(header));
+        assertEquals(1, PackedFattyAcid.getPosition(header));
+        assertEquals(LipidFaBondType.ESTER, PackedFattyAcid.getLipidFaBondType(header));
+        assertEquals(FattyAcidType.ISOMERIC, PackedFattyAcid.getType(header));
+        assertFalse(PackedFattyAcid.isLcb(header));
+        assertEquals("Z", PackedFattyAcid.getDoubleBondConfiguration(header, bonds, 9));
+        assertEquals("E", PackedFattyAcid.getDoubleBondConfiguration(header, bonds, 12));
+        assertEquals("", PackedFattyAcid.getDoubleBondConfiguration(header, bonds, 15));
+        assertNull(PackedFattyAcid.getDoubleBondConfiguration(header, bonds, 10));
+        assertEquals(isomeric, FattyAcid.fromPacked("FA2", header, bonds));
+
+        FattyAcid structural = new FattyAcid("LCB", 0, 18, 2, 1, LipidFaBondType.ESTER, true, ModificationsList.NONE);
+        assertEquals(structural, FattyAcid.fromPacked("LCB", structural.getPackedHeader(), structural.getPackedDoubleBonds()));
+
+        FattyAcid molecular = new FattyAcid("FA1", 16, 0, 0, LipidFaBondType.ETHER_PLASMANYL, false, ModificationsList.NONE);
+        assertEquals(-1, PackedFattyAcid.getPosition(molecular.getPackedHeader()));
+        assertEquals(molecular, FattyAcid.fromPacked("FA1", molecular.getPackedHeader(), molecular.getPackedDoubleBonds()));
+    }
+
+    @Test
+    public void testParsedRoundTrip() throws ParsingException {
+        LipidAdduct lipid = new SwissLipidsVisitorParser().parse("PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))");
+        for (FattyAcid fa : lipid.getLipid().getFa().values()) {
+            assertTrue(PackedFattyAcid.isPackable(fa));
+            assertEquals(fa, FattyAcid.fromPacked(fa.getName(), fa.getPackedHeader(), fa.getPackedDoubleBonds()));
+        }
+    }
+
+    @Test
+    public void testNotPackable() {
+        Map<Integer, String> dbPositions = new TreeMap<>();
+        dbPositions.put(33, "Z");
+        FattyAcid longChain = new FattyAcid("FA1", 0, 36, 0, LipidFaBondType.ESTER, false, ModificationsList.NONE, 1, dbPositions);
+        assertFalse(PackedFattyAcid.isPackable(longChain));
+        assertThrows(ConstraintViolationException.class, () -> {
+            longChain.getPackedHeader();
+        });
+        ModificationsList modifications = new ModificationsList();
+        modifications.add(Pair.of(5, "OH"));
+        FattyAcid modified = new FattyAcid("FA1", 18, 0, 0, LipidFaBondType.ESTER, false, modifications);
+        assertFalse(PackedFattyAcid.isPackable(modified));
+    }
+
+    @Test
+    public void testCompareAndSort() {
+        FattyAcid fa18_1 = new FattyAcid("FA1", 18, 0, 1, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        FattyAcid fa16_0 = new FattyAcid("FA1", 16, 0, 0, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        FattyAcid fa18_0 = new FattyAcid("FA1", 18, 0, 0, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        FattyAcid fa200_0 = new FattyAcid("FA1", 200, 0, 0, LipidFaBondType.ESTER, false, ModificationsList.NONE);
+        assertTrue(PackedFattyAcid.compare(fa16_0.getPackedHeader(), fa16_0.getPackedDoubleBonds(), fa18_0.getPackedHeader(), fa18_0.getPackedDoubleBonds()) < 0);
+        assertTrue(PackedFattyAcid.compare(fa18_1.getPackedHeader(), fa18_1.getPackedDoubleBonds(), fa18_0.getPackedHeader(), fa18_0.getPackedDoubleBonds()) > 0);
+        // carbon counts above 127 occupy the sign bit and must still sort last
+        assertTrue(PackedFattyAcid.compare(fa200_0.getPackedHeader(), fa200_0.getPackedDoubleBonds(), fa18_1.getPackedHeader(), fa18_1.getPackedDoubleBonds()) > 0);
+        assertEquals(PackedFattyAcid.hash(fa18_0.getPackedHeader(), fa18_0.getPackedDoubleBonds()), PackedFattyAcid.hash(fa18_0.getPackedHeader(), fa18_0.getPackedDoubleBonds()));
+
+        FattyAcid[] fas = new FattyAcid[]{fa200_0, fa18_1, fa16_0, fa18_0};
+        long[] packed = new long[fas.length * 2];
+        for (int i = 0; i < fas.length; i++) {
+            packed[2 * i] = fas[i].getPackedHeader();
+            packed[2 * i + 1] = fas[i].getPackedDoubleBonds();
+        }
+        PackedFattyAcid.sort(packed);
+        long[] expected = new long[]{
+            fa16_0.getPackedHeader(), fa16_0.getPackedDoubleBonds(),
+            fa18_0.getPackedHeader(), fa18_0.getPackedDoubleBonds(),
+            fa18_1.getPackedHeader(), fa18_1.getPackedDoubleBonds(),
+            fa200_0.getPackedHeader(), fa200_0.getPackedDoubleBonds()
+        };
+        assertArrayEquals(expected, packed, Arrays.toString(packed));
+    }
+
+    @Test
+    public void testSortRandom() {
+        Random random = new Random(42);
+        int n = 1000;
+        long[] packed = new long[n * 2];
+        long[][] reference = new long[n][];
+        for (int i = 0; i < n; i++) {
+            long header = PackedFattyAcid.header(random.nextInt(256), random.nextInt(7), random.nextInt(3), LipidFaBondType.ESTER, false, -1, FattyAcidType.MOLECULAR);
+            packed[2 * i] = header;
+            reference[i] = new long[]{header, 0L};
+        }
+        PackedFattyAcid.sort(packed);
+        Arrays.sort(reference, (l, r) -> PackedFattyAcid.compare(l[0], l[1], r[0], r[1]));
+        for (int i = 0; i < n; i++) {
+            assertEquals(reference[i][0], packed[2 * i]);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.domain;
+
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class PrimitiveSortTest {
+
+    @Test
+    public void testSortKeysAndValues() {
+        Random random = new Random(42);
+        for (int n : new int[]{0, 1, 15, 16, 1000}) {
+            double[] keys = new double[n];
+            int[] values = new int[n];
+            for (int i = 0; i < n; i++) {
+                // few distinct keys, so the partitions contain many equal elements
+                keys[i] = random.nextInt(10) * 0.5;
+                values[i] = i;
+            }
+            double[] original = Arrays.copyOf(keys, n);
+            double[] expected = Arrays.copyOf(keys, n);
+            Arrays.sort(expected);
+            PrimitiveSort.sort(keys, values);
+            assertArrayEquals(expected, keys);
+            for (int i = 0; i < n; i++) {
+                assertEquals(original[values[i]], keys[i]);
+            }
+        }
+        assertThrows(ConstraintViolationException.class, () -> {
+            PrimitiveSort.sort(new double[2], new int[1]);
+        });
+    }
+
+    @Test
+    public void testSortRange() {
+        int[] values = new int[]{9, 8, 7, 6, 5, 4, 3, 2, 1, 0};
+        PrimitiveSort.sort(2, 7, (i, j) -> Integer.compare(values[i], values[j]), (i, j) -> {
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        });
+        assertArrayEquals(new int[]{9, 8, 2, 3, 4, 5, 6, 7, 1, 0}, values);
+    }
+}
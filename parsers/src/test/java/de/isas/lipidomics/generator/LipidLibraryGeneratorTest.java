@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.generator;
+
+import de.isas.lipidomics.domain.FattyAcidInterner;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LipidLibraryGeneratorTest {
+
+    private LipidLibraryGenerator generator() {
+        return LipidLibraryGenerator.builder().
+                lipidClasses(EnumSet.of(LipidClass.PC, LipidClass.TAG, LipidClass.CER)).
+                levels(EnumSet.of(LipidLevel.SPECIES, LipidLevel.MOLECULAR_SUBSPECIES, LipidLevel.STRUCTURAL_SUBSPECIES)).
+                minCarbon(16).maxCarbon(18).
+                minDoubleBonds(0).maxDoubleBonds(1).
+                minLcbHydroxy(2).maxLcbHydroxy(3).
+                build();
+    }
+
+    @Test
+    public void testSize() {
+        LipidLibraryGenerator generator = generator();
+        // PC: 15 species, 21 molecular, 36 structural; TAG: 28, 56, 216; Cer: 30 species, 72 structural
+        assertEquals(474, generator.size());
+        assertEquals(474, generator.stream().count());
+        assertEquals(6, LipidLibraryGenerator.multisets(3, 2));
+        assertEquals(1, LipidLibraryGenerator.multisets(5, 0));
+    }
+
+    @Test
+    public void testNamesAndMassesMatchParser() throws ParsingException {
+        LipidLibraryGenerator generator = generator();
+        Map<String, Double> library = new ConcurrentHashMap<>();
+        generator.generate((name, mass) -> {
+            assertTrue(library.put(name, mass) == null, "Duplicate name " + name);
+        });
+        assertEquals(generator.size(), library.size());
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        for (Map.Entry<String, Double> entry : library.entrySet()) {
+            LipidAdduct parsed = parser.parse(entry.getKey());
+            assertEquals(entry.getKey(), parsed.getLipidString());
+            assertEquals(parsed.getMass(), entry.getValue(), 1e-6, entry.getKey());
+        }
+        assertTrue(library.containsKey("PC 16:0-18:1"));
+        assertTrue(library.containsKey("TAG 16:0/18:1/16:0"));
+        assertTrue(library.containsKey("Cer 18:1;3/16:0"));
+        assertTrue(library.containsKey("Cer 34:1;2"));
+    }
+
+    @Test
+    public void testMolecularSubspeciesAreDeduplicated() {
+        LipidLibraryGenerator generator = LipidLibraryGenerator.builder().
+                lipidClasses(EnumSet.of(LipidClass.TAG)).
+                levels(EnumSet.of(LipidLevel.MOLECULAR_SUBSPECIES)).
+                minCarbon(12).maxCarbon(26).
+                minDoubleBonds(0).maxDoubleBonds(6).
+                build();
+        // multisets of size 3 from 15 * 7 chains
+        assertEquals(105L * 106 * 107 / 6, generator.size());
+        Set<String> chainSets = generator.stream().limit(20000).map((t) -> {
+            return t.getFa().values().stream().map((fa) -> fa.getNCarbon() + ":" + fa.getNDoubleBonds()).sorted().collect(Collectors.joining("_"));
+        }).collect(Collectors.toSet());
+        assertEquals(20000, chainSets.size());
+    }
+
+    @Test
+    public void testSpeciesCoverTheCompositionsOfAllChainCounts() {
+        // disjoint carbon ranges and double bond ranges, e.g. for "2|4" chains
+        assertCompositions(new int[]{2, 4}, 12, 14, 2, 3, 5 * 3 + 9 * 5);
+        // overlapping carbon ranges, merged double bond ranges at 20 carbons
+        assertCompositions(new int[]{1, 2}, 10, 20, 0, 1, 10 * 2 + 21 * 3);
+        // overlapping carbon ranges, separate double bond ranges at 20 carbons
+        assertCompositions(new int[]{1, 2}, 10, 20, 4, 5, 10 * 2 + (2 + 3) + 20 * 3);
+        assertCompositions(new int[]{3}, 16, 18, 0, 1, 7 * 4);
+        assertEquals(0, new LipidLibraryGenerator.Compositions(new int[0], 16, 18, 0, 1).size());
+    }
+
+    private static void assertCompositions(int[] numFas, int minCarbon, int maxCarbon, int minDoubleBonds, int maxDoubleBonds, long expectedSize) {
+        List<String> expected = new ArrayList<>();
+        for (int c = 0; c <= numFas[numFas.length - 1] * maxCarbon; c++) {
+            for (int db = 0; db <= numFas[numFas.length - 1] * maxDoubleBonds; db++) {
+                for (int numFa : numFas) {
+                    if (c >= numFa * minCarbon && c <= numFa * maxCarbon && db >= numFa * minDoubleBonds && db <= numFa * maxDoubleBonds) {
+                        expected.add(c + ":" + db);
+                        break;
+                    }
+                }
+            }
+        }
+        LipidLibraryGenerator.Compositions compositions = new LipidLibraryGenerator.Compositions(numFas, minCarbon, maxCarbon, minDoubleBonds, maxDoubleBonds);
+        List<String> actual = new ArrayList<>();
+        for (long rank = 0; rank < compositions.size(); rank++) {
+            actual.add(compositions.getNCarbon(rank) + ":" + compositions.getNDoubleBonds(rank));
+        }
+        assertEquals(expectedSize, compositions.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testWithoutInterning() {
+        LipidLibraryGenerator generator = LipidLibraryGenerator.builder().
+                lipidClasses(EnumSet.of(LipidClass.PC, LipidClass.TAG, LipidClass.CER)).
+                levels(EnumSet.of(LipidLevel.SPECIES, LipidLevel.MOLECULAR_SUBSPECIES, LipidLevel.STRUCTURAL_SUBSPECIES)).
+                minCarbon(16).maxCarbon(18).
+                minDoubleBonds(0).maxDoubleBonds(1).
+                minLcbHydroxy(2).maxLcbHydroxy(3).
+                interner(FattyAcidInterner.NONE).
+                build();
+        Set<String> interned = ConcurrentHashMap.newKeySet();
+        generator().generate((name, mass) -> interned.add(name));
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        generator.generate((name, mass) -> names.add(name));
+        assertEquals(474, names.size());
+        assertEquals(interned, names);
+    }
+
+    @Test
+    public void testSpliteratorSplitsEvenly() {
+        LipidLibraryGenerator generator = generator();
+        Spliterator<LipidSpecies> spliterator = generator.spliterator();
+        Spliterator<LipidSpecies> prefix = spliterator.trySplit();
+        assertEquals(237, prefix.estimateSize());
+        assertEquals(237, spliterator.estimateSize());
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SUBSIZED));
+        Map<String, Integer> counts = new HashMap<>();
+        prefix.forEachRemaining((t) -> counts.merge(t.getLipidString(), 1, Integer::sum));
+        spliterator.forEachRemaining((t) -> counts.merge(t.getLipidString(), 1, Integer::sum));
+        assertEquals(474, counts.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            generator.get(474);
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            LipidLibraryGenerator.builder().lipidClasses(EnumSet.of(LipidClass.PC)).levels(EnumSet.of(LipidLevel.ISOMERIC_SUBSPECIES)).
+                    minCarbon(12).maxCarbon(26).build();
+        });
+    }
+}
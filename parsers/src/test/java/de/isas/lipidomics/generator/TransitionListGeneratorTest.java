@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.generator;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.mass.FragmentCalculator;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslinfragments.GoslinFragmentsVisitorParser;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class TransitionListGeneratorTest {
+
+    private LipidLibraryGenerator library() {
+        return LipidLibraryGenerator.builder().
+                lipidClasses(EnumSet.of(LipidClass.PC, LipidClass.PE, LipidClass.CER)).
+                levels(EnumSet.of(LipidLevel.SPECIES, LipidLevel.MOLECULAR_SUBSPECIES, LipidLevel.STRUCTURAL_SUBSPECIES)).
+                minCarbon(16).maxCarbon(18).
+                minDoubleBonds(0).maxDoubleBonds(1).
+                minLcbHydroxy(2).maxLcbHydroxy(2).
+                build();
+    }
+
+    private TransitionListGenerator generator(int threads, int blockSize) {
+        return TransitionListGenerator.builder().
+                library(library()).
+                adducts(TransitionListGenerator.GOSLIN_ADDUCTS).
+                threads(threads).
+                blockSize(blockSize).
+                build();
+    }
+
+    @Test
+    public void testWriteTsvInLibraryOrder() throws IOException {
+        StringWriter parallel = new StringWriter();
+        long transitions = generator(4, 7).writeTsv(parallel);
+        StringWriter sequential = new StringWriter();
+        assertEquals(transitions, generator(1, 0).writeTsv(sequential));
+        assertEquals(sequential.toString(), parallel.toString());
+
+        String[] lines = parallel.toString().split("\n");
+        assertEquals(TransitionListGenerator.TSV_HEADER, lines[0]);
+        assertEquals(transitions + 1, lines.length);
+        AtomicLong generated = new AtomicLong();
+        generator(0, 0).generate((precursor, precursorMz, fragment, productMz, productCharge) -> {
+            generated.incrementAndGet();
+        });
+        assertEquals(transitions, generated.get());
+        assertTrue(parallel.toString().contains("\nPC 16:0/18:1[M+H]1+\t"));
+        assertTrue(parallel.toString().contains("\nCer 18:1;2/16:0[M+H]1+\t"));
+    }
+
+    @Test
+    public void testTransitionsMatchFragmentParser() throws IOException, ParsingException {
+        StringWriter writer = new StringWriter();
+        generator(2, 0).writeTsv(writer);
+        String[] lines = writer.toString().split("\n");
+        GoslinFragmentsVisitorParser parser = new GoslinFragmentsVisitorParser();
+        FragmentCalculator calculator = new FragmentCalculator();
+        for (int i = 1; i < lines.length; i += 7) {
+            String[] columns = lines[i].split("\t");
+            assertEquals(5, columns.length, lines[i]);
+            LipidAdduct precursor = parser.parse(columns[0]);
+            assertEquals(precursor.getMass(), Double.parseDouble(columns[1]), 1e-6, lines[i]);
+            FragmentCalculator.Product product = calculator.getProduct(precursor, columns[2]);
+            if (!FragmentCalculator.LONG_CHAIN_BASE.equals(columns[2])) {
+                LipidAdduct transition = parser.parse(columns[0] + " - " + columns[2]);
+                assertEquals(columns[2], transition.getFragment().getName());
+                assertEquals(product.getMz(), calculator.getProduct(transition).getMz(), 1e-9, lines[i]);
+            }
+            assertEquals(product.getMz(), Double.parseDouble(columns[3]), 1e-6, lines[i]);
+            assertEquals(product.getCharge(), Integer.parseInt(columns[4]), lines[i]);
+        }
+    }
+
+    @Test
+    public void testHeadGroupTransition() throws IOException {
+        StringWriter writer = new StringWriter();
+        TransitionListGenerator.builder().
+                library(library()).
+                adducts(Arrays.asList(new Adduct("", "+H", 1, 1))).
+                build().writeTsv(writer);
+        String row = Arrays.stream(writer.toString().split("\n")).filter((line) -> {
+            return line.startsWith("PC 34:1[M+H]1+\t");
+        }).findFirst().get();
+        String[] columns = row.split("\t");
+        assertEquals(760.5851, Double.parseDouble(columns[1]), 1e-4);
+        assertEquals(FragmentCalculator.HEAD_GROUP, columns[2]);
+        assertEquals(184.0733, Double.parseDouble(columns[3]), 1e-4);
+        assertEquals("1", columns[4]);
+
+        writer = new StringWriter();
+        TransitionListGenerator.builder().
+                library(library()).
+                adducts(Arrays.asList(new Adduct("", "+2H", 2, 1))).
+                build().writeTsv(writer);
+        row = Arrays.stream(writer.toString().split("\n")).filter((line) -> {
+            return line.startsWith("PC 34:1[M+2H]2+\t");
+        }).findFirst().get();
+        columns = row.split("\t");
+        assertEquals(380.7962, Double.parseDouble(columns[1]), 1e-4);
+        assertEquals(184.0733, Double.parseDouble(columns[3]), 1e-4);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(ConstraintViolationException.class, () -> {
+            TransitionListGenerator.builder().library(library()).adducts(Collections.emptyList()).build();
+        });
+        List<Adduct> uncharged = Arrays.asList(new Adduct("", "+H", 0, 1));
+        assertThrows(ConstraintViolationException.class, () -> {
+            TransitionListGenerator.builder().library(library()).adducts(uncharged).build();
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            TransitionListGenerator.builder().library(library()).adducts(TransitionListGenerator.GOSLIN_ADDUCTS).threads(-1).build();
+        });
+    }
+}
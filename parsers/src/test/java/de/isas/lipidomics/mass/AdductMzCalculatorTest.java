@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.palinom.TestFiles;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class AdductMzCalculatorTest {
+
+    private static final String[] ADDUCTS = new String[]{"[M+H]1+", "[M-H]1-", "[M+NH4]1+", "[M+HCOO]1-", "[M+CH3COO]1-", "[M+2H]2+", "[M-2H]2-", "[M+Na]1+", "[M+3H]3+"};
+
+    @Test
+    public void testCalculate() throws ParsingException {
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        List<Adduct> adducts = adducts(parser);
+        AdductMzCalculator calculator = new AdductMzCalculator(adducts);
+        assertEquals(adducts, calculator.getAdducts());
+        List<LipidMassCalculator.Composition> compositions = new ArrayList<>();
+        LipidMassCalculator massCalculator = new LipidMassCalculator();
+        List<String> names = Arrays.asList("PC 34:1", "PE 18:0p/22:6", "Cer 18:1;2/16:0", "TAG 16:0_18:1_18:2");
+        for (String name : names) {
+            compositions.add(massCalculator.compute(name, new LipidMassCalculator.Composition()));
+        }
+        int[][] counts = AdductMzCalculator.fromCompositions(compositions);
+        assertNull(counts[Element.ELEMENT_S.ordinal()]);
+        double[][] mz = calculator.calculate(counts, names.size());
+        assertEquals(adducts.size(), mz.length);
+        for (int lipid = 0; lipid < names.size(); lipid++) {
+            LipidSpecies species = parser.parse(names.get(lipid)).getLipid();
+            for (int adduct = 0; adduct < adducts.size(); adduct++) {
+                double expected = new LipidAdduct(species, adducts.get(adduct), null).getMass();
+                assertEquals(expected, mz[adduct][lipid], 0.0, names.get(lipid) + adducts.get(adduct).getLipidString());
+            }
+        }
+        assertSame(mz, calculator.calculate(counts, names.size(), mz));
+    }
+
+    @Test
+    public void testGoslinTestNames() throws IOException, ParsingException {
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        List<Adduct> adducts = adducts(parser);
+        List<LipidSpecies> lipids = new ArrayList<>();
+        List<ElementTable> elementTables = new ArrayList<>();
+        for (String lipidName : TestFiles.readLipidNames("goslin-test.csv")) {
+            try {
+                LipidSpecies lipid = parser.parse(lipidName).getLipid();
+                if (lipid.getInfo().getLevel().compareTo(LipidLevel.SPECIES) >= 0) {
+                    elementTables.add(lipid.getElements());
+                    lipids.add(lipid);
+                }
+            } catch (ParsingException | RuntimeException ex) {
+                // no mass
+            }
+        }
+        assertTrue(lipids.size() > 1000);
+        double[][] mz = new AdductMzCalculator(adducts).calculate(AdductMzCalculator.fromElementTables(elementTables), lipids.size());
+        List<String> mismatches = new ArrayList<>();
+        for (int lipid = 0; lipid < lipids.size(); lipid++) {
+            for (int adduct = 0; adduct < adducts.size(); adduct++) {
+                double expected = new LipidAdduct(lipids.get(lipid), adducts.get(adduct), null).getMass();
+                if (Double.compare(expected, mz[adduct][lipid]) != 0) {
+                    mismatches.add(lipids.get(lipid).getLipidString() + adducts.get(adduct).getLipidString() + ": " + expected + " != " + mz[adduct][lipid]);
+                }
+            }
+        }
+        assertEquals(0, mismatches.size(), String.join("\n", mismatches));
+    }
+
+    @Test
+    public void testInvalid() throws ParsingException {
+        AdductMzCalculator calculator = new AdductMzCalculator(adducts(new GoslinVisitorParser()));
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.calculate(new int[3][], 1);
+        });
+        int[][] counts = AdductMzCalculator.fromElementTables(Arrays.asList(new ElementTable("C2H6O")));
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.calculate(counts, 2);
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.calculate(counts, 1, new double[1][1]);
+        });
+    }
+
+    private List<Adduct> adducts(GoslinVisitorParser parser) throws ParsingException {
+        List<Adduct> adducts = new ArrayList<>();
+        for (String adduct : ADDUCTS) {
+            adducts.add(parser.parse("PC 34:1" + adduct).getAdduct());
+        }
+        return adducts;
+    }
+}
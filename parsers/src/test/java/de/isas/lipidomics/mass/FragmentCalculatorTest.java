@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslinfragments.GoslinFragmentsVisitorParser;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class FragmentCalculatorTest {
+
+    private final GoslinFragmentsVisitorParser parser = new GoslinFragmentsVisitorParser();
+
+    @Test
+    public void testHeadGroupIon() throws ParsingException {
+        FragmentCalculator calculator = new FragmentCalculator();
+        LipidAdduct lipid = parser.parse("PC 16:0/18:1[M+H]1+ - HG");
+        FragmentCalculator.Product product = calculator.getProduct(lipid);
+        assertFalse(product.isNeutralLoss());
+        assertEquals("HG", product.getFragment());
+        assertEquals("C5H15NO4P", product.getElements().getSumFormula());
+        assertEquals(1, product.getCharge());
+        assertEquals(184.0733, product.getMz(), 1e-4);
+        assertEquals(241.0119, calculator.getProduct(parser.parse("PI 16:0/18:1[M-H]1-"), "HG").getMz(), 1e-4);
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.getProduct(parser.parse("PC 16:0/18:1[M-H]1-"), "HG");
+        });
+    }
+
+    @Test
+    public void testNeutralLoss() throws ParsingException {
+        FragmentCalculator calculator = new FragmentCalculator();
+        LipidAdduct precursor = parser.parse("PE 16:0/18:1[M+H]1+");
+        FragmentCalculator.Product product = calculator.getProduct(precursor, "-(HG)");
+        assertTrue(product.isNeutralLoss());
+        assertEquals("C2H8NO4P", product.getFragmentElements().getSumFormula());
+        assertEquals(141.0191, product.getFragmentMass(), 1e-4);
+        assertEquals(1, product.getCharge());
+        assertEquals(precursor.getMass() - product.getFragmentMass(), product.getMz(), 1e-9);
+        assertEquals(577.5190, product.getMz(), 1e-4);
+
+        FragmentCalculator.Product water = calculator.getProduct(parser.parse("PE 16:1-12:0 - -(H2O)"));
+        assertEquals("H2O", water.getFragmentElements().getSumFormula());
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.getProduct(precursor, "-(C100)");
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.getProduct(precursor, "-(Xy)");
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.getProduct(precursor);
+        });
+    }
+
+    @Test
+    public void testChains() throws ParsingException {
+        FragmentCalculator calculator = new FragmentCalculator();
+        LipidAdduct precursor = parser.parse("PE 16:0/18:1[M-H]1-");
+        assertEquals(Arrays.asList("-(HG)", "-(FA1)", "FA1", "-(FA2)", "FA2"), calculator.getFragments(precursor));
+        FragmentCalculator.Product palmitate = calculator.getProduct(precursor, "FA1");
+        assertEquals("C16H31O2", palmitate.getElements().getSumFormula());
+        assertEquals(255.2330, palmitate.getMz(), 1e-4);
+        FragmentCalculator.Product oleicAcidLoss = calculator.getProduct(precursor, "-(FA2)");
+        assertEquals("C18H34O2", oleicAcidLoss.getFragmentElements().getSumFormula());
+        assertEquals(precursor.getMass() - oleicAcidLoss.getFragmentMass(), oleicAcidLoss.getMz(), 1e-9);
+
+        LipidAdduct ceramide = parser.parse("Cer 18:1;2/16:0[M+H]1+");
+        assertTrue(calculator.getFragments(ceramide).contains("LCB"));
+        FragmentCalculator.Product lcb = calculator.getProduct(ceramide, "LCB");
+        assertEquals("C18H34N", lcb.getElements().getSumFormula());
+        assertEquals(264.2686, lcb.getMz(), 1e-4);
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.getProduct(ceramide, "FA3");
+        });
+    }
+
+    @Test
+    public void testBulk() throws ParsingException {
+        FragmentCalculator calculator = new FragmentCalculator();
+        LipidAdduct pc = parser.parse("PC 16:0/18:1[M+H]1+");
+        LipidAdduct pe = parser.parse("PE 16:0/18:1[M+H]1+");
+        List<LipidAdduct> precursors = Arrays.asList(pc, pe, pe, pc);
+        double[] mz = calculator.getProductMz(precursors, Arrays.asList("HG", "-(HG)", "-(H2O)", "LCB"));
+        assertEquals(4, mz.length);
+        assertEquals(calculator.getProduct(pc, "HG").getMz(), mz[0], 0.0);
+        assertEquals(calculator.getProduct(pe, "-(HG)").getMz(), mz[1], 0.0);
+        assertEquals(calculator.getProduct(pe, "-(H2O)").getMz(), mz[2], 0.0);
+        assertTrue(Double.isNaN(mz[3]));
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.getProductMz(precursors, Arrays.asList("HG"));
+        });
+    }
+}
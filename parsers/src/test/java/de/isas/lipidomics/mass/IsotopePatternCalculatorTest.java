@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class IsotopePatternCalculatorTest {
+
+    @Test
+    public void testSingleAtom() throws ParsingException {
+        IsotopePatternCalculator calculator = new IsotopePatternCalculator();
+        IsotopePatternCalculator.IsotopePattern pattern = calculator.calculate(new ElementTable("C"), 0, calculator.newPattern());
+        assertEquals(2, pattern.size());
+        assertEquals(0, pattern.getNominalShift(0));
+        assertEquals(1, pattern.getNominalShift(1));
+        assertEquals(Element.ELEMENT_C.getMass(), pattern.getMass(0), 1e-12);
+        assertEquals(Element.ELEMENT_C13.getMass(), pattern.getMass(1), 1e-12);
+        assertEquals(0.9893, pattern.getAbundance(0), 1e-12);
+        assertEquals(0.0107, pattern.getAbundance(1), 1e-12);
+        assertEquals(0.0107 / 0.9893, pattern.getRelativeIntensity(1), 1e-12);
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+            pattern.getMass(2);
+        });
+    }
+
+    @Test
+    public void testLipidAdduct() throws ParsingException {
+        IsotopePatternCalculator calculator = new IsotopePatternCalculator(10, 0.0);
+        LipidAdduct lipid = new GoslinVisitorParser().parse("PC 34:1[M+H]1+");
+        IsotopePatternCalculator.IsotopePattern pattern = calculator.calculate(lipid);
+        assertEquals(10, pattern.size());
+        assertEquals(1, pattern.getCharge());
+        assertEquals(lipid.getMass(), pattern.getMz(0), 1e-9);
+        assertEquals(lipid.getElements().getMass(), pattern.getMass(0), 1e-9);
+        double sum = 0.0d;
+        for (int i = 0; i < pattern.size(); i++) {
+            sum += pattern.getAbundance(i);
+        }
+        assertEquals(1.0, sum, 1e-8);
+        // C42H84NO8P: M+1 is dominated by 13C and is about 48% of M
+        assertEquals(0.48, pattern.getRelativeIntensity(1), 0.01);
+        assertNaive(lipid.getElements(), pattern);
+
+        LipidMassCalculator.Composition composition = new LipidMassCalculator().compute("PC 34:1[M+H]1+", new LipidMassCalculator.Composition());
+        IsotopePatternCalculator.IsotopePattern reused = calculator.newPattern();
+        assertSame(reused, calculator.calculate(composition, reused));
+        for (int i = 0; i < pattern.size(); i++) {
+            assertEquals(pattern.getMz(i), reused.getMz(i), 0.0);
+            assertEquals(pattern.getAbundance(i), reused.getAbundance(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testLargeCounts() throws ParsingException {
+        IsotopePatternCalculator calculator = new IsotopePatternCalculator(16, 0.0);
+        ElementTable elements = new ElementTable("C1200H2300N3O40P2S3");
+        IsotopePatternCalculator.IsotopePattern pattern = calculator.calculate(elements, -2, calculator.newPattern());
+        assertEquals(elements.getMass(), pattern.getMass(0), 1e-8);
+        assertEquals((elements.getMass() + 2 * Element.ELECTRON_REST_MASS) / 2, pattern.getMz(0), 1e-8);
+        assertNaive(elements, pattern);
+    }
+
+    @Test
+    public void testCutOff() throws ParsingException {
+        IsotopePatternCalculator calculator = new IsotopePatternCalculator(10, 0.01);
+        IsotopePatternCalculator.IsotopePattern pattern = calculator.calculate(new ElementTable("C42H84NO8P"), 1, calculator.newPattern());
+        assertTrue(pattern.size() < 10);
+        for (int i = 0; i < pattern.size(); i++) {
+            assertTrue(pattern.getRelativeIntensity(i) >= 0.01);
+            assertEquals(i, pattern.getNominalShift(i));
+        }
+    }
+
+    @Test
+    public void testLabels() throws ParsingException {
+        IsotopePatternCalculator calculator = new IsotopePatternCalculator();
+        ElementTable elements = new ElementTable("C10H20");
+        elements.incrementBy(Element.ELEMENT_C13, 2);
+        elements.incrementBy(Element.ELEMENT_H2, 3);
+        IsotopePatternCalculator.IsotopePattern labeled = calculator.calculate(elements, 0, calculator.newPattern());
+        IsotopePatternCalculator.IsotopePattern unlabeled = calculator.calculate(new ElementTable("C10H20"), 0, calculator.newPattern());
+        assertEquals(elements.getMass(), labeled.getMass(0), 1e-9);
+        assertEquals(unlabeled.size(), labeled.size());
+        for (int i = 0; i < labeled.size(); i++) {
+            assertEquals(unlabeled.getAbundance(i), labeled.getAbundance(i), 1e-15);
+        }
+    }
+
+    @Test
+    public void testInvalid() throws ParsingException {
+        assertThrows(ConstraintViolationException.class, () -> {
+            new IsotopePatternCalculator(0, 0.0);
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            new IsotopePatternCalculator(10, 1.5);
+        });
+        IsotopePatternCalculator calculator = new IsotopePatternCalculator();
+        ElementTable negative = new ElementTable("C10");
+        negative.decrementBy(Element.ELEMENT_H, 2);
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.calculate(negative, 0, calculator.newPattern());
+        });
+        assertThrows(ConstraintViolationException.class, () -> {
+            calculator.calculate(new ElementTable("C10"), 0, new IsotopePatternCalculator(5, 0.0).newPattern());
+        });
+    }
+
+    /**
+     * Compares the pattern to a convolution of single atom distributions,
+     * without precomputed distributions and pruning.
+     */
+    private void assertNaive(ElementTable elements, IsotopePatternCalculator.IsotopePattern pattern) {
+        int maxShift = pattern.getNominalShift(pattern.size() - 1) + 1;
+        double[] abundances = new double[]{1.0};
+        double[] massSums = new double[]{0.0};
+        Element[][] isotopes = new Element[][]{
+            {Element.ELEMENT_C, Element.ELEMENT_C13},
+            {Element.ELEMENT_H, Element.ELEMENT_H2},
+            {Element.ELEMENT_N, Element.ELEMENT_N15},
+            {Element.ELEMENT_O, Element.ELEMENT_O17, Element.ELEMENT_O18},
+            {Element.ELEMENT_P},
+            {Element.ELEMENT_S, Element.ELEMENT_S33, Element.ELEMENT_S34, null, null}
+        };
+        double[][] isotopeAbundances = new double[][]{
+            {0.9893, 0.0107}, {0.999885, 0.000115}, {0.99636, 0.00364}, {0.99757, 0.00038, 0.00205}, {1.0}, {0.9499, 0.0075, 0.0425, 0.0, 0.0001}
+        };
+        for (int element = 0; element < isotopes.length; element++) {
+            int atoms = elements.getOrDefault(Element.values()[element], 0);
+            for (int atom = 0; atom < atoms; atom++) {
+                int length = Math.min(maxShift, abundances.length + isotopes[element].length - 1);
+                double[] nextAbundances = new double[length];
+                double[] nextMassSums = new double[length];
+                for (int i = 0; i < abundances.length; i++) {
+                    for (int j = 0; j < isotopes[element].length && i + j < length; j++) {
+                        double mass = isotopes[element][j] == null ? 35.96708071 : isotopes[element][j].getMass();
+                        nextAbundances[i + j] += abundances[i] * isotopeAbundances[element][j];
+                        nextMassSums[i + j] += (massSums[i] + abundances[i] * mass) * isotopeAbundances[element][j];
+                    }
+                }
+                abundances = nextAbundances;
+                massSums = nextMassSums;
+            }
+        }
+        for (int i = 0; i < pattern.size(); i++) {
+            int shift = pattern.getNominalShift(i);
+            assertEquals(abundances[shift], pattern.getAbundance(i), 1e-12 + 1e-9 * abundances[shift]);
+            assertEquals(massSums[shift] / abundances[shift], pattern.getMass(i), 1e-7);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Element;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.TestFiles;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LipidMassCalculatorTest {
+
+    private static final String[] ADDUCTS = new String[]{"", "[M+H]1+", " [M-H]1-", "[M+NH4]1+", "[M+HCOO]1-", "[M+2H]2+", "[M-2H]2-", "[M+Na]1+"};
+
+    @Test
+    public void testShorthandNames() throws ParsingException {
+        LipidMassCalculator calculator = new LipidMassCalculator();
+        LipidMassCalculator.Composition composition = new LipidMassCalculator.Composition();
+        String[] names = new String[]{
+            "PC 34:1", "PC 16:0_18:1[M+H]1+", "PC 16:0/18:1(9Z) [M+H]1+", "PE 18:0p/22:6", "PE 38:6a[M-H]1-",
+            "TAG 16:0_18:1_18:2[M+NH4]1+", "LPC 16:0[M+H]1+", "Cer 18:1;2/16:0", "Cer d34:1[M-H]1-", "SM 18:1;2/16:0[M+H]1+",
+            "CL 72:8", "DAG 16:0/18:1"
+        };
+        for (String name : names) {
+            assertTrue(LipidMassCalculator.computeShorthand(name, composition), name);
+            LipidAdduct lipid = new GoslinVisitorParser().parse(name);
+            calculator.compute(name, composition);
+            assertEquals(lipid.getMass(), composition.getMz(), 0.0, name);
+            assertEquals(lipid.getElements().getMass(), composition.getMonoisotopicMass(), 0.0, name);
+            assertEquals(lipid.getSumFormula(), composition.getSumFormula(), name);
+            assertEquals(lipid.getMass(), calculator.getMz(name), 0.0, name);
+            assertEquals(lipid.getSumFormula(), calculator.getSumFormula(name), name);
+        }
+        calculator.compute("PC 34:1[M+H]1+", composition);
+        assertEquals("C42H83NO8P", composition.getSumFormula());
+        assertEquals(1, composition.getCharge());
+        assertEquals(42, composition.getCount(Element.ELEMENT_C));
+        assertFalse(composition.contains(Element.ELEMENT_S));
+    }
+
+    @Test
+    public void testFallback() throws ParsingException {
+        LipidMassCalculator calculator = new LipidMassCalculator();
+        LipidMassCalculator.Composition composition = new LipidMassCalculator.Composition();
+        for (String name : new String[]{"Cholesterol", "SE 27:1/16:0", "PE 0:0/18:1", "SM d18:1/16:0", "12-HETE[M-H]1-"}) {
+            assertFalse(LipidMassCalculator.computeShorthand(name, new LipidMassCalculator.Composition()), name);
+            LipidAdduct lipid = new GoslinVisitorParser().parse(name);
+            calculator.compute(name, composition);
+            assertEquals(lipid.getMass(), composition.getMz(), 0.0, name);
+            assertEquals(lipid.getSumFormula(), composition.getSumFormula(), name);
+        }
+        assertThrows(ParsingException.class, () -> {
+            calculator.compute("PC 34:1 foo", composition);
+        });
+        assertThrows(ParsingException.class, () -> {
+            calculator.compute("XYZ 34:1", composition);
+        });
+        assertThrows(ParsingException.class, () -> {
+            calculator.compute("DG 16:0/18:1", composition);
+        });
+    }
+
+    @Test
+    public void testRejectsDisallowedNumberOfChains() {
+        LipidMassCalculator calculator = new LipidMassCalculator();
+        LipidMassCalculator.Composition composition = new LipidMassCalculator.Composition();
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        for (String name : new String[]{"TAG 16:0/18:1", "TAG 16:0_18:1[M+NH4]1+", "LPC 16:0/18:1", "LPE 16:0_18:1[M-H]1-", "DAG 16:0/18:1/18:2"}) {
+            assertFalse(LipidMassCalculator.computeShorthand(name, new LipidMassCalculator.Composition()), name);
+            assertThrows(ParsingException.class, () -> {
+                parser.parse(name);
+            }, name);
+            assertThrows(ParsingException.class, () -> {
+                calculator.compute(name, composition);
+            }, name);
+        }
+    }
+
+    @Test
+    public void testGoslinTestNames() throws IOException {
+        LipidMassCalculator calculator = new LipidMassCalculator();
+        LipidMassCalculator.Composition composition = new LipidMassCalculator.Composition();
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        List<String> mismatches = new ArrayList<>();
+        int fastPath = 0;
+        int compared = 0;
+        for (String lipidName : TestFiles.readLipidNames("goslin-test.csv")) {
+            for (String adduct : ADDUCTS) {
+                String name = lipidName + adduct;
+                double mass;
+                String sumFormula;
+                try {
+                    LipidAdduct lipid = parser.parse(name);
+                    mass = lipid.getMass();
+                    sumFormula = lipid.getSumFormula();
+                } catch (ParsingException | RuntimeException ex) {
+                    continue;
+                }
+                if (LipidMassCalculator.computeShorthand(name, new LipidMassCalculator.Composition())) {
+                    fastPath++;
+                }
+                try {
+                    calculator.compute(name, composition);
+                } catch (ParsingException | RuntimeException ex) {
+                    mismatches.add(name + ": " + ex.getMessage());
+                    continue;
+                }
+                if (Double.compare(mass, composition.getMz()) != 0 || !sumFormula.equals(composition.getSumFormula())) {
+                    mismatches.add(name + ": " + mass + " " + sumFormula + " != " + composition.getMz() + " " + composition.getSumFormula());
+                }
+                compared++;
+            }
+        }
+        assertTrue(fastPath > compared / 2, fastPath + " of " + compared);
+        assertEquals(0, mismatches.size(), String.join("\n", mismatches));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class MassIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testQuery() throws IOException, ParsingException {
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        LipidAdduct pc = parser.parse("PC 34:1[M+H]1+");
+        LipidAdduct pe = parser.parse("PE 34:1[M+H]1+");
+        MassIndexBuilder builder = new MassIndexBuilder();
+        builder.add(pe);
+        builder.add(pc);
+        builder.add("PC 34:1", "[M+Na]1+", 782.5670);
+        assertEquals(3, builder.size());
+        Path file = tempDir.resolve("library.mzi");
+        builder.write(file);
+
+        try (MassIndex index = MassIndex.open(file)) {
+            assertEquals(3, index.size());
+            assertEquals(2, index.getLipidCount());
+            assertEquals(2, index.getAdductCount());
+            assertTrue(index.getMz(0) < index.getMz(1));
+            assertTrue(index.getMz(1) < index.getMz(2));
+
+            MassIndex.Cursor cursor = index.cursor();
+            assertEquals(1, cursor.query(pc.getMass() + 0.001, 5.0));
+            MassIndex.Name lipidName = cursor.getLipidName();
+            assertTrue(cursor.next());
+            assertTrue(lipidName.contentEquals("PC 34:1"));
+            assertEquals("PC 34:1", lipidName.toString());
+            assertEquals("[M+H]1+", cursor.getAdductName().toString());
+            assertEquals(pc.getMass(), cursor.getMz(), 1e-9);
+            assertTrue(cursor.getPpmError() < 0 && cursor.getPpmError() > -5.0);
+            assertFalse(cursor.next());
+
+            assertEquals(0, cursor.query(pc.getMass() + 0.01, 5.0));
+            assertFalse(cursor.next());
+            assertEquals(3, cursor.query(750.0, 700.0, 800.0));
+            assertTrue(cursor.next());
+            assertEquals("PE 34:1", cursor.getLipidName().toString());
+            assertTrue(cursor.next());
+            assertSame(lipidName, cursor.getLipidName());
+            assertEquals("PC 34:1", lipidName.toString());
+            assertTrue(cursor.next());
+            assertEquals("[M+Na]1+", cursor.getAdductName().toString());
+            assertFalse(cursor.next());
+
+            assertThrows(ConstraintViolationException.class, () -> {
+                cursor.query(Double.NaN, 5.0);
+            });
+        }
+    }
+
+    @Test
+    public void testRandomEntriesMatchLinearScan() throws Exception {
+        Random random = new Random(42);
+        int n = 20000;
+        double[] masses = new double[n];
+        MassIndexBuilder builder = new MassIndexBuilder();
+        for (int i = 0; i < n; i++) {
+            masses[i] = 300 + random.nextDouble() * 700;
+            builder.add("L" + (i % 1000), "A" + (i % 7), masses[i]);
+        }
+        Path file = tempDir.resolve("random.mzi");
+        builder.write(file);
+        try (MassIndex index = MassIndex.open(file)) {
+            for (int i = 1; i < index.size(); i++) {
+                assertTrue(index.getMz(i - 1) <= index.getMz(i));
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    long seed = t;
+                    futures.add(executor.submit(() -> {
+                        Random queries = new Random(seed);
+                        MassIndex.Cursor cursor = index.cursor();
+                        for (int q = 0; q < 200; q++) {
+                            double mz = 300 + queries.nextDouble() * 700;
+                            double tolerance = mz * 20.0 * 1e-6;
+                            int expected = 0;
+                            for (double mass : masses) {
+                                if (mass >= mz - tolerance && mass <= mz + tolerance) {
+                                    expected++;
+                                }
+                            }
+                            assertEquals(expected, cursor.query(mz, 20.0));
+                            int hits = 0;
+                            while (cursor.next()) {
+                                assertTrue(Math.abs(cursor.getPpmError()) <= 20.0 + 1e-9);
+                                assertEquals('L', cursor.getLipidName().charAt(0));
+                                hits++;
+                            }
+                            assertEquals(expected, hits);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testInvalid() throws IOException {
+        MassIndexBuilder builder = new MassIndexBuilder();
+        assertThrows(ConstraintViolationException.class, () -> {
+            builder.add("PC 34:1", "", Double.POSITIVE_INFINITY);
+        });
+        Path file = tempDir.resolve("empty.mzi");
+        builder.write(file);
+        try (MassIndex index = MassIndex.open(file)) {
+            assertEquals(0, index.size());
+            assertEquals(0, index.cursor().query(760.0, 10.0));
+        }
+        Path other = tempDir.resolve("other.mzi");
+        Files.write(other, new byte[64]);
+        assertThrows(ConstraintViolationException.class, () -> {
+            MassIndex.open(other);
+        });
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class Ms1AnnotatorTest {
+
+    private static final Adduct PROTONATED = new Adduct("", "+H", 1, 1);
+    private static final Adduct DEPROTONATED = new Adduct("", "-H", 1, -1);
+
+    private Ms1Annotator.CandidateSpace.CandidateSpaceBuilder space() {
+        return Ms1Annotator.CandidateSpace.builder().
+                adducts(Arrays.asList(PROTONATED, DEPROTONATED)).
+                minChainCarbon(12).maxChainCarbon(26).
+                minChainDoubleBonds(0).maxChainDoubleBonds(6);
+    }
+
+    @Test
+    public void testCandidatesMatchParsedLipids() throws ParsingException {
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        List<LipidAdduct> pcs = Ms1Annotator.generateCandidates(space().lipidClasses(EnumSet.of(LipidClass.PC)).build());
+        // 29 carbon totals with up to 12 double bonds each, times two adducts
+        assertEquals(29 * 13 * 2, pcs.size());
+        LipidAdduct pc = parser.parse("PC 34:1[M+H]1+");
+        LipidAdduct candidate = pcs.stream().filter((t) -> t.getLipidString().equals(pc.getLipidString())).findFirst().get();
+        assertEquals(pc.getMass(), candidate.getMass(), 1e-6);
+        assertEquals(pc.getSumFormula(), candidate.getSumFormula());
+
+        List<LipidAdduct> cers = Ms1Annotator.generateCandidates(space().lipidClasses(EnumSet.of(LipidClass.CER)).
+                minHydroxy(2).maxHydroxy(2).build());
+        LipidAdduct cer = parser.parse("Cer 34:1;2[M+H]1+");
+        LipidAdduct cerCandidate = cers.stream().filter((t) -> t.getLipidString().equals(cer.getLipidString())).findFirst().get();
+        assertEquals(cer.getMass(), cerCandidate.getMass(), 1e-6);
+
+        assertThrows(ConstraintViolationException.class, () -> {
+            Ms1Annotator.generateCandidates(space().lipidClasses(EnumSet.of(LipidClass.PC)).minChainCarbon(30).build());
+        });
+    }
+
+    @Test
+    public void testAnnotate() throws ParsingException {
+        Ms1Annotator annotator = new Ms1Annotator(space().lipidClasses(EnumSet.of(LipidClass.PC, LipidClass.PE)).build());
+        for (int i = 1; i < annotator.size(); i++) {
+            LipidAdduct previous = annotator.getCandidate(i - 1);
+            LipidAdduct current = annotator.getCandidate(i);
+            if (previous.getAdduct().getCharge() == current.getAdduct().getCharge()) {
+                assertTrue(annotator.getCandidateMz(i - 1) <= annotator.getCandidateMz(i));
+            } else {
+                assertTrue(previous.getAdduct().getCharge() < current.getAdduct().getCharge());
+            }
+        }
+        LipidAdduct pc = new GoslinVisitorParser().parse("PC 34:1[M+H]1+");
+        LipidAdduct pe = new GoslinVisitorParser().parse("PE 34:1[M-H]1-");
+        double[] peakMz = new double[]{pc.getMass() + 0.001, 100.0, pe.getMass() - 0.001, pc.getMass()};
+        int[] peakCharges = new int[]{1, 1, -1, -1};
+        List<Ms1Annotator.Annotation> annotations = annotator.annotate(peakMz, peakCharges, 5.0);
+        // PC and PE species differing by three methylene groups are isobaric and keep the candidate order
+        assertEquals(Arrays.asList("PC 34:1[M+H]1+", "PE 37:1[M+H]1+", "PC 31:1[M-H]1-", "PE 34:1[M-H]1-", "PC 34:0[M-H]1-", "PE 37:0[M-H]1-"),
+                annotations.stream().map((t) -> t.getLipidAdduct().getLipidString()).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(0, 0, 2, 2, 3, 3),
+                annotations.stream().map(Ms1Annotator.Annotation::getPeakIndex).collect(Collectors.toList()));
+        assertTrue(annotations.get(0).getPpmError() < 0);
+        assertTrue(annotations.get(2).getPpmError() > 0);
+
+        assertThrows(ConstraintViolationException.class, () -> {
+            annotator.annotate(peakMz, new int[]{1}, 5.0);
+        });
+    }
+
+    @Test
+    public void testAnnotateMatchesBruteForce() {
+        Ms1Annotator annotator = new Ms1Annotator(space().lipidClasses(EnumSet.of(LipidClass.PC, LipidClass.PE, LipidClass.TAG, LipidClass.CER)).
+                minHydroxy(0).maxHydroxy(2).build());
+        Random random = new Random(42);
+        int n = 2000;
+        double[] peakMz = new double[n];
+        int[] peakCharges = new int[n];
+        for (int i = 0; i < n; i++) {
+            int candidate = random.nextInt(annotator.size());
+            peakMz[i] = random.nextBoolean() ? annotator.getCandidateMz(candidate) * (1 + (random.nextDouble() - 0.5) * 2e-5) : 200 + random.nextDouble() * 1000;
+            peakCharges[i] = random.nextBoolean() ? 1 : -1;
+        }
+        List<Ms1Annotator.Annotation> annotations = annotator.annotate(peakMz, peakCharges, 10.0);
+        int expected = 0;
+        for (int i = 0; i < n; i++) {
+            double tolerance = peakMz[i] * 10.0 * 1e-6;
+            for (int j = 0; j < annotator.size(); j++) {
+                if (annotator.getCandidate(j).getAdduct().getCharge() == peakCharges[i]
+                        && Math.abs(annotator.getCandidateMz(j) - peakMz[i]) <= tolerance) {
+                    expected++;
+                }
+            }
+        }
+        assertEquals(expected, annotations.size());
+        for (int i = 1; i < annotations.size(); i++) {
+            assertTrue(annotations.get(i - 1).getPeakIndex() <= annotations.get(i).getPeakIndex());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mass;
+
+import de.isas.lipidomics.domain.ElementTable;
+import de.isas.lipidomics.domain.LipidClass;
+import de.isas.lipidomics.domain.LipidFaBondType;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidSpeciesInfo;
+import de.isas.lipidomics.palinom.TestFiles;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class SumFormulaIndexTest {
+
+    @Test
+    public void testLookup() throws ParsingException {
+        SumFormulaIndex index = new SumFormulaIndex();
+        assertTrue(index.size() > 0);
+        List<LipidSpecies> candidates = index.lookup("C42H82NO8P");
+        List<String> names = candidates.stream().map((lipid) -> {
+            return lipid.getLipidString();
+        }).collect(Collectors.toList());
+        assertTrue(names.contains("PC 34:1"), names.toString());
+        assertTrue(names.contains("PE 37:1"), names.toString());
+        for (LipidSpecies candidate : candidates) {
+            assertEquals("C42H82NO8P", candidate.getElements().getSumFormula(), candidate.getLipidString());
+            assertEquals(LipidLevel.SPECIES, candidate.getInfo().getLevel());
+        }
+        List<String> ceramides = index.lookup(new GoslinVisitorParser().parse("Cer 18:1;2/16:0").getLipid().getElements()).stream().map((lipid) -> {
+            return lipid.getLipidString();
+        }).collect(Collectors.toList());
+        assertTrue(ceramides.contains("Cer 34:1;2"), ceramides.toString());
+        assertTrue(index.lookup("C2H6O").isEmpty());
+        assertTrue(index.lookup("C42H82NO8PS40").isEmpty());
+        assertThrows(ParsingException.class, () -> {
+            index.lookup("C42Xy");
+        });
+    }
+
+    @Test
+    public void testClassesWithoutChains() throws ParsingException {
+        SumFormulaIndex index = new SumFormulaIndex(Arrays.asList(LipidClass.values()));
+        List<LipidClass> classes = index.lookup("C20H30O3").stream().map((lipid) -> {
+            return lipid.getHeadGroup().getLipidClass();
+        }).collect(Collectors.toList());
+        assertTrue(classes.contains(LipidClass.FA_12_HEPE), classes.toString());
+        assertTrue(new SumFormulaIndex(Arrays.asList(LipidClass.PC)).lookup("C20H30O3").isEmpty());
+    }
+
+    @Test
+    public void testBatch() {
+        SumFormulaIndex index = new SumFormulaIndex();
+        List<List<LipidSpecies>> candidates = index.lookup(Arrays.asList("C42H82NO8P", "no formula", "C2H6O"));
+        assertEquals(3, candidates.size());
+        assertTrue(candidates.get(0).size() > 1);
+        assertTrue(candidates.get(1).isEmpty());
+        assertTrue(candidates.get(2).isEmpty());
+    }
+
+    @Test
+    public void testGoslinTestNames() throws IOException {
+        SumFormulaIndex index = new SumFormulaIndex();
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        List<String> missing = new ArrayList<>();
+        int found = 0;
+        for (String lipidName : TestFiles.readLipidNames("goslin-test.csv")) {
+            LipidSpecies species;
+            ElementTable elements;
+            try {
+                LipidSpecies lipid = parser.parse(lipidName).getLipid();
+                if (lipid.getInfo().getLevel().compareTo(LipidLevel.SPECIES) < 0 || lipid.getFa().isEmpty() && lipid.getInfo().getLevel() != LipidLevel.SPECIES) {
+                    continue;
+                }
+                species = parser.parse(lipid.getLipidString(LipidLevel.SPECIES)).getLipid();
+                elements = species.getElements();
+            } catch (ParsingException | RuntimeException ex) {
+                continue;
+            }
+            LipidSpeciesInfo info = species.getInfo();
+            if (info.getLipidFaBondType() == LipidFaBondType.ETHER_UNSPECIFIED) {
+                continue;
+            }
+            List<LipidSpecies> candidates = index.lookup(elements);
+            boolean match = candidates.stream().anyMatch((candidate) -> {
+                LipidSpeciesInfo candidateInfo = candidate.getInfo();
+                return candidate.getHeadGroup().getLipidClass() == species.getHeadGroup().getLipidClass()
+                        && candidateInfo.getNCarbon() == info.getNCarbon()
+                        && candidateInfo.getNDoubleBonds() == info.getNDoubleBonds()
+                        && candidateInfo.getNHydroxy() == info.getNHydroxy()
+                        && candidateInfo.getLipidFaBondType() == info.getLipidFaBondType();
+            });
+            if (match) {
+                found++;
+            } else {
+                missing.add(lipidName + " -> " + species.getLipidString() + " " + elements.getSumFormula());
+            }
+            for (LipidSpecies candidate : candidates) {
+                assertEquals(elements.getSumFormula(), candidate.getElements().getSumFormula(), lipidName + " -> " + candidate.getLipidString());
+            }
+        }
+        assertTrue(found > 1000, Integer.toString(found));
+        assertEquals(0, missing.size(), String.join("\n", missing));
+    }
+}
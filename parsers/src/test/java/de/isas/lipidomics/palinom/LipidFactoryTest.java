@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom;
+
+import de.isas.lipidomics.domain.FattyAcid;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidIsomericSubspecies;
+import de.isas.lipidomics.domain.LipidLevel;
+import de.isas.lipidomics.domain.LipidMolecularSubspecies;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.domain.LipidStructuralSubspecies;
+import de.isas.lipidomics.palinom.exceptions.ConstraintViolationException;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import de.isas.lipidomics.palinom.goslinfragments.GoslinFragmentsVisitorParser;
+import de.isas.lipidomics.palinom.hmdb.HmdbVisitorParser;
+import de.isas.lipidomics.palinom.lipidmaps.LipidMapsVisitorParser;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LipidFactoryTest {
+
+    @Test
+    public void testSpeciesLevel() throws ParsingException {
+        LipidAdduct full = new GoslinVisitorParser().parse("PC 16:0/18:1");
+        LipidAdduct species = new GoslinVisitorParser(LipidFactory.SPECIES).parse("PC 16:0/18:1");
+        LipidAdduct speciesName = new GoslinVisitorParser().parse("PC 34:1");
+        assertTrue(full.getLipid() instanceof LipidMolecularSubspecies);
+        assertFalse(species.getLipid() instanceof LipidMolecularSubspecies);
+        assertEquals(LipidLevel.SPECIES, species.getLipid().getInfo().getLevel());
+        assertEquals("PC 34:1", species.getLipidString());
+        assertEquals(speciesName.getLipid().getInfo(), species.getLipid().getInfo());
+        assertEquals(full.getMass(), species.getMass(), 1e-6);
+
+        LipidAdduct cer = new GoslinVisitorParser(LipidFactory.SPECIES).parse("Cer 18:1;2/16:0");
+        LipidAdduct cerName = new GoslinVisitorParser().parse("Cer 34:1;2");
+        assertEquals("Cer 34:1;2", cer.getLipidString());
+        assertEquals(cerName.getLipid().getInfo(), cer.getLipid().getInfo());
+        assertEquals(cerName.getMass(), cer.getMass(), 1e-6);
+
+        LipidAdduct ether = new SwissLipidsVisitorParser(LipidFactory.SPECIES).parse("PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))");
+        assertEquals(new SwissLipidsVisitorParser().parse("PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))").getLipid().getLipidString(LipidLevel.SPECIES), ether.getLipidString());
+    }
+
+    @Test
+    public void testForLevel() {
+        assertSame(LipidFactory.FULL, LipidFactory.forLevel(LipidLevel.ISOMERIC_SUBSPECIES));
+        assertSame(LipidFactory.STRUCTURAL, LipidFactory.forLevel(LipidLevel.STRUCTURAL_SUBSPECIES));
+        assertSame(LipidFactory.MOLECULAR, LipidFactory.forLevel(LipidLevel.MOLECULAR_SUBSPECIES));
+        assertSame(LipidFactory.SPECIES, LipidFactory.forLevel(LipidLevel.SPECIES));
+        assertSame(LipidFactory.SPECIES, LipidFactory.forLevel(LipidLevel.CLASS));
+        assertThrows(ConstraintViolationException.class, () -> {
+            LipidFactory.forLevel(LipidLevel.UNDEFINED);
+        });
+    }
+
+    @Test
+    public void testCollapseLevels() throws ParsingException {
+        String lipidName = "PC(18:1(9Z)/22:6(4Z,7Z,10Z,13Z,16Z,19Z))";
+        LipidAdduct full = new SwissLipidsVisitorParser().parse(lipidName);
+        assertTrue(full.getLipid() instanceof LipidIsomericSubspecies);
+
+        LipidAdduct structural = new SwissLipidsVisitorParser(LipidFactory.STRUCTURAL).parse(lipidName);
+        assertTrue(structural.getLipid() instanceof LipidStructuralSubspecies);
+        assertFalse(structural.getLipid() instanceof LipidIsomericSubspecies);
+        assertEquals(LipidLevel.STRUCTURAL_SUBSPECIES, structural.getLipid().getInfo().getLevel());
+        assertEquals("PC 18:1/22:6", structural.getLipidString());
+        for (FattyAcid fa : structural.getLipid().getFa().values()) {
+            assertTrue(fa.getDoubleBondPositions().isEmpty());
+        }
+        assertEquals(full.getMass(), structural.getMass(), 1e-6);
+
+        LipidAdduct molecular = new SwissLipidsVisitorParser(LipidFactory.MOLECULAR).parse(lipidName);
+        assertFalse(molecular.getLipid() instanceof LipidStructuralSubspecies);
+        assertEquals(LipidLevel.MOLECULAR_SUBSPECIES, molecular.getLipid().getInfo().getLevel());
+        LipidAdduct molecularName = new SwissLipidsVisitorParser().parse("PC(18:1_22:6)");
+        assertEquals(molecularName.getLipidString(), molecular.getLipidString());
+        assertEquals(full.getMass(), molecular.getMass(), 1e-6);
+        assertEquals(molecularName.getLipid().getInfo(), molecular.getLipid().getInfo());
+    }
+
+    @Test
+    public void testCollapseTestFiles() throws IOException {
+        for (LipidLevel level : new LipidLevel[]{LipidLevel.STRUCTURAL_SUBSPECIES, LipidLevel.MOLECULAR_SUBSPECIES}) {
+            assertCollapsedMatchFull("goslin-test.csv", (f) -> new GoslinVisitorParser(f), level);
+            assertCollapsedMatchFull("lipid-maps-test.csv", (f) -> new LipidMapsVisitorParser(f), level);
+            assertCollapsedMatchFull("swiss-lipids-test.csv", (f) -> new SwissLipidsVisitorParser(f), level);
+            assertCollapsedMatchFull("hmdb-test.csv", (f) -> new HmdbVisitorParser(f), level);
+        }
+    }
+
+    @Test
+    public void testGoslin() throws IOException {
+        assertSpeciesMatchFull("goslin-test.csv", (f) -> new GoslinVisitorParser(f));
+    }
+
+    @Test
+    public void testGoslinFragments() throws IOException {
+        assertSpeciesMatchFull("goslin-test.csv", (f) -> new GoslinFragmentsVisitorParser(f));
+    }
+
+    @Test
+    public void testLipidMaps() throws IOException {
+        assertSpeciesMatchFull("lipid-maps-test.csv", (f) -> new LipidMapsVisitorParser(f));
+    }
+
+    @Test
+    public void testSwissLipids() throws IOException {
+        assertSpeciesMatchFull("swiss-lipids-test.csv", (f) -> new SwissLipidsVisitorParser(f));
+    }
+
+    @Test
+    public void testHmdb() throws IOException {
+        assertSpeciesMatchFull("hmdb-test.csv", (f) -> new HmdbVisitorParser(f));
+    }
+
+    private void assertSpeciesMatchFull(String testFile, Function<LipidFactory, VisitorParser<LipidAdduct>> parserFactory) throws IOException {
+        VisitorParser<LipidAdduct> fullParser = parserFactory.apply(LipidFactory.FULL);
+        VisitorParser<LipidAdduct> speciesParser = parserFactory.apply(LipidFactory.SPECIES);
+        VisitorParser<LipidAdduct> goslinParser = new GoslinVisitorParser();
+        List<String> mismatches = new ArrayList<>();
+        int compared = 0;
+        for (String lipidName : TestFiles.readLipidNames(testFile)) {
+            LipidAdduct full;
+            try {
+                full = fullParser.parse(lipidName);
+            } catch (ParsingException | RuntimeException ex) {
+                continue;
+            }
+            LipidAdduct species;
+            try {
+                species = speciesParser.parse(lipidName);
+            } catch (ParsingException | RuntimeException ex) {
+                mismatches.add(lipidName + ": " + ex.getMessage());
+                continue;
+            }
+            LipidSpecies lipid = species.getLipid();
+            String expected = full.getLipid().getLipidString(LipidLevel.SPECIES);
+            if (!expected.equals(lipid.getLipidString(LipidLevel.SPECIES))) {
+                mismatches.add(lipidName + ": " + expected + " != " + lipid.getLipidString(LipidLevel.SPECIES));
+                continue;
+            }
+            // species names and subspecies without fatty acyls, e.g. mediators, are not collapsed
+            if (!(full.getLipid() instanceof LipidMolecularSubspecies) || full.getLipid().getFa().isEmpty()) {
+                compared++;
+                continue;
+            }
+            assertEquals(LipidLevel.SPECIES, lipid.getInfo().getLevel(), lipidName);
+            LipidAdduct reparsed;
+            try {
+                reparsed = goslinParser.parse(expected);
+            } catch (ParsingException | RuntimeException ex) {
+                compared++;
+                continue;
+            }
+            double expectedMass = mass(reparsed);
+            double mass = mass(species);
+            if (!Double.isNaN(expectedMass) && Math.abs(expectedMass - mass) > 1e-6) {
+                mismatches.add(lipidName + ": mass " + expectedMass + " != " + mass);
+                continue;
+            }
+            compared++;
+        }
+        assertTrue(compared > 0);
+        assertEquals(0, mismatches.size(), String.join("\n", mismatches));
+    }
+
+    private void assertCollapsedMatchFull(String testFile, Function<LipidFactory, VisitorParser<LipidAdduct>> parserFactory, LipidLevel level) throws IOException {
+        VisitorParser<LipidAdduct> fullParser = parserFactory.apply(LipidFactory.FULL);
+        VisitorParser<LipidAdduct> collapsingParser = parserFactory.apply(LipidFactory.forLevel(level));
+        List<String> mismatches = new ArrayList<>();
+        int collapsed = 0;
+        for (String lipidName : TestFiles.readLipidNames(testFile)) {
+            LipidAdduct full;
+            try {
+                full = fullParser.parse(lipidName);
+            } catch (ParsingException | RuntimeException ex) {
+                continue;
+            }
+            LipidAdduct lipid;
+            try {
+                lipid = collapsingParser.parse(lipidName);
+            } catch (ParsingException | RuntimeException ex) {
+                mismatches.add(lipidName + ": " + ex.getMessage());
+                continue;
+            }
+            LipidLevel fullLevel = full.getLipid().getInfo().getLevel();
+            if (fullLevel.compareTo(level) <= 0 || full.getLipid().getFa().isEmpty()) {
+                continue;
+            }
+            // the fatty acyl names of isomeric subspecies keep their double bond positions on all levels, so the fatty acyls are compared
+            String expected = full.getLipid().getLipidString(LipidLevel.SPECIES);
+            if (!(full.getLipid() instanceof LipidMolecularSubspecies) || lipid.getLipid().getInfo().getLevel() != level) {
+                mismatches.add(lipidName + ": level " + lipid.getLipid().getInfo().getLevel() + " != " + level);
+            } else if (!expected.equals(lipid.getLipid().getLipidString(LipidLevel.SPECIES))) {
+                mismatches.add(lipidName + ": " + expected + " != " + lipid.getLipid().getLipidString(LipidLevel.SPECIES));
+            } else if (!collapsedFa(full.getLipid(), level).equals(lipid.getLipid().getFa().values().stream().map((fa) -> faString(fa)).collect(Collectors.toList()))) {
+                mismatches.add(lipidName + ": " + collapsedFa(full.getLipid(), level) + " != " + lipid.getLipid().getFa().values());
+            } else if (Double.compare(mass(full), mass(lipid)) != 0) {
+                mismatches.add(lipidName + ": mass " + mass(full) + " != " + mass(lipid));
+            } else {
+                collapsed++;
+            }
+        }
+        assertTrue(collapsed > 0, testFile + " " + level);
+        assertEquals(0, mismatches.size(), String.join("\n", mismatches));
+    }
+
+    private List<String> collapsedFa(LipidSpecies lipid, LipidLevel level) {
+        return lipid.getFa().values().stream().map((fa) -> {
+            return faString(level == LipidLevel.MOLECULAR_SUBSPECIES ? -1 : fa.getPosition(), fa, Collections.emptyMap());
+        }).collect(Collectors.toList());
+    }
+
+    private String faString(FattyAcid fa) {
+        return faString(fa.getPosition(), fa, fa.getDoubleBondPositions());
+    }
+
+    private String faString(int position, FattyAcid fa, Map<Integer, String> doubleBondPositions) {
+        return position + " " + fa.getNCarbon() + ":" + fa.getNDoubleBonds() + ";" + fa.getNHydroxy() + " " + fa.getLipidFaBondType() + " " + fa.isLcb() + " " + doubleBondPositions;
+    }
+
+    private double mass(LipidAdduct lipid) {
+        try {
+            return lipid.getMass();
+        } catch (RuntimeException ex) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the lipid name test files for tests that check a whole file at once,
+ * e.g. to count or collect mismatches, instead of one name per test.
+ *
+ * @author nils.hoffmann
+ */
+public final class TestFiles {
+
+    private TestFiles() {
+
+    }
+
+    /**
+     * Reads the lipid names, i.e. the first tab separated column of the
+     * non-empty lines, from a file in the testfiles resource directory.
+     *
+     * @param testFile the file name, e.g. goslin-test.csv.
+     * @return the lipid names.
+     * @throws IOException if the file does not exist or can not be read.
+     */
+    public static List<String> readLipidNames(String testFile) throws IOException {
+        String resource = "/de/isas/lipidomics/palinom/testfiles/" + testFile;
+        InputStream in = TestFiles.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Test file " + resource + " does not exist!");
+        }
+        List<String> lipidNames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lipidNames.add(line.split("\t")[0]);
+                }
+            }
+        }
+        return lipidNames;
+    }
+}
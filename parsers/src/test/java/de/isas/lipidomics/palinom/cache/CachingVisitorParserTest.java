@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.cache;
+
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.palinom.SyntaxErrorListener;
+import de.isas.lipidomics.palinom.VisitorParser;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class CachingVisitorParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Stores the lipid name and parses it again on decoding.
+     */
+    private static final class NameCodec implements ResultCodec<LipidAdduct> {
+
+        private final GoslinVisitorParser parser = new GoslinVisitorParser();
+        private final AtomicInteger decoded = new AtomicInteger();
+
+        @Override
+        public byte[] encode(LipidAdduct result) {
+            return result.getLipidString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public LipidAdduct decode(byte[] bytes) throws IOException {
+            decoded.incrementAndGet();
+            try {
+                return parser.parse(new String(bytes, StandardCharsets.UTF_8));
+            } catch (ParsingException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    @Test
+    public void testParseFromCache() throws IOException, ParsingException {
+        AtomicInteger parsed = new AtomicInteger();
+        GoslinVisitorParser goslin = new GoslinVisitorParser();
+        VisitorParser<LipidAdduct> counting = (String lipidString, SyntaxErrorListener listener) -> {
+            parsed.incrementAndGet();
+            return goslin.parse(lipidString, listener);
+        };
+        NameCodec codec = new NameCodec();
+        Path file = tempDir.resolve("cache.bin");
+        LipidAdduct expected = goslin.parse("PE O-16:1p/18:1");
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            CachingVisitorParser<LipidAdduct> parser = new CachingVisitorParser<>(counting, "GOSLIN", cache, codec);
+            assertEquals(expected, parser.parse("PE O-16:1p/18:1"));
+            assertEquals(expected, parser.parse("PE O-16:1p/18:1"));
+            assertEquals(1, parsed.get());
+            assertEquals(1, codec.decoded.get());
+            assertEquals(1, cache.size());
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            CachingVisitorParser<LipidAdduct> parser = new CachingVisitorParser<>(counting, "GOSLIN", cache, codec);
+            assertEquals(expected, parser.parse("PE O-16:1p/18:1"));
+            assertEquals(1, parsed.get());
+            assertEquals(2, codec.decoded.get());
+        }
+    }
+
+    @Test
+    public void testFailuresAreCached() throws IOException {
+        AtomicInteger parsed = new AtomicInteger();
+        GoslinVisitorParser goslin = new GoslinVisitorParser();
+        VisitorParser<LipidAdduct> counting = (String lipidString, SyntaxErrorListener listener) -> {
+            parsed.incrementAndGet();
+            return goslin.parse(lipidString, listener);
+        };
+        SyntaxErrorListener expectedListener = new SyntaxErrorListener();
+        ParsingException expected = assertThrows(ParsingException.class, () -> {
+            goslin.parse("PE 16:1/", expectedListener);
+        });
+        assertFalse(expectedListener.getSyntaxErrors().isEmpty());
+        Path file = tempDir.resolve("cache.bin");
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            CachingVisitorParser<LipidAdduct> parser = new CachingVisitorParser<>(counting, "GOSLIN", cache, new NameCodec());
+            for (int i = 0; i < 2; i++) {
+                SyntaxErrorListener listener = new SyntaxErrorListener();
+                ParsingException ex = assertThrows(ParsingException.class, () -> {
+                    parser.parse("PE 16:1/", listener);
+                });
+                assertEquals(expected.getMessage(), ex.getMessage());
+                assertEquals(messages(expectedListener), messages(listener));
+            }
+            assertEquals(1, parsed.get());
+            assertEquals(1, cache.size());
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            CachingVisitorParser<LipidAdduct> parser = new CachingVisitorParser<>(counting, "GOSLIN", cache, new NameCodec());
+            SyntaxErrorListener listener = new SyntaxErrorListener();
+            ParsingException ex = assertThrows(ParsingException.class, () -> {
+                parser.parse("PE 16:1/", listener);
+            });
+            assertEquals(expected.getMessage(), ex.getMessage());
+            assertEquals(messages(expectedListener), messages(listener));
+            assertEquals(expectedListener.getErrorString().replace("Goslin.g4", "unknown"), listener.getErrorString());
+            assertEquals(1, parsed.get());
+        }
+    }
+
+    private static List<String> messages(SyntaxErrorListener listener) {
+        return listener.getSyntaxErrors().stream().map((error) -> {
+            return error.getLine() + ":" + error.getCharPositionInLine() + " " + error.getOffendingSymbol() + " " + error.getMessage();
+        }).collect(Collectors.toList());
+    }
+}
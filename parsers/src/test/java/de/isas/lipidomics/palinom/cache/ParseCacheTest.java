@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class ParseCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPutGetAndReopen() throws IOException {
+        Path file = tempDir.resolve("cache.bin");
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            assertTrue(cache.isWritable());
+            assertFalse(cache.get("GOSLIN", "PC 32:0").isPresent());
+            assertTrue(cache.put("GOSLIN", "PC 32:0", bytes("PC 32:0")));
+            assertTrue(cache.put("LIPIDMAPS", "PC 32:0", bytes("PC 32:0 (LM)")));
+            assertTrue(cache.put("GOSLIN", "PE 34:1", new byte[0]));
+            assertArrayEquals(bytes("PC 32:0"), cache.get("GOSLIN", "PC 32:0").get());
+            assertArrayEquals(bytes("PC 32:0 (LM)"), cache.get("LIPIDMAPS", "PC 32:0").get());
+            assertArrayEquals(new byte[0], cache.get("GOSLIN", "PE 34:1").get());
+            assertEquals(3, cache.size());
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            assertEquals(3, cache.size());
+            assertEquals(0, cache.getStaleRecordCount());
+            assertArrayEquals(bytes("PC 32:0"), cache.get("GOSLIN", "PC 32:0").get());
+            assertTrue(cache.put("GOSLIN", "PC 32:0", bytes("PC 32:0 updated")));
+            assertArrayEquals(bytes("PC 32:0 updated"), cache.get("GOSLIN", "PC 32:0").get());
+            assertEquals(1, cache.getStaleRecordCount());
+        }
+    }
+
+    @Test
+    public void testClosedCache() throws IOException {
+        Path file = tempDir.resolve("cache.bin");
+        ParseCache cache = ParseCache.open(file, "1.0");
+        cache.put("GOSLIN", "PC 32:0", bytes("PC 32:0"));
+        ParseCache reader = ParseCache.openReadOnly(file, "1.0");
+        assertEquals(1, reader.size());
+        cache.close();
+        reader.close();
+        for (ParseCache closed : new ParseCache[]{cache, reader}) {
+            assertEquals(0, closed.size());
+            assertThrows(IllegalStateException.class, () -> {
+                closed.get("GOSLIN", "PC 32:0");
+            });
+            // closing twice is allowed
+            closed.close();
+        }
+        assertThrows(IllegalStateException.class, () -> {
+            cache.put("GOSLIN", "PE 34:1", bytes("PE 34:1"));
+        });
+        assertThrows(IllegalStateException.class, () -> {
+            reader.refresh();
+        });
+        assertThrows(IllegalStateException.class, () -> {
+            cache.compact();
+        });
+    }
+
+    @Test
+    public void testFailedCompactionKeepsCache() throws IOException {
+        Path file = tempDir.resolve("cache.bin");
+        // a directory in place of the temporary file makes the compaction fail
+        Files.createDirectories(tempDir.resolve("cache.bin.compact").resolve("blocked"));
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            cache.put("GOSLIN", "PC 32:0", bytes("old"));
+            cache.put("GOSLIN", "PC 32:0", bytes("new"));
+            assertThrows(IOException.class, () -> {
+                cache.compact();
+            });
+            assertEquals(1, cache.size());
+            assertEquals(1, cache.getStaleRecordCount());
+            assertArrayEquals(bytes("new"), cache.get("GOSLIN", "PC 32:0").get());
+            assertTrue(cache.put("GOSLIN", "PE 34:1", bytes("PE 34:1")));
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void testVersionIsolationAndCompaction() throws IOException {
+        Path file = tempDir.resolve("cache.bin");
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            cache.put("GOSLIN", "PC 32:0", bytes("old"));
+            cache.put("GOSLIN", "PE 34:1", bytes("old"));
+        }
+        try (ParseCache cache = ParseCache.open(file, "2.0")) {
+            assertEquals(0, cache.size());
+            assertEquals(2, cache.getStaleRecordCount());
+            assertFalse(cache.get("GOSLIN", "PC 32:0").isPresent());
+            cache.put("GOSLIN", "PC 32:0", bytes("new"));
+            cache.put("GOSLIN", "PC 32:0", bytes("newer"));
+            cache.compact();
+            assertEquals(1, cache.size());
+            assertEquals(0, cache.getStaleRecordCount());
+            assertArrayEquals(bytes("newer"), cache.get("GOSLIN", "PC 32:0").get());
+            cache.put("GOSLIN", "PE 34:1", bytes("new"));
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            assertEquals(0, cache.size());
+            assertEquals(2, cache.getStaleRecordCount());
+        }
+        try (ParseCache cache = ParseCache.open(file, "2.0")) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(bytes("newer"), cache.get("GOSLIN", "PC 32:0").get());
+            assertArrayEquals(bytes("new"), cache.get("GOSLIN", "PE 34:1").get());
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        Path file = tempDir.resolve("cache.bin");
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            cache.put("GOSLIN", "PC 32:0", bytes("PC 32:0"));
+            cache.put("GOSLIN", "PE 34:1", bytes("PE 34:1"));
+        }
+        // corrupt the body of the second record, as if the process died while writing it
+        long secondRecord;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, ParseCache.HEADER_SIZE);
+            length.flip();
+            secondRecord = ParseCache.HEADER_SIZE + ParseCache.RECORD_HEADER_SIZE + length.getInt();
+            channel.write(ByteBuffer.wrap(new byte[]{42, 42, 42, 42}), secondRecord + ParseCache.RECORD_HEADER_SIZE + 12);
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(bytes("PC 32:0"), cache.get("GOSLIN", "PC 32:0").get());
+            assertFalse(cache.get("GOSLIN", "PE 34:1").isPresent());
+            cache.put("GOSLIN", "PE 34:1", bytes("PE 34:1"));
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(bytes("PE 34:1"), cache.get("GOSLIN", "PE 34:1").get());
+        }
+    }
+
+    @Test
+    public void testSecondWriterIsReadOnly() throws IOException {
+        Path file = tempDir.resolve("cache.bin");
+        try (ParseCache writer = ParseCache.open(file, "1.0")) {
+            writer.put("GOSLIN", "PC 32:0", bytes("PC 32:0"));
+            try (ParseCache reader = ParseCache.open(file, "1.0")) {
+                assertFalse(reader.isWritable());
+                assertFalse(reader.put("GOSLIN", "PE 34:1", bytes("PE 34:1")));
+                assertArrayEquals(bytes("PC 32:0"), reader.get("GOSLIN", "PC 32:0").get());
+                writer.put("GOSLIN", "PE 34:1", bytes("PE 34:1"));
+                assertFalse(reader.get("GOSLIN", "PE 34:1").isPresent());
+                assertEquals(1, reader.refresh());
+                assertArrayEquals(bytes("PE 34:1"), reader.get("GOSLIN", "PE 34:1").get());
+            }
+        }
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() throws IOException {
+        Path file = tempDir.resolve("cache.bin");
+        byte[] value = new byte[4096];
+        int n = 2 * ParseCache.INITIAL_CAPACITY / value.length;
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            for (int i = 0; i < n; i++) {
+                value[0] = (byte) i;
+                assertTrue(cache.put("GOSLIN", "PC " + i + ":0", value));
+            }
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            assertEquals(n, cache.size());
+            Optional<byte[]> last = cache.get("GOSLIN", "PC " + (n - 1) + ":0");
+            assertTrue(last.isPresent());
+            assertEquals((byte) (n - 1), last.get()[0]);
+        }
+    }
+
+    @Test
+    public void testRejectsForeignFile() throws IOException {
+        Path file = tempDir.resolve("foreign.bin");
+        Files.write(file, bytes("this is not a cache file at all"));
+        assertThrows(IOException.class, () -> {
+            ParseCache.open(file, "1.0");
+        });
+    }
+}
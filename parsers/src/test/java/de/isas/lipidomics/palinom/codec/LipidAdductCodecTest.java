@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020  nils.hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.palinom.codec;
+
+import de.isas.lipidomics.domain.Adduct;
+import de.isas.lipidomics.domain.Fragment;
+import de.isas.lipidomics.domain.HeadGroup;
+import de.isas.lipidomics.domain.LipidAdduct;
+import de.isas.lipidomics.domain.LipidSpecies;
+import de.isas.lipidomics.palinom.VisitorParser;
+import de.isas.lipidomics.palinom.cache.CachingVisitorParser;
+import de.isas.lipidomics.palinom.cache.ParseCache;
+import de.isas.lipidomics.palinom.exceptions.ParsingException;
+import de.isas.lipidomics.palinom.goslin.GoslinVisitorParser;
+import de.isas.lipidomics.palinom.goslinfragments.GoslinFragmentsVisitorParser;
+import de.isas.lipidomics.palinom.hmdb.HmdbVisitorParser;
+import de.isas.lipidomics.palinom.lipidmaps.LipidMapsVisitorParser;
+import de.isas.lipidomics.palinom.swisslipids.SwissLipidsVisitorParser;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author nils.hoffmann
+ */
+public class LipidAdductCodecTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static VisitorParser<LipidAdduct> parser(String grammar) {
+        switch (grammar) {
+            case "GOSLIN":
+                return new GoslinVisitorParser();
+            case "GOSLIN_FRAGMENTS":
+                return new GoslinFragmentsVisitorParser();
+            case "LIPIDMAPS":
+                return new LipidMapsVisitorParser();
+            case "SWISSLIPIDS":
+                return new SwissLipidsVisitorParser();
+            case "HMDB":
+                return new HmdbVisitorParser();
+            default:
+                throw new IllegalArgumentException(grammar);
+        }
+    }
+
+    private static void assertRoundTrip(LipidAdduct lipidAdduct) throws IOException {
+        LipidAdduct decoded = LipidAdductCodec.decode(LipidAdductCodec.encode(lipidAdduct));
+        assertEquals(lipidAdduct, decoded);
+        if (lipidAdduct.getLipid() != null) {
+            assertSame(lipidAdduct.getLipid().getClass(), decoded.getLipid().getClass());
+        }
+        assertEquals(lipidAdduct.getLipidString(), decoded.getLipidString());
+        assertEquals(lipidAdduct.getNormalizedLipidString(), decoded.getNormalizedLipidString());
+        assertEquals(lipidAdduct.getSumFormula(), decoded.getSumFormula());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "GOSLIN|PC 32:0",
+        "GOSLIN|TAG 16:0-18:1-18:2[M+H]1+",
+        "GOSLIN|PE O-16:1p/18:1",
+        "GOSLIN|TAG 16:0/20:2(11Z,14Z)/22:4(7Z,10Z,13Z,16Z)",
+        "GOSLIN|SHexCer 18:0;3/26:0;1",
+        "GOSLIN|ChE 12:1",
+        "GOSLIN|Ch",
+        "GOSLIN|11,12-DHET",
+        "GOSLIN_FRAGMENTS|PE 16:1-12:0 - -(H2O)",
+        "LIPIDMAPS|PE(18:0/18:1(11Z))",
+        "LIPIDMAPS|Cer(d18:0/20:0)",
+        "SWISSLIPIDS|PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))",
+        "HMDB|PC(16:0/18:1(9Z))"
+    })
+    public void testRoundTrip(String grammar, String lipidName) throws ParsingException, IOException {
+        assertRoundTrip(parser(grammar).parse(lipidName));
+    }
+
+    @Test
+    public void testNoneAndNull() throws IOException {
+        LipidAdduct none = new LipidAdduct(LipidSpecies.NONE, Adduct.NONE, Fragment.NONE);
+        LipidAdduct decoded = LipidAdductCodec.decode(LipidAdductCodec.encode(none));
+        assertSame(LipidSpecies.NONE, decoded.getLipid());
+        assertSame(Adduct.NONE, decoded.getAdduct());
+        assertSame(Fragment.NONE, decoded.getFragment());
+        LipidAdduct classOnly = new LipidAdduct(new LipidSpecies(new HeadGroup("PC")), null, null);
+        assertRoundTrip(classOnly);
+    }
+
+    @Test
+    public void testStreamWithDictionary() throws IOException {
+        List<String> names;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/de/isas/lipidomics/palinom/wenk-lipids.txt"), StandardCharsets.UTF_8))) {
+            names = reader.lines().filter((t) -> !t.isEmpty()).collect(Collectors.toList());
+        }
+        GoslinVisitorParser parser = new GoslinVisitorParser();
+        List<LipidAdduct> lipids = new ArrayList<>();
+        for (String name : names) {
+            try {
+                lipids.add(parser.parse(name));
+            } catch (ParsingException ex) {
+                // only round trips of parseable names are tested here
+            }
+        }
+        assertTrue(lipids.size() > 50);
+        ByteArrayOutputStream withDictionary = new ByteArrayOutputStream();
+        try (LipidAdductEncoder encoder = new LipidAdductEncoder(withDictionary)) {
+            for (LipidAdduct lipid : lipids) {
+                encoder.write(lipid);
+            }
+        }
+        int withoutDictionary = lipids.stream().mapToInt((t) -> LipidAdductCodec.encode(t).length).sum();
+        assertTrue(withDictionary.size() < withoutDictionary, withDictionary.size() + " >= " + withoutDictionary);
+        List<LipidAdduct> decoded = new ArrayList<>();
+        try (LipidAdductDecoder decoder = new LipidAdductDecoder(new ByteArrayInputStream(withDictionary.toByteArray()))) {
+            LipidAdduct lipid;
+            while ((lipid = decoder.read()) != null) {
+                decoded.add(lipid);
+            }
+            assertNull(decoder.read());
+        }
+        assertEquals(lipids, decoded);
+    }
+
+    @Test
+    public void testRejectsInvalidInput() throws ParsingException {
+        byte[] bytes = LipidAdductCodec.encode(new GoslinVisitorParser().parse("PC 16:0/18:1"));
+        byte[] otherVersion = Arrays.copyOf(bytes, bytes.length);
+        otherVersion[0] = (byte) (LipidAdductCodec.FORMAT_VERSION + 1);
+        assertThrows(IOException.class, () -> {
+            LipidAdductCodec.decode(otherVersion);
+        });
+        byte[] otherSchema = Arrays.copyOf(bytes, bytes.length);
+        otherSchema[2] ^= 0x5A;
+        assertThrows(IOException.class, () -> {
+            LipidAdductCodec.decode(otherSchema);
+        });
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+        assertThrows(IOException.class, () -> {
+            LipidAdductCodec.decode(truncated);
+        });
+    }
+
+    @Test
+    public void testRejectsCorruptStringLength() throws ParsingException {
+        byte[] bytes = LipidAdductCodec.encode(new GoslinVisitorParser().parse("PC 16:0/18:1"));
+        // header, lipid tag, then the head group name length as the largest varint
+        byte[] corrupt = Arrays.copyOf(bytes, 12);
+        corrupt[7] = (byte) 0xFF;
+        corrupt[8] = (byte) 0xFF;
+        corrupt[9] = (byte) 0xFF;
+        corrupt[10] = (byte) 0xFF;
+        corrupt[11] = (byte) 0x07;
+        IOException ex = assertThrows(IOException.class, () -> {
+            LipidAdductCodec.decode(corrupt);
+        });
+        assertTrue(ex.getMessage().startsWith("Malformed string length"), ex.getMessage());
+        corrupt[11] = (byte) 0x0F;
+        assertThrows(IOException.class, () -> {
+            LipidAdductCodec.decode(corrupt);
+        });
+    }
+
+    @Test
+    public void testCachingVisitorParser() throws IOException, ParsingException {
+        Path file = tempDir.resolve("cache.bin");
+        LipidAdduct expected = new SwissLipidsVisitorParser().parse("PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))");
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            CachingVisitorParser<LipidAdduct> parser = new CachingVisitorParser<>(new SwissLipidsVisitorParser(), "SWISSLIPIDS", cache, LipidAdductCodec.RESULT_CODEC);
+            assertEquals(expected, parser.parse("PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))"));
+            assertEquals(1, cache.size());
+        }
+        try (ParseCache cache = ParseCache.open(file, "1.0")) {
+            byte[] cached = cache.get("SWISSLIPIDS", "PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))").get();
+            assertEquals(CachingVisitorParser.RESULT, cached[0]);
+            assertEquals(expected, LipidAdductCodec.RESULT_CODEC.decode(Arrays.copyOfRange(cached, 1, cached.length)));
+            CachingVisitorParser<LipidAdduct> parser = new CachingVisitorParser<>(new SwissLipidsVisitorParser(), "SWISSLIPIDS", cache, LipidAdductCodec.RESULT_CODEC);
+            assertEquals(expected, parser.parse("PE(P-18:0/22:6(4Z,7Z,10Z,13Z,16Z,19Z))"));
+        }
+    }
+}